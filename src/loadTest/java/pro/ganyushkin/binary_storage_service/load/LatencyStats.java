@@ -0,0 +1,84 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies in microseconds, transferred bytes and errors of every operation. Workers record values
+ * without locks, reporter takes interval snapshots and accumulates them into totals of measured phase.
+ */
+public class LatencyStats {
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+
+    public LatencyStats() {
+        for (var operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    public void record(Operation operation, long latencyNanos, long bytes, boolean success) {
+        var stats = operations.get(operation);
+        stats.recorder.recordValue(Math.max(1, latencyNanos / 1000));
+        stats.bytes.add(bytes);
+        if (!success) {
+            stats.errors.increment();
+        }
+    }
+
+    /**
+     * Take values recorded since previous call
+     * @param accumulate - add values to totals
+     */
+    public Map<Operation, Snapshot> interval(boolean accumulate) {
+        var result = new EnumMap<Operation, Snapshot>(Operation.class);
+        operations.forEach((operation, stats) -> {
+            stats.interval = stats.recorder.getIntervalHistogram(stats.interval);
+            var snapshot = new Snapshot(stats.interval.copy(), stats.bytes.sumThenReset(),
+                    stats.errors.sumThenReset());
+            if (accumulate) {
+                stats.total.add(snapshot.histogram());
+                stats.totalBytes += snapshot.bytes();
+                stats.totalErrors += snapshot.errors();
+            }
+            result.put(operation, snapshot);
+        });
+        return result;
+    }
+
+    public Map<Operation, Snapshot> total() {
+        var result = new EnumMap<Operation, Snapshot>(Operation.class);
+        operations.forEach((operation, stats) ->
+                result.put(operation, new Snapshot(stats.total.copy(), stats.totalBytes, stats.totalErrors)));
+        return result;
+    }
+
+    public record Snapshot(Histogram histogram, long bytes, long errors) {
+        public long getCount() {
+            return histogram.getTotalCount();
+        }
+
+        public double getPercentileMillis(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        public double getMaxMillis() {
+            return histogram.getMaxValue() / 1000.0;
+        }
+    }
+
+    private static class OperationStats {
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private Histogram interval;
+        private long totalBytes;
+        private long totalErrors;
+    }
+}
@@ -0,0 +1,231 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for running instance of the service:
+ * <pre>
+ * ./gradlew loadTest --args="--base-url=http://localhost:8080 --concurrency=64 --duration=10m"
+ * </pre>
+ * Every worker repeats operations of configured mix on assets of preloaded key space. With {@code --rate}
+ * operations are started by schedule and latency is measured from the scheduled start, so a stalled service
+ * increases latency of all delayed operations instead of hiding them (coordinated omission).
+ * Long runs with {@code --report-interval} are soak tests: interval lines show drift of latency and errors.
+ */
+public class LoadTest {
+    private static final String LINE_FORMAT = "%-8s %10s %10s %10s %8s %10s %10s %10s %10s%n";
+
+    private final LoadTestSettings settings;
+    private final Workload workload;
+    private final StorageClient client;
+    private final LatencyStats stats = new LatencyStats();
+
+    public LoadTest(LoadTestSettings settings) {
+        this.settings = settings;
+        this.workload = new Workload(settings);
+        this.client = new StorageClient(settings.baseUrl, settings.requestTimeout,
+                settings.sizes.getMaxSize(), settings.seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        var settings = LoadTestSettings.parse(args);
+        System.out.println("Load test; " + settings);
+        var passed = new LoadTest(settings).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * @return false if error rate is more than allowed
+     */
+    public boolean run() throws Exception {
+        if (settings.preload) {
+            preload();
+        }
+        var start = System.nanoTime();
+        var measureStart = start + settings.warmup.toNanos();
+        var end = measureStart + settings.duration.toNanos();
+        var executor = Executors.newFixedThreadPool(settings.concurrency);
+        try {
+            var workers = new ArrayList<Future<?>>();
+            for (var i = 0; i < settings.concurrency; i++) {
+                var index = i;
+                workers.add(executor.submit(() -> runWorker(index, start, end)));
+            }
+            if (measureStart > start) {
+                sleepUntil(measureStart);
+                printReport("warmup " + settings.warmup, stats.interval(false), settings.warmup.toNanos());
+            }
+            var intervalStart = measureStart;
+            while (intervalStart < end) {
+                var intervalEnd = Math.min(intervalStart + settings.reportInterval.toNanos(), end);
+                sleepUntil(intervalEnd);
+                if (intervalEnd == end) {
+                    for (var worker : workers) {
+                        worker.get();
+                    }
+                }
+                printReport("interval " + Instant.now(), stats.interval(true), intervalEnd - intervalStart);
+                intervalStart = intervalEnd;
+            }
+        } finally {
+            shutdown(executor);
+        }
+        var total = stats.total();
+        printReport("total " + settings.duration, total, settings.duration.toNanos());
+        if (settings.reportFile != null) {
+            Files.writeString(settings.reportFile, toJson(total, settings.duration.toNanos()));
+        }
+        var requests = total.values().stream().mapToLong(LatencyStats.Snapshot::getCount).sum();
+        var errors = total.values().stream().mapToLong(LatencyStats.Snapshot::errors).sum();
+        var errorRate = requests == 0 ? 1.0 : (double) errors / requests;
+        if (errorRate > settings.maxErrorRate) {
+            System.out.printf(Locale.ROOT, "FAILED: error rate %.4f is more than %.4f%n",
+                    errorRate, settings.maxErrorRate);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Create buckets and upload every asset of the key space once
+     */
+    private void preload() throws Exception {
+        for (var i = 0; i < settings.buckets; i++) {
+            var bucketId = settings.bucketPrefix + i;
+            if (!client.createBucket(bucketId)) {
+                throw new IllegalStateException("Can't create bucket " + bucketId);
+            }
+        }
+        var keyCount = workload.getKeyCount();
+        var nextKey = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(settings.concurrency);
+        try {
+            var uploaders = new ArrayList<Future<?>>();
+            for (var i = 0; i < settings.concurrency; i++) {
+                uploaders.add(executor.submit(() -> {
+                    for (var key = nextKey.getAndIncrement(); key < keyCount; key = nextKey.getAndIncrement()) {
+                        var assetId = workload.assetOf(key);
+                        var result = client.write(workload.bucketOf(key), assetId, settings.sizes.sizeOf(assetId));
+                        if (!result.isSuccess()) {
+                            throw new IllegalStateException("Can't preload " + workload.bucketOf(key) + "/" +
+                                    assetId + "; status=" + result.status());
+                        }
+                        if ((key + 1) % 1000 == 0) {
+                            System.out.println("preloaded " + (key + 1) + " of " + keyCount);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (var uploader : uploaders) {
+                uploader.get();
+            }
+        } finally {
+            shutdown(executor);
+        }
+        System.out.println("preloaded " + keyCount + " assets");
+    }
+
+    private void runWorker(int index, long start, long end) {
+        var random = new SplittableRandom(settings.seed + index);
+        // every worker has its share of the target rate, workers are shifted inside of the period
+        var period = settings.rate > 0 ? (long) (settings.concurrency * 1e9 / settings.rate) : 0;
+        var scheduled = start + (period > 0 ? period * index / settings.concurrency : 0);
+        while (true) {
+            var operationStart = period > 0 ? scheduled : System.nanoTime();
+            if (operationStart >= end || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            sleepUntil(operationStart);
+            scheduled += period;
+            var operation = workload.nextOperation(random);
+            var key = workload.nextKey(random);
+            var bucketId = workload.bucketOf(key);
+            var assetId = workload.assetOf(key);
+            try {
+                var result = switch (operation) {
+                    case READ -> client.read(bucketId, assetId);
+                    case WRITE -> client.write(bucketId, assetId, settings.sizes.sizeOf(assetId));
+                    case STAT -> client.stat(bucketId, assetId);
+                };
+                stats.record(operation, System.nanoTime() - operationStart, result.bytes(), result.isSuccess());
+            } catch (IOException e) {
+                stats.record(operation, System.nanoTime() - operationStart, 0, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void printReport(String title, Map<Operation, LatencyStats.Snapshot> snapshots, long nanos) {
+        var seconds = nanos / 1e9;
+        System.out.println("--- " + title);
+        System.out.printf(LINE_FORMAT, "op", "count", "ops/s", "MB/s", "errors",
+                "p50 ms", "p99 ms", "p999 ms", "max ms");
+        snapshots.forEach((operation, snapshot) -> {
+            if (snapshot.getCount() == 0) {
+                return;
+            }
+            System.out.printf(LINE_FORMAT, operation.name().toLowerCase(Locale.ROOT),
+                    snapshot.getCount(),
+                    format(snapshot.getCount() / seconds),
+                    format(snapshot.bytes() / seconds / (1 << 20)),
+                    snapshot.errors(),
+                    format(snapshot.getPercentileMillis(50)),
+                    format(snapshot.getPercentileMillis(99)),
+                    format(snapshot.getPercentileMillis(99.9)),
+                    format(snapshot.getMaxMillis()));
+        });
+    }
+
+    private String toJson(Map<Operation, LatencyStats.Snapshot> snapshots, long nanos) {
+        var seconds = nanos / 1e9;
+        var json = new StringBuilder("{\n  \"settings\": \"").append(settings.toString().replace("\"", "'"))
+                .append("\",\n  \"operations\": {");
+        var first = true;
+        for (var entry : snapshots.entrySet()) {
+            var snapshot = entry.getValue();
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append(String.format(Locale.ROOT, "    \"%s\": {\"count\": %d, \"opsPerSecond\": %.2f, " +
+                            "\"bytesPerSecond\": %.0f, \"errors\": %d, \"p50Ms\": %.3f, \"p99Ms\": %.3f, " +
+                            "\"p999Ms\": %.3f, \"maxMs\": %.3f}",
+                    entry.getKey().name().toLowerCase(Locale.ROOT), snapshot.getCount(),
+                    snapshot.getCount() / seconds, snapshot.bytes() / seconds, snapshot.errors(),
+                    snapshot.getPercentileMillis(50), snapshot.getPercentileMillis(99),
+                    snapshot.getPercentileMillis(99.9), snapshot.getMaxMillis()));
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        for (var left = nanoTime - System.nanoTime(); left > 0; left = nanoTime - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,124 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Settings of load test run, every setting is passed as {@code --name=value} argument
+ */
+public class LoadTestSettings {
+    URI baseUrl = URI.create("http://localhost:8080");
+    int concurrency = 32;
+    /**
+     * target rate of operations per second for all workers, 0 - every worker starts next operation
+     * right after previous one
+     */
+    double rate = 0;
+    Duration warmup = Duration.ofSeconds(30);
+    Duration duration = Duration.ofMinutes(5);
+    Duration reportInterval = Duration.ofSeconds(10);
+    Duration requestTimeout = Duration.ofSeconds(60);
+    Map<Operation, Integer> mix = parseMix("read:80,write:15,stat:5");
+    SizeDistribution sizes = SizeDistribution.parse("4KB:60,64KB:30,1MB:9,16MB:1");
+    String bucketPrefix = "load-test-";
+    int buckets = 4;
+    int assetsPerBucket = 1000;
+    /**
+     * 0 - uniform access to assets, otherwise exponent of Zipf distribution of asset popularity
+     */
+    double zipf = 0;
+    boolean preload = true;
+    long seed = 1;
+    double maxErrorRate = 0.01;
+    Path reportFile;
+
+    public static LoadTestSettings parse(String[] args) {
+        var settings = new LoadTestSettings();
+        for (var arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Argument should be --name=value: " + arg);
+            }
+            var name = arg.substring(2, arg.indexOf('='));
+            var value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "base-url" -> settings.baseUrl = URI.create(value.replaceAll("/+$", ""));
+                case "concurrency" -> settings.concurrency = Integer.parseInt(value);
+                case "rate" -> settings.rate = Double.parseDouble(value);
+                case "warmup" -> settings.warmup = parseDuration(value);
+                case "duration" -> settings.duration = parseDuration(value);
+                case "report-interval" -> settings.reportInterval = parseDuration(value);
+                case "request-timeout" -> settings.requestTimeout = parseDuration(value);
+                case "mix" -> settings.mix = parseMix(value);
+                case "sizes" -> settings.sizes = SizeDistribution.parse(value);
+                case "bucket-prefix" -> settings.bucketPrefix = value;
+                case "buckets" -> settings.buckets = Integer.parseInt(value);
+                case "assets-per-bucket" -> settings.assetsPerBucket = Integer.parseInt(value);
+                case "zipf" -> settings.zipf = Double.parseDouble(value);
+                case "preload" -> settings.preload = Boolean.parseBoolean(value);
+                case "seed" -> settings.seed = Long.parseLong(value);
+                case "max-error-rate" -> settings.maxErrorRate = Double.parseDouble(value);
+                case "report-file" -> settings.reportFile = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown argument: " + name);
+            }
+        }
+        if (settings.concurrency <= 0 || settings.buckets <= 0 || settings.assetsPerBucket <= 0) {
+            throw new IllegalArgumentException("concurrency, buckets and assets-per-bucket should be positive");
+        }
+        return settings;
+    }
+
+    /**
+     * Supports ISO-8601 and simple format: 500ms, 30s, 5m, 2h
+     */
+    static Duration parseDuration(String value) {
+        var text = value.trim().toLowerCase(Locale.ROOT);
+        if (text.startsWith("p")) {
+            return Duration.parse(value);
+        }
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        var amount = Long.parseLong(text.substring(0, text.length() - 1));
+        return switch (text.charAt(text.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            case 'd' -> Duration.ofDays(amount);
+            default -> throw new IllegalArgumentException("Unsupported duration: " + value);
+        };
+    }
+
+    /**
+     * Weights of operations, ex: read:80,write:15,stat:5
+     */
+    static Map<Operation, Integer> parseMix(String value) {
+        var mix = new EnumMap<Operation, Integer>(Operation.class);
+        for (var entry : value.split(",")) {
+            var parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entry should be operation:weight: " + entry);
+            }
+            var weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight should not be negative: " + entry);
+            }
+            mix.put(Operation.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), weight);
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("Mix has no operations: " + value);
+        }
+        return mix;
+    }
+
+    @Override
+    public String toString() {
+        return "baseUrl=" + baseUrl + "; concurrency=" + concurrency + "; rate=" + rate +
+                "; warmup=" + warmup + "; duration=" + duration + "; mix=" + mix + "; sizes=" + sizes +
+                "; buckets=" + buckets + "; assetsPerBucket=" + assetsPerBucket + "; zipf=" + zipf +
+                "; seed=" + seed;
+    }
+}
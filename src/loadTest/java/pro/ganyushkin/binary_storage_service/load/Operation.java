@@ -0,0 +1,16 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+public enum Operation {
+    /**
+     * download of asset content
+     */
+    READ,
+    /**
+     * upload with overwrite of existing asset
+     */
+    WRITE,
+    /**
+     * asset metadata request
+     */
+    STAT
+}
@@ -0,0 +1,82 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Weighted distribution of asset sizes, ex: 4KB:60,64KB:30,1MB:9,16MB:1.
+ * Size of asset depends only on its name, so the same key space has the same sizes in every run.
+ */
+public class SizeDistribution {
+    private final long[] sizes;
+    private final long[] cumulativeWeights;
+    private final String text;
+
+    private SizeDistribution(long[] sizes, long[] cumulativeWeights, String text) {
+        this.sizes = sizes;
+        this.cumulativeWeights = cumulativeWeights;
+        this.text = text;
+    }
+
+    public static SizeDistribution parse(String value) {
+        var entries = value.split(",");
+        var sizes = new long[entries.length];
+        var cumulativeWeights = new long[entries.length];
+        var total = 0L;
+        for (var i = 0; i < entries.length; i++) {
+            var parts = entries[i].trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Size entry should be size:weight: " + entries[i]);
+            }
+            sizes[i] = parseSize(parts[0]);
+            var weight = Long.parseLong(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Weight should not be negative: " + entries[i]);
+            }
+            total += weight;
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Size distribution has no sizes: " + value);
+        }
+        return new SizeDistribution(sizes, cumulativeWeights, value);
+    }
+
+    static long parseSize(String value) {
+        var text = value.trim().toUpperCase(Locale.ROOT);
+        var multiplier = 1L;
+        if (text.endsWith("KB")) {
+            multiplier = 1L << 10;
+        } else if (text.endsWith("MB")) {
+            multiplier = 1L << 20;
+        } else if (text.endsWith("GB")) {
+            multiplier = 1L << 30;
+        }
+        var digits = multiplier == 1 ? text.replaceAll("B$", "") : text.substring(0, text.length() - 2);
+        return Long.parseLong(digits) * multiplier;
+    }
+
+    public long sizeOf(String assetId) {
+        var random = new Random(assetId.hashCode());
+        var point = (long) (random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1]);
+        for (var i = 0; i < sizes.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return sizes[i];
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    public long getMaxSize() {
+        var max = 0L;
+        for (var size : sizes) {
+            max = Math.max(max, size);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,105 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+
+/**
+ * HTTP client of storage API v1. Uploaded content is a slice of one random (incompressible) payload.
+ */
+public class StorageClient {
+    private static final String API_PATH = "/api/v1/storage/bucket/";
+    private static final String BOUNDARY = "load-test-boundary";
+    private static final byte[] MULTIPART_HEAD = ("--" + BOUNDARY + "\r\n" +
+            "Content-Disposition: form-data; name=\"content\"; filename=\"content\"\r\n" +
+            "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MULTIPART_TAIL = ("\r\n--" + BOUNDARY + "--\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final HttpClient client;
+    private final URI baseUrl;
+    private final Duration requestTimeout;
+    private final byte[] payload;
+
+    public StorageClient(URI baseUrl, Duration requestTimeout, long maxSize, long seed) {
+        if (maxSize > Integer.MAX_VALUE - 1024) {
+            throw new IllegalArgumentException("Max asset size should be less than 2GB: " + maxSize);
+        }
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.baseUrl = baseUrl;
+        this.requestTimeout = requestTimeout;
+        this.payload = new byte[(int) maxSize];
+        new Random(seed).nextBytes(payload);
+    }
+
+    /**
+     * @return true if bucket was created or exists
+     */
+    public boolean createBucket(String bucketId) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(baseUrl.resolve(API_PATH + bucketId + "?force=true"))
+                .timeout(requestTimeout)
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return isSuccess(client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    public Result read(String bucketId, String assetId) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(assetUri(bucketId, assetId, ""))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (var body = response.body()) {
+            return new Result(response.statusCode(), body.transferTo(OutputStream.nullOutputStream()));
+        }
+    }
+
+    public Result stat(String bucketId, String assetId) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(assetUri(bucketId, assetId, "/stat"))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        return new Result(response.statusCode(), response.body().length);
+    }
+
+    /**
+     * Upload asset with overwrite
+     */
+    public Result write(String bucketId, String assetId, long size) throws IOException, InterruptedException {
+        var body = HttpRequest.BodyPublishers.concat(
+                HttpRequest.BodyPublishers.ofByteArray(MULTIPART_HEAD),
+                HttpRequest.BodyPublishers.ofByteArray(payload, 0, (int) size),
+                HttpRequest.BodyPublishers.ofByteArray(MULTIPART_TAIL));
+        var request = HttpRequest.newBuilder(assetUri(bucketId, assetId, ""))
+                .timeout(requestTimeout)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(body)
+                .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        return new Result(response.statusCode(), size);
+    }
+
+    private URI assetUri(String bucketId, String assetId, String suffix) {
+        return baseUrl.resolve(API_PATH + bucketId + "/asset/" + assetId + suffix);
+    }
+
+    private static boolean isSuccess(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    public record Result(int status, long bytes) {
+        public boolean isSuccess() {
+            return StorageClient.isSuccess(status);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package pro.ganyushkin.binary_storage_service.load;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Key space and operation mix. Asset {@code i} of the key space is {@code asset-<i / buckets>} in bucket
+ * {@code <prefix><i % buckets>}, so with Zipf popularity hot assets are spread over all buckets.
+ */
+public class Workload {
+    private final LoadTestSettings settings;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    /**
+     * cumulative probabilities of asset ranks, null for uniform access
+     */
+    private final double[] popularity;
+
+    public Workload(LoadTestSettings settings) {
+        this.settings = settings;
+        this.operations = settings.mix.keySet().toArray(Operation[]::new);
+        this.cumulativeWeights = new int[operations.length];
+        var total = 0;
+        for (var i = 0; i < operations.length; i++) {
+            total += settings.mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        this.popularity = settings.zipf > 0 ? buildZipf(getKeyCount(), settings.zipf) : null;
+    }
+
+    public int getKeyCount() {
+        return settings.buckets * settings.assetsPerBucket;
+    }
+
+    public Operation nextOperation(SplittableRandom random) {
+        var point = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (var i = 0; i < operations.length; i++) {
+            if (point < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    public int nextKey(SplittableRandom random) {
+        if (popularity == null) {
+            return random.nextInt(getKeyCount());
+        }
+        var index = Arrays.binarySearch(popularity, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, popularity.length - 1);
+    }
+
+    public String bucketOf(int key) {
+        return settings.bucketPrefix + (key % settings.buckets);
+    }
+
+    public String assetOf(int key) {
+        return String.format("asset-%08d", key / settings.buckets);
+    }
+
+    private static double[] buildZipf(int count, double exponent) {
+        var cumulative = new double[count];
+        var sum = 0.0;
+        for (var rank = 0; rank < count; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (var rank = 0; rank < count; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,46 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bucket lifecycle rules, ex:
+ * <pre>
+ * storage.lifecycle.enabled=true
+ * storage.lifecycle.rules.backups.cold-after=7d
+ * storage.lifecycle.rules.backups.expire-after=90d
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "storage.lifecycle")
+public class LifecycleProperties {
+    private boolean enabled = false;
+    private Duration sweepInterval = Duration.ofMinutes(1);
+    /**
+     * sweeper throttling, count of removed or compressed assets per second
+     */
+    private double maxActionsPerSecond = 100;
+    /**
+     * max count of processed index entries per bucket in one sweep
+     */
+    private int batchSize = 10000;
+    private Map<String, Rule> rules = new HashMap<>();
+
+    @Data
+    public static class Rule {
+        /**
+         * null - assets are not removed
+         */
+        private Duration expireAfter;
+        /**
+         * null - assets are not moved to cold tier
+         */
+        private Duration coldAfter;
+    }
+}
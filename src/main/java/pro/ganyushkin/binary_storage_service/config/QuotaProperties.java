@@ -0,0 +1,43 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bucket quotas, ex:
+ * <pre>
+ * storage.quota.enabled=true
+ * storage.quota.defaults.max-bytes=10GB
+ * storage.quota.buckets.backups.max-bytes=1TB
+ * storage.quota.buckets.backups.max-objects=1000000
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "storage.quota")
+public class QuotaProperties {
+    private boolean enabled = false;
+    private Limits defaults = new Limits();
+    private Map<String, Limits> buckets = new HashMap<>();
+
+    public Limits getLimits(String bucketId) {
+        return buckets.getOrDefault(bucketId, defaults);
+    }
+
+    @Data
+    public static class Limits {
+        /**
+         * null - unlimited
+         */
+        private DataSize maxBytes;
+        /**
+         * null - unlimited
+         */
+        private Long maxObjects;
+    }
+}
@@ -0,0 +1,44 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.net.URI;
+
+@Profile("S3-STORAGE")
+@Configuration
+public class S3ClientConfiguration {
+
+    /**
+     * One client with pooled keep-alive connections is shared by all transfers
+     */
+    @Bean(destroyMethod = "close")
+    public S3Client s3Client(S3Properties properties) {
+        var builder = S3Client.builder()
+                .region(Region.of(properties.getRegion()))
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(properties.getMaxConnections())
+                        .connectionTimeout(properties.getConnectionTimeout())
+                        .socketTimeout(properties.getSocketTimeout())
+                        .tcpKeepAlive(true))
+                .serviceConfiguration(configuration -> configuration
+                        .pathStyleAccessEnabled(properties.isPathStyleAccess()));
+        if (properties.getEndpoint() != null) {
+            builder.endpointOverride(URI.create(properties.getEndpoint()));
+        }
+        if (properties.getAccessKey() != null) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(
+                    AwsBasicCredentials.create(properties.getAccessKey(), properties.getSecretKey())));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        return builder.build();
+    }
+}
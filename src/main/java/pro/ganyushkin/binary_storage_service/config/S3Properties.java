@@ -0,0 +1,70 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * S3 compatible object storage backend, virtual buckets are key prefixes in one S3 bucket, ex:
+ * <pre>
+ * spring.profiles.active=S3-STORAGE
+ * storage.s3.endpoint=http://localhost:9000
+ * storage.s3.bucket=binary-storage
+ * storage.s3.access-key=minioadmin
+ * storage.s3.secret-key=minioadmin
+ * storage.s3.cache.directory=/var/cache/binary-storage
+ * storage.s3.cache.max-size=100GB
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "storage.s3")
+public class S3Properties {
+    /**
+     * null - AWS endpoint of the region
+     */
+    private String endpoint;
+    private String region = "us-east-1";
+    private String bucket;
+    /**
+     * null - default AWS credentials chain
+     */
+    private String accessKey;
+    private String secretKey;
+    /**
+     * path style requests are required by most S3 compatible stand-ins (MinIO, Ceph)
+     */
+    private boolean pathStyleAccess = true;
+    private int maxConnections = 64;
+    private Duration connectionTimeout = Duration.ofSeconds(5);
+    private Duration socketTimeout = Duration.ofSeconds(30);
+    /**
+     * part size of multipart uploads and ranged downloads
+     */
+    private DataSize partSize = DataSize.ofMegabytes(8);
+    /**
+     * count of parts which are transferred in parallel for one asset
+     */
+    private int transferParallelism = 8;
+    /**
+     * storage class of demoted assets
+     */
+    private String coldStorageClass = "STANDARD_IA";
+    private Cache cache = new Cache();
+
+    @Data
+    public static class Cache {
+        /**
+         * null - local cache is disabled
+         */
+        private String directory;
+        private DataSize maxSize = DataSize.ofGigabytes(10);
+        /**
+         * larger assets are streamed from S3 without caching
+         */
+        private DataSize maxObjectSize = DataSize.ofMegabytes(512);
+    }
+}
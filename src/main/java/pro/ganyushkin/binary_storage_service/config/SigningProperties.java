@@ -0,0 +1,36 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keys of signed download URLs, ex:
+ * <pre>
+ * storage.signing.enabled=true
+ * storage.signing.active-key=k2
+ * storage.signing.keys.k1=old-secret
+ * storage.signing.keys.k2=new-secret
+ * storage.signing.base-url=https://cdn.example.com
+ * </pre>
+ * URLs are signed by the active key, all listed keys are accepted, so keys are rotated without
+ * invalidation of issued URLs.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "storage.signing")
+public class SigningProperties {
+    private boolean enabled = false;
+    private String activeKey;
+    private Map<String, String> keys = new HashMap<>();
+    private Duration defaultExpiry = Duration.ofHours(1);
+    private Duration maxExpiry = Duration.ofDays(7);
+    /**
+     * prefix of signed URLs, empty - URLs are relative
+     */
+    private String baseUrl = "";
+}
@@ -0,0 +1,58 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pro.ganyushkin.binary_storage_service.util.FileSpanExporter;
+import pro.ganyushkin.binary_storage_service.util.SlowRequestSpanProcessor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class TracingConfiguration {
+    public static final String INSTRUMENTATION_NAME = "binary-storage-service";
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.tracing.enabled", havingValue = "true")
+    public SdkTracerProvider tracerProvider(TracingProperties properties) throws IOException {
+        var builder = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(
+                        Attributes.of(AttributeKey.stringKey("service.name"), INSTRUMENTATION_NAME))))
+                .setSampler(Sampler.parentBased(Sampler.traceIdRatioBased(properties.getSampleRatio())));
+        switch (properties.getExporter()) {
+            case FILE -> builder.addSpanProcessor(BatchSpanProcessor.builder(
+                    new FileSpanExporter(Path.of(properties.getFile()))).build());
+            case OTLP -> builder.addSpanProcessor(BatchSpanProcessor.builder(
+                    OtlpGrpcSpanExporter.builder().setEndpoint(properties.getOtlpEndpoint()).build()).build());
+            case NONE -> {
+            }
+        }
+        if (properties.getSlowRequestThreshold() != null) {
+            builder.addSpanProcessor(new SlowRequestSpanProcessor(
+                    properties.getSlowRequestThreshold(), properties.getSlowRequestMaxTraces()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * No-op tracer is used when tracing is disabled, so instrumented code doesn't check configuration
+     */
+    @Bean
+    public Tracer tracer(ObjectProvider<SdkTracerProvider> tracerProvider) {
+        var provider = tracerProvider.getIfAvailable();
+        return provider != null
+                ? provider.get(INSTRUMENTATION_NAME)
+                : OpenTelemetry.noop().getTracer(INSTRUMENTATION_NAME);
+    }
+}
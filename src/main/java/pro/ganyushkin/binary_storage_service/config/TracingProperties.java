@@ -0,0 +1,45 @@
+package pro.ganyushkin.binary_storage_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * OpenTelemetry tracing, ex:
+ * <pre>
+ * storage.tracing.enabled=true
+ * storage.tracing.exporter=otlp
+ * storage.tracing.otlp-endpoint=http://collector:4317
+ * storage.tracing.slow-request-threshold=500ms
+ * </pre>
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "storage.tracing")
+public class TracingProperties {
+    private boolean enabled = false;
+    private Exporter exporter = Exporter.FILE;
+    /**
+     * JSON lines file of FILE exporter
+     */
+    private String file = "./traces.jsonl";
+    private String otlpEndpoint = "http://localhost:4317";
+    /**
+     * share of traced requests
+     */
+    private double sampleRatio = 1.0;
+    /**
+     * phase breakdown of traced requests which are slower is logged, null - disabled
+     */
+    private Duration slowRequestThreshold = Duration.ofSeconds(1);
+    /**
+     * max count of requests in flight which phases are collected for slow request log
+     */
+    private int slowRequestMaxTraces = 10000;
+
+    public enum Exporter {
+        FILE, OTLP, NONE
+    }
+}
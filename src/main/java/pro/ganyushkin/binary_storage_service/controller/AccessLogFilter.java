@@ -0,0 +1,149 @@
+package pro.ganyushkin.binary_storage_service.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import pro.ganyushkin.binary_storage_service.controller.v1.StorageAPI;
+import pro.ganyushkin.binary_storage_service.model.AccessLogEntry;
+import pro.ganyushkin.binary_storage_service.service.AccessLogService;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * Records every request into access log with latency and transferred bytes,
+ * async requests are recorded when their response is completed
+ */
+@RequiredArgsConstructor
+@Component
+public class AccessLogFilter extends OncePerRequestFilter {
+    private final AccessLogService accessLogService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!accessLogService.isEnabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        var timestamp = System.currentTimeMillis();
+        var start = System.nanoTime();
+        var countingResponse = new CountingResponse(response);
+        var failed = true;
+        try {
+            chain.doFilter(request, countingResponse);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                // body is written after handler returns (ex. asset download), entry is recorded on completion
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    private volatile boolean asyncFailed;
+
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(request, countingResponse, timestamp, start, asyncFailed);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        asyncFailed = true;
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        asyncFailed = true;
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                record(request, countingResponse, timestamp, start, failed);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, CountingResponse response, long timestamp, long start,
+                        boolean failed) {
+        accessLogService.record(new AccessLogEntry(
+                timestamp,
+                request.getMethod(),
+                request.getRequestURI(),
+                failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(),
+                Math.max(0, request.getContentLengthLong()),
+                response.bytesWritten,
+                (System.nanoTime() - start) / 1000,
+                resolveClientId(request)));
+    }
+
+    private static String resolveClientId(HttpServletRequest request) {
+        var clientId = request.getHeader(StorageAPI.CLIENT_ID_HEADER);
+        return clientId != null ? clientId : request.getRemoteAddr();
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private long bytesWritten;
+        private ServletOutputStream outputStream;
+
+        private CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        private class CountingOutputStream extends ServletOutputStream {
+            private final ServletOutputStream delegate;
+
+            private CountingOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                delegate.write(b);
+                bytesWritten++;
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                delegate.write(buffer, offset, length);
+                bytesWritten += length;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+                delegate.setWriteListener(listener);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package pro.ganyushkin.binary_storage_service.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.model.BucketInventory;
+import pro.ganyushkin.binary_storage_service.service.InventoryService;
+
+import java.util.List;
+
+/**
+ * Bucket inventory for operators, it is available as /actuator/inventory
+ */
+@RequiredArgsConstructor
+@Component
+@Endpoint(id = "inventory")
+public class InventoryEndpoint {
+    private final InventoryService inventoryService;
+
+    @ReadOperation
+    public List<BucketInventory> inventories() {
+        return inventoryService.getInventories();
+    }
+
+    /**
+     * @return null if bucket is unknown, actuator responds with 404
+     */
+    @ReadOperation
+    public BucketInventory inventory(@Selector String bucketId) {
+        return inventoryService.getInventory(bucketId).orElse(null);
+    }
+}
@@ -0,0 +1,90 @@
+package pro.ganyushkin.binary_storage_service.controller;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Root span of request, phases of storage layers are its children
+ */
+@RequiredArgsConstructor
+@Component
+public class TracingFilter extends OncePerRequestFilter {
+    private static final AttributeKey<String> HTTP_METHOD = AttributeKey.stringKey("http.method");
+    private static final AttributeKey<String> HTTP_TARGET = AttributeKey.stringKey("http.target");
+    private static final AttributeKey<Long> HTTP_STATUS = AttributeKey.longKey("http.status_code");
+
+    private final Tracer tracer;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var span = tracer.spanBuilder(request.getMethod())
+                .setSpanKind(SpanKind.SERVER)
+                .setAttribute(HTTP_METHOD, request.getMethod())
+                .setAttribute(HTTP_TARGET, request.getRequestURI())
+                .startSpan();
+        try (var ignored = span.makeCurrent()) {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            end(span, request, response);
+            throw e;
+        }
+        if (request.isAsyncStarted()) {
+            // body is written after handler returns (ex. asset download), its phases are children of this span
+            request.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    end(span, request, response);
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    span.setStatus(StatusCode.ERROR, "Async request timeout");
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    if (event.getThrowable() != null) {
+                        span.recordException(event.getThrowable());
+                    }
+                    span.setStatus(StatusCode.ERROR);
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            end(span, request, response);
+        }
+    }
+
+    private static void end(Span span, HttpServletRequest request, HttpServletResponse response) {
+        span.setAttribute(HTTP_STATUS, (long) response.getStatus());
+        if (response.getStatus() >= 500) {
+            span.setStatus(StatusCode.ERROR);
+        }
+        var pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) {
+            span.updateName(request.getMethod() + " " + pattern);
+        }
+        span.end();
+    }
+}
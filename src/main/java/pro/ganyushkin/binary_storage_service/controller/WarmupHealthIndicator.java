@@ -0,0 +1,25 @@
+package pro.ganyushkin.binary_storage_service.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.service.WarmupService;
+
+/**
+ * Out of service until cache warm-up is finished, it is a part of /actuator/health/readiness
+ */
+@RequiredArgsConstructor
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+    private final WarmupService warmupService;
+
+    @Override
+    public Health health() {
+        if (!warmupService.isEnabled()) {
+            return Health.up().build();
+        }
+        var health = warmupService.isCompleted() ? Health.up() : Health.outOfService();
+        return health.withDetails(warmupService.getProgress()).build();
+    }
+}
@@ -0,0 +1,577 @@
+package pro.ganyushkin.binary_storage_service.controller.s3;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pro.ganyushkin.binary_storage_service.controller.v1.StorageAPI;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.RateLimitExceededException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.service.MultipartUploadService;
+import pro.ganyushkin.binary_storage_service.service.RateLimitService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+import pro.ganyushkin.binary_storage_service.util.AwsChunkedInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * S3 compatible facade over storage service, path style addressing only:
+ * {@code /s3/<bucket>/<key>}. Request signatures are not verified.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/s3")
+public class S3API {
+    public static final String USER_METADATA_HEADER_PREFIX = "x-amz-meta-";
+    private static final String CONTENT_SHA256_HEADER = "x-amz-content-sha256";
+    private static final String DECODED_LENGTH_HEADER = "x-amz-decoded-content-length";
+    private static final String STREAMING_PAYLOAD_PREFIX = "STREAMING-";
+    private static final String AWS_CHUNKED_ENCODING = "aws-chunked";
+    private static final int DEFAULT_MAX_KEYS = 1000;
+
+    private final StorageService storageService;
+    private final MultipartUploadService multipartUploadService;
+    private final RateLimitService rateLimitService;
+
+    @RequestMapping(method = RequestMethod.GET, path = { "", "/" }, produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<String> listBuckets() {
+        return ResponseEntity.ok(S3Xml.listBuckets(storageService.getBuckets()));
+    }
+
+    @RequestMapping(method = RequestMethod.HEAD, path = "/{bucket}")
+    public ResponseEntity<Void> headBucket(@PathVariable String bucket) {
+        return storageService.isBucketExists(bucket)
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/{bucket}")
+    public ResponseEntity<String> createBucket(@PathVariable String bucket) {
+        log.info("s3 create bucket bucket={}", bucket);
+        try {
+            storageService.createBucket(bucket, false);
+            return ResponseEntity.ok().build();
+        } catch (InternalStorageException e) {
+            log.error("S3 create bucket exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), bucket);
+        } catch (ResourceAlreadyExists e) {
+            return buildError(HttpStatus.CONFLICT, "BucketAlreadyOwnedByYou", "Bucket already exists", bucket);
+        } catch (IllegalArgumentException e) {
+            return buildError(HttpStatus.BAD_REQUEST, "InvalidBucketName", e.getMessage(), bucket);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/{bucket}", produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<String> listObjectsV2(
+            @PathVariable String bucket,
+            @RequestParam(required = false, defaultValue = "") String prefix,
+            @RequestParam(required = false) String delimiter,
+            @RequestParam(name = "max-keys", required = false, defaultValue = "1000") int maxKeys,
+            @RequestParam(name = "continuation-token", required = false) String continuationToken,
+            @RequestParam(name = "start-after", required = false) String startAfter) {
+        try {
+            maxKeys = Math.max(0, Math.min(maxKeys, DEFAULT_MAX_KEYS));
+            var hasDelimiter = delimiter != null && !delimiter.isEmpty();
+            String after = startAfter;
+            if (continuationToken != null) {
+                after = new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8);
+            }
+            var contentKeys = new ArrayList<String>();
+            var commonPrefixes = new LinkedHashSet<String>();
+            String last = null;
+            String nextContinuationToken = null;
+            // keys are read in sorted batches from cursor, the batch after common prefix skips the rest of it
+            var cursor = hasDelimiter && after != null && after.endsWith(delimiter)
+                    ? after + Character.MAX_VALUE
+                    : after;
+            var batchSize = maxKeys + 1;
+            batches:
+            while (maxKeys > 0) {
+                var batch = storageService.getBucketPage(bucket, prefix, cursor, batchSize);
+                for (var key : batch) {
+                    cursor = key;
+                    String commonPrefix = null;
+                    if (hasDelimiter) {
+                        var index = key.indexOf(delimiter, prefix.length());
+                        if (index >= 0) {
+                            commonPrefix = key.substring(0, index + delimiter.length());
+                            if (commonPrefixes.contains(commonPrefix)) {
+                                continue;
+                            }
+                        }
+                    }
+                    if (contentKeys.size() + commonPrefixes.size() >= maxKeys) {
+                        nextContinuationToken = Base64.getUrlEncoder()
+                                .encodeToString(last.getBytes(StandardCharsets.UTF_8));
+                        break batches;
+                    }
+                    if (commonPrefix != null) {
+                        commonPrefixes.add(commonPrefix);
+                        last = commonPrefix;
+                    } else {
+                        contentKeys.add(key);
+                        last = key;
+                    }
+                }
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                if (hasDelimiter && last != null && last.endsWith(delimiter) && cursor.startsWith(last)) {
+                    cursor = last + Character.MAX_VALUE;
+                }
+            }
+            var contents = storageService.getAssetsMetadata(bucket, contentKeys).values();
+            return ResponseEntity.ok(S3Xml.listObjectsV2(bucket, prefix, delimiter, maxKeys, continuationToken,
+                    startAfter, nextContinuationToken, contents, commonPrefixes));
+        } catch (InternalStorageException e) {
+            log.error("S3 list exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), bucket);
+        } catch (UndefinedResourceException e) {
+            return buildError(HttpStatus.NOT_FOUND, "NoSuchBucket", "Bucket does not exist", bucket);
+        } catch (IllegalArgumentException e) {
+            return buildError(HttpStatus.BAD_REQUEST, "InvalidArgument", "Invalid continuation token", bucket);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.HEAD, path = "/{bucket}/{*key}")
+    public ResponseEntity<Void> headObject(@PathVariable String bucket, @PathVariable String key) {
+        var assetId = toAssetId(key);
+        try {
+            var metadata = storageService.getAssetMetadata(bucket, assetId);
+            return ResponseEntity.ok().headers(buildObjectHeaders(metadata)).build();
+        } catch (InternalStorageException e) {
+            log.error("S3 head exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/{bucket}/{*key}")
+    public ResponseEntity<StreamingResponseBody> getObject(
+            @PathVariable String bucket,
+            @PathVariable String key,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+            HttpServletRequest request) {
+        var assetId = toAssetId(key);
+        try {
+            var metadata = storageService.getAssetMetadata(bucket, assetId);
+            var byteRange = range != null ? ByteRange.parse(range, metadata.getSize()) : null;
+            if (range != null && byteRange == null) {
+                return buildInvalidRange(key);
+            }
+            var length = byteRange != null ? byteRange.length() : metadata.getSize();
+            rateLimitService.acquire(request.getRemoteAddr(), resolveClientId(request), bucket, length);
+            var content = storageService.openAsset(bucket, assetId, metadata);
+            var data = content.data();
+            // asset can be overwritten after range was checked
+            metadata = content.metadata();
+            byteRange = range != null ? ByteRange.parse(range, metadata.getSize()) : null;
+            if (range != null && byteRange == null) {
+                data.close();
+                return buildInvalidRange(key);
+            }
+            var headers = buildObjectHeaders(metadata);
+            if (byteRange == null) {
+                return ResponseEntity.ok().headers(headers).body(StorageAPI.buildBody(data));
+            }
+            try {
+                data.skipNBytes(byteRange.start());
+            } catch (IOException e) {
+                data.close();
+                throw e;
+            }
+            headers.setContentLength(byteRange.length());
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + byteRange.start() + "-" + byteRange.end() + "/" +
+                    metadata.getSize());
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .headers(headers)
+                    .body(StorageAPI.buildBody(new LimitedInputStream(data, byteRange.length())));
+        } catch (IOException | InternalStorageException e) {
+            log.error("S3 get exception", e);
+            return buildStreamedError(buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(),
+                    key));
+        } catch (UndefinedResourceException e) {
+            return buildStreamedError(buildError(HttpStatus.NOT_FOUND, "NoSuchKey", "The specified key does not exist",
+                    key));
+        } catch (RateLimitExceededException e) {
+            log.warn("Rate limit for {}/{}; {}", bucket, assetId, e.getMessage());
+            return buildStreamedError(buildSlowDown(e, key));
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/{bucket}/{*key}", params = "!uploadId")
+    public ResponseEntity<String> putObject(
+            @PathVariable String bucket,
+            @PathVariable String key,
+            @RequestHeader HttpHeaders headers,
+            HttpServletRequest request) {
+        var assetId = toAssetId(key);
+        log.debug("s3 put object bucket={}; assetId={}", bucket, assetId);
+        if (headers.containsKey("x-amz-copy-source")) {
+            return buildError(HttpStatus.NOT_IMPLEMENTED, "NotImplemented", "CopyObject is not supported", key);
+        }
+        try {
+            var length = resolveContentLength(request);
+            rateLimitService.acquire(request.getRemoteAddr(), resolveClientId(request), bucket, length);
+            var metadata = storageService.storeAsset(bucket, assetId, openContent(request), length, false, true,
+                    extractUserMetadata(headers));
+            return ResponseEntity.ok().eTag(buildETag(metadata)).build();
+        } catch (IOException | InternalStorageException e) {
+            log.error("S3 put exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), key);
+        } catch (UndefinedResourceException e) {
+            return buildError(HttpStatus.NOT_FOUND, "NoSuchBucket", "Bucket does not exist", bucket);
+        } catch (ResourceAlreadyExists e) {
+            return buildError(HttpStatus.CONFLICT, "OperationAborted", "Asset can't be overwritten", key);
+        } catch (QuotaExceededException e) {
+            return buildError(HttpStatus.INSUFFICIENT_STORAGE, "QuotaExceeded", e.getMessage(), bucket);
+        } catch (RateLimitExceededException e) {
+            log.warn("Rate limit for {}/{}; {}", bucket, assetId, e.getMessage());
+            return buildSlowDown(e, key);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, path = "/{bucket}/{*key}", params = "!uploadId")
+    public ResponseEntity<String> deleteObject(@PathVariable String bucket, @PathVariable String key) {
+        var assetId = toAssetId(key);
+        log.debug("s3 delete object bucket={}; assetId={}", bucket, assetId);
+        try {
+            storageService.deleteAsset(bucket, assetId);
+        } catch (InternalStorageException e) {
+            log.error("S3 delete exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), key);
+        } catch (UndefinedResourceException e) {
+            // S3 deletes are idempotent
+            log.debug("Delete of undefined asset {}/{}", bucket, assetId);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "/{bucket}/{*key}", params = "uploads",
+            produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<String> createMultipartUpload(@PathVariable String bucket, @PathVariable String key) {
+        var assetId = toAssetId(key);
+        try {
+            var uploadId = multipartUploadService.createUpload(bucket, assetId);
+            return ResponseEntity.ok(S3Xml.initiateMultipartUpload(bucket, assetId, uploadId));
+        } catch (InternalStorageException e) {
+            log.error("S3 create multipart upload exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), key);
+        } catch (UndefinedResourceException e) {
+            return buildError(HttpStatus.NOT_FOUND, "NoSuchBucket", "Bucket does not exist", bucket);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.PUT, path = "/{bucket}/{*key}", params = { "uploadId", "partNumber" })
+    public ResponseEntity<String> uploadPart(
+            @PathVariable String bucket,
+            @PathVariable String key,
+            @RequestParam String uploadId,
+            @RequestParam int partNumber,
+            HttpServletRequest request) {
+        if (partNumber < 1 || partNumber > MultipartUploadService.MAX_PART_NUMBER) {
+            return buildError(HttpStatus.BAD_REQUEST, "InvalidArgument", "Invalid part number", key);
+        }
+        try {
+            rateLimitService.acquire(request.getRemoteAddr(), resolveClientId(request),
+                    bucket, resolveContentLength(request));
+            var md5 = createMd5();
+            multipartUploadService.uploadPart(uploadId, partNumber, new DigestInputStream(openContent(request), md5));
+            return ResponseEntity.ok().eTag(toETag(md5)).build();
+        } catch (IOException | InternalStorageException e) {
+            log.error("S3 upload part exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), key);
+        } catch (UndefinedResourceException e) {
+            return buildError(HttpStatus.NOT_FOUND, "NoSuchUpload", "Upload does not exist", uploadId);
+        } catch (RateLimitExceededException e) {
+            log.warn("Rate limit for {}/{}; {}", bucket, key, e.getMessage());
+            return buildSlowDown(e, key);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "/{bucket}/{*key}", params = "uploadId",
+            produces = MediaType.APPLICATION_XML_VALUE)
+    public ResponseEntity<String> completeMultipartUpload(
+            @PathVariable String bucket,
+            @PathVariable String key,
+            @RequestParam String uploadId,
+            @RequestBody byte[] body) {
+        try {
+            var upload = multipartUploadService.getUpload(uploadId);
+            if (!upload.bucketId().equals(bucket) || !upload.assetId().equals(toAssetId(key))) {
+                return buildError(HttpStatus.NOT_FOUND, "NoSuchUpload", "Upload does not exist", uploadId);
+            }
+            var partNumbers = S3Xml.parseCompletedParts(body);
+            if (partNumbers.isEmpty()) {
+                return buildError(HttpStatus.BAD_REQUEST, "MalformedXML", "Parts are not specified", uploadId);
+            }
+            var metadata = multipartUploadService.complete(uploadId, partNumbers);
+            return ResponseEntity.ok(S3Xml.completeMultipartUpload(bucket, upload.assetId(), buildETag(metadata)));
+        } catch (IOException e) {
+            return buildError(HttpStatus.BAD_REQUEST, "MalformedXML", e.getMessage(), uploadId);
+        } catch (InternalStorageException e) {
+            log.error("S3 complete multipart upload exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), key);
+        } catch (UndefinedResourceException e) {
+            return buildError(HttpStatus.BAD_REQUEST, "InvalidPart", "Upload or part does not exist", uploadId);
+        } catch (QuotaExceededException e) {
+            return buildError(HttpStatus.INSUFFICIENT_STORAGE, "QuotaExceeded", e.getMessage(), bucket);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, path = "/{bucket}/{*key}", params = "uploadId")
+    public ResponseEntity<String> abortMultipartUpload(
+            @PathVariable String bucket,
+            @PathVariable String key,
+            @RequestParam String uploadId) {
+        try {
+            multipartUploadService.abort(uploadId);
+            return ResponseEntity.noContent().build();
+        } catch (InternalStorageException e) {
+            log.error("S3 abort multipart upload exception", e);
+            return buildError(HttpStatus.INTERNAL_SERVER_ERROR, "InternalError", e.getMessage(), key);
+        } catch (UndefinedResourceException e) {
+            return buildError(HttpStatus.NOT_FOUND, "NoSuchUpload", "Upload does not exist", uploadId);
+        }
+    }
+
+    private static String toAssetId(String key) {
+        // catch-all path variable starts with "/"
+        return key.startsWith("/") ? key.substring(1) : key;
+    }
+
+    private static InputStream openContent(HttpServletRequest request) throws IOException {
+        var contentSha256 = request.getHeader(CONTENT_SHA256_HEADER);
+        var contentEncoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if ((contentSha256 != null && contentSha256.startsWith(STREAMING_PAYLOAD_PREFIX)) ||
+                (contentEncoding != null && contentEncoding.contains(AWS_CHUNKED_ENCODING))) {
+            return new AwsChunkedInputStream(request.getInputStream());
+        }
+        return request.getInputStream();
+    }
+
+    /**
+     * @return size of decoded content or -1 if it is unknown
+     */
+    private static long resolveContentLength(HttpServletRequest request) {
+        var decodedLength = request.getHeader(DECODED_LENGTH_HEADER);
+        if (decodedLength != null) {
+            try {
+                return Long.parseLong(decodedLength);
+            } catch (NumberFormatException e) {
+                log.debug("Invalid {} header {}", DECODED_LENGTH_HEADER, decodedLength);
+            }
+        }
+        return request.getContentLengthLong();
+    }
+
+    /**
+     * Client is identified by access key of request signature, S3 clients don't send custom headers
+     */
+    private static String resolveClientId(HttpServletRequest request) {
+        var authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null) {
+            var credential = authorization.indexOf("Credential=");
+            if (credential >= 0) {
+                var start = credential + "Credential=".length();
+                var end = authorization.indexOf('/', start);
+                if (end > start) {
+                    return authorization.substring(start, end);
+                }
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static MessageDigest createMd5() throws InternalStorageException {
+        try {
+            // S3 clients validate upload ETag as MD5 of content
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalStorageException("MD5 is not available", e);
+        }
+    }
+
+    private static String toETag(MessageDigest md5) {
+        return "\"" + HexFormat.of().formatHex(md5.digest()) + "\"";
+    }
+
+    private static HttpHeaders buildObjectHeaders(AssetMetadata metadata) {
+        var headers = new HttpHeaders();
+        headers.setContentLength(metadata.getSize());
+        headers.set(HttpHeaders.CONTENT_TYPE, metadata.getContentType());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (metadata.getLastModified() != null) {
+            headers.setLastModified(metadata.getLastModified());
+        }
+        var eTag = buildETag(metadata);
+        if (eTag != null) {
+            headers.setETag(eTag);
+        }
+        metadata.getUserMetadata().forEach((name, value) -> headers.set(USER_METADATA_HEADER_PREFIX + name, value));
+        return headers;
+    }
+
+    /**
+     * The same entity tag is returned by put, head, get and list,
+     * assets stored before MD5 entity tags were kept are tagged by checksum
+     * @return quoted entity tag or null if it is unknown
+     */
+    static String buildETag(AssetMetadata metadata) {
+        var eTag = metadata.getEtag() != null ? metadata.getEtag() : metadata.getChecksum();
+        return eTag != null ? "\"" + eTag + "\"" : null;
+    }
+
+    private static Map<String, String> extractUserMetadata(HttpHeaders headers) {
+        var userMetadata = new HashMap<String, String>();
+        headers.forEach((name, values) -> {
+            var lowerName = name.toLowerCase(Locale.ROOT);
+            if (lowerName.startsWith(USER_METADATA_HEADER_PREFIX) &&
+                    lowerName.length() > USER_METADATA_HEADER_PREFIX.length() && !values.isEmpty()) {
+                userMetadata.put(lowerName.substring(USER_METADATA_HEADER_PREFIX.length()), values.get(0));
+            }
+        });
+        return userMetadata;
+    }
+
+    private static ResponseEntity<String> buildError(HttpStatus status, String code, String message,
+                                                     String resource) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_XML)
+                .body(S3Xml.error(code, message, resource));
+    }
+
+    /**
+     * Streamed responses are written by the handler of {@link StreamingResponseBody}, their errors are streamed too
+     */
+    private static ResponseEntity<StreamingResponseBody> buildStreamedError(ResponseEntity<String> error) {
+        var body = Objects.requireNonNull(error.getBody()).getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(error.getStatusCode())
+                .headers(error.getHeaders())
+                .body(output -> output.write(body));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> buildInvalidRange(String resource) {
+        return buildStreamedError(buildError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, "InvalidRange",
+                "The requested range is not satisfiable", resource));
+    }
+
+    private static ResponseEntity<String> buildSlowDown(RateLimitExceededException e, String resource) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_XML)
+                .body(S3Xml.error("SlowDown", "Please reduce your request rate", resource));
+    }
+
+    /**
+     * Single byte range of Range header, inclusive
+     */
+    record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+
+        /**
+         * @return range or null if range is not satisfiable
+         */
+        static ByteRange parse(String header, long size) {
+            if (!header.startsWith("bytes=") || header.contains(",")) {
+                return null;
+            }
+            var spec = header.substring("bytes=".length()).trim();
+            var separator = spec.indexOf('-');
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                var first = spec.substring(0, separator).trim();
+                var last = spec.substring(separator + 1).trim();
+                if (first.isEmpty()) {
+                    var suffix = Math.min(Long.parseLong(last), size);
+                    return suffix > 0 ? new ByteRange(size - suffix, size - 1) : null;
+                }
+                var start = Long.parseLong(first);
+                var end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                return start <= end && start < size ? new ByteRange(start, end) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var count = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (count > 0) {
+                remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            var skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+}
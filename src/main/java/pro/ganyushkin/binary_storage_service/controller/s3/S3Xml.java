@@ -0,0 +1,159 @@
+package pro.ganyushkin.binary_storage_service.controller.s3;
+
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Minimal S3 XML documents, only elements which are used by S3 clients are rendered
+ */
+final class S3Xml {
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private S3Xml() {
+    }
+
+    static String error(String code, String message, String resource) {
+        var xml = new StringBuilder(HEADER).append("<Error>");
+        element(xml, "Code", code);
+        element(xml, "Message", message);
+        element(xml, "Resource", resource);
+        return xml.append("</Error>").toString();
+    }
+
+    static String listBuckets(Collection<String> buckets) {
+        var xml = new StringBuilder(HEADER)
+                .append("<ListAllMyBucketsResult xmlns=\"").append(NAMESPACE).append("\">")
+                .append("<Owner><ID>binary-storage-service</ID></Owner><Buckets>");
+        for (var bucket : buckets) {
+            xml.append("<Bucket>");
+            element(xml, "Name", bucket);
+            element(xml, "CreationDate", TIMESTAMP_FORMAT.format(Instant.EPOCH));
+            xml.append("</Bucket>");
+        }
+        return xml.append("</Buckets></ListAllMyBucketsResult>").toString();
+    }
+
+    static String listObjectsV2(String bucket, String prefix, String delimiter, int maxKeys,
+                                String continuationToken, String startAfter, String nextContinuationToken,
+                                Collection<AssetMetadata> contents, Collection<String> commonPrefixes) {
+        var xml = new StringBuilder(HEADER)
+                .append("<ListBucketResult xmlns=\"").append(NAMESPACE).append("\">");
+        element(xml, "Name", bucket);
+        element(xml, "Prefix", prefix);
+        if (delimiter != null) {
+            element(xml, "Delimiter", delimiter);
+        }
+        element(xml, "MaxKeys", String.valueOf(maxKeys));
+        element(xml, "KeyCount", String.valueOf(contents.size() + commonPrefixes.size()));
+        element(xml, "IsTruncated", String.valueOf(nextContinuationToken != null));
+        if (continuationToken != null) {
+            element(xml, "ContinuationToken", continuationToken);
+        }
+        if (nextContinuationToken != null) {
+            element(xml, "NextContinuationToken", nextContinuationToken);
+        }
+        if (startAfter != null) {
+            element(xml, "StartAfter", startAfter);
+        }
+        for (var metadata : contents) {
+            xml.append("<Contents>");
+            element(xml, "Key", metadata.getAssetId());
+            if (metadata.getLastModified() != null) {
+                element(xml, "LastModified", TIMESTAMP_FORMAT.format(metadata.getLastModified()));
+            }
+            var eTag = S3API.buildETag(metadata);
+            if (eTag != null) {
+                element(xml, "ETag", eTag);
+            }
+            element(xml, "Size", String.valueOf(metadata.getSize()));
+            element(xml, "StorageClass", "STANDARD");
+            xml.append("</Contents>");
+        }
+        for (var commonPrefix : commonPrefixes) {
+            xml.append("<CommonPrefixes>");
+            element(xml, "Prefix", commonPrefix);
+            xml.append("</CommonPrefixes>");
+        }
+        return xml.append("</ListBucketResult>").toString();
+    }
+
+    static String initiateMultipartUpload(String bucket, String key, String uploadId) {
+        var xml = new StringBuilder(HEADER)
+                .append("<InitiateMultipartUploadResult xmlns=\"").append(NAMESPACE).append("\">");
+        element(xml, "Bucket", bucket);
+        element(xml, "Key", key);
+        element(xml, "UploadId", uploadId);
+        return xml.append("</InitiateMultipartUploadResult>").toString();
+    }
+
+    static String completeMultipartUpload(String bucket, String key, String eTag) {
+        var xml = new StringBuilder(HEADER)
+                .append("<CompleteMultipartUploadResult xmlns=\"").append(NAMESPACE).append("\">");
+        element(xml, "Bucket", bucket);
+        element(xml, "Key", key);
+        element(xml, "ETag", eTag);
+        return xml.append("</CompleteMultipartUploadResult>").toString();
+    }
+
+    /**
+     * @return part numbers of CompleteMultipartUpload request in document order
+     */
+    static List<Integer> parseCompletedParts(byte[] body) throws IOException {
+        try {
+            var factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            var document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(body));
+            var parts = document.getElementsByTagName("Part");
+            var partNumbers = new ArrayList<Integer>();
+            for (var i = 0; i < parts.getLength(); i++) {
+                var partNumber = ((Element) parts.item(i)).getElementsByTagName("PartNumber");
+                if (partNumber.getLength() == 0) {
+                    throw new IOException("Part without PartNumber");
+                }
+                partNumbers.add(Integer.parseInt(partNumber.item(0).getTextContent().trim()));
+            }
+            return partNumbers;
+        } catch (ParserConfigurationException | SAXException | NumberFormatException e) {
+            throw new IOException("Invalid CompleteMultipartUpload document", e);
+        }
+    }
+
+    private static void element(StringBuilder xml, String name, String value) {
+        xml.append('<').append(name).append('>');
+        if (value != null) {
+            escape(xml, value);
+        }
+        xml.append("</").append(name).append('>');
+    }
+
+    private static void escape(StringBuilder xml, String value) {
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '<' -> xml.append("&lt;");
+                case '>' -> xml.append("&gt;");
+                case '&' -> xml.append("&amp;");
+                case '"' -> xml.append("&quot;");
+                case '\'' -> xml.append("&apos;");
+                default -> xml.append(c);
+            }
+        }
+    }
+}
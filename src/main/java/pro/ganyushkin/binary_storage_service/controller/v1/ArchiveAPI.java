@@ -0,0 +1,114 @@
+package pro.ganyushkin.binary_storage_service.controller.v1;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.ArchiveFormat;
+import pro.ganyushkin.binary_storage_service.model.ImportResult;
+import pro.ganyushkin.binary_storage_service.service.ArchiveService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Bucket backup and migration: the whole bucket or prefix as one tar/zip stream
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/storage/")
+public class ArchiveAPI {
+    private final StorageService storageService;
+    private final ArchiveService archiveService;
+
+    @RequestMapping(method = RequestMethod.GET, path = "/bucket/{bucketId}/export")
+    public void exportBucket(
+            @PathVariable String bucketId,
+            @RequestParam(required = false, defaultValue = "tar") String format,
+            @RequestParam(required = false, defaultValue = "") String prefix,
+            HttpServletResponse response) throws IOException {
+        var archiveFormat = parseFormat(format);
+        if (archiveFormat == null) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        if (!storageService.isBucketExists(bucketId)) {
+            log.warn("Undefined bucket bucketId={}", bucketId);
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        response.setContentType(archiveFormat.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(bucketId + archiveFormat.getExtension())
+                .build()
+                .toString());
+        try {
+            archiveService.exportBucket(bucketId, prefix, archiveFormat, response.getOutputStream());
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined bucket bucketId={}", bucketId);
+            sendErrorIfNotCommitted(response, HttpStatus.NOT_FOUND);
+        } catch (InternalStorageException e) {
+            log.error("Export exception; bucketId={}", bucketId, e);
+            sendErrorIfNotCommitted(response, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @RequestMapping(method = { RequestMethod.PUT, RequestMethod.POST }, path = "/bucket/{bucketId}/import",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImportResult> importBucket(
+            @PathVariable String bucketId,
+            @RequestParam(required = false, defaultValue = "tar") String format,
+            @RequestParam(required = false, defaultValue = "") String prefix,
+            @RequestParam(required = false, defaultValue = "false") boolean overwrite,
+            HttpServletRequest request) {
+        var archiveFormat = parseFormat(format);
+        if (archiveFormat == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(archiveService.importBucket(bucketId, prefix, archiveFormat,
+                    request.getInputStream(), overwrite));
+        } catch (IOException e) {
+            log.warn("Can't read archive; bucketId={}; {}", bucketId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (InternalStorageException e) {
+            log.error("Import exception; bucketId={}", bucketId, e);
+            return ResponseEntity.internalServerError().build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid bucket bucketId={}; {}", bucketId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static ArchiveFormat parseFormat(String format) {
+        try {
+            return ArchiveFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Failure in the middle of archive can't be reported by status, client gets truncated archive
+     */
+    private static void sendErrorIfNotCommitted(HttpServletResponse response, HttpStatus status) throws IOException {
+        if (!response.isCommitted()) {
+            response.reset();
+            response.sendError(status.value());
+        }
+    }
+}
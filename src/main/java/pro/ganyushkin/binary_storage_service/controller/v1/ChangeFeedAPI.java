@@ -0,0 +1,98 @@
+package pro.ganyushkin.binary_storage_service.controller.v1;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.OffsetOutOfRangeException;
+import pro.ganyushkin.binary_storage_service.model.ChangeBatch;
+import pro.ganyushkin.binary_storage_service.service.ChangeFeedService;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Long polling of change feed: response is sent as soon as there are events after offset
+ * or with empty batch and offset after scanned part of log when wait time is over
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/storage/")
+public class ChangeFeedAPI {
+    public static final String START_OFFSET_HEADER = "X-Change-Log-Start";
+    public static final String END_OFFSET_HEADER = "X-Change-Log-End";
+    private static final Duration ASYNC_TIMEOUT_MARGIN = Duration.ofSeconds(5);
+
+    private final ChangeFeedService changeFeedService;
+
+    @Value("${storage.change-feed.max-wait:30s}")
+    private Duration maxWait;
+
+    @RequestMapping(method = RequestMethod.GET, path = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<ChangeBatch>> getChanges(
+            @RequestParam(required = false) Long offset,
+            @RequestParam(required = false, defaultValue = "100") int limit,
+            @RequestParam(required = false) String bucketId,
+            @RequestParam(required = false, defaultValue = "0s") Duration wait) {
+        var timeout = wait.compareTo(maxWait) < 0 ? wait : maxWait;
+        if (!changeFeedService.isEnabled()) {
+            return completed(ResponseEntity.notFound().build());
+        }
+        try {
+            if (timeout.isZero() || timeout.isNegative()) {
+                return completed(ResponseEntity.ok(changeFeedService.read(offset, limit, bucketId)));
+            }
+            var future = changeFeedService.poll(offset, limit, bucketId, timeout);
+            // future is completed with offset after scanned part of log on timeout, it is a fallback only
+            var nextOffset = offset != null ? offset : changeFeedService.getStartOffset();
+            var result = new DeferredResult<ResponseEntity<ChangeBatch>>(timeout.plus(ASYNC_TIMEOUT_MARGIN).toMillis(),
+                    () -> ResponseEntity.ok(new ChangeBatch(List.of(), nextOffset)));
+            future.whenComplete((batch, e) -> {
+                if (e == null) {
+                    result.setResult(ResponseEntity.ok(batch));
+                } else if (e instanceof CancellationException) {
+                    log.trace("Change feed poll was cancelled");
+                } else if (e instanceof OffsetOutOfRangeException outOfRange) {
+                    result.setResult(buildGone(outOfRange));
+                } else {
+                    log.error("Change feed poll exception", e);
+                    result.setResult(ResponseEntity.internalServerError().build());
+                }
+            });
+            result.onCompletion(() -> future.cancel(false));
+            return result;
+        } catch (OffsetOutOfRangeException e) {
+            log.warn("Change feed offset out of range; {}", e.getMessage());
+            return completed(buildGone(e));
+        } catch (InternalStorageException e) {
+            log.error("Change feed read exception", e);
+            return completed(ResponseEntity.internalServerError().build());
+        }
+    }
+
+    /**
+     * Consumer should resynchronize by listing buckets and continue from start offset
+     */
+    private static ResponseEntity<ChangeBatch> buildGone(OffsetOutOfRangeException e) {
+        return ResponseEntity.status(HttpStatus.GONE)
+                .header(START_OFFSET_HEADER, String.valueOf(e.getStartOffset()))
+                .header(END_OFFSET_HEADER, String.valueOf(e.getEndOffset()))
+                .build();
+    }
+
+    private static <T> DeferredResult<T> completed(T value) {
+        var result = new DeferredResult<T>();
+        result.setResult(value);
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+package pro.ganyushkin.binary_storage_service.controller.v1;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.model.CopyJob;
+import pro.ganyushkin.binary_storage_service.model.CopyRequest;
+import pro.ganyushkin.binary_storage_service.service.CopyJobService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Server side copy and move: single asset synchronously, prefixes and buckets by background jobs
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/storage/")
+public class CopyAPI {
+    private final StorageService storageService;
+    private final CopyJobService copyJobService;
+
+    @RequestMapping(method = RequestMethod.POST, path = "/bucket/{bucketId}/asset/{assetId}/copy",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<AssetMetadata> copyAsset(
+            @PathVariable String bucketId,
+            @PathVariable String assetId,
+            @RequestParam String targetBucketId,
+            @RequestParam(required = false) String targetAssetId,
+            @RequestParam(required = false, defaultValue = "false") boolean move,
+            @RequestParam(required = false, defaultValue = "false") boolean overwrite) {
+        var target = targetAssetId != null ? targetAssetId : assetId;
+        log.debug("copy asset {}/{} -> {}/{}; move={}", bucketId, assetId, targetBucketId, target, move);
+        try {
+            return ResponseEntity.ok(storageService.copyAsset(bucketId, assetId, targetBucketId, target,
+                    move, overwrite));
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined resource for copy; {}", e.getMessage());
+            return ResponseEntity.notFound().build();
+        } catch (ResourceAlreadyExists e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (QuotaExceededException e) {
+            log.warn("Can't copy to bucketId={}; {}", targetBucketId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).build();
+        } catch (InternalStorageException e) {
+            log.error("Copy exception", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.POST, path = "/jobs/copy",
+            consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CopyJob> startCopyJob(@RequestBody CopyRequest request) {
+        if (request.sourceBucketId() == null || request.targetBucketId() == null
+                || request.sourceBucketId().equals(request.targetBucketId())
+                && Objects.equals(request.prefixOrEmpty(), request.targetPrefixOrSource())) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(copyJobService.start(request));
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined bucket for copy job; {}", e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/jobs/copy", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<CopyJob>> getCopyJobs() {
+        return ResponseEntity.ok(copyJobService.getJobs());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/jobs/copy/{jobId}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CopyJob> getCopyJob(@PathVariable String jobId) {
+        return ResponseEntity.of(copyJobService.getJob(jobId));
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, path = "/jobs/copy/{jobId}",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CopyJob> cancelCopyJob(@PathVariable String jobId) {
+        return copyJobService.cancel(jobId)
+                .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
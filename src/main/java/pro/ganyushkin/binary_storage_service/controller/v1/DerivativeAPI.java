@@ -0,0 +1,63 @@
+package pro.ganyushkin.binary_storage_service.controller.v1;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.ServiceOverloadedException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.exception.UnsupportedTransformException;
+import pro.ganyushkin.binary_storage_service.service.DerivativeService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/storage/")
+public class DerivativeAPI {
+    private final StorageService storageService;
+    private final DerivativeService derivativeService;
+
+    @RequestMapping(method = RequestMethod.GET,
+            path = "/bucket/{bucket}/asset/{assetId}/derivative")
+    public ResponseEntity<InputStreamResource> getDerivative(
+            @PathVariable String bucket,
+            @PathVariable String assetId,
+            @RequestParam(required = false, defaultValue = "0") int width,
+            @RequestParam(required = false, defaultValue = "0") int height,
+            @RequestParam(required = false, defaultValue = "false") boolean crop,
+            @RequestParam(required = false) String format) {
+        try {
+            var source = storageService.getAssetMetadata(bucket, assetId);
+            var transform = derivativeService.buildTransform(width, height, crop, format, source);
+            var derivative = derivativeService.getDerivativeMetadata(bucket, assetId, source, transform);
+            var responseHeaders = new HttpHeaders();
+            responseHeaders.setContentLength(derivative.getSize());
+            responseHeaders.set(HttpHeaders.CONTENT_TYPE, derivative.getContentType());
+            responseHeaders.setETag("\"" + derivative.getChecksum() + "\"");
+            return ResponseEntity.ok()
+                    .headers(responseHeaders)
+                    .body(derivativeService.getDerivative(derivative));
+        } catch (InternalStorageException e) {
+            log.error("Derivative exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined asset for {}/{}", bucket, assetId);
+            return ResponseEntity.notFound().build();
+        } catch (UnsupportedTransformException e) {
+            log.warn("Unsupported derivative for {}/{}; {}", bucket, assetId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (ServiceOverloadedException e) {
+            log.warn("Derivative is not available for {}/{}; {}", bucket, assetId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package pro.ganyushkin.binary_storage_service.controller.v1;
+
+import io.opentelemetry.api.trace.Tracer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.RateLimitExceededException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.service.RateLimitService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+import pro.ganyushkin.binary_storage_service.service.UrlSigningService;
+import pro.ganyushkin.binary_storage_service.util.TracedInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Downloads by signed URLs, see {@link UrlSigningService}.
+ * Request with wrong or expired signature is rejected before any storage access.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(path = "/api/v1/public/")
+public class PublicAPI {
+    private final StorageService storageService;
+    private final UrlSigningService urlSigningService;
+    private final RateLimitService rateLimitService;
+    private final Tracer tracer;
+
+    @RequestMapping(method = RequestMethod.GET,
+            path = "/bucket/{bucket}/asset/{assetId}")
+    public ResponseEntity<StreamingResponseBody> getAsset(
+            @PathVariable String bucket,
+            @PathVariable String assetId,
+            @RequestParam long expires,
+            @RequestParam String keyId,
+            @RequestParam(required = false) String version,
+            @RequestParam String signature,
+            HttpServletRequest request) {
+        if (!urlSigningService.verify(bucket, assetId, version, expires, keyId, signature)) {
+            log.warn("Rejected signed URL for {}/{}; expires={}; keyId={}", bucket, assetId, expires, keyId);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        try {
+            var metadata = storageService.getAssetMetadata(bucket, assetId);
+            if (version != null && !version.equals(metadata.getChecksum())) {
+                // signed content was overwritten, URL of the new content should be signed
+                log.warn("Signed version was replaced for {}/{}", bucket, assetId);
+                return ResponseEntity.notFound().build();
+            }
+            rateLimitService.acquire(request.getRemoteAddr(), StorageAPI.resolveClientId(request),
+                    bucket, metadata.getSize());
+            var content = storageService.openAsset(bucket, assetId, metadata);
+            if (version != null && !version.equals(content.metadata().getChecksum())) {
+                // overwritten while it was opened, immutable response can't have the new content
+                content.data().close();
+                log.warn("Signed version was replaced for {}/{}", bucket, assetId);
+                return ResponseEntity.notFound().build();
+            }
+            var headers = StorageAPI.buildMetadataHeaders(content.metadata());
+            headers.setCacheControl(buildCacheControl(version, expires));
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(StorageAPI.buildBody(TracedInputStream.wrap(content.data(), tracer, "response.write")));
+        } catch (IOException | InternalStorageException e) {
+            log.error("Public getter exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined asset for {}/{}", bucket, assetId);
+            return ResponseEntity.notFound().build();
+        } catch (RateLimitExceededException e) {
+            log.warn("Rate limit for {}/{}; {}", bucket, assetId, e.getMessage());
+            return StorageAPI.buildTooManyRequests(e);
+        }
+    }
+
+    /**
+     * Content of versioned URL is never changed, it is cached until URL expires without revalidation,
+     * content of URL without version is revalidated by Last-Modified
+     */
+    private static String buildCacheControl(String version, long expires) {
+        if (version == null) {
+            return CacheControl.noCache().cachePublic().getHeaderValue();
+        }
+        var maxAge = Math.max(0, expires - Instant.now().getEpochSecond());
+        return "public, max-age=" + maxAge + ", immutable";
+    }
+}
@@ -1,13 +1,15 @@
 package pro.ganyushkin.binary_storage_service.controller.v1;
 
+import io.opentelemetry.api.trace.Tracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -15,46 +17,153 @@ import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.RateLimitExceededException;
 import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
 import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
-import pro.ganyushkin.binary_storage_service.service.ContentTypeService;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.model.BucketInventory;
+import pro.ganyushkin.binary_storage_service.model.SignedUrl;
+import pro.ganyushkin.binary_storage_service.service.InventoryService;
+import pro.ganyushkin.binary_storage_service.service.RateLimitService;
 import pro.ganyushkin.binary_storage_service.service.StorageService;
+import pro.ganyushkin.binary_storage_service.service.UrlSigningService;
+import pro.ganyushkin.binary_storage_service.util.TracedInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Slf4j
 @RequiredArgsConstructor
 @RestController
 @RequestMapping(path = "/api/v1/storage/")
 public class StorageAPI {
+    public static final String USER_METADATA_HEADER_PREFIX = "X-Asset-Meta-";
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
     private final StorageService storageService;
-    private final ContentTypeService contentTypeService;
+    private final RateLimitService rateLimitService;
+    private final InventoryService inventoryService;
+    private final UrlSigningService urlSigningService;
+    private final Tracer tracer;
 
     @RequestMapping(method = RequestMethod.GET,
             path = "/bucket/{bucket}/asset/{assetId}")
-    public ResponseEntity<InputStreamResource> getAssetByBucketAndId(
+    public ResponseEntity<StreamingResponseBody> getAssetByBucketAndId(
             @PathVariable String bucket,
             @PathVariable String assetId,
-            @RequestParam(required = false, defaultValue = "false") boolean setContentDisposition) {
-        log.info("get asset {}/{}", bucket, assetId);
+            @RequestParam(required = false, defaultValue = "false") boolean setContentDisposition,
+            HttpServletRequest request) {
+        log.debug("get asset {}/{}", bucket, assetId);
         try {
-            HttpHeaders responseHeaders = new HttpHeaders();
+            var metadata = storageService.getAssetMetadata(bucket, assetId);
+            rateLimitService.acquire(request.getRemoteAddr(), resolveClientId(request), bucket, metadata.getSize());
+            var content = storageService.openAsset(bucket, assetId, metadata);
+            HttpHeaders responseHeaders = buildMetadataHeaders(content.metadata());
             if (setContentDisposition) {
                 responseHeaders.set("Content-Disposition", "attachment; filename=\"" + assetId + "\"");
             }
-            responseHeaders.set("Content-Type", contentTypeService.findType(assetId));
             return ResponseEntity.ok()
                     .headers(responseHeaders)
-                    .body(storageService.getAsset(bucket, assetId));
-        } catch (InternalStorageException e) {
+                    .body(buildBody(TracedInputStream.wrap(content.data(), tracer, "response.write")));
+        } catch (IOException | InternalStorageException e) {
             log.error("Getter exception", e);
             return ResponseEntity.internalServerError().build();
         } catch (UndefinedResourceException e) {
             log.warn("Undefined asset for {}/{}", bucket, assetId);
             return ResponseEntity.notFound().build();
+        } catch (RateLimitExceededException e) {
+            log.warn("Rate limit for {}/{}; {}", bucket, assetId, e.getMessage());
+            return buildTooManyRequests(e);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.HEAD,
+            path = "/bucket/{bucket}/asset/{assetId}")
+    public ResponseEntity<Void> headAssetByBucketAndId(
+            @PathVariable String bucket,
+            @PathVariable String assetId) {
+        try {
+            return ResponseEntity.ok()
+                    .headers(buildMetadataHeaders(storageService.getAssetMetadata(bucket, assetId)))
+                    .build();
+        } catch (InternalStorageException e) {
+            log.error("Head exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined asset for {}/{}", bucket, assetId);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.GET,
+            path = "/bucket/{bucket}/asset/{assetId}/stat",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<AssetMetadata> getAssetMetadata(
+            @PathVariable String bucket,
+            @PathVariable String assetId) {
+        try {
+            return ResponseEntity.ok(storageService.getAssetMetadata(bucket, assetId));
+        } catch (InternalStorageException e) {
+            log.error("Stat exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined asset for {}/{}", bucket, assetId);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Signed URL gives read access to the current content of asset until it expires
+     */
+    @RequestMapping(method = RequestMethod.POST,
+            path = "/bucket/{bucket}/asset/{assetId}/sign",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<SignedUrl> signAssetUrl(
+            @PathVariable String bucket,
+            @PathVariable String assetId,
+            @RequestParam(required = false) Duration expiresIn) {
+        if (!urlSigningService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            var metadata = storageService.getAssetMetadata(bucket, assetId);
+            return ResponseEntity.ok(urlSigningService.sign(bucket, assetId, metadata.getChecksum(), expiresIn));
+        } catch (InternalStorageException e) {
+            log.error("Sign exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined asset for {}/{}", bucket, assetId);
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Can't sign URL for {}/{}; {}", bucket, assetId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.POST,
+            path = "/bucket/{bucketId}/stat",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, AssetMetadata>> getAssetsMetadata(
+            @PathVariable String bucketId,
+            @RequestBody List<String> assetIds) {
+        try {
+            return ResponseEntity.ok(storageService.getAssetsMetadata(bucketId, assetIds));
+        } catch (InternalStorageException e) {
+            log.error("Bulk stat exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined bucket bucketId={}", bucketId);
+            return ResponseEntity.notFound().build();
         }
     }
 
@@ -66,13 +175,15 @@ public class StorageAPI {
             @PathVariable String assetId,
             @RequestParam(required = false, defaultValue = "false") boolean createBucketIfNotExists,
             @RequestPart MultipartFile content,
+            @RequestHeader HttpHeaders headers,
             HttpServletRequest request) {
         var override = RequestMethod.valueOf(request.getMethod()).equals(RequestMethod.POST);
-        log.info("store asset bucket={}; assetId={}; createBucketIfNotExists={}; override={}",
+        log.debug("store asset bucket={}; assetId={}; createBucketIfNotExists={}; override={}",
                 bucketId, assetId, createBucketIfNotExists, override);
         try {
-            storageService.storeAsset(bucketId, assetId, content.getInputStream(),
-                    createBucketIfNotExists, override);
+            rateLimitService.acquire(request.getRemoteAddr(), resolveClientId(request), bucketId, content.getSize());
+            storageService.storeAsset(bucketId, assetId, content.getInputStream(), content.getSize(),
+                    createBucketIfNotExists, override, extractUserMetadata(headers));
             return ResponseEntity.accepted().build();
         } catch (IOException | InternalStorageException e) {
             log.error("Getter exception", e);
@@ -83,6 +194,29 @@ public class StorageAPI {
         } catch (ResourceAlreadyExists e) {
             log.error("Can't save bucketId="+bucketId+"; assetId="+assetId, e);
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (QuotaExceededException e) {
+            log.warn("Can't save bucketId={}; assetId={}; {}", bucketId, assetId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).build();
+        } catch (RateLimitExceededException e) {
+            log.warn("Rate limit for {}/{}; {}", bucketId, assetId, e.getMessage());
+            return buildTooManyRequests(e);
+        }
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, path = "/bucket/{bucketId}/asset/{assetId}")
+    public ResponseEntity<String> deleteAsset(
+            @PathVariable String bucketId,
+            @PathVariable String assetId) {
+        log.debug("delete asset bucket={}; assetId={}", bucketId, assetId);
+        try {
+            storageService.deleteAsset(bucketId, assetId);
+            return ResponseEntity.accepted().build();
+        } catch (InternalStorageException e) {
+            log.error("Delete exception", e);
+            return ResponseEntity.internalServerError().build();
+        } catch (UndefinedResourceException e) {
+            log.warn("Undefined asset for {}/{}", bucketId, assetId);
+            return ResponseEntity.notFound().build();
         }
     }
 
@@ -101,6 +235,9 @@ public class StorageAPI {
         } catch (ResourceAlreadyExists e) {
             log.error("Can't create bucket bucketId=" + bucketId, e);
             return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid bucket bucketId={}; {}", bucketId, e.getMessage());
+            return ResponseEntity.badRequest().build();
         }
     }
 
@@ -121,4 +258,70 @@ public class StorageAPI {
             return ResponseEntity.notFound().build();
         }
     }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/inventory", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<List<BucketInventory>> getInventory() {
+        if (!inventoryService.isEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(inventoryService.getInventories());
+    }
+
+    @RequestMapping(method = RequestMethod.GET, path = "/bucket/{bucketId}/inventory",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public ResponseEntity<BucketInventory> getBucketInventory(@PathVariable String bucketId) {
+        return ResponseEntity.of(inventoryService.getInventory(bucketId));
+    }
+
+    static <T> ResponseEntity<T> buildTooManyRequests(RateLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
+
+    static String resolveClientId(HttpServletRequest request) {
+        var clientId = request.getHeader(CLIENT_ID_HEADER);
+        return clientId != null ? clientId : request.getRemoteAddr();
+    }
+
+    /**
+     * Asset is written by {@link InputStream#transferTo}, so pooled and mapped streams copy
+     * their own buffers to response instead of the small per request buffer of resource copy
+     */
+    public static StreamingResponseBody buildBody(InputStream data) {
+        return output -> {
+            try (data) {
+                data.transferTo(output);
+            }
+        };
+    }
+
+    static HttpHeaders buildMetadataHeaders(AssetMetadata metadata) {
+        var headers = new HttpHeaders();
+        headers.setContentLength(metadata.getSize());
+        headers.set(HttpHeaders.CONTENT_TYPE, metadata.getContentType());
+        if (metadata.getLastModified() != null) {
+            headers.setLastModified(metadata.getLastModified());
+        }
+        if (metadata.getChecksum() != null) {
+            headers.setETag("\"" + metadata.getChecksum() + "\"");
+        }
+        metadata.getUserMetadata().forEach((key, value) ->
+                headers.set(USER_METADATA_HEADER_PREFIX + key, value));
+        return headers;
+    }
+
+    private static Map<String, String> extractUserMetadata(HttpHeaders headers) {
+        var prefix = USER_METADATA_HEADER_PREFIX.toLowerCase(Locale.ROOT);
+        var userMetadata = new HashMap<String, String>();
+        headers.forEach((name, values) -> {
+            var lowerName = name.toLowerCase(Locale.ROOT);
+            if (lowerName.startsWith(prefix) && lowerName.length() > prefix.length() && !values.isEmpty()) {
+                userMetadata.put(lowerName.substring(prefix.length()), values.get(0));
+            }
+        });
+        return userMetadata;
+    }
 }
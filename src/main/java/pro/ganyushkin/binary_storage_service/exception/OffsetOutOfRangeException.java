@@ -0,0 +1,15 @@
+package pro.ganyushkin.binary_storage_service.exception;
+
+import lombok.Getter;
+
+@Getter
+public class OffsetOutOfRangeException extends Exception {
+    private final long startOffset;
+    private final long endOffset;
+
+    public OffsetOutOfRangeException(long offset, long startOffset, long endOffset) {
+        super("Offset out of range; offset=" + offset + "; start=" + startOffset + "; end=" + endOffset);
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+    }
+}
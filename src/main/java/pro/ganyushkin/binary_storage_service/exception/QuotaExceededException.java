@@ -0,0 +1,7 @@
+package pro.ganyushkin.binary_storage_service.exception;
+
+public class QuotaExceededException extends Exception {
+    public QuotaExceededException(String bucketId, String message) {
+        super("Quota exceeded; bucketId=" + bucketId + "; " + message);
+    }
+}
@@ -0,0 +1,13 @@
+package pro.ganyushkin.binary_storage_service.exception;
+
+import lombok.Getter;
+
+@Getter
+public class RateLimitExceededException extends Exception {
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String clientId, String bucketId, long retryAfterSeconds) {
+        super("Rate limit exceeded; clientId=" + clientId + "; bucketId=" + bucketId);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+package pro.ganyushkin.binary_storage_service.exception;
+
+public class ServiceOverloadedException extends Exception {
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+
+    public ServiceOverloadedException(String message, Exception e) {
+        super(message, e);
+    }
+}
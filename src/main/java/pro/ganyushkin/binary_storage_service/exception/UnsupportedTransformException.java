@@ -0,0 +1,7 @@
+package pro.ganyushkin.binary_storage_service.exception;
+
+public class UnsupportedTransformException extends Exception {
+    public UnsupportedTransformException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+/**
+ * One served request of access log
+ * @param timestamp - request start, epoch millis
+ * @param bytesIn - request body size
+ * @param bytesOut - response body size
+ * @param durationMicros - time from request start to the end of response writing
+ */
+public record AccessLogEntry(long timestamp, String method, String path, int status, long bytesIn, long bytesOut,
+                             long durationMicros, String clientId) {
+}
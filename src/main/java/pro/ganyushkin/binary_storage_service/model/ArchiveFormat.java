@@ -0,0 +1,14 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum ArchiveFormat {
+    TAR("application/x-tar", ".tar"),
+    ZIP("application/zip", ".zip");
+
+    private final String contentType;
+    private final String extension;
+}
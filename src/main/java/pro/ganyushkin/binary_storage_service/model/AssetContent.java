@@ -0,0 +1,9 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import java.io.InputStream;
+
+/**
+ * Opened asset data with metadata of the same content
+ */
+public record AssetContent(AssetMetadata metadata, InputStream data) {
+}
@@ -0,0 +1,35 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Asset description which is stored next to asset content,
+ * it allows to answer stat/HEAD requests without opening asset data
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class AssetMetadata {
+    private String assetId;
+    private long size;
+    private Instant lastModified;
+    private String contentType;
+    /**
+     * hex encoded SHA-256 of asset content, can be null for assets stored without metadata
+     */
+    private String checksum;
+    /**
+     * S3 entity tag without quotes: hex MD5 of content or {@code <MD5 of part MD5s>-<part count>}
+     * of multipart upload, can be null for assets stored without it
+     */
+    private String etag;
+    @Builder.Default
+    private Map<String, String> userMetadata = Map.of();
+}
@@ -0,0 +1,12 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import java.util.Map;
+
+/**
+ * Bucket statistics which are maintained by the write path
+ * @param sizeHistogram - count of assets by size class, ex. "<1MB"
+ * @param complete - false while initial scan of bucket is in progress
+ */
+public record BucketInventory(String bucketId, long objects, long bytes, Map<String, Long> sizeHistogram,
+                              boolean complete) {
+}
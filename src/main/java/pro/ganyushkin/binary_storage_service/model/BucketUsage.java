@@ -0,0 +1,7 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+/**
+ * Object count and total bytes of bucket which are checked by quotas
+ */
+public record BucketUsage(long objects, long bytes) {
+}
@@ -0,0 +1,10 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import java.util.List;
+
+/**
+ * Page of change feed
+ * @param nextOffset - offset to continue reading from, it is stored by consumer
+ */
+public record ChangeBatch(List<ChangeEvent> events, long nextOffset) {
+}
@@ -0,0 +1,15 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import java.time.Instant;
+
+/**
+ * One mutation of change feed
+ * @param offset - position of event in change log
+ * @param size - asset size after write, size of removed asset for delete
+ */
+public record ChangeEvent(long offset, Instant time, Type type, String bucketId, String assetId, long size) {
+
+    public enum Type {
+        CREATE, OVERWRITE, DELETE
+    }
+}
@@ -0,0 +1,17 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import java.time.Instant;
+
+/**
+ * Progress of background copy
+ * @param total - count of assets to copy, it is known after source listing
+ * @param skipped - assets which exist in target or were removed from source during copy
+ * @param bytes - size of copied assets
+ */
+public record CopyJob(String jobId, CopyRequest request, State state, long total, long copied, long skipped,
+                      long failed, long bytes, Instant startedAt, Instant finishedAt) {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+}
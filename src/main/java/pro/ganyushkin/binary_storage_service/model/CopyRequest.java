@@ -0,0 +1,19 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+/**
+ * Copy or move of assets with common prefix, empty prefix - the whole bucket
+ * @param targetPrefix - replaces source prefix in names of target assets, null - names are kept
+ * @param move - source assets are removed
+ * @param overwrite - existing target assets are replaced, otherwise they are skipped
+ */
+public record CopyRequest(String sourceBucketId, String prefix, String targetBucketId, String targetPrefix,
+                          boolean move, boolean overwrite) {
+
+    public String prefixOrEmpty() {
+        return prefix != null ? prefix : "";
+    }
+
+    public String targetPrefixOrSource() {
+        return targetPrefix != null ? targetPrefix : prefixOrEmpty();
+    }
+}
@@ -0,0 +1,35 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Image derivative parameters
+ */
+@Value
+@Builder
+public class ImageTransform {
+    /**
+     * target width, 0 - calculated from height with source aspect ratio
+     */
+    int width;
+    /**
+     * target height, 0 - calculated from width with source aspect ratio
+     */
+    int height;
+    /**
+     * true - fill target size and cut the rest of image, false - fit image into target size
+     */
+    boolean crop;
+    /**
+     * output image format name (png, jpeg, gif, bmp)
+     */
+    String format;
+
+    /**
+     * @return uniq key of transformation parameters, can be used as part of asset identificator
+     */
+    public String toKey() {
+        return width + "x" + height + (crop ? "-crop" : "-fit") + "." + format;
+    }
+}
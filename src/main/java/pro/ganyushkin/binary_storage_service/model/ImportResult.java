@@ -0,0 +1,9 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+/**
+ * Summary of archive import
+ * @param skipped - entries which exist in bucket or are not regular files,
+ *                  or which names are not valid asset ids
+ */
+public record ImportResult(long imported, long skipped, long failed, long bytes) {
+}
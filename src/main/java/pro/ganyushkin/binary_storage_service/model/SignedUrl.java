@@ -0,0 +1,12 @@
+package pro.ganyushkin.binary_storage_service.model;
+
+import java.time.Instant;
+
+/**
+ * Download URL which doesn't need any other authorization
+ * @param url - public download URL with signature
+ * @param expiresAt - URL is rejected after this time
+ * @param version - checksum of signed asset content, null if asset was stored without metadata
+ */
+public record SignedUrl(String url, Instant expiresAt, String version) {
+}
@@ -0,0 +1,40 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+
+import java.util.Optional;
+
+/**
+ * This interface described per bucket asset metadata storage
+ */
+public interface AssetMetadataRepository {
+
+    /**
+     * Find stored asset metadata
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @return asset metadata or empty if metadata was not stored for asset
+     * @throws InternalStorageException - if some errors happened in storage
+     */
+    Optional<AssetMetadata> find(String bucketId, String assetId)
+            throws InternalStorageException;
+
+    /**
+     * Store asset metadata, overwrite metadata if it already exists
+     * @param bucketId - virtual bucket name
+     * @param metadata - asset metadata, assetId is taken from metadata
+     * @throws InternalStorageException - if some errors happened in storage
+     */
+    void save(String bucketId, AssetMetadata metadata)
+            throws InternalStorageException;
+
+    /**
+     * Remove asset metadata if it exists
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @throws InternalStorageException - if some errors happened in storage
+     */
+    void remove(String bucketId, String assetId)
+            throws InternalStorageException;
+}
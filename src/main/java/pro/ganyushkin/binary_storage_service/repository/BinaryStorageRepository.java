@@ -3,9 +3,13 @@ package pro.ganyushkin.binary_storage_service.repository;
 import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
 import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
 import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * This interface described asset storage
@@ -36,6 +40,15 @@ public interface BinaryStorageRepository {
     void createBucket(String bucketId)
             throws ResourceAlreadyExists, InternalStorageException;
 
+    /**
+     * Remove bucket without assets
+     * @param bucketId - virtual bucket name
+     * @throws UndefinedResourceException if bucket not exists
+     * @throws InternalStorageException if bucket has assets or in other internal exceptions
+     */
+    void deleteBucket(String bucketId)
+            throws UndefinedResourceException, InternalStorageException;
+
     /**
      * Get bucket list which are exists in storage instance
      * @return list if buckets
@@ -51,6 +64,38 @@ public interface BinaryStorageRepository {
     List<String> listAssets(String bucketId)
             throws UndefinedResourceException;
 
+    /**
+     * Get page of assets in id order. Default implementation is one pass over the bucket listing,
+     * only the page is kept and sorted.
+     * @param bucketId - virtual bucket name
+     * @param prefix - prefix of asset ids
+     * @param after - exclusive lower bound of asset ids, null for the first page
+     * @param limit - max count of asset ids
+     * @return sorted list of assetId
+     * @throws UndefinedResourceException if bucket not exists
+     */
+    default List<String> listAssets(String bucketId, String prefix, String after, int limit)
+            throws UndefinedResourceException {
+        if (limit <= 0) {
+            return List.of();
+        }
+        var page = new PriorityQueue<String>(limit, Comparator.reverseOrder());
+        for (var assetId : listAssets(bucketId)) {
+            if (!assetId.startsWith(prefix) || (after != null && assetId.compareTo(after) <= 0)) {
+                continue;
+            }
+            if (page.size() < limit) {
+                page.add(assetId);
+            } else if (assetId.compareTo(page.peek()) < 0) {
+                page.poll();
+                page.add(assetId);
+            }
+        }
+        var result = new ArrayList<>(page);
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
     /**
      * Read and return asset content
      * @param bucketId - virtual bucket name
@@ -62,6 +107,17 @@ public interface BinaryStorageRepository {
     InputStream read(String bucketId, String assetId)
             throws InternalStorageException, UndefinedResourceException;
 
+    /**
+     * Read basic asset attributes (size and last modification time) without opening asset content
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @return asset metadata with assetId, size and lastModified fields
+     * @throws InternalStorageException - if some errors happened in storage
+     * @throws UndefinedResourceException - if bucket or asset is not exits
+     */
+    AssetMetadata stat(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException;
+
     /**
      * Store asset in bucket
      * @param bucketId - virtual bucket name
@@ -84,4 +140,65 @@ public interface BinaryStorageRepository {
      */
     void overwrite(String bucketId, String assetId, InputStream data)
             throws InternalStorageException, UndefinedResourceException;
+
+    /**
+     * Copy asset inside storage, content is not passed through the service, target asset is overwritten
+     * @param sourceBucketId - virtual bucket name of source asset
+     * @param sourceAssetId - source asset identificator
+     * @param targetBucketId - virtual bucket name of target asset
+     * @param targetAssetId - target asset identificator
+     * @throws InternalStorageException - if some errors happened in storage
+     * @throws UndefinedResourceException - if source asset or target bucket is not exits
+     */
+    void copy(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException;
+
+    /**
+     * Move asset inside storage, target asset is overwritten
+     * @param sourceBucketId - virtual bucket name of source asset
+     * @param sourceAssetId - source asset identificator
+     * @param targetBucketId - virtual bucket name of target asset
+     * @param targetAssetId - target asset identificator
+     * @throws InternalStorageException - if some errors happened in storage
+     * @throws UndefinedResourceException - if source asset or target bucket is not exits
+     */
+    void move(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException;
+
+    /**
+     * Remove asset from bucket
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @throws InternalStorageException - if some errors happened in storage
+     * @throws UndefinedResourceException - if bucket or asset is not exits
+     */
+    void delete(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException;
+
+    /**
+     * Move asset to cold (secondary, optionally compressed) tier, asset stays available for all operations
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @throws InternalStorageException - if some errors happened in storage
+     * @throws UndefinedResourceException - if bucket or asset is not exits
+     */
+    void demote(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException;
+
+    /**
+     * Move asset from cold tier back to the primary one, it is skipped if asset is not cold
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @throws InternalStorageException - if some errors happened in storage
+     * @throws UndefinedResourceException - if bucket or asset is not exits
+     */
+    void promote(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException;
+
+    /**
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @return true if asset is stored in cold tier
+     */
+    boolean isCold(String bucketId, String assetId);
 }
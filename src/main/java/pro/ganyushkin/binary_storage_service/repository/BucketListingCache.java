@@ -0,0 +1,86 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.apache.commons.collections4.map.LRUMap;
+
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sorted snapshots of bucket listings, pages are taken from snapshot by binary search of cursor.
+ * Snapshot is valid while modification times of bucket directories are not changed. Directory time has
+ * coarse granularity, so directory changed within racy window can be changed again with the same time,
+ * listing of such directory is not kept.
+ */
+public class BucketListingCache {
+    private final Map<String, Snapshot> snapshots;
+    private final long racyWindowMillis;
+
+    /**
+     * @param maxBuckets - count of kept snapshots, least recently used are dropped
+     */
+    public BucketListingCache(int maxBuckets, Duration racyWindow) {
+        this.snapshots = Collections.synchronizedMap(new LRUMap<>(maxBuckets));
+        this.racyWindowMillis = racyWindow.toMillis();
+    }
+
+    /**
+     * @param stamps - modification times of bucket directories which were read before listing,
+     *               null for missing directory
+     * @return sorted asset ids or null if there is no valid snapshot
+     */
+    public String[] find(String bucketId, FileTime[] stamps) {
+        var snapshot = snapshots.get(bucketId);
+        if (snapshot == null || !Arrays.equals(snapshot.stamps, stamps)) {
+            return null;
+        }
+        return snapshot.assetIds;
+    }
+
+    /**
+     * @param assetIds - sorted distinct asset ids which were listed after stamps were read
+     */
+    public void put(String bucketId, FileTime[] stamps, String[] assetIds) {
+        var racyBound = System.currentTimeMillis() - racyWindowMillis;
+        for (var stamp : stamps) {
+            if (stamp != null && stamp.toMillis() >= racyBound) {
+                snapshots.remove(bucketId);
+                return;
+            }
+        }
+        snapshots.put(bucketId, new Snapshot(stamps.clone(), assetIds));
+    }
+
+    public void invalidate(String bucketId) {
+        snapshots.remove(bucketId);
+    }
+
+    /**
+     * @param assetIds - sorted distinct asset ids
+     * @param after - exclusive lower bound of asset ids, null for the first page
+     * @return up to limit asset ids with prefix in id order
+     */
+    public static List<String> page(String[] assetIds, String prefix, String after, int limit) {
+        int from;
+        if (after != null && after.compareTo(prefix) >= 0) {
+            var index = Arrays.binarySearch(assetIds, after);
+            from = index >= 0 ? index + 1 : -index - 1;
+        } else {
+            var index = Arrays.binarySearch(assetIds, prefix);
+            from = index >= 0 ? index : -index - 1;
+        }
+        var page = new ArrayList<String>(Math.max(0, Math.min(limit, assetIds.length - from)));
+        // ids with prefix are a contiguous range of sorted ids
+        for (var i = from; i < assetIds.length && page.size() < limit && assetIds[i].startsWith(prefix); i++) {
+            page.add(assetIds[i]);
+        }
+        return page;
+    }
+
+    private record Snapshot(FileTime[] stamps, String[] assetIds) {
+    }
+}
@@ -0,0 +1,279 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.OffsetOutOfRangeException;
+import pro.ganyushkin.binary_storage_service.model.ChangeBatch;
+import pro.ganyushkin.binary_storage_service.model.ChangeEvent;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append only log of bucket mutations.
+ * Log is a set of segments {@code <directory>/<base offset>.log}, offset of event is its byte position in the whole
+ * log, so reading from offset needs no index. Entry is {@code int length} followed by binary encoded event.
+ * Old segments are removed by retention when the active segment is rolled.
+ */
+@Slf4j
+@Component
+public class ChangeLogRepository {
+    private static final String SEGMENT_EXTENSION = ".log";
+    /**
+     * max length of encoded event: fixed fields and two modified UTF-8 strings
+     */
+    private static final int MAX_ENTRY_LENGTH = 8 + 1 + 8 + 2 * (2 + 65535);
+
+    @Value("${storage.change-feed.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.change-feed.directory:${storage.fs.root-directory}/.changes}")
+    private String directory;
+
+    @Value("${storage.change-feed.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${storage.change-feed.retention:7d}")
+    private Duration retention;
+
+    private Path logPath;
+
+    /**
+     * base offset to segment file, it is changed under lock of this repository only
+     */
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private FileChannel activeSegment;
+
+    private long activeBaseOffset;
+
+    /**
+     * end of the last completely written entry, readers never go after it
+     */
+    private volatile long endOffset;
+
+    @PostConstruct
+    private void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        logPath = Path.of(directory);
+        Files.createDirectories(logPath);
+        try (var files = Files.list(logPath)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_EXTENSION))
+                    .forEach(path -> segments.put(parseBaseOffset(path), path));
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, buildSegmentPath(0));
+        }
+        activeBaseOffset = segments.lastKey();
+        activeSegment = FileChannel.open(segments.lastEntry().getValue(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        log.info("Change log was opened; start={}; end={}; segments={}", getStartOffset(), endOffset, segments.size());
+    }
+
+    @PreDestroy
+    private synchronized void destroy() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.close();
+            activeSegment = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append event to the end of log
+     * @return offset of the appended event
+     * @throws InternalStorageException - if log can't be written
+     */
+    public synchronized long append(ChangeEvent.Type type, String bucketId, String assetId, long size, Instant time)
+            throws InternalStorageException {
+        try {
+            var entry = encode(type, bucketId, assetId, size, time);
+            if (endOffset > activeBaseOffset
+                    && endOffset - activeBaseOffset + entry.remaining() > segmentSize.toBytes()) {
+                roll();
+            }
+            var offset = endOffset;
+            while (entry.hasRemaining()) {
+                activeSegment.write(entry, offset - activeBaseOffset + entry.position());
+            }
+            endOffset = offset + entry.limit();
+            return offset;
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't write change log; bucketId=" + bucketId, e);
+        }
+    }
+
+    /**
+     * Read events from offset
+     * @param offset - offset of the first event, it is the next offset of previous read
+     * @param maxEvents - max count of events
+     * @return events and offset of the next event
+     * @throws OffsetOutOfRangeException - if offset was removed by retention or it is not an offset of log entry
+     * @throws InternalStorageException - if log can't be read
+     */
+    public ChangeBatch read(long offset, int maxEvents) throws OffsetOutOfRangeException, InternalStorageException {
+        var end = endOffset;
+        Map.Entry<Long, Path> segment;
+        synchronized (this) {
+            segment = segments.floorEntry(offset);
+            if (offset > end || segment == null) {
+                throw new OffsetOutOfRangeException(offset, getStartOffset(), end);
+            }
+        }
+        var events = new ArrayList<ChangeEvent>();
+        var position = offset;
+        try {
+            while (segment != null && position < end && events.size() < maxEvents) {
+                position = readSegment(segment.getKey(), segment.getValue(), position, end, maxEvents, events);
+                if (events.size() < maxEvents) {
+                    // segment is read to its end, it is the base offset of the next one
+                    synchronized (this) {
+                        segment = segments.higherEntry(segment.getKey());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read change log; offset=" + offset, e);
+        }
+        return new ChangeBatch(events, position);
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public synchronized long getStartOffset() {
+        return segments.isEmpty() ? 0 : segments.firstKey();
+    }
+
+    /**
+     * @return offset after the last read event
+     */
+    private long readSegment(long baseOffset, Path segmentPath, long position, long end, int maxEvents,
+                             List<ChangeEvent> events) throws IOException, OffsetOutOfRangeException {
+        try (var channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+            var segmentEnd = Math.min(end, baseOffset + channel.size());
+            channel.position(position - baseOffset);
+            var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (events.size() < maxEvents && position < segmentEnd) {
+                var length = in.readInt();
+                if (length <= 0 || length > MAX_ENTRY_LENGTH || position + 4 + length > segmentEnd) {
+                    throw new OffsetOutOfRangeException(position, getStartOffset(), end);
+                }
+                try {
+                    events.add(decode(position, in));
+                } catch (UTFDataFormatException | RuntimeException e) {
+                    // offset is not a start of entry
+                    throw new OffsetOutOfRangeException(position, getStartOffset(), end);
+                }
+                position += 4 + length;
+            }
+            return position;
+        }
+    }
+
+    private void roll() throws IOException {
+        activeSegment.force(false);
+        activeSegment.close();
+        activeBaseOffset = endOffset;
+        var segmentPath = buildSegmentPath(activeBaseOffset);
+        activeSegment = FileChannel.open(segmentPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(activeBaseOffset, segmentPath);
+        removeExpiredSegments();
+    }
+
+    private void removeExpiredSegments() throws IOException {
+        var expiration = Instant.now().minus(retention);
+        while (segments.size() > 1) {
+            var first = segments.firstEntry();
+            if (Files.getLastModifiedTime(first.getValue()).toInstant().isAfter(expiration)) {
+                break;
+            }
+            Files.deleteIfExists(first.getValue());
+            segments.remove(first.getKey());
+            log.info("Change log segment was removed by retention; {}", first.getValue());
+        }
+    }
+
+    /**
+     * Find the end of the last complete entry of active segment, tail of interrupted write is truncated
+     */
+    private void recover() throws IOException {
+        var position = 0L;
+        var size = activeSegment.size();
+        var header = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            header.clear();
+            activeSegment.read(header, position);
+            var length = header.flip().getInt();
+            if (length <= 0 || length > MAX_ENTRY_LENGTH || position + 4 + length > size) {
+                break;
+            }
+            position += 4 + length;
+        }
+        if (position < size) {
+            log.warn("Incomplete change log entry was truncated; offset={}", activeBaseOffset + position);
+            activeSegment.truncate(position);
+        }
+        endOffset = activeBaseOffset + position;
+    }
+
+    private Path buildSegmentPath(long baseOffset) {
+        return logPath.resolve(String.format("%020d", baseOffset) + SEGMENT_EXTENSION);
+    }
+
+    private static long parseBaseOffset(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+    }
+
+    private static ByteBuffer encode(ChangeEvent.Type type, String bucketId, String assetId, long size, Instant time)
+            throws IOException {
+        var bytes = new ByteArrayOutputStream(64);
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0); // length placeholder
+        out.writeLong(time.toEpochMilli());
+        out.writeByte(type.ordinal());
+        out.writeLong(size);
+        out.writeUTF(bucketId);
+        out.writeUTF(assetId);
+        var buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, buffer.limit() - 4);
+        return buffer;
+    }
+
+    private static ChangeEvent decode(long offset, DataInputStream in) throws IOException {
+        var time = Instant.ofEpochMilli(in.readLong());
+        var type = ChangeEvent.Type.values()[in.readByte()];
+        var size = in.readLong();
+        return new ChangeEvent(offset, time, type, in.readUTF(), in.readUTF(), size);
+    }
+}
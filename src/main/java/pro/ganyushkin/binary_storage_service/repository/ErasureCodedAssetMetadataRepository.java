@@ -0,0 +1,82 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Metadata is stored as json file per asset, it is replicated to the roots of asset chunks
+ * by {@link ErasureCodedStorageRepository}; recently used entries are kept in memory.
+ */
+@Profile("EC-STORAGE")
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class ErasureCodedAssetMetadataRepository implements AssetMetadataRepository {
+    private final ObjectMapper objectMapper;
+    private final ErasureCodedStorageRepository storageRepository;
+
+    @Value("${storage.fs.metadata.cache-size:100000}")
+    private int cacheSize;
+
+    private Map<String, AssetMetadata> cache;
+
+    @PostConstruct
+    private void init() {
+        cache = Collections.synchronizedMap(new LRUMap<>(cacheSize));
+    }
+
+    @Override
+    public Optional<AssetMetadata> find(String bucketId, String assetId) throws InternalStorageException {
+        var cached = cache.get(buildCacheKey(bucketId, assetId));
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        var content = storageRepository.readMetadata(bucketId, assetId);
+        if (content.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            var metadata = objectMapper.readValue(content.get(), AssetMetadata.class);
+            cache.put(buildCacheKey(bucketId, assetId), metadata);
+            return Optional.of(metadata);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void save(String bucketId, AssetMetadata metadata) throws InternalStorageException {
+        var assetId = metadata.getAssetId();
+        try {
+            storageRepository.saveMetadata(bucketId, assetId, objectMapper.writeValueAsBytes(metadata));
+            cache.put(buildCacheKey(bucketId, assetId), metadata);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't write asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void remove(String bucketId, String assetId) throws InternalStorageException {
+        cache.remove(buildCacheKey(bucketId, assetId));
+        storageRepository.removeMetadata(bucketId, assetId);
+    }
+
+    private String buildCacheKey(String bucketId, String assetId) {
+        return bucketId + "/" + assetId;
+    }
+}
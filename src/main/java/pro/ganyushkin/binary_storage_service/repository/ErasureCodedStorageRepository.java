@@ -0,0 +1,1167 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import io.opentelemetry.api.trace.Tracer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.util.AssetNames;
+import pro.ganyushkin.binary_storage_service.util.RateLimiter;
+import pro.ganyushkin.binary_storage_service.util.ReedSolomon;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Assets are striped over several roots (disks) with Reed-Solomon code: every stripe of
+ * {@code data-chunks * stripe-unit} bytes is split into data blocks and parity blocks are computed,
+ * block i of every stripe is appended to chunk file i: {@code <root>/<bucketId>/<assetId>}.
+ * Chunks of asset are placed on consecutive roots starting from the root chosen by hash of asset name.
+ * <p>
+ * Chunk file is header (asset size, modification time, write id) and blocks with CRC32C, so missing,
+ * stale (of other write) and corrupted chunks are detected. Stripes are read and decoded ahead of the reader
+ * in parallel, missing blocks are reconstructed from parity on read. Damaged assets found by reads are repaired
+ * in background, all assets are verified and repaired periodically.
+ * <p>
+ * Assets up to replication threshold are stored whole: one block is written to {@code parity-chunks + 1} chunks,
+ * so a small asset is one file read and the same root failures are tolerated.
+ * <p>
+ * Metadata of asset is replicated to the roots of the first {@code parity-chunks + 1} chunks:
+ * {@code <root>/<bucketId>/.metadata/<assetId>.json}, so it survives as many root failures as the asset.
+ */
+@Profile("EC-STORAGE")
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class ErasureCodedStorageRepository implements BinaryStorageRepository {
+    /**
+     * "BSEC"
+     */
+    private static final int MAGIC = 0x42534543;
+    /**
+     * magic, chunk index, data and parity chunks count, stripe unit, asset size,
+     * modification time, write id and CRC32C of the header
+     */
+    private static final int HEADER_SIZE = 40;
+    private static final int CRC_SIZE = 4;
+    private static final String TMP_DIRECTORY = FilesystemStorageRepository.HIDDEN_PREFIX + "tmp";
+    /**
+     * chunks are replaced one by one on overwrite, open is retried if there is no consistent set of chunks
+     */
+    private static final int OPEN_ATTEMPTS = 3;
+    private static final long REPAIR_QUEUE_INTERVAL_SECONDS = 10;
+
+    private final Tracer tracer;
+
+    /**
+     * comma separated directories, each of them is expected to be on its own disk
+     */
+    @Value("${storage.ec.roots}")
+    private String[] roots;
+
+    @Value("${storage.ec.data-chunks:4}")
+    private int dataChunks;
+
+    @Value("${storage.ec.parity-chunks:2}")
+    private int parityChunks;
+
+    /**
+     * size of one block of stripe
+     */
+    @Value("${storage.ec.stripe-unit:1MB}")
+    private DataSize stripeUnit;
+
+    /**
+     * assets up to this size are replicated instead of striping, it is limited by the stripe size
+     */
+    @Value("${storage.ec.replication-threshold:64KB}")
+    private DataSize replicationThreshold;
+
+    @Value("${storage.ec.read-threads:16}")
+    private int readThreads;
+
+    /**
+     * count of stripes which are decoded ahead of the reader of one asset
+     */
+    @Value("${storage.ec.read-ahead:4}")
+    private int readAhead;
+
+    @Value("${storage.ec.repair.enabled:true}")
+    private boolean repairEnabled;
+
+    @Value("${storage.ec.repair.interval:24h}")
+    private Duration repairInterval;
+
+    /**
+     * assets per second of periodic verification
+     */
+    @Value("${storage.ec.repair.rate:50}")
+    private double repairRate;
+
+    private Path[] disks;
+
+    private int totalChunks;
+
+    private ReedSolomon codec;
+
+    /**
+     * code of replicated assets, parity blocks of single data block are its copies
+     */
+    private ReedSolomon replicaCodec;
+
+    private ExecutorService readPool;
+
+    private ScheduledExecutorService repairScheduler;
+
+    private RateLimiter repairThrottle;
+
+    private final Set<AssetKey> repairQueue = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    private void init() throws InternalStorageException {
+        totalChunks = dataChunks + parityChunks;
+        if (roots.length < totalChunks) {
+            throw new InternalStorageException("Erasure coding needs at least " + totalChunks +
+                    " roots; roots=" + roots.length);
+        }
+        if (stripeUnit.toBytes() * dataChunks > Integer.MAX_VALUE - CRC_SIZE) {
+            throw new InternalStorageException("Stripe is too large; stripeUnit=" + stripeUnit);
+        }
+        codec = new ReedSolomon(dataChunks, parityChunks);
+        replicaCodec = new ReedSolomon(1, parityChunks);
+        disks = Arrays.stream(roots).map(String::trim).map(Paths::get).toArray(Path[]::new);
+        for (var disk : disks) {
+            try {
+                Files.createDirectories(disk);
+            } catch (IOException e) {
+                log.error("Erasure coded storage root is not available; {}", disk, e);
+            }
+        }
+        var threadCounter = new AtomicInteger();
+        readPool = Executors.newFixedThreadPool(readThreads, runnable -> {
+            var thread = new Thread(runnable, "ec-read-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (repairEnabled) {
+            repairThrottle = new RateLimiter(repairRate, 1);
+            repairScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "ec-repair");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            repairScheduler.scheduleWithFixedDelay(this::repairQueued,
+                    REPAIR_QUEUE_INTERVAL_SECONDS, REPAIR_QUEUE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            var interval = repairInterval.toMillis();
+            repairScheduler.scheduleWithFixedDelay(this::repairAll, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        log.info("Erasure coded storage; roots={}; dataChunks={}; parityChunks={}; stripeUnit={}",
+                disks.length, dataChunks, parityChunks, stripeUnit);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (repairScheduler != null) {
+            repairScheduler.shutdownNow();
+        }
+        readPool.shutdownNow();
+    }
+
+    @Override
+    public boolean exists(String bucketId) {
+        return Arrays.stream(disks).anyMatch(disk -> Files.isDirectory(disk.resolve(bucketId)));
+    }
+
+    @Override
+    public boolean exists(String bucketId, String assetId) {
+        if (!exists(bucketId)) {
+            return false;
+        }
+        var placement = placement(bucketId, assetId);
+        var chunks = 0;
+        for (var i = 0; i < totalChunks; i++) {
+            if (Files.isRegularFile(chunkPath(placement[i], bucketId, assetId))) {
+                chunks++;
+            }
+        }
+        if (chunks >= dataChunks) {
+            return true;
+        }
+        // any chunk of replicated asset is the whole asset
+        for (var i = 0; i <= parityChunks && chunks > 0; i++) {
+            try (var channel = FileChannel.open(chunkPath(placement[i], bucketId, assetId))) {
+                var header = readHeader(channel, i);
+                if (header != null && header.dataChunks() == 1) {
+                    return true;
+                }
+            } catch (IOException e) {
+                log.trace("Chunk {} of {}/{} is not available", i, bucketId, assetId);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void createBucket(String bucketId) throws ResourceAlreadyExists, InternalStorageException {
+        if (exists(bucketId)) {
+            throw new ResourceAlreadyExists(bucketId);
+        }
+        var created = 0;
+        for (var disk : disks) {
+            try {
+                Files.createDirectories(disk.resolve(bucketId));
+                created++;
+            } catch (IOException e) {
+                log.warn("Can't create bucket directory; {}", disk.resolve(bucketId), e);
+            }
+        }
+        if (created < totalChunks) {
+            throw new InternalStorageException("Can't create bucket " + bucketId + " on enough roots");
+        }
+        log.info("bucket was created for bucketId={}", bucketId);
+    }
+
+    /**
+     * Bucket should be empty, metadata replicas which are left in it are removed
+     */
+    @Override
+    public void deleteBucket(String bucketId) throws UndefinedResourceException, InternalStorageException {
+        if (!listAssets(bucketId).isEmpty()) {
+            throw new InternalStorageException("Can't delete not empty bucket " + bucketId);
+        }
+        for (var disk : disks) {
+            try {
+                var metadataPath = disk.resolve(bucketId).resolve(FilesystemAssetMetadataRepository.METADATA_DIRECTORY);
+                for (var name : Objects.requireNonNullElse(metadataPath.toFile().list(), new String[0])) {
+                    Files.deleteIfExists(metadataPath.resolve(name));
+                }
+                Files.deleteIfExists(metadataPath);
+                Files.deleteIfExists(disk.resolve(bucketId));
+            } catch (IOException e) {
+                throw new InternalStorageException("Can't delete bucket directory " + disk.resolve(bucketId), e);
+            }
+        }
+        log.info("bucket was deleted for bucketId={}", bucketId);
+    }
+
+    @Override
+    public List<String> listBuckets() {
+        return listBucketDirectories()
+                .filter(name -> !name.startsWith(FilesystemStorageRepository.HIDDEN_PREFIX))
+                .toList();
+    }
+
+    @Override
+    public List<String> listAssets(String bucketId) throws UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        return Arrays.stream(disks)
+                .map(disk -> disk.resolve(bucketId))
+                .flatMap(bucketPath -> Arrays.stream(Objects.requireNonNullElse(
+                                bucketPath.toFile().list(), new String[0]))
+                        .filter(name -> bucketPath.resolve(name).toFile().isFile()))
+                .distinct()
+                .map(AssetNames::toAssetId)
+                .toList();
+    }
+
+    @Override
+    public InputStream read(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        var span = tracer.spanBuilder("ec.open").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var chunks = open(bucketId, assetId);
+            var layout = chunks.layout;
+            return new ParallelRangeInputStream(
+                    (offset, length) -> readStripe(chunks, (int) (offset / layout.stripeSize()), length),
+                    layout.size(), layout.stripeSize(), readAhead, readPool) {
+                @Override
+                public void close() {
+                    super.close();
+                    chunks.close();
+                }
+            };
+        } finally {
+            span.end();
+        }
+    }
+
+    @Override
+    public AssetMetadata stat(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        try (var chunks = open(bucketId, assetId)) {
+            return AssetMetadata.builder()
+                    .assetId(assetId)
+                    .size(chunks.header.size())
+                    .lastModified(Instant.ofEpochMilli(chunks.header.lastModified()))
+                    .build();
+        }
+    }
+
+    @Override
+    public void store(String bucketId, String assetId, InputStream data)
+            throws InternalStorageException, ResourceAlreadyExists, UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        if (exists(bucketId, assetId)) {
+            throw new ResourceAlreadyExists(bucketId, assetId);
+        }
+        write(bucketId, assetId, data);
+    }
+
+    @Override
+    public void overwrite(String bucketId, String assetId, InputStream data)
+            throws InternalStorageException, UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        write(bucketId, assetId, data);
+    }
+
+    /**
+     * Content is decoded and encoded again, placement of chunks depends on asset name
+     */
+    @Override
+    public void copy(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException {
+        throwIfBucketIsNotExists(targetBucketId);
+        if (sourceBucketId.equals(targetBucketId) && sourceAssetId.equals(targetAssetId)) {
+            return;
+        }
+        try (var data = read(sourceBucketId, sourceAssetId)) {
+            write(targetBucketId, targetAssetId, data);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't copy asset; " + sourceBucketId + "/" + sourceAssetId, e);
+        }
+    }
+
+    @Override
+    public void move(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (sourceBucketId.equals(targetBucketId) && sourceAssetId.equals(targetAssetId)) {
+            throwIfBucketIsNotExists(targetBucketId);
+            return;
+        }
+        copy(sourceBucketId, sourceAssetId, targetBucketId, targetAssetId);
+        delete(sourceBucketId, sourceAssetId);
+    }
+
+    @Override
+    public void delete(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+        var placement = placement(bucketId, assetId);
+        var failed = 0;
+        for (var i = 0; i < totalChunks; i++) {
+            try {
+                Files.deleteIfExists(chunkPath(placement[i], bucketId, assetId));
+            } catch (IOException e) {
+                log.warn("Can't remove chunk {} of {}/{}", i, bucketId, assetId, e);
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new InternalStorageException("Can't remove asset; bucketId=" + bucketId +
+                    "; assetId=" + assetId);
+        }
+        log.debug("Removed asset; {}/{}", bucketId, assetId);
+    }
+
+    /**
+     * Read the newest replica of asset metadata, replica of root which failed on save could be stale
+     * @return metadata content or empty if asset has no metadata
+     * @throws InternalStorageException - if metadata can't be read
+     */
+    public Optional<byte[]> readMetadata(String bucketId, String assetId) throws InternalStorageException {
+        var placement = placement(bucketId, assetId);
+        Path newest = null;
+        FileTime newestTime = null;
+        for (var i = 0; i <= parityChunks; i++) {
+            var path = metadataPath(placement[i], bucketId, assetId);
+            try {
+                var time = Files.getLastModifiedTime(path);
+                if (newestTime == null || time.compareTo(newestTime) > 0) {
+                    newest = path;
+                    newestTime = time;
+                }
+            } catch (NoSuchFileException e) {
+                log.trace("Metadata replica is not exists; {}", path);
+            } catch (IOException e) {
+                log.warn("Can't read metadata replica; {}", path, e);
+            }
+        }
+        if (newest == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Files.readAllBytes(newest));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    /**
+     * Replace all replicas of asset metadata, it is written while at most parity chunks count of roots fail
+     * @param content - metadata content
+     * @throws InternalStorageException - if metadata can't be written on enough roots
+     */
+    public void saveMetadata(String bucketId, String assetId, byte[] content) throws InternalStorageException {
+        var placement = placement(bucketId, assetId);
+        var failed = 0;
+        IOException error = null;
+        for (var i = 0; i <= parityChunks; i++) {
+            var path = metadataPath(placement[i], bucketId, assetId);
+            try {
+                var tmpDir = disks[placement[i]].resolve(TMP_DIRECTORY);
+                Files.createDirectories(tmpDir);
+                Files.createDirectories(path.getParent());
+                var tmpPath = Files.createTempFile(tmpDir, FilesystemStorageRepository.HIDDEN_PREFIX, ".tmp");
+                try {
+                    Files.write(tmpPath, content);
+                    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmpPath);
+                }
+            } catch (IOException e) {
+                log.warn("Can't write metadata replica; {}", path, e);
+                failed++;
+                error = e;
+            }
+        }
+        if (failed > parityChunks) {
+            throw new InternalStorageException("Can't write asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, error);
+        }
+    }
+
+    /**
+     * @throws InternalStorageException - if some replica of metadata can't be removed
+     */
+    public void removeMetadata(String bucketId, String assetId) throws InternalStorageException {
+        var placement = placement(bucketId, assetId);
+        IOException error = null;
+        for (var i = 0; i <= parityChunks; i++) {
+            var path = metadataPath(placement[i], bucketId, assetId);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Can't remove metadata replica; {}", path, e);
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw new InternalStorageException("Can't remove asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, error);
+        }
+    }
+
+    /**
+     * Erasure coded assets are not moved between tiers
+     */
+    @Override
+    public void demote(String bucketId, String assetId) throws UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+    }
+
+    @Override
+    public void promote(String bucketId, String assetId) throws UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+    }
+
+    @Override
+    public boolean isCold(String bucketId, String assetId) {
+        return false;
+    }
+
+    /**
+     * Rebuild missing, stale and corrupted chunks of asset from the others
+     * @param verifyData - read all blocks and check their CRC, otherwise only headers of chunks are checked
+     * @return true if some chunks were rebuilt
+     * @throws InternalStorageException - if there are not enough valid chunks or chunks can't be written
+     * @throws UndefinedResourceException - if bucket or asset is not exits
+     */
+    public boolean repair(String bucketId, String assetId, boolean verifyData)
+            throws InternalStorageException, UndefinedResourceException {
+        try (var chunks = open(bucketId, assetId)) {
+            var layout = chunks.layout;
+            var damaged = new boolean[totalChunks];
+            var damagedCount = 0;
+            for (var i = 0; i < layout.chunks(); i++) {
+                damaged[i] = chunks.channels[i] == null;
+                damagedCount += damaged[i] ? 1 : 0;
+            }
+            if (damagedCount == 0 && !verifyData) {
+                return false;
+            }
+            var placement = placement(bucketId, assetId);
+            // blocks are verified and damaged ones are rebuilt in one pass over stripes
+            try (var writer = new ChunkWriter(placement, damaged)) {
+                for (var stripe = 0; stripe < layout.stripes(); stripe++) {
+                    var blockSize = layout.blockSize(stripe);
+                    var position = layout.blockPosition(stripe);
+                    var shards = new byte[totalChunks][];
+                    var present = new boolean[totalChunks];
+                    var available = 0;
+                    for (var i = 0; i < layout.chunks() && (verifyData || available < layout.dataChunks()); i++) {
+                        if (damaged[i]) {
+                            continue;
+                        }
+                        shards[i] = readBlock(chunks.channels[i], layout, stripe);
+                        present[i] = shards[i] != null;
+                        if (present[i]) {
+                            available++;
+                        } else if (verifyData) {
+                            // blocks before this one were verified, they are copied into the rebuilt chunk
+                            damaged[i] = true;
+                            damagedCount++;
+                            writer.add(i, chunks.channels[i], position);
+                        }
+                    }
+                    if (available < layout.dataChunks()) {
+                        throw new InternalStorageException("Not enough valid blocks to repair; bucketId=" +
+                                bucketId + "; assetId=" + assetId + "; stripe=" + stripe);
+                    }
+                    if (damagedCount == 0) {
+                        continue;
+                    }
+                    for (var i = 0; i < layout.chunks(); i++) {
+                        if (damaged[i]) {
+                            shards[i] = new byte[blockSize + CRC_SIZE];
+                        }
+                    }
+                    codec(layout).reconstruct(shards, present, 0, blockSize);
+                    for (var i = 0; i < layout.chunks(); i++) {
+                        if (damaged[i]) {
+                            writer.writeBlock(i, shards[i], blockSize, position);
+                        }
+                    }
+                }
+                if (damagedCount == 0) {
+                    return false;
+                }
+                writer.writeHeaders(chunks.header);
+                // asset could be overwritten during repair, chunks of the new content are kept
+                if (!isCurrent(bucketId, assetId, placement, damaged, chunks.header.writeId())) {
+                    log.info("Asset was changed during repair; {}/{}", bucketId, assetId);
+                    return false;
+                }
+                writer.commit(bucketId, assetId);
+            }
+            log.info("Asset was repaired; {}/{}; chunks={}", bucketId, assetId, damagedCount);
+            return true;
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't repair asset; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private void repairQueued() {
+        for (var key : repairQueue) {
+            repairQueue.remove(key);
+            try {
+                repair(key.bucketId(), key.assetId(), true);
+            } catch (UndefinedResourceException e) {
+                log.debug("Skip removed asset in repair; {}/{}", key.bucketId(), key.assetId());
+            } catch (InternalStorageException | RuntimeException e) {
+                log.error("Asset repair failed; {}/{}", key.bucketId(), key.assetId(), e);
+            }
+        }
+    }
+
+    /**
+     * Verify all blocks of all assets, including assets of hidden buckets
+     */
+    private void repairAll() {
+        log.info("Erasure coded storage verification was started");
+        var checked = 0;
+        var repaired = 0;
+        try {
+            for (var bucketId : listBucketDirectories().toList()) {
+                for (var assetId : listAssets(bucketId)) {
+                    long wait;
+                    while ((wait = repairThrottle.tryAcquire(1, System.nanoTime())) > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    try {
+                        repaired += repair(bucketId, assetId, true) ? 1 : 0;
+                        checked++;
+                    } catch (UndefinedResourceException e) {
+                        log.debug("Skip removed asset in verification; {}/{}", bucketId, assetId);
+                    } catch (InternalStorageException e) {
+                        log.error("Asset repair failed; {}/{}", bucketId, assetId, e);
+                    }
+                }
+            }
+            log.info("Erasure coded storage verification was completed; checked={}; repaired={}", checked, repaired);
+        } catch (UndefinedResourceException e) {
+            log.debug("Bucket was removed during verification", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Erasure coded storage verification failed", e);
+        }
+    }
+
+    private void write(String bucketId, String assetId, InputStream data) throws InternalStorageException {
+        var span = tracer.spanBuilder("ec.store").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var placement = placement(bucketId, assetId);
+            var unit = (int) stripeUnit.toBytes();
+            var stripeSize = dataChunks * unit;
+            var stripe = data.readNBytes(stripeSize);
+            var count = stripe.length;
+            var replicated = count < stripeSize && count <= replicationThreshold.toBytes();
+            var layout = replicated
+                    ? new Layout(1, parityChunks, Math.max(1, count), count)
+                    : new Layout(dataChunks, parityChunks, unit, 0);
+            var selected = new boolean[totalChunks];
+            Arrays.fill(selected, 0, layout.chunks(), true);
+            try (var writer = new ChunkWriter(placement, selected)) {
+                var size = 0L;
+                if (replicated) {
+                    // the only block is the whole asset, CRC is the same for all copies
+                    var block = Arrays.copyOf(stripe, count + CRC_SIZE);
+                    for (var i = 0; i < layout.chunks() && count > 0; i++) {
+                        writer.writeBlock(i, block, count, HEADER_SIZE);
+                    }
+                    size = count;
+                } else {
+                    // buffers are sized by the first stripe, so small assets don't allocate the whole stripe
+                    var shardSize = count == stripeSize ? unit : ceilDiv(count, dataChunks);
+                    var shards = new byte[totalChunks][shardSize + CRC_SIZE];
+                    var position = (long) HEADER_SIZE;
+                    while (count > 0) {
+                        var blockSize = count == stripeSize ? unit : ceilDiv(count, dataChunks);
+                        for (var i = 0; i < dataChunks; i++) {
+                            var from = i * blockSize;
+                            var length = Math.max(0, Math.min(blockSize, count - from));
+                            System.arraycopy(stripe, Math.min(from, count), shards[i], 0, length);
+                            Arrays.fill(shards[i], length, blockSize, (byte) 0);
+                        }
+                        codec.encodeParity(shards, 0, blockSize);
+                        for (var i = 0; i < totalChunks; i++) {
+                            writer.writeBlock(i, shards[i], blockSize, position);
+                        }
+                        position += blockSize + CRC_SIZE;
+                        size += count;
+                        if (count < stripeSize) {
+                            break;
+                        }
+                        count = data.readNBytes(stripe, 0, stripeSize);
+                    }
+                }
+                writer.writeHeaders(new ChunkHeader(0, layout.dataChunks(), parityChunks, layout.stripeUnit(), size,
+                        System.currentTimeMillis(), ThreadLocalRandom.current().nextLong()));
+                writer.commit(bucketId, assetId);
+            }
+            // chunks of the previous striped content are not a part of replicated asset
+            for (var i = layout.chunks(); i < totalChunks; i++) {
+                try {
+                    Files.deleteIfExists(chunkPath(placement[i], bucketId, assetId));
+                } catch (IOException e) {
+                    log.warn("Can't remove stale chunk {} of {}/{}", i, bucketId, assetId, e);
+                }
+            }
+            log.debug("Stored asset; {}/{}", bucketId, assetId);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't store asset; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Open chunks of the latest write which has enough chunks to decode asset
+     */
+    private ChunkSet open(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        var placement = placement(bucketId, assetId);
+        for (var attempt = 1; ; attempt++) {
+            var channels = new FileChannel[totalChunks];
+            var headers = new ChunkHeader[totalChunks];
+            var found = 0;
+            for (var i = 0; i < totalChunks; i++) {
+                var path = chunkPath(placement[i], bucketId, assetId);
+                if (!Files.isRegularFile(path)) {
+                    continue;
+                }
+                found++;
+                try {
+                    channels[i] = FileChannel.open(path, StandardOpenOption.READ);
+                    headers[i] = readHeader(channels[i], i);
+                } catch (IOException e) {
+                    log.warn("Can't open chunk; {}", path, e);
+                }
+                if (headers[i] == null) {
+                    closeQuietly(channels[i]);
+                    channels[i] = null;
+                }
+            }
+            if (found == 0) {
+                throw new UndefinedResourceException(bucketId, assetId);
+            }
+            var counts = new HashMap<Long, Integer>();
+            for (var header : headers) {
+                if (header != null) {
+                    counts.merge(header.writeId(), 1, Integer::sum);
+                }
+            }
+            ChunkHeader chosen = null;
+            for (var header : headers) {
+                if (header != null && counts.get(header.writeId()) >= header.dataChunks() &&
+                        (chosen == null || header.lastModified() > chosen.lastModified())) {
+                    chosen = header;
+                }
+            }
+            for (var i = 0; i < totalChunks; i++) {
+                if (headers[i] != null && (chosen == null || headers[i].writeId() != chosen.writeId())) {
+                    closeQuietly(channels[i]);
+                    channels[i] = null;
+                }
+            }
+            if (chosen != null) {
+                var layout = new Layout(chosen.dataChunks(), chosen.parityChunks(), chosen.stripeUnit(), chosen.size());
+                if (counts.get(chosen.writeId()) < layout.chunks()) {
+                    queueRepair(bucketId, assetId);
+                }
+                return new ChunkSet(bucketId, assetId, chosen, layout, channels);
+            }
+            if (attempt == OPEN_ATTEMPTS) {
+                throw new InternalStorageException("Not enough consistent chunks; bucketId=" + bucketId +
+                        "; assetId=" + assetId + "; found=" + found);
+            }
+            try {
+                Thread.sleep(10L * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalStorageException("Asset open was interrupted; bucketId=" + bucketId +
+                        "; assetId=" + assetId);
+            }
+        }
+    }
+
+    /**
+     * Read data blocks of stripe, parity blocks are read only to replace missing or corrupted data blocks
+     */
+    private byte[] readStripe(ChunkSet chunks, int stripe, int length) throws IOException {
+        var layout = chunks.layout;
+        var blockSize = layout.blockSize(stripe);
+        var shards = new byte[totalChunks][];
+        var present = new boolean[totalChunks];
+        var available = 0;
+        for (var i = 0; i < layout.chunks() && available < layout.dataChunks(); i++) {
+            if (chunks.channels[i] != null) {
+                shards[i] = readBlock(chunks.channels[i], layout, stripe);
+                present[i] = shards[i] != null;
+                available += present[i] ? 1 : 0;
+            }
+        }
+        if (available < layout.dataChunks()) {
+            throw new IOException("Not enough valid blocks to decode stripe " + stripe + "; available=" + available);
+        }
+        for (var i = 0; i < layout.dataChunks(); i++) {
+            if (!present[i]) {
+                codec(layout).reconstruct(shards, present, 0, blockSize);
+                queueRepair(chunks.bucketId, chunks.assetId);
+                break;
+            }
+        }
+        var result = new byte[length];
+        var copied = 0;
+        for (var i = 0; copied < length; i++) {
+            var count = Math.min(blockSize, length - copied);
+            System.arraycopy(shards[i], 0, result, copied, count);
+            copied += count;
+        }
+        return result;
+    }
+
+    /**
+     * @return block content followed by its CRC or null if block can't be read or CRC doesn't match
+     * @throws ClosedChannelException - if stream of asset was closed
+     */
+    private byte[] readBlock(FileChannel channel, Layout layout, int stripe) throws ClosedChannelException {
+        var blockSize = layout.blockSize(stripe);
+        var position = layout.blockPosition(stripe);
+        var buffer = ByteBuffer.allocate(blockSize + CRC_SIZE);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+        } catch (ClosedChannelException e) {
+            throw e;
+        } catch (IOException e) {
+            log.warn("Can't read block of stripe {}", stripe, e);
+            return null;
+        }
+        var crc = new CRC32C();
+        crc.update(buffer.array(), 0, blockSize);
+        return (int) crc.getValue() == buffer.getInt(blockSize) ? buffer.array() : null;
+    }
+
+    /**
+     * @return header or null if it is not a valid chunk of the current coding
+     */
+    private ChunkHeader readHeader(FileChannel channel, int index) throws IOException {
+        var buffer = ByteBuffer.allocate(HEADER_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                return null;
+            }
+        }
+        var crc = new CRC32C();
+        crc.update(buffer.array(), 0, HEADER_SIZE - CRC_SIZE);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || (int) crc.getValue() != buffer.getInt(HEADER_SIZE - CRC_SIZE)) {
+            return null;
+        }
+        var chunkIndex = buffer.get() & 0xFF;
+        var chunkDataChunks = buffer.get() & 0xFF;
+        var chunkParityChunks = buffer.get() & 0xFF;
+        buffer.get(); // reserved
+        var header = new ChunkHeader(chunkIndex, chunkDataChunks, chunkParityChunks, buffer.getInt(),
+                buffer.getLong(), buffer.getLong(), buffer.getLong());
+        if (header.index() != index || (header.dataChunks() != dataChunks && header.dataChunks() != 1) ||
+                header.parityChunks() != parityChunks || header.stripeUnit() <= 0 || header.size() < 0) {
+            return null;
+        }
+        var layout = new Layout(header.dataChunks(), header.parityChunks(), header.stripeUnit(), header.size());
+        return channel.size() == layout.chunkSize() ? header : null;
+    }
+
+    private boolean isCurrent(String bucketId, String assetId, int[] placement, boolean[] damaged, long writeId) {
+        for (var i = 0; i < totalChunks; i++) {
+            if (!damaged[i]) {
+                try (var channel = FileChannel.open(chunkPath(placement[i], bucketId, assetId))) {
+                    var header = readHeader(channel, i);
+                    return header != null && header.writeId() == writeId;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private ReedSolomon codec(Layout layout) {
+        return layout.dataChunks() == dataChunks ? codec : replicaCodec;
+    }
+
+    private void queueRepair(String bucketId, String assetId) {
+        if (repairEnabled && repairQueue.add(new AssetKey(bucketId, assetId))) {
+            log.warn("Asset is degraded, it is queued for repair; {}/{}", bucketId, assetId);
+        }
+    }
+
+    /**
+     * @return disk indexes of asset chunks
+     */
+    private int[] placement(String bucketId, String assetId) {
+        var first = Math.floorMod((bucketId + "/" + assetId).hashCode(), disks.length);
+        var placement = new int[totalChunks];
+        for (var i = 0; i < totalChunks; i++) {
+            placement[i] = (first + i) % disks.length;
+        }
+        return placement;
+    }
+
+    private Path chunkPath(int disk, String bucketId, String assetId) {
+        return disks[disk].resolve(bucketId).resolve(AssetNames.toFileName(assetId));
+    }
+
+    private Path metadataPath(int disk, String bucketId, String assetId) {
+        return FilesystemAssetMetadataRepository.buildMetadataPath(disks[disk], bucketId, assetId);
+    }
+
+    /**
+     * @return names of bucket directories on all roots, including hidden buckets
+     */
+    private Stream<String> listBucketDirectories() {
+        return Arrays.stream(disks)
+                .flatMap(disk -> Arrays.stream(Objects.requireNonNullElse(disk.toFile().list(), new String[0]))
+                        .filter(name -> !name.equals(TMP_DIRECTORY))
+                        .filter(name -> disk.resolve(name).toFile().isDirectory()))
+                .distinct();
+    }
+
+    private void throwIfBucketIsNotExists(String bucketId) throws UndefinedResourceException {
+        if (!exists(bucketId)) {
+            throw new UndefinedResourceException(bucketId);
+        }
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Can't close chunk", e);
+            }
+        }
+    }
+
+    private record AssetKey(String bucketId, String assetId) {
+    }
+
+    private record ChunkHeader(int index, int dataChunks, int parityChunks, int stripeUnit, long size,
+                               long lastModified, long writeId) {
+        private ByteBuffer encode(int chunkIndex) {
+            var buffer = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .put((byte) chunkIndex)
+                    .put((byte) dataChunks)
+                    .put((byte) parityChunks)
+                    .put((byte) 0)
+                    .putInt(stripeUnit)
+                    .putLong(size)
+                    .putLong(lastModified)
+                    .putLong(writeId);
+            var crc = new CRC32C();
+            crc.update(buffer.array(), 0, HEADER_SIZE - CRC_SIZE);
+            return buffer.putInt((int) crc.getValue()).flip();
+        }
+    }
+
+    /**
+     * Geometry of chunk: all stripes are full except the last one, its blocks are shorter
+     */
+    private record Layout(int dataChunks, int parityChunks, int stripeUnit, long size) {
+        private int chunks() {
+            return dataChunks + parityChunks;
+        }
+
+        private int stripeSize() {
+            return dataChunks * stripeUnit;
+        }
+
+        private int stripes() {
+            return (int) ((size + stripeSize() - 1) / stripeSize());
+        }
+
+        private int blockSize(int stripe) {
+            var rest = size - (long) stripe * stripeSize();
+            return rest >= stripeSize() ? stripeUnit : ceilDiv((int) rest, dataChunks);
+        }
+
+        private long blockPosition(int stripe) {
+            return HEADER_SIZE + (long) stripe * (stripeUnit + CRC_SIZE);
+        }
+
+        private long chunkSize() {
+            var stripes = stripes();
+            return stripes == 0 ? HEADER_SIZE : blockPosition(stripes - 1) + blockSize(stripes - 1) + CRC_SIZE;
+        }
+    }
+
+    /**
+     * Opened chunks of one write, missing and invalid chunks are null
+     */
+    private static class ChunkSet implements AutoCloseable {
+        private final String bucketId;
+        private final String assetId;
+        private final ChunkHeader header;
+        private final Layout layout;
+        private final FileChannel[] channels;
+
+        private ChunkSet(String bucketId, String assetId, ChunkHeader header, Layout layout, FileChannel[] channels) {
+            this.bucketId = bucketId;
+            this.assetId = assetId;
+            this.header = header;
+            this.layout = layout;
+            this.channels = channels;
+        }
+
+        @Override
+        public void close() {
+            for (var channel : channels) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * Writes chunks into temporary files on their roots and moves them into bucket directories on commit.
+     * Asset is written while at most parity chunks count of chunks fail, failed chunks are rebuilt by repair.
+     */
+    private class ChunkWriter implements AutoCloseable {
+        private final int[] placement;
+        private final Path[] tmpPaths = new Path[totalChunks];
+        private final FileChannel[] channels = new FileChannel[totalChunks];
+        private int failed;
+
+        private ChunkWriter(int[] placement, boolean[] selected) throws InternalStorageException {
+            this.placement = placement;
+            for (var i = 0; i < totalChunks; i++) {
+                if (selected[i]) {
+                    create(i);
+                }
+            }
+        }
+
+        /**
+         * Add chunk which is found damaged during writing
+         * @param source - the old chunk, its blocks before position are valid and they are copied as is
+         */
+        private void add(int index, FileChannel source, long position) throws InternalStorageException {
+            if (!create(index)) {
+                return;
+            }
+            try {
+                channels[index].position(HEADER_SIZE);
+                var from = (long) HEADER_SIZE;
+                while (from < position) {
+                    var count = source.transferTo(from, position - from, channels[index]);
+                    if (count <= 0) {
+                        throw new IOException("Chunk is shorter than its verified blocks");
+                    }
+                    from += count;
+                }
+            } catch (IOException e) {
+                fail(index, e);
+            }
+        }
+
+        private boolean create(int index) throws InternalStorageException {
+            try {
+                var tmpDir = disks[placement[index]].resolve(TMP_DIRECTORY);
+                Files.createDirectories(tmpDir);
+                tmpPaths[index] = Files.createTempFile(tmpDir, FilesystemStorageRepository.HIDDEN_PREFIX, ".tmp");
+                channels[index] = FileChannel.open(tmpPaths[index], StandardOpenOption.WRITE);
+                return true;
+            } catch (IOException e) {
+                fail(index, e);
+                return false;
+            }
+        }
+
+        /**
+         * @param block - block content with space for CRC after it
+         */
+        private void writeBlock(int index, byte[] block, int blockSize, long position)
+                throws InternalStorageException {
+            if (channels[index] == null) {
+                return;
+            }
+            var crc = new CRC32C();
+            crc.update(block, 0, blockSize);
+            var buffer = ByteBuffer.wrap(block, 0, blockSize + CRC_SIZE);
+            buffer.putInt(blockSize, (int) crc.getValue());
+            try {
+                while (buffer.hasRemaining()) {
+                    channels[index].write(buffer, position + buffer.position());
+                }
+            } catch (IOException e) {
+                fail(index, e);
+            }
+        }
+
+        private void writeHeaders(ChunkHeader header) throws InternalStorageException {
+            for (var i = 0; i < totalChunks; i++) {
+                if (channels[i] == null) {
+                    continue;
+                }
+                var buffer = header.encode(i);
+                try {
+                    while (buffer.hasRemaining()) {
+                        channels[i].write(buffer, buffer.position());
+                    }
+                    channels[i].close();
+                } catch (IOException e) {
+                    fail(i, e);
+                }
+            }
+        }
+
+        private void commit(String bucketId, String assetId) throws InternalStorageException {
+            for (var i = 0; i < totalChunks; i++) {
+                if (channels[i] == null) {
+                    continue;
+                }
+                var target = chunkPath(placement[i], bucketId, assetId);
+                try {
+                    Files.createDirectories(target.getParent());
+                    Files.move(tmpPaths[i], target, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    tmpPaths[i] = null;
+                } catch (IOException e) {
+                    fail(i, e);
+                }
+            }
+            if (failed > 0) {
+                queueRepair(bucketId, assetId);
+            }
+        }
+
+        private void fail(int index, IOException e) throws InternalStorageException {
+            log.warn("Chunk write failed; root={}", disks[placement[index]], e);
+            closeQuietly(channels[index]);
+            channels[index] = null;
+            if (++failed > parityChunks) {
+                throw new InternalStorageException("Not enough roots to write asset; failed=" + failed, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            for (var i = 0; i < totalChunks; i++) {
+                closeQuietly(channels[i]);
+                if (tmpPaths[i] != null) {
+                    try {
+                        Files.deleteIfExists(tmpPaths[i]);
+                    } catch (IOException e) {
+                        log.warn("Can't remove temporary chunk; {}", tmpPaths[i], e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.util.AssetNames;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Metadata is stored as json file per asset in hidden directory of the bucket:
+ * {@code <root>/<bucketId>/.metadata/<assetId>.json}
+ * recently used entries are kept in memory.
+ * Metadata of asset which is buffered by write-back is kept in the write-back journal until asset is flushed.
+ */
+@Profile("FS-STORAGE")
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class FilesystemAssetMetadataRepository implements AssetMetadataRepository {
+    public static final String METADATA_DIRECTORY = ".metadata";
+    private static final String METADATA_EXTENSION = ".json";
+
+    private final ObjectMapper objectMapper;
+    private final FilesystemStorageRepository storageRepository;
+
+    @Value("${storage.fs.root-directory}")
+    private String rootDir;
+
+    @Value("${storage.fs.metadata.cache-size:100000}")
+    private int cacheSize;
+
+    private Path rootPath;
+
+    private Map<String, AssetMetadata> cache;
+
+    @PostConstruct
+    private void init() {
+        rootPath = Paths.get(rootDir);
+        cache = Collections.synchronizedMap(new LRUMap<>(cacheSize));
+    }
+
+    @Override
+    public Optional<AssetMetadata> find(String bucketId, String assetId) throws InternalStorageException {
+        var cached = cache.get(buildCacheKey(bucketId, assetId));
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        var metadataPath = buildMetadataPath(bucketId, assetId);
+        var buffered = storageRepository.findBufferedMetadata(bucketId, assetId);
+        if (buffered == null && !Files.isRegularFile(metadataPath)) {
+            return Optional.empty();
+        }
+        try {
+            var metadata = buffered != null
+                    ? objectMapper.readValue(buffered, AssetMetadata.class)
+                    : objectMapper.readValue(metadataPath.toFile(), AssetMetadata.class);
+            cache.put(buildCacheKey(bucketId, assetId), metadata);
+            return Optional.of(metadata);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void save(String bucketId, AssetMetadata metadata) throws InternalStorageException {
+        var assetId = metadata.getAssetId();
+        var metadataPath = buildMetadataPath(bucketId, assetId);
+        try {
+            if (storageRepository.saveBufferedMetadata(bucketId, assetId, objectMapper.writeValueAsBytes(metadata))) {
+                cache.put(buildCacheKey(bucketId, assetId), metadata);
+                return;
+            }
+            Files.createDirectories(metadataPath.getParent());
+            var tmpPath = Files.createTempFile(metadataPath.getParent(), ".", ".tmp");
+            objectMapper.writeValue(tmpPath.toFile(), metadata);
+            Files.move(tmpPath, metadataPath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            cache.put(buildCacheKey(bucketId, assetId), metadata);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't write asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void remove(String bucketId, String assetId) throws InternalStorageException {
+        cache.remove(buildCacheKey(bucketId, assetId));
+        try {
+            Files.deleteIfExists(buildMetadataPath(bucketId, assetId));
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't remove asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private Path buildMetadataPath(String bucketId, String assetId) {
+        return buildMetadataPath(rootPath, bucketId, assetId);
+    }
+
+    static Path buildMetadataPath(Path rootPath, String bucketId, String assetId) {
+        return rootPath.resolve(bucketId).resolve(METADATA_DIRECTORY)
+                .resolve(AssetNames.toFileName(assetId) + METADATA_EXTENSION);
+    }
+
+    private String buildCacheKey(String bucketId, String assetId) {
+        return bucketId + "/" + assetId;
+    }
+}
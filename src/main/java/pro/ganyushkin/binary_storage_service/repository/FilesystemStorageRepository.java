@@ -1,36 +1,190 @@
 package pro.ganyushkin.binary_storage_service.repository;
 
+import io.opentelemetry.api.trace.Tracer;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
 import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
 import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.util.AssetNames;
+import pro.ganyushkin.binary_storage_service.util.DirectBufferPool;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 @Profile("FS-STORAGE")
 @Slf4j
+@RequiredArgsConstructor
 @Component
 public class FilesystemStorageRepository implements BinaryStorageRepository {
+    /**
+     * buckets with this prefix are used for internal needs and are not listed
+     */
+    public static final String HIDDEN_PREFIX = ".";
+    /**
+     * compressed cold asset file: 8 bytes of original size and deflate stream of asset content
+     */
+    private static final String COMPRESSED_EXTENSION = ".z";
+    /**
+     * uncompressed cold asset file: copy of asset content
+     */
+    private static final String PLAIN_EXTENSION = ".raw";
+    /**
+     * hidden directory in the primary root for partially written files
+     */
+    private static final String TMP_DIRECTORY = HIDDEN_PREFIX + "tmp";
+    /**
+     * directory times of some filesystems have one second granularity
+     */
+    private static final Duration LISTING_RACY_WINDOW = Duration.ofSeconds(2);
+
+    private final Tracer tracer;
 
     @Value("${storage.fs.root-directory}")
     private String rootDir;
 
+    @Value("${storage.fs.cold-root-directory:${storage.fs.root-directory}/.cold}")
+    private String coldRootDir;
+
+    @Value("${storage.fs.cold-compression:true}")
+    private boolean coldCompression;
+
+    /**
+     * concurrent reads of assets up to this size share one disk read, 0 - disabled
+     */
+    @Value("${storage.fs.shared-read.max-size:8MB}")
+    private DataSize sharedReadMaxSize;
+
+    @Value("${storage.fs.shared-read.chunk-size:64KB}")
+    private DataSize sharedReadChunkSize;
+
+    /**
+     * total size of assets which are shared at once, other assets are read by private streams
+     */
+    @Value("${storage.fs.shared-read.max-memory:256MB}")
+    private DataSize sharedReadMaxMemory;
+
+    /**
+     * assets up to this size are read from memory mapped files, 0 - disabled
+     */
+    @Value("${storage.fs.mmap.max-size:1MB}")
+    private DataSize mmapMaxSize;
+
+    @Value("${storage.fs.mmap.max-mappings:4096}")
+    private int mmapMaxMappings;
+
+    @Value("${storage.fs.mmap.max-mapped-size:512MB}")
+    private DataSize mmapMaxMappedSize;
+
+    @Value("${storage.fs.io.upload-buffer-size:256KB}")
+    private DataSize uploadBufferSize;
+
+    @Value("${storage.fs.io.download-buffer-size:256KB}")
+    private DataSize downloadBufferSize;
+
+    /**
+     * max count of direct buffers per transfer direction
+     */
+    @Value("${storage.fs.io.max-pooled-buffers:64}")
+    private int maxPooledBuffers;
+
+    /**
+     * uploads up to max asset size are acknowledged after they are written to the journal,
+     * files are created by background flusher
+     */
+    @Value("${storage.fs.write-back.enabled:false}")
+    private boolean writeBackEnabled;
+
+    @Value("${storage.fs.write-back.max-asset-size:64KB}")
+    private DataSize writeBackMaxAssetSize;
+
+    /**
+     * memory limit of buffered assets, uploads are written directly when it is reached
+     */
+    @Value("${storage.fs.write-back.max-buffered-size:256MB}")
+    private DataSize writeBackMaxBufferedSize;
+
+    @Value("${storage.fs.write-back.flush-interval:1s}")
+    private Duration writeBackFlushInterval;
+
+    @Value("${storage.fs.write-back.journal-directory:${storage.fs.root-directory}/.journal}")
+    private String writeBackJournalDir;
+
+    /**
+     * journal is forced to disk before upload is acknowledged
+     */
+    @Value("${storage.fs.write-back.sync:true}")
+    private boolean writeBackSync;
+
+    /**
+     * count of buckets which sorted listings are kept for paged listing, 0 disables the cache
+     */
+    @Value("${storage.fs.listing-cache.max-buckets:16}")
+    private int listingCacheMaxBuckets;
+
     private Path rootPath;
 
+    private Path coldRootPath;
+
+    private SharedReadRegistry sharedReads;
+
+    private MappedFilePool mappedFiles;
+
+    private DirectBufferPool uploadBuffers;
+
+    private DirectBufferPool downloadBuffers;
+
+    /**
+     * null if write-back is disabled
+     */
+    private WriteBackBuffer writeBack;
+
+    /**
+     * null if listing cache is disabled
+     */
+    private BucketListingCache listings;
+
+    /**
+     * hot paths of assets which are moved between tiers, moves of one asset are not concurrent
+     */
+    private final Set<Path> tierMoves = ConcurrentHashMap.newKeySet();
+
     @PostConstruct
     private void init() throws InternalStorageException {
         rootPath = Paths.get(rootDir);
@@ -41,6 +195,31 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
             }
             log.info("fs root storage directory was created; {}", rootPath);
         }
+        coldRootPath = Paths.get(coldRootDir);
+        mappedFiles = new MappedFilePool(mmapMaxMappings, mmapMaxMappedSize.toBytes());
+        uploadBuffers = new DirectBufferPool((int) uploadBufferSize.toBytes(), maxPooledBuffers);
+        downloadBuffers = new DirectBufferPool((int) downloadBufferSize.toBytes(), maxPooledBuffers);
+        sharedReads = new SharedReadRegistry((int) sharedReadChunkSize.toBytes(), sharedReadMaxMemory.toBytes(),
+                downloadBuffers);
+        if (listingCacheMaxBuckets > 0) {
+            listings = new BucketListingCache(listingCacheMaxBuckets, LISTING_RACY_WINDOW);
+        }
+        if (writeBackEnabled) {
+            writeBack = new WriteBackBuffer(rootPath, Paths.get(writeBackJournalDir), rootPath.resolve(TMP_DIRECTORY),
+                    writeBackMaxBufferedSize.toBytes(), writeBackSync, mappedFiles::invalidate);
+            try {
+                writeBack.open(writeBackFlushInterval);
+            } catch (IOException e) {
+                throw new InternalStorageException("Can't open write-back journal " + writeBackJournalDir, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    private void destroy() throws IOException {
+        if (writeBack != null) {
+            writeBack.close();
+        }
     }
 
     @Override
@@ -51,11 +230,19 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
 
     @Override
     public boolean exists(String bucketId, String assetId) {
-        if (!exists(bucketId)) {
-            return false;
+        var span = tracer.spanBuilder("fs.exists").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            if (!exists(bucketId)) {
+                return false;
+            }
+            if (findBuffered(bucketId, assetId) != null) {
+                return true;
+            }
+            var assetF = buildAssetFile(bucketId, assetId);
+            return (assetF.exists() && assetF.isFile()) || isCold(bucketId, assetId);
+        } finally {
+            span.end();
         }
-        var assetF = buildAssetFile(bucketId, assetId);
-        return assetF.exists() && assetF.isFile();
     }
 
     @Override
@@ -70,9 +257,27 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
         log.info("bucket was created for bucketId={}", bucketId);
     }
 
+    @Override
+    public void deleteBucket(String bucketId) throws UndefinedResourceException, InternalStorageException {
+        throwIfBucketIsNotExists(bucketId);
+        var bucketPath = buildBucketPath(bucketId);
+        try {
+            Files.deleteIfExists(bucketPath.resolve(FilesystemAssetMetadataRepository.METADATA_DIRECTORY));
+            Files.deleteIfExists(buildColdBucketPath(bucketId));
+            Files.delete(bucketPath);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't delete bucket " + bucketId, e);
+        }
+        if (listings != null) {
+            listings.invalidate(bucketId);
+        }
+        log.info("bucket was deleted for bucketId={}", bucketId);
+    }
+
     @Override
     public List<String> listBuckets() {
         return Arrays.stream(Objects.requireNonNull(rootPath.toFile().list()))
+                .filter(name -> !name.startsWith(HIDDEN_PREFIX))
                 .filter(name -> rootPath.resolve(name).toFile().isDirectory())
                 .toList();
     }
@@ -80,38 +285,191 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
     @Override
     public List<String> listAssets(String bucketId) throws UndefinedResourceException {
         throwIfBucketIsNotExists(bucketId);
+        var assets = listStoredAssets(bucketId);
+        if (writeBack != null) {
+            assets = Stream.concat(assets, writeBack.list(bucketId).stream());
+        }
+        return assets.distinct().toList();
+    }
+
+    /**
+     * Page is taken from sorted listing of the bucket which is kept while bucket directories are not changed,
+     * so the whole bucket is listed and sorted once instead of once per page.
+     */
+    @Override
+    public List<String> listAssets(String bucketId, String prefix, String after, int limit)
+            throws UndefinedResourceException {
+        if (listings == null) {
+            return BinaryStorageRepository.super.listAssets(bucketId, prefix, after, limit);
+        }
+        throwIfBucketIsNotExists(bucketId);
+        if (limit <= 0) {
+            return List.of();
+        }
+        var stamps = readListingStamps(bucketId);
+        var assetIds = stamps != null ? listings.find(bucketId, stamps) : null;
+        if (assetIds == null) {
+            assetIds = listStoredAssets(bucketId).distinct().sorted().toArray(String[]::new);
+            if (stamps != null) {
+                listings.put(bucketId, stamps, assetIds);
+            }
+        }
+        var page = BucketListingCache.page(assetIds, prefix, after, limit);
+        if (writeBack == null) {
+            return page;
+        }
+        // buffered assets have no files until they are flushed
+        var merged = new TreeSet<>(page);
+        for (var assetId : writeBack.list(bucketId)) {
+            if (assetId.startsWith(prefix) && (after == null || assetId.compareTo(after) > 0)) {
+                merged.add(assetId);
+            }
+        }
+        return merged.stream().limit(limit).toList();
+    }
+
+    /**
+     * @return hot and cold assets which have files, ids of asset in both tiers are repeated
+     */
+    private Stream<String> listStoredAssets(String bucketId) {
         var assetPath = buildBucketPath(bucketId);
-        return Arrays.stream(Objects.requireNonNull(assetPath.toFile().list()))
+        var hotAssets = Arrays.stream(Objects.requireNonNull(assetPath.toFile().list()))
                 .filter(name -> assetPath.resolve(name).toFile().isFile())
-                .toList();
+                .map(AssetNames::toAssetId);
+        var coldPath = buildColdBucketPath(bucketId);
+        var coldNames = coldPath.toFile().list();
+        if (coldNames == null) {
+            return hotAssets;
+        }
+        var coldAssets = Arrays.stream(coldNames)
+                .filter(name -> name.endsWith(COMPRESSED_EXTENSION) || name.endsWith(PLAIN_EXTENSION))
+                .filter(name -> coldPath.resolve(name).toFile().isFile())
+                .map(name -> AssetNames.toAssetId(name.substring(0, name.lastIndexOf('.'))));
+        return Stream.concat(hotAssets, coldAssets);
+    }
+
+    /**
+     * @return modification times of hot and cold bucket directories, null if they can't be read
+     */
+    private FileTime[] readListingStamps(String bucketId) {
+        try {
+            var coldPath = buildColdBucketPath(bucketId);
+            return new FileTime[] {
+                    Files.getLastModifiedTime(buildBucketPath(bucketId)),
+                    Files.isDirectory(coldPath) ? Files.getLastModifiedTime(coldPath) : null
+            };
+        } catch (IOException e) {
+            log.debug("Listing of bucket isn't cached; bucketId={}", bucketId, e);
+            return null;
+        }
     }
 
     @Override
     public InputStream read(String bucketId, String assetId)
             throws InternalStorageException, UndefinedResourceException {
-        if (!exists(bucketId, assetId)) {
-            throw new UndefinedResourceException(bucketId, assetId);
+        var span = tracer.spanBuilder("fs.open").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var buffered = findBuffered(bucketId, assetId);
+            if (buffered != null) {
+                return new ByteArrayInputStream(buffered.getData());
+            }
+            if (!exists(bucketId, assetId)) {
+                throw new UndefinedResourceException(bucketId, assetId);
+            }
+            var coldPath = findColdAssetPath(bucketId, assetId);
+            if (coldPath != null) {
+                return readCold(bucketId, assetId, coldPath);
+            }
+            try {
+                if (mmapMaxSize.toBytes() > 0 || sharedReadMaxSize.toBytes() > 0) {
+                    var assetPath = buildAssetPath(bucketId, assetId);
+                    var attributes = Files.readAttributes(assetPath, BasicFileAttributes.class);
+                    // mapped file is shared by page cache, so it is preferred over shared read
+                    if (attributes.size() <= mmapMaxSize.toBytes()) {
+                        return mappedFiles.open(assetPath, attributes);
+                    }
+                    if (attributes.size() <= sharedReadMaxSize.toBytes()) {
+                        return sharedReads.open(assetPath, attributes);
+                    }
+                }
+                return new PooledFileInputStream(buildAssetPath(bucketId, assetId), downloadBuffers);
+            } catch (NoSuchFileException e) {
+                throw new InternalStorageException("Can't read asset, bucketId=" + bucketId +
+                        "; assetId=" + assetId, e);
+            } catch (IOException e) {
+                throw new InternalStorageException("Can't read asset attributes, bucketId=" + bucketId +
+                        "; assetId=" + assetId, e);
+            }
+        } finally {
+            span.end();
         }
-        try {
-            return new FileInputStream(buildAssetFile(bucketId, assetId));
-        } catch (FileNotFoundException e) {
-            throw new InternalStorageException("Can't read asset, bucketId=" + bucketId +
-                    "; assetId=" + assetId, e);
+    }
+
+    @Override
+    public AssetMetadata stat(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        var span = tracer.spanBuilder("fs.stat").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var buffered = findBuffered(bucketId, assetId);
+            if (buffered != null) {
+                return AssetMetadata.builder()
+                        .assetId(assetId)
+                        .size(buffered.getData().length)
+                        .lastModified(buffered.getLastModified())
+                        .build();
+            }
+            if (!exists(bucketId, assetId)) {
+                throw new UndefinedResourceException(bucketId, assetId);
+            }
+            var coldPath = findColdAssetPath(bucketId, assetId);
+            if (coldPath != null) {
+                return statCold(bucketId, assetId, coldPath);
+            }
+            try {
+                var attributes = Files.readAttributes(buildAssetPath(bucketId, assetId), BasicFileAttributes.class);
+                return AssetMetadata.builder()
+                        .assetId(assetId)
+                        .size(attributes.size())
+                        .lastModified(attributes.lastModifiedTime().toInstant())
+                        .build();
+            } catch (IOException e) {
+                throw new InternalStorageException("Can't stat asset, bucketId=" + bucketId +
+                        "; assetId=" + assetId, e);
+            }
+        } finally {
+            span.end();
         }
     }
 
     @Override
     public void store(String bucketId, String assetId, InputStream data)
             throws InternalStorageException, ResourceAlreadyExists, UndefinedResourceException {
-        throwIfBucketIsNotExists(bucketId);
-        if (exists(bucketId, assetId)) {
-            throw new ResourceAlreadyExists(bucketId, assetId);
-        }
-        try {
-            Files.copy(data, buildAssetPath(bucketId, assetId));
-            log.info("Stored asset; {}/{}", bucketId, assetId);
-        } catch (IOException e) {
-            throw new InternalStorageException("Can't write data", e);
+        var span = tracer.spanBuilder("fs.write").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            throwIfBucketIsNotExists(bucketId);
+            if (exists(bucketId, assetId)) {
+                throw new ResourceAlreadyExists(bucketId, assetId);
+            }
+            try {
+                if (writeBack != null) {
+                    // one byte more than the limit tells that asset is too large for the buffer
+                    var head = data.readNBytes((int) writeBackMaxAssetSize.toBytes() + 1);
+                    if (head.length <= writeBackMaxAssetSize.toBytes() && writeBack.add(bucketId, assetId, head)) {
+                        log.debug("Buffered asset; {}/{}", bucketId, assetId);
+                        return;
+                    }
+                    data = new SequenceInputStream(new ByteArrayInputStream(head), data);
+                }
+                write(data, buildAssetPath(bucketId, assetId));
+                log.debug("Stored asset; {}/{}", bucketId, assetId);
+            } catch (FileAlreadyExistsException e) {
+                // asset was stored concurrently
+                throw new ResourceAlreadyExists(bucketId, assetId);
+            } catch (IOException e) {
+                throw new InternalStorageException("Can't write data", e);
+            }
+        } finally {
+            span.end();
         }
     }
 
@@ -120,8 +478,8 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
             throws InternalStorageException, UndefinedResourceException {
         throwIfBucketIsNotExists(bucketId);
         if (exists(bucketId, assetId)) {
-            log.info("Remove existing asset; {}/{}", bucketId, assetId);
-            if (!buildAssetFile(bucketId, assetId).delete()) {
+            log.debug("Remove existing asset; {}/{}", bucketId, assetId);
+            if (!deleteFiles(bucketId, assetId)) {
                 log.error("Can't remove asset; {}/{}", bucketId, assetId);
                 throw new InternalStorageException("Can't override asset; bucketId=" + bucketId +
                         "; assetId=" + assetId);
@@ -135,6 +493,405 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
         }
     }
 
+    @Override
+    public void delete(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+        if (!deleteFiles(bucketId, assetId)) {
+            throw new InternalStorageException("Can't remove asset; bucketId=" + bucketId +
+                    "; assetId=" + assetId);
+        }
+        log.debug("Removed asset; {}/{}", bucketId, assetId);
+    }
+
+    /**
+     * Asset files are never changed in place, so target is a hard link to source file when it is possible,
+     * otherwise content is copied by the kernel with {@link FileChannel#transferTo}.
+     * Cold asset stays cold, its file is copied as is.
+     */
+    @Override
+    public void copy(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException {
+        transfer(sourceBucketId, sourceAssetId, targetBucketId, targetAssetId, false);
+    }
+
+    /**
+     * Asset file is renamed, it is copied only if buckets are on different filesystems
+     */
+    @Override
+    public void move(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException {
+        transfer(sourceBucketId, sourceAssetId, targetBucketId, targetAssetId, true);
+    }
+
+    @Override
+    public void demote(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+        flushBuffered(bucketId, assetId);
+        var assetPath = buildAssetPath(bucketId, assetId);
+        if (!Files.isRegularFile(assetPath) || !tierMoves.add(assetPath)) {
+            return; // already cold or being moved
+        }
+        var coldPath = buildColdAssetPath(bucketId, assetId, coldCompression);
+        try {
+            var attributes = Files.readAttributes(assetPath, BasicFileAttributes.class);
+            Files.createDirectories(coldPath.getParent());
+            var tmpPath = Files.createTempFile(coldPath.getParent(), HIDDEN_PREFIX, ".tmp");
+            try (var in = Files.newInputStream(assetPath);
+                 var out = new DataOutputStream(Files.newOutputStream(tmpPath))) {
+                if (coldCompression) {
+                    out.writeLong(attributes.size());
+                    try (var deflater = new DeflaterOutputStream(out)) {
+                        in.transferTo(deflater);
+                    }
+                } else {
+                    in.transferTo(out);
+                }
+            }
+            // cold asset keeps modification time of original asset
+            Files.setLastModifiedTime(tmpPath, attributes.lastModifiedTime());
+            if (isChanged(assetPath, attributes)) {
+                Files.delete(tmpPath);
+                log.info("Asset was changed while moving to cold tier; {}/{}", bucketId, assetId);
+                return;
+            }
+            // hot file is still authoritative, stale cold file of previous demotion can be replaced
+            Files.move(tmpPath, coldPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!removeHotFile(assetPath, attributes)) {
+                Files.deleteIfExists(coldPath);
+                log.info("Asset was changed while moving to cold tier; {}/{}", bucketId, assetId);
+                return;
+            }
+            log.info("Asset was moved to cold tier; {}/{}", bucketId, assetId);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't move asset to cold tier; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        } finally {
+            tierMoves.remove(assetPath);
+        }
+    }
+
+    /**
+     * Remove hot file only if it is the same file which was copied between tiers.
+     * File is renamed aside atomically and checked there, file of concurrent upload is moved back.
+     * @return false if asset was removed or overwritten concurrently
+     */
+    private boolean removeHotFile(Path assetPath, BasicFileAttributes attributes) throws IOException {
+        var asidePath = rootPath.resolve(TMP_DIRECTORY).resolve(HIDDEN_PREFIX + UUID.randomUUID() + ".tmp");
+        Files.createDirectories(asidePath.getParent());
+        try {
+            Files.move(assetPath, asidePath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        mappedFiles.invalidate(assetPath);
+        if (!isChanged(asidePath, attributes)) {
+            Files.delete(asidePath);
+            return true;
+        }
+        try {
+            moveNoReplace(asidePath, assetPath);
+        } catch (FileAlreadyExistsException e) {
+            // even newer file was uploaded meanwhile
+            Files.delete(asidePath);
+        }
+        return false;
+    }
+
+    @Override
+    public void promote(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+        var coldPath = findColdAssetPath(bucketId, assetId);
+        var assetPath = buildAssetPath(bucketId, assetId);
+        if (coldPath == null || !tierMoves.add(assetPath)) {
+            return; // already hot or being moved
+        }
+        try {
+            var coldAttributes = Files.readAttributes(coldPath, BasicFileAttributes.class);
+            // temporary file is created in the primary root, so it is moved into bucket atomically
+            var tmpDir = rootPath.resolve(TMP_DIRECTORY);
+            Files.createDirectories(tmpDir);
+            var tmpPath = Files.createTempFile(tmpDir, HIDDEN_PREFIX, ".tmp");
+            try (var in = readCold(bucketId, assetId, coldPath)) {
+                Files.copy(in, tmpPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.setLastModifiedTime(tmpPath, coldAttributes.lastModifiedTime());
+            var attributes = Files.readAttributes(tmpPath, BasicFileAttributes.class);
+            try {
+                moveNoReplace(tmpPath, assetPath);
+            } catch (FileAlreadyExistsException e) {
+                // asset was stored concurrently
+                Files.delete(tmpPath);
+                return;
+            }
+            if (!Files.exists(coldPath) || isChanged(coldPath, coldAttributes)) {
+                // asset was removed or overwritten while it was copied, promoted file is stale
+                removeHotFile(assetPath, attributes);
+                log.info("Asset was changed while moving to hot tier; {}/{}", bucketId, assetId);
+                return;
+            }
+            Files.deleteIfExists(coldPath);
+            log.info("Asset was moved to hot tier; {}/{}", bucketId, assetId);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't move asset to hot tier; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        } finally {
+            tierMoves.remove(assetPath);
+        }
+    }
+
+    @Override
+    public boolean isCold(String bucketId, String assetId) {
+        return findColdAssetPath(bucketId, assetId) != null;
+    }
+
+    /**
+     * @return path of cold asset file or null if asset is not cold
+     */
+    private Path findColdAssetPath(String bucketId, String assetId) {
+        var compressedPath = buildColdAssetPath(bucketId, assetId, true);
+        if (Files.isRegularFile(compressedPath)) {
+            return compressedPath;
+        }
+        var plainPath = buildColdAssetPath(bucketId, assetId, false);
+        return Files.isRegularFile(plainPath) ? plainPath : null;
+    }
+
+    private boolean isCompressed(Path coldPath) {
+        return coldPath.getFileName().toString().endsWith(COMPRESSED_EXTENSION);
+    }
+
+    private boolean isChanged(Path assetPath, BasicFileAttributes attributes) throws IOException {
+        var current = Files.readAttributes(assetPath, BasicFileAttributes.class);
+        return current.size() != attributes.size() ||
+                !current.lastModifiedTime().equals(attributes.lastModifiedTime()) ||
+                !Objects.equals(current.fileKey(), attributes.fileKey());
+    }
+
+    private InputStream readCold(String bucketId, String assetId, Path coldPath) throws InternalStorageException {
+        try {
+            if (!isCompressed(coldPath)) {
+                return Files.newInputStream(coldPath);
+            }
+            var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(coldPath)));
+            in.readLong();
+            return new InflaterInputStream(in);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read cold asset, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private AssetMetadata statCold(String bucketId, String assetId, Path coldPath) throws InternalStorageException {
+        try {
+            long size;
+            if (isCompressed(coldPath)) {
+                try (var in = new DataInputStream(Files.newInputStream(coldPath))) {
+                    size = in.readLong();
+                }
+            } else {
+                size = Files.size(coldPath);
+            }
+            return AssetMetadata.builder()
+                    .assetId(assetId)
+                    .size(size)
+                    .lastModified(Files.getLastModifiedTime(coldPath).toInstant())
+                    .build();
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't stat cold asset, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private boolean deleteFiles(String bucketId, String assetId) {
+        try {
+            if (writeBack != null) {
+                writeBack.discard(buildAssetPath(bucketId, assetId));
+            }
+            // open readers keep their mapping until they are closed
+            mappedFiles.invalidate(buildAssetPath(bucketId, assetId));
+            Files.deleteIfExists(buildAssetPath(bucketId, assetId));
+            Files.deleteIfExists(buildColdAssetPath(bucketId, assetId, true));
+            Files.deleteIfExists(buildColdAssetPath(bucketId, assetId, false));
+            return true;
+        } catch (IOException e) {
+            log.error("Can't remove asset files; {}/{}", bucketId, assetId, e);
+            return false;
+        }
+    }
+
+    private void transfer(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId,
+                          boolean move) throws InternalStorageException, UndefinedResourceException {
+        if (!exists(sourceBucketId, sourceAssetId)) {
+            throw new UndefinedResourceException(sourceBucketId, sourceAssetId);
+        }
+        throwIfBucketIsNotExists(targetBucketId);
+        if (sourceBucketId.equals(targetBucketId) && sourceAssetId.equals(targetAssetId)) {
+            return;
+        }
+        flushBuffered(sourceBucketId, sourceAssetId);
+        var sourcePath = buildAssetPath(sourceBucketId, sourceAssetId);
+        var cold = !Files.isRegularFile(sourcePath);
+        if (cold) {
+            sourcePath = findColdAssetPath(sourceBucketId, sourceAssetId);
+            if (sourcePath == null) {
+                throw new UndefinedResourceException(sourceBucketId, sourceAssetId);
+            }
+        }
+        var targetPath = cold
+                ? buildColdAssetPath(targetBucketId, targetAssetId, isCompressed(sourcePath))
+                : buildAssetPath(targetBucketId, targetAssetId);
+        if (!deleteFiles(targetBucketId, targetAssetId)) {
+            throw new InternalStorageException("Can't override asset; bucketId=" + targetBucketId +
+                    "; assetId=" + targetAssetId);
+        }
+        try {
+            // temporary file is created on the filesystem of target, so it is moved into place atomically
+            var tmpDir = cold ? targetPath.getParent() : rootPath.resolve(TMP_DIRECTORY);
+            Files.createDirectories(tmpDir);
+            var tmpPath = tmpDir.resolve(HIDDEN_PREFIX + UUID.randomUUID() + ".tmp");
+            if (move) {
+                mappedFiles.invalidate(sourcePath);
+                moveFile(sourcePath, tmpPath);
+            } else {
+                linkOrCopyFile(sourcePath, tmpPath);
+            }
+            Files.move(tmpPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Asset was {}; {}/{} -> {}/{}", move ? "moved" : "copied",
+                    sourceBucketId, sourceAssetId, targetBucketId, targetAssetId);
+        } catch (NoSuchFileException e) {
+            // source was removed or moved to other tier concurrently
+            throw new UndefinedResourceException(sourceBucketId, sourceAssetId);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't " + (move ? "move" : "copy") + " asset; bucketId=" +
+                    sourceBucketId + "; assetId=" + sourceAssetId, e);
+        }
+    }
+
+    /**
+     * Move file into place without replacing existing target: rename replaces target silently,
+     * so file is hard linked (link fails if target exists) and source name is removed
+     * @throws FileAlreadyExistsException - if target exists
+     */
+    static void moveNoReplace(Path sourcePath, Path targetPath) throws IOException {
+        try {
+            Files.createLink(targetPath, sourcePath);
+        } catch (UnsupportedOperationException e) {
+            // not atomic, target can be created between the check and the move
+            Files.move(sourcePath, targetPath);
+            return;
+        }
+        Files.delete(sourcePath);
+    }
+
+    private static void moveFile(Path sourcePath, Path targetPath) throws IOException {
+        try {
+            Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            copyFile(sourcePath, targetPath);
+            Files.delete(sourcePath);
+        }
+    }
+
+    private static void linkOrCopyFile(Path sourcePath, Path targetPath) throws IOException {
+        try {
+            Files.createLink(targetPath, sourcePath);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // filesystem doesn't support hard links or paths are on different filesystems
+            copyFile(sourcePath, targetPath);
+        }
+    }
+
+    private static void copyFile(Path sourcePath, Path targetPath) throws IOException {
+        try (var source = FileChannel.open(sourcePath, StandardOpenOption.READ);
+             var target = FileChannel.open(targetPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            var size = source.size();
+            var position = 0L;
+            while (position < size) {
+                position += source.transferTo(position, size - position, target);
+            }
+        }
+        Files.setLastModifiedTime(targetPath, Files.getLastModifiedTime(sourcePath));
+    }
+
+    /**
+     * Copy data to new file through pooled direct buffer, buffer is filled completely before each write.
+     * Stream is read into pooled array, so no per request array is allocated by channel adapter.
+     */
+    private void write(InputStream data, Path path) throws IOException {
+        var buffer = uploadBuffers.acquire();
+        var array = buffer.hasArray() ? buffer.array() : uploadBuffers.acquireArray();
+        try (var output = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            var count = array.length;
+            while (count == array.length) {
+                count = data.readNBytes(array, 0, array.length);
+                buffer.clear();
+                if (!buffer.hasArray()) {
+                    buffer.put(array, 0, count);
+                    buffer.flip();
+                } else {
+                    buffer.limit(count);
+                }
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+            }
+        } finally {
+            if (!buffer.hasArray()) {
+                uploadBuffers.releaseArray(array);
+            }
+            uploadBuffers.release(buffer);
+        }
+    }
+
+    /**
+     * @return buffered content of asset which file is not written yet or null
+     */
+    private WriteBackBuffer.Entry findBuffered(String bucketId, String assetId) {
+        return writeBack == null ? null : writeBack.find(buildAssetPath(bucketId, assetId));
+    }
+
+    /**
+     * Keep metadata json of buffered asset in the write-back journal
+     * @return false if asset is not buffered, metadata should be written to file
+     */
+    boolean saveBufferedMetadata(String bucketId, String assetId, byte[] metadata) throws IOException {
+        return writeBack != null && writeBack.setMetadata(buildAssetPath(bucketId, assetId), metadata);
+    }
+
+    /**
+     * @return metadata json of buffered asset or null
+     */
+    byte[] findBufferedMetadata(String bucketId, String assetId) {
+        var buffered = findBuffered(bucketId, assetId);
+        return buffered == null ? null : buffered.getMetadata();
+    }
+
+    /**
+     * File operations need the file of asset, so buffered asset is written out of batch
+     */
+    private void flushBuffered(String bucketId, String assetId) throws InternalStorageException {
+        if (writeBack == null) {
+            return;
+        }
+        try {
+            writeBack.flush(buildAssetPath(bucketId, assetId));
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't flush buffered asset; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
     private void throwIfBucketIsNotExists(String bucketId) throws UndefinedResourceException {
         if (!exists(bucketId)) {
             throw new UndefinedResourceException(bucketId);
@@ -142,7 +899,7 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
     }
 
     private Path buildBucketPath(String bucketId) {
-        return rootPath.resolve(bucketId);
+        return resolveName(rootPath, bucketId);
     }
 
     private File buildBucketFile(String bucketId) {
@@ -150,10 +907,31 @@ public class FilesystemStorageRepository implements BinaryStorageRepository {
     }
 
     private Path buildAssetPath(String bucketId, String assetId) {
-        return buildBucketPath(bucketId).resolve(assetId);
+        return resolveName(buildBucketPath(bucketId), AssetNames.toFileName(assetId));
     }
 
     private File buildAssetFile(String bucketId, String assetId) {
         return buildAssetPath(bucketId, assetId).toFile();
     }
+
+    private Path buildColdBucketPath(String bucketId) {
+        return resolveName(coldRootPath, bucketId);
+    }
+
+    private Path buildColdAssetPath(String bucketId, String assetId, boolean compressed) {
+        return resolveName(buildColdBucketPath(bucketId),
+                AssetNames.toFileName(assetId) + (compressed ? COMPRESSED_EXTENSION : PLAIN_EXTENSION));
+    }
+
+    /**
+     * Bucket ids and encoded asset ids are single names, so every path is a direct child of its parent directory.
+     * Absolute names, names with separators or {@code ..} would point to other bucket or out of the storage root.
+     */
+    private static Path resolveName(Path parent, String name) {
+        var path = parent.resolve(name);
+        if (!parent.normalize().equals(path.normalize().getParent())) {
+            throw new IllegalArgumentException("Invalid name; parent=" + parent + "; name=" + name);
+        }
+        return path;
+    }
 }
@@ -0,0 +1,399 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.config.LifecycleProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Time ordered index of asset writes for buckets with lifecycle rules.
+ * Index of bucket is a set of append only segments, one segment per day:
+ * {@code <index-directory>/<bucketId>/<yyyyMMdd>.log} with {@code <epochMillis>\t<assetId>} lines.
+ * Sweeper reads segments from its cursor, so it never scans bucket directories.
+ * Every stage (lifecycle rule action or tiering) has its own cursor, segment is removed when all stages passed it.
+ * When tiering is enabled writes into all visible buckets are indexed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class LifecycleIndexRepository {
+    /**
+     * segment with assets which were stored before lifecycle rules were enabled, it is always the first one
+     */
+    public static final String BACKFILL_SEGMENT = "00000000-backfill";
+    public static final String STAGE_COLD = "cold";
+    public static final String STAGE_EXPIRE = "expire";
+    public static final String STAGE_TIERING = "tiering";
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final String CURSOR_EXTENSION = ".cursor";
+    private static final String BACKFILL_MARKER = ".backfilled";
+    private static final DateTimeFormatter SEGMENT_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+
+    private final LifecycleProperties properties;
+
+    @Value("${storage.lifecycle.index-directory:${storage.fs.root-directory}/.lifecycle}")
+    private String indexDir;
+
+    @Value("${storage.tiering.enabled:false}")
+    private boolean tieringEnabled;
+
+    private Path indexPath;
+
+    private final ConcurrentMap<String, Object> appendLocks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        indexPath = Paths.get(indexDir);
+    }
+
+    /**
+     * @return true if writes into bucket should be indexed
+     */
+    public boolean isIndexed(String bucketId) {
+        return !listStages(bucketId).isEmpty();
+    }
+
+    /**
+     * @return stages which read index of bucket
+     */
+    public List<String> listStages(String bucketId) {
+        if (bucketId.startsWith(FilesystemStorageRepository.HIDDEN_PREFIX)) {
+            return List.of();
+        }
+        var stages = new ArrayList<String>();
+        var rule = properties.isEnabled() ? properties.getRules().get(bucketId) : null;
+        if (rule != null && rule.getColdAfter() != null) {
+            stages.add(STAGE_COLD);
+        }
+        if (rule != null && rule.getExpireAfter() != null) {
+            stages.add(STAGE_EXPIRE);
+        }
+        if (tieringEnabled) {
+            stages.add(STAGE_TIERING);
+        }
+        return stages;
+    }
+
+    /**
+     * Add asset write to the index, it is skipped for buckets without lifecycle rules.
+     * Entry is written to the segment of current day even if asset time is older (ex. copy keeps source time),
+     * segments before cursors are never read again.
+     * Such entry is processed after the newer entries which were written before it.
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     * @param time - asset modification time
+     * @throws InternalStorageException - if index can't be written
+     */
+    public void append(String bucketId, String assetId, Instant time) throws InternalStorageException {
+        if (!isIndexed(bucketId)) {
+            return;
+        }
+        var segmentPath = buildSegmentPath(bucketId, SEGMENT_FORMAT.format(Instant.now()));
+        var line = buildLine(new Entry(time.toEpochMilli(), assetId));
+        try {
+            synchronized (appendLocks.computeIfAbsent(bucketId, key -> new Object())) {
+                Files.createDirectories(segmentPath.getParent());
+                Files.write(segmentPath, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't write lifecycle index; bucketId=" + bucketId, e);
+        }
+    }
+
+    public boolean isBackfilled(String bucketId) {
+        return Files.exists(buildBucketIndexPath(bucketId).resolve(BACKFILL_MARKER));
+    }
+
+    /**
+     * Index assets which were stored before index was enabled, bucket is scanned once
+     * @param bucketId - virtual bucket name
+     * @param storageRepository - storage of bucket
+     * @throws InternalStorageException - if assets can't be listed or index can't be written
+     */
+    public void backfill(String bucketId, BinaryStorageRepository storageRepository)
+            throws InternalStorageException {
+        log.info("Lifecycle index backfill was started; bucketId={}", bucketId);
+        var entries = new ArrayList<Entry>();
+        try {
+            for (var assetId : storageRepository.listAssets(bucketId)) {
+                try {
+                    var stat = storageRepository.stat(bucketId, assetId);
+                    entries.add(new Entry(stat.getLastModified().toEpochMilli(), assetId));
+                } catch (UndefinedResourceException e) {
+                    log.debug("Skip removed asset; {}/{}", bucketId, assetId);
+                }
+            }
+        } catch (UndefinedResourceException e) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(Entry::time));
+        writeBackfill(bucketId, entries);
+        log.info("Lifecycle index backfill was finished; bucketId={}; assets={}", bucketId, entries.size());
+    }
+
+    /**
+     * Write index segment for assets which were stored before index was enabled
+     * @param bucketId - virtual bucket name
+     * @param entries - existing assets, ordered by time
+     * @throws InternalStorageException - if index can't be written
+     */
+    public void writeBackfill(String bucketId, List<Entry> entries) throws InternalStorageException {
+        var segmentPath = buildSegmentPath(bucketId, BACKFILL_SEGMENT);
+        try {
+            Files.createDirectories(segmentPath.getParent());
+            var tmpPath = Files.createTempFile(segmentPath.getParent(), ".", ".tmp");
+            try (var out = Files.newOutputStream(tmpPath)) {
+                for (var entry : entries) {
+                    out.write(buildLine(entry));
+                }
+            }
+            Files.move(tmpPath, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.write(buildBucketIndexPath(bucketId).resolve(BACKFILL_MARKER), new byte[0]);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't write lifecycle index backfill; bucketId=" + bucketId, e);
+        }
+    }
+
+    /**
+     * @return segment names of bucket index in time order
+     */
+    public List<String> listSegments(String bucketId) {
+        var names = buildBucketIndexPath(bucketId).toFile().list();
+        if (names == null) {
+            return List.of();
+        }
+        return Arrays.stream(names)
+                .filter(name -> name.endsWith(SEGMENT_EXTENSION))
+                .map(name -> name.substring(0, name.length() - SEGMENT_EXTENSION.length()))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Pass entries of stage which were written before cutoff to the handler and advance cursor of stage
+     * @param bucketId - virtual bucket name
+     * @param stage - stage name
+     * @param cutoff - epoch millis, newer entries are left for later
+     * @param limit - max count of processed entries
+     * @param handler - stage action
+     * @return count of processed entries
+     */
+    public int follow(String bucketId, String stage, long cutoff, int limit, EntryHandler handler)
+            throws InternalStorageException, IOException, InterruptedException {
+        var segments = listSegments(bucketId);
+        var cursor = readCursor(bucketId, stage);
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        var processed = 0;
+        var position = cursor != null ? cursor : new Cursor(segments.get(0), 0);
+        try {
+            for (var i = 0; i < segments.size() && processed < limit; i++) {
+                var segment = segments.get(i);
+                if (segment.compareTo(position.segment()) < 0) {
+                    continue;
+                }
+                var offset = segment.equals(position.segment()) ? position.offset() : 0;
+                position = new Cursor(segment, offset);
+                try (var reader = openSegment(bucketId, segment, offset)) {
+                    Entry entry;
+                    while (processed < limit && (entry = reader.next()) != null) {
+                        if (entry.time() > cutoff) {
+                            return processed;
+                        }
+                        handler.handle(entry);
+                        processed++;
+                        position = new Cursor(segment, reader.getOffset());
+                    }
+                }
+            }
+            return processed;
+        } finally {
+            if (!position.equals(cursor)) {
+                writeCursor(bucketId, stage, position);
+            }
+        }
+    }
+
+    /**
+     * Remove segments before cursors of all stages of bucket. Stage which was never executed keeps all segments.
+     */
+    public void removeProcessedSegments(String bucketId) throws InternalStorageException {
+        String processedSegment = null;
+        for (var stage : listStages(bucketId)) {
+            var cursor = readCursor(bucketId, stage);
+            if (cursor == null) {
+                return;
+            }
+            if (processedSegment == null || cursor.segment().compareTo(processedSegment) < 0) {
+                processedSegment = cursor.segment();
+            }
+        }
+        if (processedSegment == null) {
+            return;
+        }
+        for (var segment : listSegments(bucketId)) {
+            if (segment.compareTo(processedSegment) >= 0) {
+                break;
+            }
+            removeSegment(bucketId, segment);
+        }
+    }
+
+    public void removeSegment(String bucketId, String segment) throws InternalStorageException {
+        try {
+            Files.deleteIfExists(buildSegmentPath(bucketId, segment));
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't remove lifecycle index segment; bucketId=" + bucketId, e);
+        }
+    }
+
+    /**
+     * @return cursor of sweeper stage or null if stage was never executed
+     */
+    public Cursor readCursor(String bucketId, String stage) throws InternalStorageException {
+        var cursorPath = buildBucketIndexPath(bucketId).resolve(stage + CURSOR_EXTENSION);
+        if (!Files.exists(cursorPath)) {
+            return null;
+        }
+        try {
+            var parts = Files.readString(cursorPath).trim().split(" ");
+            return new Cursor(parts[0], Long.parseLong(parts[1]));
+        } catch (IOException | RuntimeException e) {
+            throw new InternalStorageException("Can't read lifecycle cursor; bucketId=" + bucketId, e);
+        }
+    }
+
+    public void writeCursor(String bucketId, String stage, Cursor cursor) throws InternalStorageException {
+        var cursorPath = buildBucketIndexPath(bucketId).resolve(stage + CURSOR_EXTENSION);
+        try {
+            Files.createDirectories(cursorPath.getParent());
+            var tmpPath = Files.createTempFile(cursorPath.getParent(), ".", ".tmp");
+            Files.writeString(tmpPath, cursor.segment() + " " + cursor.offset());
+            Files.move(tmpPath, cursorPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't write lifecycle cursor; bucketId=" + bucketId, e);
+        }
+    }
+
+    /**
+     * Open segment for reading from specified offset
+     * @param bucketId - virtual bucket name
+     * @param segment - segment name
+     * @param offset - byte offset of the first entry
+     * @return segment reader, it returns only completely written entries
+     */
+    public SegmentReader openSegment(String bucketId, String segment, long offset) throws InternalStorageException {
+        try {
+            var in = Files.newInputStream(buildSegmentPath(bucketId, segment));
+            if (in.skip(offset) < offset) {
+                in.close();
+                throw new InternalStorageException("Lifecycle cursor is out of segment; bucketId=" + bucketId);
+            }
+            return new SegmentReader(new BufferedInputStream(in), offset);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read lifecycle index; bucketId=" + bucketId, e);
+        }
+    }
+
+    private Path buildBucketIndexPath(String bucketId) {
+        return indexPath.resolve(bucketId);
+    }
+
+    private Path buildSegmentPath(String bucketId, String segment) {
+        return buildBucketIndexPath(bucketId).resolve(segment + SEGMENT_EXTENSION);
+    }
+
+    private static byte[] buildLine(Entry entry) {
+        return (entry.time() + "\t" + entry.assetId() + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index entry
+     * @param time - asset modification time in epoch millis
+     * @param assetId - uniq (in bucket) asset identificator
+     */
+    public record Entry(long time, String assetId) {
+    }
+
+    @FunctionalInterface
+    public interface EntryHandler {
+        void handle(Entry entry) throws InternalStorageException, InterruptedException;
+    }
+
+    /**
+     * Position of sweeper stage in bucket index
+     * @param segment - segment name
+     * @param offset - byte offset of the next entry in segment
+     */
+    public record Cursor(String segment, long offset) {
+    }
+
+    public static class SegmentReader implements Closeable {
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private long offset;
+
+        private SegmentReader(InputStream in, long offset) {
+            this.in = in;
+            this.offset = offset;
+        }
+
+        /**
+         * @return next entry or null if there are no more completely written entries
+         */
+        public Entry next() throws IOException {
+            line.reset();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    var bytes = line.toByteArray();
+                    var value = new String(bytes, StandardCharsets.UTF_8);
+                    var separator = value.indexOf('\t');
+                    offset += bytes.length + 1;
+                    return new Entry(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+                }
+                line.write(b);
+            }
+            return null;
+        }
+
+        /**
+         * @return byte offset after the last returned entry
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import pro.ganyushkin.binary_storage_service.util.AssetNames;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Size bounded LRU cache of remote assets on local disk: {@code <directory>/<bucketId>/<assetId>}.
+ * Files are written to temporary directory and moved into cache when they are complete,
+ * so cached file is always a complete copy. Existing files are indexed on start in modification time order.
+ */
+@Slf4j
+public class LocalDiskCache {
+    private static final String TMP_DIRECTORY = ".tmp";
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Path directory;
+    private final long maxSize;
+    private final Map<String, Long> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long size;
+    /**
+     * invalidation counters by key hash, download started before invalidation is not committed
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public LocalDiskCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory.resolve(TMP_DIRECTORY));
+        load();
+    }
+
+    /**
+     * @return path of cached asset or null if asset is not cached
+     */
+    public Path get(String bucketId, String assetId) {
+        var key = buildKey(bucketId, assetId);
+        synchronized (entries) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        var path = buildPath(bucketId, assetId);
+        // file could be removed by concurrent eviction
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * @return new temporary file, it should be passed to {@link #commit} or removed
+     */
+    public Path createTempFile() throws IOException {
+        return Files.createTempFile(directory.resolve(TMP_DIRECTORY), "", ".tmp");
+    }
+
+    /**
+     * @return invalidation generation of asset, it should be taken before download is started
+     */
+    public long generation(String bucketId, String assetId) {
+        return generations.get(stripe(bucketId, assetId));
+    }
+
+    /**
+     * Move completely written temporary file into cache
+     * @param generation - invalidation generation of asset when download was started
+     * @return path of cached asset or null if asset was invalidated during download
+     */
+    public Path commit(String bucketId, String assetId, Path tmpPath, long generation) throws IOException {
+        var path = buildPath(bucketId, assetId);
+        Files.createDirectories(path.getParent());
+        var fileSize = Files.size(tmpPath);
+        List<String> evicted;
+        synchronized (entries) {
+            if (generation != generation(bucketId, assetId)) {
+                Files.delete(tmpPath);
+                return null;
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            var previous = entries.put(buildKey(bucketId, assetId), fileSize);
+            size += fileSize - (previous != null ? previous : 0);
+            evicted = evict();
+        }
+        for (var key : evicted) {
+            Files.deleteIfExists(directory.resolve(key));
+        }
+        return path;
+    }
+
+    public void invalidate(String bucketId, String assetId) throws IOException {
+        synchronized (entries) {
+            generations.incrementAndGet(stripe(bucketId, assetId));
+            var previous = entries.remove(buildKey(bucketId, assetId));
+            if (previous != null) {
+                size -= previous;
+            }
+        }
+        Files.deleteIfExists(buildPath(bucketId, assetId));
+    }
+
+    /**
+     * @return total size of cached files
+     */
+    public long size() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    private List<String> evict() {
+        var evicted = new ArrayList<String>();
+        var iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            var entry = iterator.next();
+            size -= entry.getValue();
+            evicted.add(entry.getKey());
+            iterator.remove();
+        }
+        return evicted;
+    }
+
+    private void load() throws IOException {
+        var files = new ArrayList<Map.Entry<String, BasicFileAttributes>>();
+        try (var buckets = Files.list(directory)) {
+            for (var bucketPath : buckets.toList()) {
+                var bucketId = bucketPath.getFileName().toString();
+                if (bucketId.equals(TMP_DIRECTORY) || !Files.isDirectory(bucketPath)) {
+                    continue;
+                }
+                try (var assets = Files.list(bucketPath)) {
+                    for (var assetPath : assets.toList()) {
+                        var attributes = Files.readAttributes(assetPath, BasicFileAttributes.class);
+                        if (attributes.isRegularFile()) {
+                            files.add(Map.entry(bucketId + "/" + assetPath.getFileName(), attributes));
+                        }
+                    }
+                }
+            }
+        }
+        files.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+        List<String> evicted;
+        synchronized (entries) {
+            for (var file : files) {
+                entries.put(file.getKey(), file.getValue().size());
+                size += file.getValue().size();
+            }
+            evicted = evict();
+        }
+        for (var key : evicted) {
+            Files.deleteIfExists(directory.resolve(key));
+        }
+        log.info("Local disk cache was loaded; directory={}; files={}; size={}", directory, entries.size(), size);
+    }
+
+    private static int stripe(String bucketId, String assetId) {
+        return Math.floorMod(buildKey(bucketId, assetId).hashCode(), GENERATION_STRIPES);
+    }
+
+    private Path buildPath(String bucketId, String assetId) {
+        return directory.resolve(buildKey(bucketId, assetId));
+    }
+
+    /**
+     * @return path of cached file relative to the cache directory
+     */
+    private static String buildKey(String bucketId, String assetId) {
+        return bucketId + "/" + AssetNames.toFileName(assetId);
+    }
+}
@@ -0,0 +1,274 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU pool of read only file mappings: repeated reads of the same file version are served from
+ * one {@link MappedByteBuffer} without open/read syscalls and heap buffers of file streams.
+ * Evicted or invalidated mapping is unmapped when its last reader is closed, so open streams stay valid.
+ */
+@Slf4j
+public class MappedFilePool {
+    private static final int TRANSFER_CHUNK_SIZE = 64 * 1024;
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            var unsafeClass = Class.forName("sun.misc.Unsafe");
+            var field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Explicit unmapping is not available, mappings are released by GC; {}", e.toString());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final int maxMappings;
+    private final long maxMappedSize;
+    private final Map<String, Mapping> mappings = new LinkedHashMap<>(1024, 0.75f, true);
+    private long mappedSize;
+
+    public MappedFilePool(int maxMappings, long maxMappedSize) {
+        this.maxMappings = maxMappings;
+        this.maxMappedSize = maxMappedSize;
+    }
+
+    /**
+     * Open stream over mapping of file version, file is mapped if it is not in the pool
+     * @param path - file path
+     * @param attributes - file attributes, are used to distinguish file versions
+     * @return file data stream, should be closed to release mapping
+     */
+    public InputStream open(Path path, BasicFileAttributes attributes) throws IOException {
+        var key = buildKey(path, attributes);
+        synchronized (mappings) {
+            var mapping = mappings.get(key);
+            if (mapping != null) {
+                mapping.readers++;
+                return new MappedInputStream(mapping);
+            }
+        }
+        // mapping is done outside of lock, concurrent first readers of one file can map it twice
+        MappedByteBuffer buffer;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, attributes.size());
+        }
+        var created = new Mapping(path, buffer);
+        List<Mapping> toUnmap = new ArrayList<>();
+        Mapping mapping;
+        synchronized (mappings) {
+            mapping = mappings.get(key);
+            if (mapping == null) {
+                mapping = created;
+                mappings.put(key, mapping);
+                mappedSize += mapping.size();
+            } else {
+                toUnmap.add(created);
+            }
+            // reader is registered before eviction, so new mapping is not unmapped under it
+            mapping.readers++;
+            evict(toUnmap);
+        }
+        toUnmap.forEach(MappedFilePool::unmap);
+        return new MappedInputStream(mapping);
+    }
+
+    /**
+     * Remove all mappings of file, should be called before file is removed or replaced
+     */
+    public void invalidate(Path path) {
+        List<Mapping> toUnmap = new ArrayList<>();
+        synchronized (mappings) {
+            var iterator = mappings.values().iterator();
+            while (iterator.hasNext()) {
+                var mapping = iterator.next();
+                if (mapping.path.equals(path.toAbsolutePath())) {
+                    iterator.remove();
+                    release(mapping, toUnmap);
+                }
+            }
+        }
+        toUnmap.forEach(MappedFilePool::unmap);
+    }
+
+    /**
+     * @return count of mappings in the pool
+     */
+    public int size() {
+        synchronized (mappings) {
+            return mappings.size();
+        }
+    }
+
+    /**
+     * @return total size of mappings in the pool
+     */
+    public long mappedSize() {
+        synchronized (mappings) {
+            return mappedSize;
+        }
+    }
+
+    private void evict(List<Mapping> toUnmap) {
+        var iterator = mappings.values().iterator();
+        while ((mappings.size() > maxMappings || mappedSize > maxMappedSize) && iterator.hasNext()) {
+            var mapping = iterator.next();
+            iterator.remove();
+            release(mapping, toUnmap);
+        }
+    }
+
+    private void release(Mapping mapping, List<Mapping> toUnmap) {
+        mapping.removed = true;
+        mappedSize -= mapping.size();
+        if (mapping.readers == 0) {
+            toUnmap.add(mapping);
+        }
+    }
+
+    private void close(Mapping mapping) {
+        boolean last;
+        synchronized (mappings) {
+            mapping.readers--;
+            last = mapping.removed && mapping.readers == 0;
+        }
+        if (last) {
+            unmap(mapping);
+        }
+    }
+
+    private static void unmap(Mapping mapping) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, mapping.buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Can't unmap file {}", mapping.path, e);
+        }
+    }
+
+    private static String buildKey(Path path, BasicFileAttributes attributes) {
+        return path.toAbsolutePath() + "@" + attributes.fileKey() + ":" + attributes.lastModifiedTime() +
+                ":" + attributes.size();
+    }
+
+    private static class Mapping {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int readers;
+        private boolean removed;
+
+        private Mapping(Path path, MappedByteBuffer buffer) {
+            this.path = path.toAbsolutePath();
+            this.buffer = buffer;
+        }
+
+        private long size() {
+            return buffer.capacity();
+        }
+    }
+
+    private class MappedInputStream extends InputStream {
+        private final Mapping mapping;
+        private ByteBuffer data;
+
+        private MappedInputStream(Mapping mapping) {
+            this.mapping = mapping;
+            // every reader has own position over shared mapping
+            this.data = mapping.buffer.duplicate();
+        }
+
+        @Override
+        public int read() throws IOException {
+            ensureOpen();
+            return data.hasRemaining() ? data.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            ensureOpen();
+            if (length == 0) {
+                return 0;
+            }
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            var count = Math.min(length, data.remaining());
+            data.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            ensureOpen();
+            var count = (int) Math.max(0, Math.min(n, data.remaining()));
+            data.position(data.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ensureOpen();
+            return data.remaining();
+        }
+
+        /**
+         * Mapped data is written to channel as is, other streams get it by large chunks
+         */
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            ensureOpen();
+            var count = (long) data.remaining();
+            if (out instanceof WritableByteChannel channel) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                return count;
+            }
+            var chunk = new byte[(int) Math.min(TRANSFER_CHUNK_SIZE, Math.max(1, count))];
+            while (data.hasRemaining()) {
+                var length = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            if (data != null) {
+                data = null;
+                MappedFilePool.this.close(mapping);
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (data == null) {
+                throw new IOException("Stream closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Sequential stream over remote object which is downloaded by ranges in parallel.
+ * Up to {@code parallelism} next ranges are fetched ahead of the reader,
+ * so memory is bounded by {@code parallelism * partSize}.
+ * Skip drops fetched ranges and restarts fetching from the range of target offset,
+ * ranges are always aligned to {@code partSize}.
+ */
+public class ParallelRangeInputStream extends InputStream {
+    private final RangeFetcher fetcher;
+    private final long size;
+    private final int partSize;
+    private final int parallelism;
+    private final Executor executor;
+    private final Deque<CompletableFuture<byte[]>> parts = new ArrayDeque<>();
+    private long nextOffset;
+    private long polledOffset;
+    private byte[] current;
+    private int position;
+    private boolean closed;
+
+    /**
+     * Fetches bytes of the object in range
+     */
+    @FunctionalInterface
+    public interface RangeFetcher {
+        /**
+         * @param offset - first byte offset
+         * @param length - count of bytes
+         * @return range content
+         */
+        byte[] fetch(long offset, int length) throws IOException;
+    }
+
+    public ParallelRangeInputStream(RangeFetcher fetcher, long size, int partSize, int parallelism,
+                                    Executor executor) {
+        this.fetcher = fetcher;
+        this.size = size;
+        this.partSize = partSize;
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = executor;
+        schedule();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        var count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (n <= 0) {
+            return 0;
+        }
+        var buffered = current == null ? 0 : Math.min(n, current.length - position);
+        position += (int) buffered;
+        var rest = Math.min(n - buffered, size - polledOffset);
+        if (rest <= 0) {
+            return buffered;
+        }
+        var target = polledOffset + rest;
+        while (!parts.isEmpty() && polledOffset + Math.min(partSize, size - polledOffset) <= target) {
+            parts.poll().cancel(false);
+            polledOffset += Math.min(partSize, size - polledOffset);
+        }
+        if (parts.isEmpty()) {
+            polledOffset = target - target % partSize;
+            nextOffset = polledOffset;
+        }
+        schedule();
+        current = null;
+        var partOffset = polledOffset;
+        if (partOffset < target && ensureData()) {
+            position = (int) (target - partOffset);
+        }
+        return buffered + rest;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            current = null;
+            parts.forEach(part -> part.cancel(false));
+            parts.clear();
+        }
+    }
+
+    private void schedule() {
+        while (parts.size() < parallelism && nextOffset < size) {
+            var offset = nextOffset;
+            var length = (int) Math.min(partSize, size - offset);
+            nextOffset += length;
+            parts.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fetcher.fetch(offset, length);
+                } catch (IOException e) {
+                    throw new RangeFetchException(e);
+                }
+            }, executor));
+        }
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || position >= current.length) {
+            var part = parts.poll();
+            if (part == null) {
+                return false;
+            }
+            schedule();
+            try {
+                current = part.get();
+                position = 0;
+                polledOffset += current.length;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Range download was interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RangeFetchException fetchException) {
+                    throw fetchException.getCause();
+                }
+                throw new IOException("Range download failed", e.getCause());
+            }
+        }
+        return true;
+    }
+
+    private static class RangeFetchException extends RuntimeException {
+        private RangeFetchException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import pro.ganyushkin.binary_storage_service.util.DirectBufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File stream which reads file by large blocks into pooled direct buffer,
+ * so one read syscall serves many small reads of response writer
+ */
+public class PooledFileInputStream extends InputStream {
+    private final FileChannel channel;
+    private final DirectBufferPool pool;
+    private ByteBuffer buffer;
+    private boolean eof;
+
+    public PooledFileInputStream(Path path, DirectBufferPool pool) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.pool = pool;
+        this.buffer = pool.acquire().flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        var count = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+        if (n <= 0) {
+            return 0;
+        }
+        var buffered = Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + (int) buffered);
+        var rest = Math.min(n - buffered, Math.max(0, channel.size() - channel.position()));
+        channel.position(channel.position() + rest);
+        return buffered + rest;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return buffer.remaining();
+    }
+
+    /**
+     * Buffered data is written as is, the rest of file is transferred by the channel.
+     * Streams which are not channels (ex. servlet output) get whole blocks of pooled buffer
+     * through pooled array, instead of the small array of default copy
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        if (!(out instanceof WritableByteChannel target)) {
+            return transferBlocks(out);
+        }
+        ensureOpen();
+        var count = (long) buffer.remaining();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        var position = channel.position();
+        var size = channel.size();
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+        count += position - channel.position();
+        channel.position(position);
+        eof = true;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    private long transferBlocks(OutputStream out) throws IOException {
+        ensureOpen();
+        var array = buffer.hasArray() ? buffer.array() : pool.acquireArray();
+        try {
+            var count = 0L;
+            while (fill()) {
+                var length = buffer.remaining();
+                if (buffer.hasArray()) {
+                    out.write(array, buffer.arrayOffset() + buffer.position(), length);
+                    buffer.position(buffer.limit());
+                } else {
+                    buffer.get(array, 0, length);
+                    out.write(array, 0, length);
+                }
+                count += length;
+            }
+            return count;
+        } finally {
+            if (!buffer.hasArray()) {
+                pool.releaseArray(array);
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        ensureOpen();
+        while (!buffer.hasRemaining()) {
+            if (eof) {
+                return false;
+            }
+            buffer.clear();
+            var count = channel.read(buffer);
+            buffer.flip();
+            if (count == -1) {
+                eof = true;
+            }
+        }
+        return true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.config.S3Properties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Metadata is stored as json object per asset in hidden prefix of the bucket:
+ * {@code <bucketId>/.metadata/<assetId>.json}
+ * recently used entries are kept in memory.
+ */
+@Profile("S3-STORAGE")
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class S3AssetMetadataRepository implements AssetMetadataRepository {
+    private static final String METADATA_EXTENSION = ".json";
+
+    private final S3Client s3Client;
+    private final S3Properties properties;
+    private final ObjectMapper objectMapper;
+
+    @Value("${storage.s3.metadata.cache-size:100000}")
+    private int cacheSize;
+
+    private Map<String, AssetMetadata> cache;
+
+    @PostConstruct
+    private void init() {
+        cache = Collections.synchronizedMap(new LRUMap<>(cacheSize));
+    }
+
+    @Override
+    public Optional<AssetMetadata> find(String bucketId, String assetId) throws InternalStorageException {
+        var key = buildMetadataKey(bucketId, assetId);
+        var cached = cache.get(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        try {
+            var content = s3Client.getObjectAsBytes(request -> request.bucket(properties.getBucket()).key(key));
+            var metadata = objectMapper.readValue(content.asByteArray(), AssetMetadata.class);
+            cache.put(key, metadata);
+            return Optional.of(metadata);
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (IOException | SdkException e) {
+            throw new InternalStorageException("Can't read asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void save(String bucketId, AssetMetadata metadata) throws InternalStorageException {
+        var assetId = metadata.getAssetId();
+        var key = buildMetadataKey(bucketId, assetId);
+        try {
+            s3Client.putObject(request -> request.bucket(properties.getBucket()).key(key),
+                    RequestBody.fromBytes(objectMapper.writeValueAsBytes(metadata)));
+            cache.put(key, metadata);
+        } catch (IOException | SdkException e) {
+            throw new InternalStorageException("Can't write asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void remove(String bucketId, String assetId) throws InternalStorageException {
+        var key = buildMetadataKey(bucketId, assetId);
+        cache.remove(key);
+        try {
+            s3Client.deleteObject(request -> request.bucket(properties.getBucket()).key(key));
+        } catch (SdkException e) {
+            throw new InternalStorageException("Can't remove asset metadata, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private static String buildMetadataKey(String bucketId, String assetId) {
+        return bucketId + "/" + FilesystemAssetMetadataRepository.METADATA_DIRECTORY + "/" +
+                assetId + METADATA_EXTENSION;
+    }
+}
@@ -0,0 +1,557 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import pro.ganyushkin.binary_storage_service.config.S3Properties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.util.SingleFlight;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.MetadataDirective;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.StorageClass;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * S3 compatible object storage, virtual bucket is a key prefix in configured S3 bucket:
+ * {@code <bucketId>/<assetId>}, bucket existence is marked by empty {@code <bucketId>/} object.
+ * Large assets are uploaded by parallel multipart upload and downloaded by parallel ranged GETs,
+ * downloaded assets are kept in optional local disk cache.
+ */
+@Profile("S3-STORAGE")
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class S3StorageRepository implements BinaryStorageRepository {
+    private static final String DELIMITER = "/";
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    /**
+     * limit of single CopyObject request
+     */
+    private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final int NOT_FOUND = 404;
+
+    private final S3Client s3Client;
+    private final S3Properties properties;
+
+    private LocalDiskCache cache;
+
+    private ExecutorService transferExecutor;
+
+    private ExecutorService cacheFillExecutor;
+
+    private final SingleFlight<String, Path> cacheFills = new SingleFlight<>();
+
+    @PostConstruct
+    private void init() throws InternalStorageException {
+        if (properties.getBucket() == null) {
+            throw new InternalStorageException("storage.s3.bucket is not configured");
+        }
+        if (properties.getPartSize().toBytes() < MIN_PART_SIZE) {
+            throw new InternalStorageException("storage.s3.part-size should be at least 5MB");
+        }
+        var threads = new AtomicInteger();
+        transferExecutor = Executors.newFixedThreadPool(properties.getMaxConnections(), runnable -> {
+            var thread = new Thread(runnable, "s3-transfer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        var cacheDirectory = properties.getCache().getDirectory();
+        if (cacheDirectory != null) {
+            try {
+                cache = new LocalDiskCache(Paths.get(cacheDirectory), properties.getCache().getMaxSize().toBytes());
+            } catch (IOException e) {
+                throw new InternalStorageException("Can't create local disk cache " + cacheDirectory, e);
+            }
+            var fills = Math.max(1, properties.getMaxConnections() / properties.getTransferParallelism());
+            cacheFillExecutor = Executors.newFixedThreadPool(fills, runnable -> {
+                var thread = new Thread(runnable, "s3-cache-fill-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("S3 storage was initialized; bucket={}; endpoint={}; cache={}",
+                properties.getBucket(), properties.getEndpoint(), cacheDirectory);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        transferExecutor.shutdownNow();
+        if (cacheFillExecutor != null) {
+            cacheFillExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean exists(String bucketId) {
+        return head(buildBucketKey(bucketId)).isPresent();
+    }
+
+    @Override
+    public boolean exists(String bucketId, String assetId) {
+        return head(buildAssetKey(bucketId, assetId)).isPresent();
+    }
+
+    @Override
+    public void createBucket(String bucketId) throws ResourceAlreadyExists, InternalStorageException {
+        if (exists(bucketId)) {
+            throw new ResourceAlreadyExists(bucketId);
+        }
+        try {
+            s3Client.putObject(request -> request.bucket(properties.getBucket()).key(buildBucketKey(bucketId)),
+                    RequestBody.empty());
+            log.info("bucket was created for bucketId={}", bucketId);
+        } catch (SdkException e) {
+            throw new InternalStorageException("Can't create bucket " + bucketId, e);
+        }
+    }
+
+    @Override
+    public void deleteBucket(String bucketId) throws UndefinedResourceException, InternalStorageException {
+        throwIfBucketIsNotExists(bucketId);
+        if (!listAssets(bucketId, "", null, 1).isEmpty()) {
+            throw new InternalStorageException("Can't delete bucket with assets " + bucketId);
+        }
+        try {
+            s3Client.deleteObject(request -> request.bucket(properties.getBucket()).key(buildBucketKey(bucketId)));
+            log.info("bucket was deleted for bucketId={}", bucketId);
+        } catch (SdkException e) {
+            throw new InternalStorageException("Can't delete bucket " + bucketId, e);
+        }
+    }
+
+    @Override
+    public List<String> listBuckets() {
+        return s3Client.listObjectsV2Paginator(request -> request
+                        .bucket(properties.getBucket())
+                        .delimiter(DELIMITER))
+                .commonPrefixes().stream()
+                .map(CommonPrefix::prefix)
+                .map(prefix -> prefix.substring(0, prefix.length() - DELIMITER.length()))
+                .filter(name -> !name.startsWith(FilesystemStorageRepository.HIDDEN_PREFIX))
+                .toList();
+    }
+
+    @Override
+    public List<String> listAssets(String bucketId) throws UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        var prefix = buildBucketKey(bucketId);
+        return s3Client.listObjectsV2Paginator(request -> request
+                        .bucket(properties.getBucket())
+                        .prefix(prefix))
+                .contents().stream()
+                .map(S3Object::key)
+                .map(key -> key.substring(prefix.length()))
+                .filter(S3StorageRepository::isAssetName)
+                .toList();
+    }
+
+    /**
+     * Keys are listed by S3 in order, so page starts from the key after cursor
+     */
+    @Override
+    public List<String> listAssets(String bucketId, String prefix, String after, int limit)
+            throws UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        if (limit <= 0) {
+            return List.of();
+        }
+        var bucketKey = buildBucketKey(bucketId);
+        var page = new ArrayList<String>(limit);
+        String startAfter = after != null && after.compareTo(prefix) > 0 ? bucketKey + after : null;
+        while (page.size() < limit) {
+            var start = startAfter;
+            var response = s3Client.listObjectsV2(request -> request
+                    .bucket(properties.getBucket())
+                    .prefix(bucketKey + prefix)
+                    .startAfter(start)
+                    .maxKeys(limit - page.size()));
+            for (var object : response.contents()) {
+                var name = object.key().substring(bucketKey.length());
+                if (isAssetName(name)) {
+                    page.add(name);
+                }
+                startAfter = object.key();
+            }
+            if (!Boolean.TRUE.equals(response.isTruncated())) {
+                break;
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public InputStream read(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        try {
+            if (cache != null) {
+                var cached = cache.get(bucketId, assetId);
+                if (cached != null) {
+                    return new FileInputStream(cached.toFile());
+                }
+            }
+            var head = head(buildAssetKey(bucketId, assetId))
+                    .orElseThrow(() -> new UndefinedResourceException(bucketId, assetId));
+            if (cache != null && head.contentLength() <= properties.getCache().getMaxObjectSize().toBytes()) {
+                var cached = fillCache(bucketId, assetId, head.contentLength());
+                if (cached != null) {
+                    return new FileInputStream(cached.toFile());
+                }
+            }
+            return openRemote(bucketId, assetId, head.contentLength());
+        } catch (IOException | SdkException e) {
+            throw new InternalStorageException("Can't read asset, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public AssetMetadata stat(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        try {
+            var head = head(buildAssetKey(bucketId, assetId))
+                    .orElseThrow(() -> new UndefinedResourceException(bucketId, assetId));
+            return AssetMetadata.builder()
+                    .assetId(assetId)
+                    .size(head.contentLength())
+                    .lastModified(head.lastModified())
+                    .build();
+        } catch (SdkException e) {
+            throw new InternalStorageException("Can't stat asset, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    @Override
+    public void store(String bucketId, String assetId, InputStream data)
+            throws InternalStorageException, ResourceAlreadyExists, UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        if (exists(bucketId, assetId)) {
+            throw new ResourceAlreadyExists(bucketId, assetId);
+        }
+        upload(bucketId, assetId, data);
+        log.debug("Stored asset; {}/{}", bucketId, assetId);
+    }
+
+    @Override
+    public void overwrite(String bucketId, String assetId, InputStream data)
+            throws InternalStorageException, UndefinedResourceException {
+        throwIfBucketIsNotExists(bucketId);
+        invalidateCache(bucketId, assetId);
+        upload(bucketId, assetId, data);
+        // cache could be filled with previous version while it was uploaded
+        invalidateCache(bucketId, assetId);
+        log.debug("Stored asset; {}/{}", bucketId, assetId);
+    }
+
+    @Override
+    public void delete(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+        try {
+            s3Client.deleteObject(request -> request
+                    .bucket(properties.getBucket())
+                    .key(buildAssetKey(bucketId, assetId)));
+            invalidateCache(bucketId, assetId);
+            log.debug("Removed asset; {}/{}", bucketId, assetId);
+        } catch (SdkException e) {
+            throw new InternalStorageException("Can't remove asset; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    /**
+     * Object is copied by S3 itself, objects bigger than single copy limit are streamed through the service
+     */
+    @Override
+    public void copy(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException {
+        throwIfBucketIsNotExists(targetBucketId);
+        var sourceKey = buildAssetKey(sourceBucketId, sourceAssetId);
+        var targetKey = buildAssetKey(targetBucketId, targetAssetId);
+        if (sourceKey.equals(targetKey)) {
+            return;
+        }
+        try {
+            var head = head(sourceKey)
+                    .orElseThrow(() -> new UndefinedResourceException(sourceBucketId, sourceAssetId));
+            invalidateCache(targetBucketId, targetAssetId);
+            if (head.contentLength() <= MAX_COPY_OBJECT_SIZE) {
+                s3Client.copyObject(request -> request
+                        .sourceBucket(properties.getBucket())
+                        .sourceKey(sourceKey)
+                        .destinationBucket(properties.getBucket())
+                        .destinationKey(targetKey)
+                        .metadataDirective(MetadataDirective.COPY));
+            } else {
+                try (var in = openRemote(sourceBucketId, sourceAssetId, head.contentLength())) {
+                    upload(targetBucketId, targetAssetId, in);
+                }
+            }
+            log.debug("Asset was copied; {}/{} -> {}/{}", sourceBucketId, sourceAssetId, targetBucketId, targetAssetId);
+        } catch (IOException | SdkException e) {
+            throw new InternalStorageException("Can't copy asset; bucketId=" + sourceBucketId +
+                    "; assetId=" + sourceAssetId, e);
+        }
+    }
+
+    /**
+     * S3 has no rename, object is copied and source is removed
+     */
+    @Override
+    public void move(String sourceBucketId, String sourceAssetId, String targetBucketId, String targetAssetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (buildAssetKey(sourceBucketId, sourceAssetId).equals(buildAssetKey(targetBucketId, targetAssetId))) {
+            return;
+        }
+        copy(sourceBucketId, sourceAssetId, targetBucketId, targetAssetId);
+        delete(sourceBucketId, sourceAssetId);
+    }
+
+    @Override
+    public void demote(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        changeStorageClass(bucketId, assetId, StorageClass.fromValue(properties.getColdStorageClass()));
+    }
+
+    @Override
+    public void promote(String bucketId, String assetId)
+            throws InternalStorageException, UndefinedResourceException {
+        if (isCold(bucketId, assetId)) {
+            changeStorageClass(bucketId, assetId, StorageClass.STANDARD);
+        }
+    }
+
+    @Override
+    public boolean isCold(String bucketId, String assetId) {
+        return head(buildAssetKey(bucketId, assetId))
+                .map(HeadObjectResponse::storageClassAsString)
+                .map(storageClass -> !StorageClass.STANDARD.toString().equals(storageClass))
+                .orElse(false);
+    }
+
+    private void changeStorageClass(String bucketId, String assetId, StorageClass storageClass)
+            throws InternalStorageException, UndefinedResourceException {
+        if (!exists(bucketId, assetId)) {
+            throw new UndefinedResourceException(bucketId, assetId);
+        }
+        var key = buildAssetKey(bucketId, assetId);
+        try {
+            // copy to itself keeps content and metadata, only storage class is changed
+            s3Client.copyObject(request -> request
+                    .sourceBucket(properties.getBucket())
+                    .sourceKey(key)
+                    .destinationBucket(properties.getBucket())
+                    .destinationKey(key)
+                    .metadataDirective(MetadataDirective.COPY)
+                    .storageClass(storageClass));
+            log.info("Asset storage class was changed; {}/{}; {}", bucketId, assetId, storageClass);
+        } catch (SdkException e) {
+            throw new InternalStorageException("Can't change storage class; bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private InputStream openRemote(String bucketId, String assetId, long size) {
+        var key = buildAssetKey(bucketId, assetId);
+        var partSize = (int) properties.getPartSize().toBytes();
+        if (size <= partSize) {
+            return s3Client.getObject(request -> request.bucket(properties.getBucket()).key(key));
+        }
+        return new ParallelRangeInputStream((offset, length) -> {
+            try {
+                return s3Client.getObjectAsBytes(request -> request
+                        .bucket(properties.getBucket())
+                        .key(key)
+                        .range("bytes=" + offset + "-" + (offset + length - 1))).asByteArray();
+            } catch (SdkException e) {
+                throw new IOException("Can't read range of " + key, e);
+            }
+        }, size, partSize, properties.getTransferParallelism(), transferExecutor);
+    }
+
+    /**
+     * Download asset into local cache, concurrent downloads of the same asset are coalesced
+     * @return path of cached asset or null if asset was changed during download
+     */
+    private Path fillCache(String bucketId, String assetId, long size) throws IOException {
+        var generation = cache.generation(bucketId, assetId);
+        var future = cacheFills.execute(buildAssetKey(bucketId, assetId), () -> CompletableFuture.supplyAsync(() -> {
+            try {
+                var tmpPath = cache.createTempFile();
+                try (var in = openRemote(bucketId, assetId, size)) {
+                    Files.copy(in, tmpPath, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(tmpPath);
+                    throw e;
+                }
+                return cache.commit(bucketId, assetId, tmpPath, generation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, cacheFillExecutor));
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException ioException) {
+                throw ioException.getCause();
+            }
+            throw new IOException("Can't download asset into cache", e.getCause());
+        }
+    }
+
+    /**
+     * Upload asset by one request if it is smaller than part size, otherwise by parallel multipart upload
+     */
+    private void upload(String bucketId, String assetId, InputStream data) throws InternalStorageException {
+        var key = buildAssetKey(bucketId, assetId);
+        var partSize = (int) properties.getPartSize().toBytes();
+        String uploadId = null;
+        try {
+            var part = data.readNBytes(partSize);
+            if (part.length < partSize) {
+                s3Client.putObject(request -> request.bucket(properties.getBucket()).key(key),
+                        RequestBody.fromBytes(part));
+                return;
+            }
+            uploadId = s3Client.createMultipartUpload(request -> request
+                    .bucket(properties.getBucket())
+                    .key(key)).uploadId();
+            // memory is bounded by parallelism parts which are buffered or uploaded now
+            var permits = new Semaphore(properties.getTransferParallelism());
+            var uploads = new ArrayList<CompletableFuture<CompletedPart>>();
+            var partNumber = 0;
+            var next = part;
+            while (next.length > 0) {
+                permits.acquire();
+                uploads.add(uploadPart(key, uploadId, ++partNumber, next, permits));
+                next = data.readNBytes(partSize);
+            }
+            var completedParts = CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new))
+                    .thenApply(ignored -> uploads.stream()
+                            .map(CompletableFuture::join)
+                            .sorted(Comparator.comparing(CompletedPart::partNumber))
+                            .toList())
+                    .join();
+            var completedUploadId = uploadId;
+            s3Client.completeMultipartUpload(request -> request
+                    .bucket(properties.getBucket())
+                    .key(key)
+                    .uploadId(completedUploadId)
+                    .multipartUpload(upload -> upload.parts(completedParts)));
+        } catch (IOException | SdkException | CompletionException e) {
+            abortUpload(key, uploadId);
+            throw new InternalStorageException("Can't write data", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortUpload(key, uploadId);
+            throw new InternalStorageException("Upload was interrupted", e);
+        }
+    }
+
+    private CompletableFuture<CompletedPart> uploadPart(String key, String uploadId, int partNumber, byte[] part,
+                                                       Semaphore permits) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                var response = s3Client.uploadPart(request -> request
+                        .bucket(properties.getBucket())
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber), RequestBody.fromBytes(part));
+                return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+            } finally {
+                permits.release();
+            }
+        }, transferExecutor);
+    }
+
+    private void abortUpload(String key, String uploadId) {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            s3Client.abortMultipartUpload(request -> request
+                    .bucket(properties.getBucket())
+                    .key(key)
+                    .uploadId(uploadId));
+        } catch (SdkException e) {
+            log.error("Can't abort multipart upload; key={}; uploadId={}", key, uploadId, e);
+        }
+    }
+
+    private Optional<HeadObjectResponse> head(String key) {
+        try {
+            return Optional.of(s3Client.headObject(request -> request.bucket(properties.getBucket()).key(key)));
+        } catch (S3Exception e) {
+            if (e.statusCode() == NOT_FOUND) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    private void invalidateCache(String bucketId, String assetId) throws InternalStorageException {
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.invalidate(bucketId, assetId);
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't invalidate cached asset, bucketId=" + bucketId +
+                    "; assetId=" + assetId, e);
+        }
+    }
+
+    private void throwIfBucketIsNotExists(String bucketId) throws UndefinedResourceException {
+        if (!exists(bucketId)) {
+            throw new UndefinedResourceException(bucketId);
+        }
+    }
+
+    /**
+     * Asset ids are flat and can contain delimiter, metadata of bucket assets is kept under the same prefix
+     */
+    private static boolean isAssetName(String name) {
+        return !name.isEmpty() && !name.startsWith(FilesystemAssetMetadataRepository.METADATA_DIRECTORY + DELIMITER);
+    }
+
+    private static String buildBucketKey(String bucketId) {
+        return bucketId + DELIMITER;
+    }
+
+    private static String buildAssetKey(String bucketId, String assetId) {
+        return buildBucketKey(bucketId) + assetId;
+    }
+}
@@ -0,0 +1,275 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import pro.ganyushkin.binary_storage_service.util.DirectBufferPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single flight reads of files: concurrent readers of the same file version share one disk read.
+ * File is read by chunks on demand of the fastest reader, chunks are kept in memory
+ * while at least one reader is open, so late readers get already loaded data without disk access.
+ * Size of every shared file is reserved from the memory budget, file which doesn't fit into the budget
+ * is read by private {@link PooledFileInputStream}.
+ */
+public class SharedReadRegistry {
+    private final ConcurrentMap<String, SharedRead> reads = new ConcurrentHashMap<>();
+    private final int chunkSize;
+    private final long maxMemory;
+    private final DirectBufferPool fallbackBuffers;
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * @param maxMemory - total size of files which are shared at once
+     * @param fallbackBuffers - buffers of private streams when budget is exhausted
+     */
+    public SharedReadRegistry(int chunkSize, long maxMemory, DirectBufferPool fallbackBuffers) {
+        this.chunkSize = chunkSize;
+        this.maxMemory = maxMemory;
+        this.fallbackBuffers = fallbackBuffers;
+    }
+
+    /**
+     * Open stream for file, it joins in flight read of the same file version if it exists
+     * @param path - file path
+     * @param attributes - file attributes, are used to distinguish file versions
+     * @return file data stream, should be closed to release shared buffers
+     */
+    public InputStream open(Path path, BasicFileAttributes attributes) throws IOException {
+        var key = buildKey(path, attributes);
+        var size = attributes.size();
+        while (true) {
+            var read = reads.computeIfAbsent(key, k -> reserve(size) ? new SharedRead(k, path, size) : null);
+            if (read == null) {
+                return new PooledFileInputStream(path, fallbackBuffers);
+            }
+            if (read.subscribe()) {
+                return new SharedReadInputStream(read);
+            }
+            // read was released concurrently, it will be removed by owner
+            reads.remove(key, read);
+        }
+    }
+
+    /**
+     * @return count of files which are read now
+     */
+    public int inFlightCount() {
+        return reads.size();
+    }
+
+    /**
+     * @return memory which is reserved by files in flight
+     */
+    public long reservedSize() {
+        return reserved.get();
+    }
+
+    private boolean reserve(long size) {
+        while (true) {
+            var current = reserved.get();
+            if (current + size > maxMemory) {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    private static String buildKey(Path path, BasicFileAttributes attributes) {
+        return path.toAbsolutePath() + "@" + attributes.fileKey() + ":" + attributes.lastModifiedTime() +
+                ":" + attributes.size();
+    }
+
+    private class SharedRead {
+        private final String key;
+        private final Path path;
+        /**
+         * reserved memory
+         */
+        private final long size;
+        private final List<byte[]> chunks = new ArrayList<>();
+        private InputStream data;
+        private int subscribers;
+        private boolean released;
+        private boolean loading;
+        private boolean eof;
+        private IOException failure;
+
+        private SharedRead(String key, Path path, long size) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+        }
+
+        private synchronized boolean subscribe() {
+            if (released) {
+                return false;
+            }
+            subscribers++;
+            return true;
+        }
+
+        private void unsubscribe() {
+            InputStream toClose;
+            synchronized (this) {
+                subscribers--;
+                if (subscribers > 0) {
+                    return;
+                }
+                released = true;
+                toClose = data;
+                data = null;
+                chunks.clear();
+            }
+            reads.remove(key, this);
+            reserved.addAndGet(-size);
+            closeQuietly(toClose);
+        }
+
+        /**
+         * @return chunk or null if there is no more data
+         */
+        private byte[] chunk(int index) throws IOException {
+            while (true) {
+                synchronized (this) {
+                    while (true) {
+                        if (index < chunks.size()) {
+                            return chunks.get(index);
+                        }
+                        if (eof) {
+                            return null;
+                        }
+                        if (failure != null) {
+                            throw new IOException("Shared read failed; " + path, failure);
+                        }
+                        if (!loading) {
+                            loading = true;
+                            break;
+                        }
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Shared read was interrupted; " + path);
+                        }
+                    }
+                }
+                // disk access is done outside of lock, other readers can consume loaded chunks
+                byte[] next = null;
+                IOException error = null;
+                try {
+                    next = readNextChunk();
+                    if (next == null) {
+                        // file descriptor is not required anymore, all data is in memory
+                        closeQuietly(data);
+                        data = null;
+                    }
+                } catch (IOException e) {
+                    error = e;
+                }
+                synchronized (this) {
+                    loading = false;
+                    if (error != null) {
+                        failure = error;
+                    } else if (next == null) {
+                        eof = true;
+                    } else {
+                        chunks.add(next);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+
+        private byte[] readNextChunk() throws IOException {
+            if (data == null) {
+                data = Files.newInputStream(path);
+            }
+            var buffer = data.readNBytes(chunkSize);
+            return buffer.length == 0 ? null : buffer;
+        }
+    }
+
+    private static void closeQuietly(InputStream data) {
+        if (data != null) {
+            try {
+                data.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static class SharedReadInputStream extends InputStream {
+        private final SharedRead read;
+        private byte[] current;
+        private int chunkIndex = -1;
+        private int position;
+        private boolean closed;
+
+        private SharedReadInputStream(SharedRead read) {
+            this.read = read;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureData()) {
+                return -1;
+            }
+            return current[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!ensureData()) {
+                return -1;
+            }
+            var count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - position;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                current = null;
+                read.unsubscribe();
+            }
+        }
+
+        private boolean ensureData() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (current == null || position >= current.length) {
+                var next = read.chunk(chunkIndex + 1);
+                if (next == null) {
+                    return false;
+                }
+                chunkIndex++;
+                current = next;
+                position = 0;
+            }
+            return true;
+        }
+    }
+}
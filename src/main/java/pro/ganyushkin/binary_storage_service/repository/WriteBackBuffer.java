@@ -0,0 +1,639 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import pro.ganyushkin.binary_storage_service.util.AssetNames;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-back buffer of small assets: content is appended to the journal and kept in memory, write is acknowledged
+ * after that and asset files are created by background flusher in batches.
+ * Journal is a set of segments {@code <directory>/<id>.journal}, record is {@code int length}, payload and CRC32C
+ * of payload; payload is a stored asset, metadata json of buffered asset or a discard mark of buffered asset
+ * (it was removed, overwritten or flushed out of batch). Every flush rolls the active segment, writes files of assets
+ * of previous segments and removes these segments, so segments on disk always describe buffered assets only.
+ * Segments are replayed on open, a torn record at the end of segment is an unacknowledged write and it is skipped.
+ * With sync journal is forced to disk before write is acknowledged, concurrent writers share one force call.
+ * Files are never replaced by flush: asset file which was created by concurrent direct upload wins.
+ */
+@Slf4j
+public class WriteBackBuffer {
+    private static final String SEGMENT_EXTENSION = ".journal";
+    private static final byte STORE = 1;
+    private static final byte DISCARD = 2;
+    private static final byte METADATA = 3;
+    /**
+     * max length of record payload without content: type, time and two modified UTF-8 strings
+     */
+    private static final int MAX_HEADER_LENGTH = 1 + 8 + 4 + 2 * (2 + 65535);
+
+    private final Path rootPath;
+    private final Path journalPath;
+    private final Path tmpPath;
+    private final long maxBufferedSize;
+    private final boolean sync;
+    /**
+     * is called with path of every flushed file
+     */
+    private final Consumer<Path> flushListener;
+
+    private final ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedSize = new AtomicLong();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    /**
+     * is taken before lock of this buffer, so force is never called for closed segment
+     */
+    private final Object syncLock = new Object();
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * segment state is changed under lock of this buffer
+     */
+    private FileChannel segment;
+    private long segmentId;
+    private long segmentLength;
+    /**
+     * total length of records appended to all segments and the part of it forced to disk
+     */
+    private long appended;
+    private volatile long synced;
+
+    public WriteBackBuffer(Path rootPath, Path journalPath, Path tmpPath, long maxBufferedSize, boolean sync,
+                           Consumer<Path> flushListener) {
+        this.rootPath = rootPath;
+        this.journalPath = journalPath;
+        this.tmpPath = tmpPath;
+        this.maxBufferedSize = maxBufferedSize;
+        this.sync = sync;
+        this.flushListener = flushListener;
+    }
+
+    /**
+     * Replay journal and start background flusher
+     */
+    public void open(Duration flushInterval) throws IOException {
+        Files.createDirectories(journalPath);
+        Files.createDirectories(tmpPath);
+        var segments = new TreeMap<Long, Path>();
+        try (var files = Files.list(journalPath)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_EXTENSION))
+                    .forEach(path -> segments.put(parseSegmentId(path), path));
+        }
+        for (var replayed : segments.entrySet()) {
+            replay(replayed.getKey(), replayed.getValue());
+        }
+        segmentId = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        segment = openSegment(segmentId);
+        log.info("Write-back journal was opened; segments={}; assets={}; bytes={}",
+                segments.size(), entries.size(), bufferedSize.get());
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "write-back-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop flusher and write all buffered assets
+     */
+    public void close() throws IOException {
+        if (flusher != null) {
+            // running flush is not interrupted, interrupt closes file channels
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (segment == null) {
+            return;
+        }
+        flush();
+        synchronized (syncLock) {
+            synchronized (this) {
+                segment.force(false);
+                segment.close();
+            }
+        }
+        log.info("Write-back journal was closed; assets left={}", entries.size());
+    }
+
+    /**
+     * Buffer asset content
+     * @return false if buffer is full, asset should be written directly
+     * @throws FileAlreadyExistsException - if asset is already buffered
+     * @throws IOException - if journal can't be written
+     */
+    public boolean add(String bucketId, String assetId, byte[] data) throws IOException {
+        if (bufferedSize.get() + data.length > maxBufferedSize) {
+            requestFlush();
+            return false;
+        }
+        // journal keeps time in millis, so time of asset is the same after replay
+        var entry = new Entry(bucketId, assetId, buildPath(bucketId, assetId), data,
+                Instant.ofEpochMilli(System.currentTimeMillis()));
+        long position;
+        synchronized (this) {
+            if (entries.containsKey(entry.path) || Files.exists(entry.path)) {
+                throw new FileAlreadyExistsException(entry.path.toString());
+            }
+            position = append(encode(STORE, entry));
+            entry.segment = segmentId;
+            entries.put(entry.path, entry);
+        }
+        if (bufferedSize.addAndGet(data.length) > maxBufferedSize / 2) {
+            requestFlush();
+        }
+        syncTo(position);
+        return true;
+    }
+
+    /**
+     * @return buffered asset or null
+     */
+    public Entry find(Path assetPath) {
+        return entries.get(assetPath);
+    }
+
+    /**
+     * Keep metadata json with buffered asset, it is written to file by flush together with asset.
+     * Metadata record is not forced to disk, as metadata file which it replaces.
+     * @return false if asset is not buffered, metadata should be written directly
+     */
+    public boolean setMetadata(Path assetPath, byte[] metadata) throws IOException {
+        var entry = entries.get(assetPath);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            synchronized (this) {
+                if (entry.flushed || entries.get(assetPath) != entry) {
+                    return false;
+                }
+                entry.metadata = metadata;
+                append(encode(METADATA, entry));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return names of buffered assets of bucket
+     */
+    public List<String> list(String bucketId) {
+        return entries.values().stream()
+                .filter(entry -> entry.bucketId.equals(bucketId))
+                .map(entry -> entry.assetId)
+                .toList();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long bufferedSize() {
+        return bufferedSize.get();
+    }
+
+    /**
+     * Forget buffered asset, it waits for the file write if asset is being flushed,
+     * so the caller can remove the file after that
+     */
+    public void discard(Path assetPath) throws IOException {
+        var entry = entries.get(assetPath);
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    private void discard(Entry entry) throws IOException {
+        long position;
+        synchronized (this) {
+            if (!entries.remove(entry.path, entry)) {
+                return;
+            }
+            position = append(encode(DISCARD, entry));
+        }
+        synchronized (entry) {
+            // file write of flusher is finished
+        }
+        bufferedSize.addAndGet(-entry.data.length);
+        syncTo(position);
+    }
+
+    /**
+     * Write file of buffered asset out of batch, it is needed before file operations on asset
+     */
+    public void flush(Path assetPath) throws IOException {
+        var entry = entries.get(assetPath);
+        if (entry == null) {
+            return;
+        }
+        if (writeFile(entry) && sync) {
+            forceDirectories(List.of(entry));
+        }
+        long position;
+        synchronized (this) {
+            if (!entries.remove(assetPath, entry)) {
+                return; // discarded concurrently
+            }
+            position = append(encode(DISCARD, entry));
+        }
+        bufferedSize.addAndGet(-entry.data.length);
+        syncTo(position);
+    }
+
+    /**
+     * Write files of all assets which are buffered at this moment
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            long lastSegment;
+            synchronized (syncLock) {
+                synchronized (this) {
+                    if (entries.isEmpty() && segmentLength == 0) {
+                        return;
+                    }
+                    lastSegment = segmentId;
+                    roll();
+                }
+            }
+            var flushed = new ArrayList<Entry>();
+            var failed = new ArrayList<Entry>();
+            for (var entry : entries.values()) {
+                if (entry.segment > lastSegment) {
+                    continue;
+                }
+                try {
+                    if (writeFile(entry)) {
+                        flushed.add(entry);
+                    }
+                } catch (IOException e) {
+                    log.error("Can't flush buffered asset; {}/{}", entry.bucketId, entry.assetId, e);
+                    failed.add(entry);
+                }
+            }
+            // not flushed assets are moved to the active segment, so all previous segments are not needed
+            var position = 0L;
+            synchronized (this) {
+                for (var entry : failed) {
+                    if (entries.get(entry.path) == entry) {
+                        position = append(encode(STORE, entry));
+                        if (entry.metadata != null) {
+                            position = append(encode(METADATA, entry));
+                        }
+                        entry.segment = segmentId;
+                    }
+                }
+            }
+            syncTo(position);
+            if (sync) {
+                // new directory entries of files are durable before records of files are removed
+                forceDirectories(flushed);
+            }
+            removeSegments(lastSegment);
+            for (var entry : flushed) {
+                if (entries.remove(entry.path, entry)) {
+                    bufferedSize.addAndGet(-entry.data.length);
+                }
+            }
+            if (!flushed.isEmpty()) {
+                log.debug("Buffered assets were flushed; count={}; failed={}", flushed.size(), failed.size());
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            log.error("Write-back flush failed", e);
+        }
+    }
+
+    private void requestFlush() {
+        if (flusher != null && !flusher.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    /**
+     * File is written under lock of entry: discard of asset waits for it, and file of discarded entry
+     * is not written. Asset file is never replaced, buffered asset loses to file of concurrent direct upload
+     * and it is discarded.
+     * @return true if file was written
+     */
+    private boolean writeFile(Entry entry) throws IOException {
+        synchronized (entry) {
+            if (entries.get(entry.path) != entry) {
+                return false;
+            }
+            var tmpFile = writeTmpFile(entry.data, entry.lastModified);
+            try {
+                FilesystemStorageRepository.moveNoReplace(tmpFile, entry.path);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(tmpFile);
+                if (!isWritten(entry)) {
+                    log.warn("Buffered asset was discarded, file was created by other upload; {}/{}",
+                            entry.bucketId, entry.assetId);
+                    discard(entry);
+                    return false;
+                }
+                // file was written by flush before crash, its records were not removed
+            }
+            var metadata = entry.metadata;
+            if (metadata != null) {
+                var metadataPath = FilesystemAssetMetadataRepository.buildMetadataPath(rootPath,
+                        entry.bucketId, entry.assetId);
+                Files.createDirectories(metadataPath.getParent());
+                Files.move(writeTmpFile(metadata, entry.lastModified), metadataPath,
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            entry.flushed = true;
+            flushListener.accept(entry.path);
+            return true;
+        }
+    }
+
+    private static boolean isWritten(Entry entry) throws IOException {
+        try {
+            var attributes = Files.readAttributes(entry.path, BasicFileAttributes.class);
+            return attributes.size() == entry.data.length &&
+                    attributes.lastModifiedTime().toInstant().equals(entry.lastModified);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Journal record is removed after flush, so with sync file content is forced as well
+     */
+    private Path writeTmpFile(byte[] data, Instant lastModified) throws IOException {
+        var tmpFile = tmpPath.resolve("." + UUID.randomUUID() + ".tmp");
+        try {
+            try (var channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                var buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (sync) {
+                    channel.force(false);
+                }
+            }
+            Files.setLastModifiedTime(tmpFile, FileTime.from(lastModified));
+            return tmpFile;
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Force directories of flushed files, so renames survive crash
+     */
+    private void forceDirectories(List<Entry> flushed) throws IOException {
+        var directories = new HashSet<Path>();
+        for (var entry : flushed) {
+            directories.add(entry.path.getParent());
+            if (entry.metadata != null) {
+                directories.add(FilesystemAssetMetadataRepository.buildMetadataPath(rootPath,
+                        entry.bucketId, entry.assetId).getParent());
+            }
+        }
+        for (var directory : directories) {
+            try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * @return position after appended record
+     */
+    private long append(ByteBuffer record) throws IOException {
+        var length = record.remaining();
+        while (record.hasRemaining()) {
+            segment.write(record);
+        }
+        segmentLength += length;
+        appended += length;
+        return appended;
+    }
+
+    private void syncTo(long position) throws IOException {
+        if (!sync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return; // forced by other writer
+            }
+            FileChannel channel;
+            long target;
+            synchronized (this) {
+                channel = segment;
+                target = appended;
+            }
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * Caller holds sync lock and lock of this buffer
+     */
+    private void roll() throws IOException {
+        if (sync) {
+            segment.force(false);
+        }
+        segment.close();
+        synced = appended;
+        segmentId++;
+        segment = openSegment(segmentId);
+        segmentLength = 0;
+    }
+
+    private void removeSegments(long lastSegment) throws IOException {
+        try (var files = Files.list(journalPath)) {
+            for (var path : files.toList()) {
+                var name = path.getFileName().toString();
+                if (name.endsWith(SEGMENT_EXTENSION) && parseSegmentId(path) <= lastSegment) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        return FileChannel.open(journalPath.resolve(String.format("%020d", id) + SEGMENT_EXTENSION),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void replay(long id, Path segmentPath) throws IOException {
+        var records = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath)))) {
+            while (true) {
+                var payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                var record = new DataInputStream(new ByteArrayInputStream(payload));
+                var type = record.readByte();
+                var lastModified = Instant.ofEpochMilli(record.readLong());
+                var bucketId = record.readUTF();
+                var assetId = record.readUTF();
+                var path = buildPath(bucketId, assetId);
+                if (type == METADATA) {
+                    var entry = entries.get(path);
+                    if (entry != null) {
+                        entry.metadata = record.readAllBytes();
+                    }
+                    records++;
+                    continue;
+                }
+                var previous = entries.remove(path);
+                if (previous != null) {
+                    bufferedSize.addAndGet(-previous.data.length);
+                }
+                if (type == STORE) {
+                    var entry = new Entry(bucketId, assetId, path, record.readAllBytes(), lastModified);
+                    entry.segment = id;
+                    entries.put(path, entry);
+                    bufferedSize.addAndGet(entry.data.length);
+                }
+                records++;
+            }
+        }
+        log.info("Write-back journal segment was replayed; segment={}; records={}", segmentPath, records);
+    }
+
+    /**
+     * @return payload or null at the end of segment or at torn record
+     */
+    private byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            var length = in.readInt();
+            if (length <= 0 || length > MAX_HEADER_LENGTH + maxBufferedSize) {
+                return null;
+            }
+            var payload = new byte[length];
+            in.readFully(payload);
+            var checksum = in.readInt();
+            var crc = new CRC32C();
+            crc.update(payload);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer encode(byte type, Entry entry) throws IOException {
+        var content = type == STORE ? entry.data : type == METADATA ? entry.metadata : null;
+        var payload = new ByteArrayOutputStream(64 + (content != null ? content.length : 0));
+        var out = new DataOutputStream(payload);
+        out.writeByte(type);
+        out.writeLong(entry.lastModified.toEpochMilli());
+        out.writeUTF(entry.bucketId);
+        out.writeUTF(entry.assetId);
+        if (content != null) {
+            out.write(content);
+        }
+        var bytes = payload.toByteArray();
+        var crc = new CRC32C();
+        crc.update(bytes);
+        return ByteBuffer.allocate(4 + bytes.length + 4)
+                .putInt(bytes.length)
+                .put(bytes)
+                .putInt((int) crc.getValue())
+                .flip();
+    }
+
+    private Path buildPath(String bucketId, String assetId) {
+        return rootPath.resolve(bucketId).resolve(AssetNames.toFileName(assetId));
+    }
+
+    private static long parseSegmentId(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+    }
+
+    public static final class Entry {
+        private final String bucketId;
+        private final String assetId;
+        private final Path path;
+        private final byte[] data;
+        private final Instant lastModified;
+        /**
+         * journal segment of the last store record of entry
+         */
+        private volatile long segment;
+        /**
+         * metadata json or null if it was not saved yet
+         */
+        private volatile byte[] metadata;
+        /**
+         * files of entry were written, metadata can't be attached anymore
+         */
+        private volatile boolean flushed;
+
+        private Entry(String bucketId, String assetId, Path path, byte[] data, Instant lastModified) {
+            this.bucketId = bucketId;
+            this.assetId = assetId;
+            this.path = path;
+            this.data = data;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public Instant getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getMetadata() {
+            return metadata;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.model.AccessLogEntry;
+import pro.ganyushkin.binary_storage_service.util.RingBuffer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous structured access log.
+ * Request threads only put entries into lock free ring buffer, writer thread drains it by batches
+ * and writes one JSON line per request with one write call per batch.
+ * Entries are dropped (and counted) when buffer is full, request threads never wait for logging.
+ */
+@Slf4j
+@Service
+public class AccessLogService {
+    /**
+     * access log destination when file is not configured
+     */
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("access-log");
+
+    @Value("${storage.access-log.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.access-log.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${storage.access-log.batch-size:512}")
+    private int batchSize;
+
+    @Value("${storage.access-log.flush-interval:200ms}")
+    private Duration flushInterval;
+
+    /**
+     * share of successful requests which are logged, failed requests are always logged
+     */
+    @Value("${storage.access-log.sample-rate:1.0}")
+    private double sampleRate;
+
+    /**
+     * JSON lines file, empty - "access-log" logger is used
+     */
+    @Value("${storage.access-log.file:}")
+    private String file;
+
+    private RingBuffer<AccessLogEntry> buffer;
+
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * dropped count of the last warning, it is used by flushing thread only
+     */
+    private long reportedDropped;
+
+    private Writer writer;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        buffer = new RingBuffer<>(bufferSize);
+        if (!file.isEmpty()) {
+            var path = Path.of(file);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "access-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var interval = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException, IOException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        if (scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+            // writer thread is stopped, entries of the last requests are written by this thread
+            flush();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue entry for writing, it never blocks
+     */
+    public void record(AccessLogEntry entry) {
+        if (!enabled) {
+            return;
+        }
+        if (entry.status() < 400 && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        if (!buffer.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return count of entries which were dropped because buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void flush() {
+        try {
+            var batch = new StringBuilder();
+            while (buffer.drain(entry -> format(batch, entry), batchSize) > 0) {
+                write(batch);
+                batch.setLength(0);
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            var droppedCount = dropped.get();
+            if (droppedCount > reportedDropped) {
+                log.warn("Access log buffer is full, entries were dropped; count={}", droppedCount - reportedDropped);
+                reportedDropped = droppedCount;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Access log write failed", e);
+        }
+    }
+
+    private void write(StringBuilder batch) throws IOException {
+        if (writer != null) {
+            writer.append(batch);
+        } else {
+            batch.setLength(batch.length() - 1); // line separator of the last entry
+            ACCESS_LOG.info(batch.toString());
+        }
+    }
+
+    private static void format(StringBuilder line, AccessLogEntry entry) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.timestamp())).append('"');
+        line.append(",\"method\":");
+        string(line, entry.method());
+        line.append(",\"path\":");
+        string(line, entry.path());
+        line.append(",\"status\":").append(entry.status());
+        line.append(",\"bytesIn\":").append(entry.bytesIn());
+        line.append(",\"bytesOut\":").append(entry.bytesOut());
+        line.append(",\"durationMicros\":").append(entry.durationMicros());
+        line.append(",\"clientId\":");
+        string(line, entry.clientId());
+        line.append("}\n");
+    }
+
+    private static void string(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
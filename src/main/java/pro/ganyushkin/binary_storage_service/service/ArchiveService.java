@@ -0,0 +1,449 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.CountingInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.ArchiveFormat;
+import pro.ganyushkin.binary_storage_service.model.ImportResult;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming export of bucket into tar/zip archive and import from it.
+ * Export links window of assets into hidden snapshot first, so archive doesn't see concurrent writes to them,
+ * then small assets are read ahead by workers while archive is written. Import stores small entries
+ * by workers and large ones inline. Read ahead and stored entries are limited by the memory budget.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ArchiveService {
+    /**
+     * snapshot assets are named {@code <snapshotId>.<assetId>}
+     */
+    public static final String SNAPSHOT_BUCKET = ".export";
+
+    private final StorageService storageService;
+    private final BinaryStorageRepository storageRepository;
+
+    @Value("${storage.archive.workers:4}")
+    private int workers;
+
+    /**
+     * assets which are linked into snapshot and written at once on export
+     */
+    @Value("${storage.archive.snapshot-window:1000}")
+    private int snapshotWindow;
+
+    /**
+     * memory for assets which are read ahead on export and entries which are queued for storing on import
+     */
+    @Value("${storage.archive.buffer-size:64MB}")
+    private DataSize bufferSize;
+
+    /**
+     * bigger assets are streamed without buffering
+     */
+    @Value("${storage.archive.max-buffered-asset-size:4MB}")
+    private DataSize maxBufferedAssetSize;
+
+    /**
+     * 0 - entries are not compressed, archive is written at disk speed
+     */
+    @Value("${storage.archive.zip-compression-level:0}")
+    private int zipCompressionLevel;
+
+    private ExecutorService workerPool;
+
+    private int budgetSize;
+
+    private int maxBufferedSize;
+
+    @PostConstruct
+    private void init() {
+        budgetSize = (int) Math.min(Integer.MAX_VALUE, bufferSize.toBytes());
+        maxBufferedSize = (int) Math.min(budgetSize, maxBufferedAssetSize.toBytes());
+        var threadNumber = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            var thread = new Thread(runnable, "archive-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // snapshots of exports which were interrupted by restart
+            if (storageRepository.exists(SNAPSHOT_BUCKET)) {
+                removeSnapshots("");
+            }
+        } catch (RuntimeException e) {
+            log.warn("Can't remove export snapshots", e);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * Write assets of bucket into archive in name order. Assets are snapshotted by windows of
+     * {@code storage.archive.snapshot-window}, archive contains every asset as it was when its window was linked
+     * @param prefix - only assets with this prefix are exported, empty - all assets
+     * @param out - archive is finished, but stream is not closed
+     * @throws UndefinedResourceException - if bucket not exists
+     */
+    public void exportBucket(String bucketId, String prefix, ArchiveFormat format, OutputStream out)
+            throws UndefinedResourceException, InternalStorageException, IOException {
+        var snapshotId = UUID.randomUUID().toString();
+        var window = Math.max(1, snapshotWindow);
+        var assetIds = storageService.getBucketPage(bucketId, prefix, null, window);
+        if (!storageRepository.exists(SNAPSHOT_BUCKET)) {
+            try {
+                storageRepository.createBucket(SNAPSHOT_BUCKET);
+            } catch (ResourceAlreadyExists e) {
+                log.debug("Snapshot bucket was created concurrently");
+            }
+        }
+        var archive = createArchiveOutput(format, out);
+        var exported = 0;
+        while (!assetIds.isEmpty()) {
+            var entries = createSnapshot(bucketId, assetIds, snapshotId);
+            try {
+                writeEntries(format, archive, entries);
+            } finally {
+                removeSnapshot(entries);
+            }
+            exported += entries.size();
+            if (assetIds.size() < window) {
+                break;
+            }
+            assetIds = storageService.getBucketPage(bucketId, prefix, assetIds.get(assetIds.size() - 1), window);
+        }
+        archive.finish();
+        out.flush();
+        log.info("Bucket was exported; bucketId={}; prefix={}; assets={}", bucketId, prefix, exported);
+    }
+
+    /**
+     * Store archive entries as assets of bucket, bucket is created if it doesn't exist
+     * @param prefix - it is added to names of entries
+     * @param overwrite - existing assets are replaced, otherwise they are skipped
+     */
+    public ImportResult importBucket(String bucketId, String prefix, ArchiveFormat format, InputStream in,
+                                     boolean overwrite) throws InternalStorageException, IOException {
+        try {
+            storageService.createBucket(bucketId, true);
+        } catch (ResourceAlreadyExists e) {
+            throw new InternalStorageException("Can't create bucket " + bucketId, e);
+        }
+        var counters = new ImportCounters();
+        var budget = new Semaphore(budgetSize);
+        var pending = new Phaser(1);
+        try {
+            var archive = createArchiveInput(format, in);
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory() || !archive.canReadEntryData(entry)) {
+                    counters.skipped.incrementAndGet();
+                    continue;
+                }
+                var assetId = prefix + entry.getName();
+                if (!isValidAssetId(assetId)) {
+                    log.warn("Archive entry is skipped, it is not a valid asset id; bucketId={}; entry={}",
+                            bucketId, entry.getName());
+                    counters.skipped.incrementAndGet();
+                    continue;
+                }
+                var head = archive.readNBytes(maxBufferedSize + 1);
+                if (head.length <= maxBufferedSize) {
+                    budget.acquire(head.length);
+                    pending.register();
+                    workerPool.execute(() -> {
+                        try {
+                            store(bucketId, assetId, new ByteArrayInputStream(head), head.length, overwrite, counters);
+                            counters.bytes.addAndGet(head.length);
+                        } finally {
+                            budget.release(head.length);
+                            pending.arriveAndDeregister();
+                        }
+                    });
+                } else {
+                    // archive stream is positioned at the rest of entry, it is consumed by this thread
+                    var data = new CountingInputStream(
+                            new SequenceInputStream(new ByteArrayInputStream(head), archive));
+                    store(bucketId, assetId, data, entry.getSize(), overwrite, counters);
+                    counters.bytes.addAndGet(data.getBytesRead());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import was interrupted");
+        } finally {
+            pending.arriveAndAwaitAdvance();
+        }
+        var result = counters.toResult();
+        log.info("Archive was imported; bucketId={}; {}", bucketId, result);
+        return result;
+    }
+
+    /**
+     * Entry names come from the client archive. Asset ids are flat, so {@code dir/file} is a single id,
+     * but absolute names and {@code .} or {@code ..} segments are rejected: export of such assets would be
+     * an archive which is unsafe to extract (zip-slip)
+     */
+    static boolean isValidAssetId(String assetId) {
+        if (assetId.isEmpty() || assetId.startsWith("/") || assetId.startsWith("\\")) {
+            return false;
+        }
+        for (var segment : assetId.split("[/\\\\]")) {
+            if (segment.equals(".") || segment.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param assetIds - window of assets in name order
+     * @return assets of snapshot in name order, assets which were removed during snapshot are skipped
+     */
+    private List<SnapshotEntry> createSnapshot(String bucketId, List<String> assetIds, String snapshotId)
+            throws InternalStorageException {
+        var failed = new AtomicBoolean();
+        var futures = assetIds.stream()
+                .map(assetId -> CompletableFuture.supplyAsync(
+                        () -> failed.get() ? null : snapshotAsset(bucketId, assetId, snapshotId), workerPool))
+                .toList();
+        try {
+            return futures.stream()
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .toList();
+        } catch (CompletionException e) {
+            // links are removed when all workers are done, so links which were in flight are not left behind
+            failed.set(true);
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).handle((result, ex) -> null).join();
+            removeSnapshot(futures.stream()
+                    .filter(future -> !future.isCompletedExceptionally())
+                    .map(CompletableFuture::join)
+                    .filter(Objects::nonNull)
+                    .toList());
+            if (e.getCause() instanceof InternalStorageException cause) {
+                throw cause;
+            }
+            throw new InternalStorageException("Can't create export snapshot; bucketId=" + bucketId, e.getCause());
+        }
+    }
+
+    private SnapshotEntry snapshotAsset(String bucketId, String assetId, String snapshotId) {
+        var snapshotAssetId = snapshotId + "." + assetId;
+        try {
+            storageRepository.copy(bucketId, assetId, SNAPSHOT_BUCKET, snapshotAssetId);
+            var stat = storageRepository.stat(SNAPSHOT_BUCKET, snapshotAssetId);
+            return new SnapshotEntry(assetId, snapshotAssetId, stat.getSize(),
+                    stat.getLastModified() != null ? stat.getLastModified() : Instant.now());
+        } catch (UndefinedResourceException e) {
+            log.debug("Asset was removed before export snapshot; {}/{}", bucketId, assetId);
+            return null;
+        } catch (InternalStorageException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void removeSnapshot(List<SnapshotEntry> entries) {
+        for (var entry : entries) {
+            try {
+                storageRepository.delete(SNAPSHOT_BUCKET, entry.snapshotAssetId());
+            } catch (UndefinedResourceException e) {
+                log.debug("Export snapshot was already removed; {}", entry.snapshotAssetId());
+            } catch (InternalStorageException e) {
+                log.error("Can't remove export snapshot; {}", entry.snapshotAssetId(), e);
+            }
+        }
+    }
+
+    /**
+     * @param prefix - prefix of snapshot assets, empty - all snapshots
+     */
+    private void removeSnapshots(String prefix) {
+        try {
+            for (var assetId : storageRepository.listAssets(SNAPSHOT_BUCKET)) {
+                if (assetId.startsWith(prefix)) {
+                    storageRepository.delete(SNAPSHOT_BUCKET, assetId);
+                }
+            }
+        } catch (UndefinedResourceException e) {
+            log.debug("Snapshot bucket doesn't exist");
+        } catch (InternalStorageException e) {
+            log.error("Can't remove export snapshot; prefix={}", prefix, e);
+        }
+    }
+
+    /**
+     * Assets are written in order, small assets ahead of writer are read by workers while budget allows
+     */
+    private void writeEntries(ArchiveFormat format, ArchiveOutputStream archive, List<SnapshotEntry> entries)
+            throws IOException, InternalStorageException {
+        var budget = new Semaphore(budgetSize);
+        var readAhead = new ArrayDeque<CompletableFuture<byte[]>>();
+        var next = 0;
+        try {
+            for (var i = 0; i < entries.size(); i++) {
+                while (next < entries.size()) {
+                    var size = entries.get(next).size();
+                    if (size <= maxBufferedSize && budget.tryAcquire((int) size)) {
+                        var snapshotAssetId = entries.get(next).snapshotAssetId();
+                        readAhead.add(CompletableFuture.supplyAsync(() -> readSnapshot(snapshotAssetId), workerPool));
+                    } else if (next == i) {
+                        readAhead.add(CompletableFuture.completedFuture(null));
+                    } else {
+                        break;
+                    }
+                    next++;
+                }
+                var entry = entries.get(i);
+                var data = readAhead.poll().join();
+                archive.putArchiveEntry(createEntry(format, entry));
+                if (data != null) {
+                    archive.write(data);
+                    budget.release(data.length);
+                } else {
+                    try (var in = storageRepository.read(SNAPSHOT_BUCKET, entry.snapshotAssetId())) {
+                        in.transferTo(archive);
+                    } catch (UndefinedResourceException e) {
+                        throw new InternalStorageException("Export snapshot was removed; " + entry.assetId(), e);
+                    }
+                }
+                archive.closeArchiveEntry();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw new InternalStorageException("Can't read export snapshot", e.getCause());
+        } finally {
+            readAhead.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private byte[] readSnapshot(String snapshotAssetId) {
+        try (var in = storageRepository.read(SNAPSHOT_BUCKET, snapshotAssetId)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (UndefinedResourceException | InternalStorageException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void store(String bucketId, String assetId, InputStream data, long contentLength, boolean overwrite,
+                       ImportCounters counters) {
+        try {
+            storageService.storeAsset(bucketId, assetId, data, contentLength, false, overwrite, Map.of());
+            counters.imported.incrementAndGet();
+        } catch (ResourceAlreadyExists e) {
+            counters.skipped.incrementAndGet();
+        } catch (UndefinedResourceException | InternalStorageException | QuotaExceededException
+                 | RuntimeException e) {
+            log.warn("Can't import asset; {}/{}", bucketId, assetId, e);
+            counters.failed.incrementAndGet();
+        }
+    }
+
+    private ArchiveOutputStream createArchiveOutput(ArchiveFormat format, OutputStream out) {
+        return switch (format) {
+            case TAR -> {
+                var tar = new TarArchiveOutputStream(out, StandardCharsets.UTF_8.name());
+                tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                yield tar;
+            }
+            case ZIP -> {
+                var zip = new ZipArchiveOutputStream(out);
+                zip.setLevel(zipCompressionLevel);
+                zip.setUseZip64(Zip64Mode.AsNeeded);
+                yield zip;
+            }
+        };
+    }
+
+    private static ArchiveInputStream createArchiveInput(ArchiveFormat format, InputStream in) {
+        return switch (format) {
+            case TAR -> new TarArchiveInputStream(in, StandardCharsets.UTF_8.name());
+            case ZIP -> new ZipArchiveInputStream(in, StandardCharsets.UTF_8.name(), true, true);
+        };
+    }
+
+    private static ArchiveEntry createEntry(ArchiveFormat format, SnapshotEntry entry) {
+        return switch (format) {
+            case TAR -> {
+                var tarEntry = new TarArchiveEntry(entry.assetId());
+                tarEntry.setSize(entry.size());
+                tarEntry.setModTime(Date.from(entry.lastModified()));
+                yield tarEntry;
+            }
+            case ZIP -> {
+                var zipEntry = new ZipArchiveEntry(entry.assetId());
+                zipEntry.setSize(entry.size());
+                zipEntry.setTime(entry.lastModified().toEpochMilli());
+                yield zipEntry;
+            }
+        };
+    }
+
+    private record SnapshotEntry(String assetId, String snapshotAssetId, long size, Instant lastModified) {
+    }
+
+    private static class ImportCounters {
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private ImportResult toResult() {
+            return new ImportResult(imported.get(), skipped.get(), failed.get(), bytes.get());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.OffsetOutOfRangeException;
+import pro.ganyushkin.binary_storage_service.model.ChangeBatch;
+import pro.ganyushkin.binary_storage_service.model.ChangeEvent;
+import pro.ganyushkin.binary_storage_service.repository.ChangeLogRepository;
+import pro.ganyushkin.binary_storage_service.repository.FilesystemStorageRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ordered feed of creates, overwrites and deletes of assets, so consumers track changes
+ * without listing buckets. Consumers keep offset of the next event and poll from it,
+ * polls without new events wait for append. Events of hidden buckets (internal data, ex. multipart parts)
+ * are not recorded.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ChangeFeedService {
+    private final ChangeLogRepository changeLogRepository;
+
+    @Value("${storage.change-feed.max-events:1000}")
+    private int maxEvents;
+
+    /**
+     * log bytes which are scanned by one filtered read, read without matching events returns the advanced offset
+     */
+    @Value("${storage.change-feed.max-scan-bytes:4MB}")
+    private DataSize maxScanBytes;
+
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean notifyScheduled = new AtomicBoolean();
+
+    private ExecutorService notifier;
+
+    @PostConstruct
+    private void init() {
+        if (!changeLogRepository.isEnabled()) {
+            return;
+        }
+        notifier = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "change-feed-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (notifier != null) {
+            notifier.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return changeLogRepository.isEnabled();
+    }
+
+    /**
+     * Append mutation to the feed and wake up waiting consumers
+     * @param size - asset size after write, size of removed asset for delete
+     * @throws InternalStorageException - if change log can't be written
+     */
+    public void record(ChangeEvent.Type type, String bucketId, String assetId, long size)
+            throws InternalStorageException {
+        if (!changeLogRepository.isEnabled() || bucketId.startsWith(FilesystemStorageRepository.HIDDEN_PREFIX)) {
+            return;
+        }
+        changeLogRepository.append(type, bucketId, assetId, size, Instant.now());
+        if (!waiters.isEmpty()) {
+            scheduleNotify();
+        }
+    }
+
+    /**
+     * Read events from offset without waiting
+     * @param offset - offset of the first event, null - the oldest available event
+     * @param limit - max count of events, it is limited by storage.change-feed.max-events
+     * @param bucketId - events of this bucket only, null - events of all buckets
+     * @return events and offset after scanned part of log, events are empty if there are no events of bucket
+     *          in the end of log or in the next {@code storage.change-feed.max-scan-bytes}
+     * @throws OffsetOutOfRangeException - if offset was removed by retention or it is not an offset of event
+     */
+    public ChangeBatch read(Long offset, int limit, String bucketId)
+            throws OffsetOutOfRangeException, InternalStorageException {
+        var start = changeLogRepository.getStartOffset();
+        var end = changeLogRepository.getEndOffset();
+        var position = offset != null ? offset : start;
+        if (position < start || position > end) {
+            throw new OffsetOutOfRangeException(position, start, end);
+        }
+        var count = Math.max(1, Math.min(limit, maxEvents));
+        var events = new ArrayList<ChangeEvent>();
+        var scanEnd = position + maxScanBytes.toBytes();
+        // skip events of other buckets until something is found, the end of log or the scan limit is reached
+        while (events.isEmpty() && position < changeLogRepository.getEndOffset() && position < scanEnd) {
+            var batch = changeLogRepository.read(position, count);
+            for (var event : batch.events()) {
+                if (bucketId == null || bucketId.equals(event.bucketId())) {
+                    events.add(event);
+                }
+            }
+            position = batch.nextOffset();
+        }
+        return new ChangeBatch(events, position);
+    }
+
+    /**
+     * Read events from offset, future is completed when there is at least one event
+     * or with empty batch and offset after scanned part of log when timeout is over.
+     * Waiting consumer should cancel future if it is not interested in result anymore.
+     */
+    public CompletableFuture<ChangeBatch> poll(Long offset, int limit, String bucketId, Duration timeout)
+            throws OffsetOutOfRangeException, InternalStorageException {
+        var batch = read(offset, limit, bucketId);
+        if (!batch.events().isEmpty()) {
+            return CompletableFuture.completedFuture(batch);
+        }
+        var waiter = new Waiter(batch.nextOffset(), limit, bucketId);
+        waiters.add(waiter);
+        waiter.future.whenComplete((result, e) -> waiters.remove(waiter));
+        // offset of waiter is changed by notifier thread, so timeout is completed by it too
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS, notifier)
+                .execute(() -> waiter.future.complete(new ChangeBatch(List.of(), waiter.offset)));
+        // event could be appended between read and registration of waiter
+        if (changeLogRepository.getEndOffset() > waiter.offset) {
+            scheduleNotify();
+        }
+        return waiter.future;
+    }
+
+    public long getStartOffset() {
+        return changeLogRepository.getStartOffset();
+    }
+
+    public long getEndOffset() {
+        return changeLogRepository.getEndOffset();
+    }
+
+    private void scheduleNotify() {
+        if (notifyScheduled.compareAndSet(false, true)) {
+            notifier.execute(this::notifyWaiters);
+        }
+    }
+
+    private void notifyWaiters() {
+        notifyScheduled.set(false);
+        var end = changeLogRepository.getEndOffset();
+        var behind = false;
+        for (var waiter : waiters) {
+            if (waiter.future.isDone() || waiter.offset >= end) {
+                continue;
+            }
+            try {
+                var batch = read(waiter.offset, waiter.limit, waiter.bucketId);
+                if (batch.events().isEmpty()) {
+                    waiter.offset = batch.nextOffset();
+                    behind |= waiter.offset < end;
+                } else {
+                    waiter.future.complete(batch);
+                }
+            } catch (OffsetOutOfRangeException | InternalStorageException | RuntimeException e) {
+                waiter.future.completeExceptionally(e);
+            }
+        }
+        // scan of filtered waiters is continued by the next pass, so other waiters are not delayed
+        if (behind) {
+            scheduleNotify();
+        }
+    }
+
+    private static class Waiter {
+        private final CompletableFuture<ChangeBatch> future = new CompletableFuture<>();
+        private final int limit;
+        private final String bucketId;
+        /**
+         * is changed by notifier thread only
+         */
+        private long offset;
+
+        private Waiter(long offset, int limit, String bucketId) {
+            this.offset = offset;
+            this.limit = limit;
+            this.bucketId = bucketId;
+        }
+    }
+}
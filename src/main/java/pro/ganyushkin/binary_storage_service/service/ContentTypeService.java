@@ -1,22 +1,207 @@
 package pro.ganyushkin.binary_storage_service.service;
 
+import io.opentelemetry.api.trace.Tracer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-
+/**
+ * Content type detection by asset extension and optional magic bytes sniffing.
+ * Detection is executed once on upload, result is stored in asset metadata.
+ */
+@RequiredArgsConstructor
 @Service
 public class ContentTypeService {
+    /**
+     * count of first asset bytes which are required for sniffing
+     */
+    public static final int SNIFF_LENGTH = 16;
+
+    private static final String[][] TYPES_BY_EXTENSION = {
+            {"txt", MediaType.TEXT_PLAIN_VALUE},
+            {"log", MediaType.TEXT_PLAIN_VALUE},
+            {"md", "text/markdown"},
+            {"csv", "text/csv"},
+            {"htm", MediaType.TEXT_HTML_VALUE},
+            {"html", MediaType.TEXT_HTML_VALUE},
+            {"css", "text/css"},
+            {"js", "text/javascript"},
+            {"json", MediaType.APPLICATION_JSON_VALUE},
+            {"xml", MediaType.APPLICATION_XML_VALUE},
+            {"yaml", "application/yaml"},
+            {"yml", "application/yaml"},
+            {"png", MediaType.IMAGE_PNG_VALUE},
+            {"jpg", MediaType.IMAGE_JPEG_VALUE},
+            {"jpeg", MediaType.IMAGE_JPEG_VALUE},
+            {"gif", MediaType.IMAGE_GIF_VALUE},
+            {"bmp", "image/bmp"},
+            {"webp", "image/webp"},
+            {"svg", "image/svg+xml"},
+            {"ico", "image/vnd.microsoft.icon"},
+            {"tif", "image/tiff"},
+            {"tiff", "image/tiff"},
+            {"pdf", MediaType.APPLICATION_PDF_VALUE},
+            {"zip", "application/zip"},
+            {"gz", "application/gzip"},
+            {"tgz", "application/gzip"},
+            {"tar", "application/x-tar"},
+            {"bz2", "application/x-bzip2"},
+            {"7z", "application/x-7z-compressed"},
+            {"rar", "application/vnd.rar"},
+            {"jar", "application/java-archive"},
+            {"wasm", "application/wasm"},
+            {"mp3", "audio/mpeg"},
+            {"wav", "audio/wav"},
+            {"ogg", "audio/ogg"},
+            {"mp4", "video/mp4"},
+            {"webm", "video/webm"},
+            {"avi", "video/x-msvideo"},
+            {"mov", "video/quicktime"},
+            {"mkv", "video/x-matroska"},
+            {"doc", "application/msword"},
+            {"docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"},
+            {"xls", "application/vnd.ms-excel"},
+            {"xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"},
+            {"ppt", "application/vnd.ms-powerpoint"},
+            {"pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation"},
+            {"woff", "font/woff"},
+            {"woff2", "font/woff2"},
+            {"ttf", "font/ttf"},
+            {"otf", "font/otf"},
+    };
+
+    private static final int TABLE_SIZE = 256; // power of two, more than twice of TYPES_BY_EXTENSION
+    private static final String[] TABLE_EXTENSIONS = new String[TABLE_SIZE];
+    private static final String[] TABLE_TYPES = new String[TABLE_SIZE];
+
+    static {
+        for (var entry : TYPES_BY_EXTENSION) {
+            var slot = hash(entry[0], 0, entry[0].length()) & (TABLE_SIZE - 1);
+            while (TABLE_EXTENSIONS[slot] != null) {
+                slot = (slot + 1) & (TABLE_SIZE - 1);
+            }
+            TABLE_EXTENSIONS[slot] = entry[0];
+            TABLE_TYPES[slot] = entry[1];
+        }
+    }
 
+    private final Tracer tracer;
+
+    @Value("${storage.content-type.sniffing.enabled:true}")
+    private boolean sniffingEnabled;
+
+    public boolean isSniffingEnabled() {
+        return sniffingEnabled;
+    }
+
+    /**
+     * Find content type by asset extension, lookup doesn't allocate memory
+     * @param assetId - asset identificator with extension
+     * @return content type or application/octet-stream if extension is unknown
+     */
     public String findType(String assetId) {
-        try {
-            var type = Files.probeContentType(Path.of(assetId));
-            if (type != null) {
-                return type;
+        var dot = assetId.lastIndexOf('.');
+        if (dot < 0 || dot == assetId.length() - 1 || assetId.indexOf('/', dot) >= 0) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        var from = dot + 1;
+        var length = assetId.length() - from;
+        var slot = hash(assetId, from, assetId.length()) & (TABLE_SIZE - 1);
+        while (TABLE_EXTENSIONS[slot] != null) {
+            var extension = TABLE_EXTENSIONS[slot];
+            if (extension.length() == length && extension.regionMatches(true, 0, assetId, from, length)) {
+                return TABLE_TYPES[slot];
             }
-        } catch (IOException ignored) {}
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
         return MediaType.APPLICATION_OCTET_STREAM_VALUE;
     }
+
+    /**
+     * Find content type by asset extension, magic bytes are used if extension is unknown
+     * @param assetId - asset identificator with extension
+     * @param head - first bytes of asset content
+     * @param length - count of available bytes in head
+     * @return content type or application/octet-stream if type is unknown
+     */
+    public String findType(String assetId, byte[] head, int length) {
+        var span = tracer.spanBuilder("content-type.probe").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var type = findType(assetId);
+            if (!sniffingEnabled || !MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(type)) {
+                return type;
+            }
+            var sniffed = sniff(head, length);
+            return sniffed != null ? sniffed : type;
+        } finally {
+            span.end();
+        }
+    }
+
+    private static String sniff(byte[] head, int length) {
+        if (startsWith(head, length, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return MediaType.IMAGE_PNG_VALUE;
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return MediaType.IMAGE_JPEG_VALUE;
+        }
+        if (startsWith(head, length, 0, 'G', 'I', 'F', '8')) {
+            return MediaType.IMAGE_GIF_VALUE;
+        }
+        if (startsWith(head, length, 0, 'R', 'I', 'F', 'F') && startsWith(head, length, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(head, length, 0, 'I', 'I', '*', 0) || startsWith(head, length, 0, 'M', 'M', 0, '*')) {
+            return "image/tiff";
+        }
+        if (startsWith(head, length, 0, '%', 'P', 'D', 'F', '-')) {
+            return MediaType.APPLICATION_PDF_VALUE;
+        }
+        if (startsWith(head, length, 0, 'P', 'K', 0x03, 0x04)) {
+            return "application/zip";
+        }
+        if (startsWith(head, length, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (startsWith(head, length, 0, '7', 'z', 0xBC, 0xAF, 0x27, 0x1C)) {
+            return "application/x-7z-compressed";
+        }
+        if (startsWith(head, length, 0, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        }
+        if (startsWith(head, length, 4, 'f', 't', 'y', 'p')) {
+            return "video/mp4";
+        }
+        if (startsWith(head, length, 0, 0, 'a', 's', 'm')) {
+            return "application/wasm";
+        }
+        if (startsWith(head, length, 0, '<', '?', 'x', 'm', 'l')) {
+            return MediaType.APPLICATION_XML_VALUE;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int offset, int... magic) {
+        if (length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String value, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + Character.toLowerCase(value.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
 }
@@ -0,0 +1,222 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.CopyJob;
+import pro.ganyushkin.binary_storage_service.model.CopyRequest;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background copy and move of asset prefixes and whole buckets.
+ * Jobs are executed one by one, assets of job are copied by the pool of workers.
+ * Job can be cancelled, assets which are being copied are completed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class CopyJobService {
+    private final StorageService storageService;
+
+    @Value("${storage.copy.workers:4}")
+    private int workers;
+
+    /**
+     * finished jobs are reported during this time
+     */
+    @Value("${storage.copy.job-retention:1h}")
+    private Duration jobRetention;
+
+    private final ConcurrentMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private ExecutorService coordinator;
+
+    private ExecutorService workerPool;
+
+    @PostConstruct
+    private void init() {
+        coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "copy-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var threadNumber = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            var thread = new Thread(runnable, "copy-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        jobs.values().forEach(job -> job.cancelled = true);
+        coordinator.shutdownNow();
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * Queue job, target bucket is created if it doesn't exist
+     * @throws UndefinedResourceException - if source bucket is not exists or target bucket is hidden
+     */
+    public CopyJob start(CopyRequest request) throws UndefinedResourceException {
+        if (!storageService.isBucketExists(request.sourceBucketId())) {
+            throw new UndefinedResourceException(request.sourceBucketId());
+        }
+        if (StorageService.isHiddenBucket(request.targetBucketId())) {
+            throw new UndefinedResourceException(request.targetBucketId());
+        }
+        removeExpiredJobs();
+        var job = new Job(UUID.randomUUID().toString(), request);
+        jobs.put(job.id, job);
+        coordinator.execute(() -> run(job));
+        log.info("Copy job was queued; jobId={}; {}", job.id, request);
+        return job.toCopyJob();
+    }
+
+    public Optional<CopyJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::toCopyJob);
+    }
+
+    public List<CopyJob> getJobs() {
+        return jobs.values().stream()
+                .map(Job::toCopyJob)
+                .sorted(Comparator.comparing(CopyJob::startedAt, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+    }
+
+    /**
+     * Stop job, queued assets are not copied
+     * @return job state or empty if job is unknown
+     */
+    public Optional<CopyJob> cancel(String jobId) {
+        var job = jobs.get(jobId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.cancelled = true;
+        log.info("Copy job was cancelled; jobId={}", jobId);
+        return Optional.of(job.toCopyJob());
+    }
+
+    private void run(Job job) {
+        job.startedAt = Instant.now();
+        if (job.cancelled) {
+            job.finish(CopyJob.State.CANCELLED);
+            return;
+        }
+        job.state = CopyJob.State.RUNNING;
+        var request = job.request;
+        try {
+            if (!storageService.isBucketExists(request.targetBucketId())) {
+                storageService.createBucket(request.targetBucketId(), true);
+            }
+            // listing is taken before copy, so assets which are moved into the same bucket are not copied twice
+            var prefix = request.prefixOrEmpty();
+            var assetIds = storageService.getBucketList(request.sourceBucketId()).stream()
+                    .filter(assetId -> assetId.startsWith(prefix))
+                    .toList();
+            job.total.set(assetIds.size());
+            var inFlight = new Semaphore(workers * 2);
+            var pending = new Phaser(1);
+            for (var assetId : assetIds) {
+                if (job.cancelled) {
+                    break;
+                }
+                inFlight.acquire();
+                pending.register();
+                workerPool.execute(() -> {
+                    try {
+                        if (!job.cancelled) {
+                            copy(job, assetId);
+                        }
+                    } finally {
+                        inFlight.release();
+                        pending.arriveAndDeregister();
+                    }
+                });
+            }
+            pending.arriveAndAwaitAdvance();
+            job.finish(job.cancelled ? CopyJob.State.CANCELLED : CopyJob.State.COMPLETED);
+        } catch (UndefinedResourceException | InternalStorageException | ResourceAlreadyExists e) {
+            log.error("Copy job failed; jobId={}", job.id, e);
+            job.finish(CopyJob.State.FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.finish(CopyJob.State.CANCELLED);
+        }
+        log.info("Copy job was finished; {}", job.toCopyJob());
+    }
+
+    private void copy(Job job, String assetId) {
+        var request = job.request;
+        var targetAssetId = request.targetPrefixOrSource() + assetId.substring(request.prefixOrEmpty().length());
+        try {
+            var metadata = storageService.copyAsset(request.sourceBucketId(), assetId,
+                    request.targetBucketId(), targetAssetId, request.move(), request.overwrite());
+            job.copied.incrementAndGet();
+            job.bytes.addAndGet(metadata.getSize());
+        } catch (ResourceAlreadyExists | UndefinedResourceException e) {
+            log.debug("Skip asset in copy job; jobId={}; {}", job.id, e.getMessage());
+            job.skipped.incrementAndGet();
+        } catch (InternalStorageException | QuotaExceededException | RuntimeException e) {
+            log.warn("Can't copy asset; jobId={}; {}/{}", job.id, request.sourceBucketId(), assetId, e);
+            job.failed.incrementAndGet();
+        }
+    }
+
+    private void removeExpiredJobs() {
+        var expiration = Instant.now().minus(jobRetention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(expiration));
+    }
+
+    private static class Job {
+        private final String id;
+        private final CopyRequest request;
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong copied = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile CopyJob.State state = CopyJob.State.QUEUED;
+        private volatile boolean cancelled;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+
+        private Job(String id, CopyRequest request) {
+            this.id = id;
+            this.request = request;
+        }
+
+        private void finish(CopyJob.State finalState) {
+            finishedAt = Instant.now();
+            state = finalState;
+        }
+
+        private CopyJob toCopyJob() {
+            return new CopyJob(id, request, state, total.get(), copied.get(), skipped.get(), failed.get(),
+                    bytes.get(), startedAt, finishedAt);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.ServiceOverloadedException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.exception.UnsupportedTransformException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.model.ImageTransform;
+import pro.ganyushkin.binary_storage_service.repository.AssetMetadataRepository;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.util.SingleFlight;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates image derivatives (resize, crop, format conversion) for stored assets.
+ * Generated derivatives are cache, they are written to the hidden bucket through the repository directly
+ * and are not accounted by quotas, inventory or change feed;
+ * derivative asset id is built from source checksum and transformation parameters.
+ * Checksum of source is verified while it is read, derivative of source which was overwritten
+ * during generation is stored under the id of the new content.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class DerivativeService {
+    public static final String DERIVATIVES_BUCKET = ".derivatives";
+
+    private static final Set<String> SUPPORTED_FORMATS = Set.of("png", "jpeg", "gif", "bmp");
+    private static final Map<String, String> FORMATS_BY_TYPE = Map.of(
+            "image/png", "png",
+            "image/jpeg", "jpeg",
+            "image/gif", "gif",
+            "image/bmp", "bmp");
+    private static final String DEFAULT_FORMAT = "png";
+
+    private final StorageService storageService;
+    private final BinaryStorageRepository storageRepository;
+    private final AssetMetadataRepository metadataRepository;
+
+    @Value("${storage.derivatives.workers:2}")
+    private int workers;
+
+    @Value("${storage.derivatives.queue-size:64}")
+    private int queueSize;
+
+    @Value("${storage.derivatives.max-dimension:4096}")
+    private int maxDimension;
+
+    @Value("${storage.derivatives.timeout-seconds:30}")
+    private int timeoutSeconds;
+
+    /**
+     * bigger source images are rejected before decoding, decoded image takes 4 bytes per pixel
+     */
+    @Value("${storage.derivatives.max-source-pixels:40000000}")
+    private long maxSourcePixels;
+
+    private final SingleFlight<String, AssetMetadata> singleFlight = new SingleFlight<>();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    private void init() {
+        ImageIO.setUseCache(false);
+        var threadCounter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    var thread = new Thread(runnable, "derivative-worker-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Build transformation with validated parameters
+     * @param width - target width or 0
+     * @param height - target height or 0
+     * @param crop - crop image to target size
+     * @param format - output format or null to use source format
+     * @param source - source asset metadata
+     * @return transformation
+     * @throws UnsupportedTransformException if parameters are not valid
+     */
+    public ImageTransform buildTransform(int width, int height, boolean crop, String format, AssetMetadata source)
+            throws UnsupportedTransformException {
+        if (width < 0 || height < 0 || width > maxDimension || height > maxDimension) {
+            throw new UnsupportedTransformException("Size should be in range 0.." + maxDimension);
+        }
+        if (width == 0 && height == 0) {
+            throw new UnsupportedTransformException("Width or height should be specified");
+        }
+        if (crop && (width == 0 || height == 0)) {
+            throw new UnsupportedTransformException("Crop requires both width and height");
+        }
+        var outputFormat = format != null
+                ? normalizeFormat(format)
+                : FORMATS_BY_TYPE.getOrDefault(source.getContentType(), DEFAULT_FORMAT);
+        if (!SUPPORTED_FORMATS.contains(outputFormat)) {
+            throw new UnsupportedTransformException("Unsupported format " + format);
+        }
+        return ImageTransform.builder()
+                .width(width)
+                .height(height)
+                .crop(crop)
+                .format(outputFormat)
+                .build();
+    }
+
+    /**
+     * Get derivative metadata, derivative is generated if it is not exists
+     * @param bucketId - source virtual bucket name
+     * @param assetId - source asset identificator
+     * @param source - source asset metadata
+     * @param transform - transformation parameters
+     * @return derivative asset metadata, asset is stored in {@link #DERIVATIVES_BUCKET}
+     */
+    public AssetMetadata getDerivativeMetadata(String bucketId, String assetId, AssetMetadata source,
+                                               ImageTransform transform)
+            throws UndefinedResourceException, InternalStorageException,
+            UnsupportedTransformException, ServiceOverloadedException {
+        var derivativeId = buildDerivativeId(source, transform);
+        var cached = metadataRepository.find(DERIVATIVES_BUCKET, derivativeId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        log.debug("Derivative is not exists; {}", derivativeId);
+        CompletableFuture<AssetMetadata> future;
+        try {
+            future = singleFlight.execute(derivativeId, () -> CompletableFuture.supplyAsync(() ->
+                    generate(bucketId, assetId, source, derivativeId, transform), executor));
+        } catch (RejectedExecutionException e) {
+            throw new ServiceOverloadedException("Derivative queue is full", e);
+        }
+        try {
+            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalStorageException("Derivative generation was interrupted", e);
+        } catch (TimeoutException e) {
+            throw new ServiceOverloadedException("Derivative generation timeout", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * Read derivative content
+     * @param derivative - derivative metadata
+     * @return derivative data
+     */
+    public InputStreamResource getDerivative(AssetMetadata derivative)
+            throws UndefinedResourceException, InternalStorageException {
+        return new InputStreamResource(storageRepository.read(DERIVATIVES_BUCKET, derivative.getAssetId()));
+    }
+
+    private AssetMetadata generate(String bucketId, String assetId, AssetMetadata source, String derivativeId,
+                                   ImageTransform transform) {
+        try {
+            var sourceDigest = StorageService.createDigest(StorageService.CHECKSUM_ALGORITHM);
+            BufferedImage sourceImage;
+            try (var data = new DigestInputStream(storageService.getAsset(bucketId, assetId).getInputStream(),
+                    sourceDigest)) {
+                sourceImage = readImage(data, bucketId + "/" + assetId);
+                // image readers may stop before the end of asset
+                data.transferTo(OutputStream.nullOutputStream());
+            }
+            var sourceChecksum = HexFormat.of().formatHex(sourceDigest.digest());
+            var storedId = derivativeId;
+            if (source.getChecksum() != null && !source.getChecksum().equals(sourceChecksum)) {
+                log.info("Source was overwritten during derivative generation; {}/{}", bucketId, assetId);
+                storedId = sourceChecksum + "-" + transform.toKey();
+            }
+            var output = new ByteArrayOutputStream();
+            if (!ImageIO.write(transform(sourceImage, transform), transform.getFormat(), output)) {
+                throw new UnsupportedTransformException("Can't write format " + transform.getFormat());
+            }
+            var content = output.toByteArray();
+            var checksum = HexFormat.of().formatHex(StorageService.createDigest(StorageService.CHECKSUM_ALGORITHM)
+                    .digest(content));
+            if (!storageRepository.exists(DERIVATIVES_BUCKET)) {
+                try {
+                    storageRepository.createBucket(DERIVATIVES_BUCKET);
+                } catch (ResourceAlreadyExists e) {
+                    log.debug("Derivatives bucket was created concurrently");
+                }
+            }
+            storageRepository.overwrite(DERIVATIVES_BUCKET, storedId, new ByteArrayInputStream(content));
+            var metadata = storageRepository.stat(DERIVATIVES_BUCKET, storedId).toBuilder()
+                    .contentType("image/" + transform.getFormat())
+                    .checksum(checksum)
+                    .build();
+            metadataRepository.save(DERIVATIVES_BUCKET, metadata);
+            log.info("Derivative was generated; {}/{} -> {}", bucketId, assetId, storedId);
+            return metadata;
+        } catch (IOException | InternalStorageException | UndefinedResourceException
+                 | UnsupportedTransformException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Size of image is read from its header, so too large image is rejected before its pixels are allocated
+     * @param name - asset name for errors
+     */
+    private BufferedImage readImage(InputStream data, String name) throws IOException, UnsupportedTransformException {
+        try (var input = ImageIO.createImageInputStream(data)) {
+            var readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new UnsupportedTransformException("Asset is not a supported image; " + name);
+            }
+            var reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                var width = reader.getWidth(0);
+                var height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    throw new UnsupportedTransformException("Image is too large " + width + "x" + height
+                            + ", max pixels " + maxSourcePixels + "; " + name);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage transform(BufferedImage source, ImageTransform transform) {
+        var sourceWidth = source.getWidth();
+        var sourceHeight = source.getHeight();
+        int targetWidth;
+        int targetHeight;
+        double scale;
+        if (transform.getWidth() == 0) {
+            scale = (double) transform.getHeight() / sourceHeight;
+            targetWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+            targetHeight = transform.getHeight();
+        } else if (transform.getHeight() == 0) {
+            scale = (double) transform.getWidth() / sourceWidth;
+            targetWidth = transform.getWidth();
+            targetHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+        } else if (transform.isCrop()) {
+            scale = Math.max((double) transform.getWidth() / sourceWidth, (double) transform.getHeight() / sourceHeight);
+            targetWidth = transform.getWidth();
+            targetHeight = transform.getHeight();
+        } else {
+            scale = Math.min((double) transform.getWidth() / sourceWidth, (double) transform.getHeight() / sourceHeight);
+            targetWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+            targetHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+        }
+        var scaledWidth = (int) Math.round(sourceWidth * scale);
+        var scaledHeight = (int) Math.round(sourceHeight * scale);
+
+        var hasAlpha = source.getColorModel().hasAlpha() && !"jpeg".equals(transform.getFormat())
+                && !"bmp".equals(transform.getFormat());
+        var target = new BufferedImage(targetWidth, targetHeight,
+                hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        var graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!hasAlpha) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, targetWidth, targetHeight);
+            }
+            // centered, parts outside of the target are cut in crop mode
+            graphics.drawImage(source, (targetWidth - scaledWidth) / 2, (targetHeight - scaledHeight) / 2,
+                    scaledWidth, scaledHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static String buildDerivativeId(AssetMetadata source, ImageTransform transform) {
+        var sourceKey = source.getChecksum() != null
+                ? source.getChecksum()
+                : source.getSize() + "-" + (source.getLastModified() != null
+                    ? source.getLastModified().toEpochMilli() : 0);
+        return sourceKey + "-" + transform.toKey();
+    }
+
+    private static String normalizeFormat(String format) {
+        var lower = format.toLowerCase(Locale.ROOT);
+        return "jpg".equals(lower) ? "jpeg" : lower;
+    }
+
+    private static InternalStorageException unwrap(Throwable error) throws UndefinedResourceException, InternalStorageException,
+            UnsupportedTransformException {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UndefinedResourceException e) {
+            throw e;
+        }
+        if (cause instanceof UnsupportedTransformException e) {
+            throw e;
+        }
+        if (cause instanceof InternalStorageException e) {
+            throw e;
+        }
+        return new InternalStorageException("Derivative generation failed", cause instanceof Exception e
+                ? e : new RuntimeException(cause));
+    }
+}
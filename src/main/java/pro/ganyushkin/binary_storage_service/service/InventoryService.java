@@ -0,0 +1,318 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.config.QuotaProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.BucketInventory;
+import pro.ganyushkin.binary_storage_service.model.BucketUsage;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.FilesystemStorageRepository;
+import pro.ganyushkin.binary_storage_service.util.RateLimiter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per bucket object count, total bytes and size histogram, maintained incrementally by the write path,
+ * so reports don't touch storage. Statistics are exported to file periodically and on shutdown,
+ * export of clean shutdown is loaded on start; buckets without trusted statistics are scanned once
+ * in background with throttling.
+ * Counters are maintained when inventory or quotas are enabled, quotas are checked against them.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class InventoryService {
+    /**
+     * upper bounds of size classes, the last class is unbounded
+     */
+    private static final long[] SIZE_CLASSES = {
+            1L << 10, 64L << 10, 1L << 20, 16L << 20, 256L << 20, 4L << 30
+    };
+    private static final String[] SIZE_CLASS_NAMES = {
+            "<1KB", "<64KB", "<1MB", "<16MB", "<256MB", "<4GB", ">=4GB"
+    };
+
+    private final BinaryStorageRepository storageRepository;
+    private final ObjectMapper objectMapper;
+    private final QuotaProperties quotaProperties;
+
+    @Value("${storage.inventory.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.inventory.export-file:${storage.fs.root-directory}/.inventory/inventory.json}")
+    private String exportFile;
+
+    @Value("${storage.inventory.export-interval:1h}")
+    private Duration exportInterval;
+
+    /**
+     * stat calls per second of initial bucket scan
+     */
+    @Value("${storage.inventory.scan-rate:1000}")
+    private double scanRate;
+
+    private final ConcurrentMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private RateLimiter throttle;
+
+    /**
+     * counters are maintained for inventory reports or quota checks
+     */
+    private boolean tracking;
+
+    @PostConstruct
+    private void init() {
+        tracking = enabled || quotaProperties.isEnabled();
+        if (!tracking) {
+            return;
+        }
+        throttle = new RateLimiter(scanRate, 1);
+        var loaded = load();
+        // export is marked dirty until the next clean shutdown
+        export(false);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "inventory");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        for (var bucketId : storageRepository.listBuckets()) {
+            if (!loaded.contains(bucketId)) {
+                var bucketCounters = counters.computeIfAbsent(bucketId, id -> new Counters(false));
+                scheduler.execute(() -> scan(bucketId, bucketCounters));
+            }
+        }
+        var interval = exportInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> export(false), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        if (scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+            export(counters.values().stream().allMatch(bucketCounters -> bucketCounters.complete));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * Account stored asset
+     * @param bucketId - virtual bucket name
+     * @param size - stored asset size
+     * @param previousSize - size of overwritten asset or -1 for new asset
+     */
+    public void recordWrite(String bucketId, long size, long previousSize) {
+        if (!tracking) {
+            return;
+        }
+        var bucketCounters = getCounters(bucketId);
+        if (previousSize >= 0) {
+            bucketCounters.add(previousSize, -1);
+        }
+        bucketCounters.add(size, 1);
+    }
+
+    /**
+     * Account removed asset
+     * @param bucketId - virtual bucket name
+     * @param size - removed asset size
+     */
+    public void recordDelete(String bucketId, long size) {
+        if (!tracking) {
+            return;
+        }
+        getCounters(bucketId).add(size, -1);
+    }
+
+    public Optional<BucketInventory> getInventory(String bucketId) {
+        var bucketCounters = counters.get(bucketId);
+        return bucketCounters == null ? Optional.empty() : Optional.of(bucketCounters.toInventory(bucketId));
+    }
+
+    /**
+     * @return object count and total bytes of bucket, empty while the initial scan of bucket is in progress
+     */
+    public Optional<BucketUsage> getUsage(String bucketId) {
+        var bucketCounters = counters.get(bucketId);
+        if (bucketCounters == null) {
+            // bucket was created after start and has no writes yet
+            return Optional.of(new BucketUsage(0, 0));
+        }
+        return bucketCounters.complete
+                ? Optional.of(new BucketUsage(bucketCounters.objects.sum(), bucketCounters.bytes.sum()))
+                : Optional.empty();
+    }
+
+    public List<BucketInventory> getInventories() {
+        return counters.entrySet().stream()
+                .filter(entry -> !entry.getKey().startsWith(FilesystemStorageRepository.HIDDEN_PREFIX))
+                .map(entry -> entry.getValue().toInventory(entry.getKey()))
+                .sorted(Comparator.comparing(BucketInventory::bucketId))
+                .toList();
+    }
+
+    private Counters getCounters(String bucketId) {
+        // bucket is created by the write path, it has no assets before the first write
+        return counters.computeIfAbsent(bucketId, id -> new Counters(true));
+    }
+
+    /**
+     * Concurrent writes to bucket during its scan can be counted twice, it is corrected by the next rescan only
+     */
+    private void scan(String bucketId, Counters bucketCounters) {
+        log.info("Inventory scan was started; bucketId={}", bucketId);
+        try {
+            for (var assetId : storageRepository.listAssets(bucketId)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long wait;
+                while ((wait = throttle.tryAcquire(1, System.nanoTime())) > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                try {
+                    bucketCounters.add(storageRepository.stat(bucketId, assetId).getSize(), 1);
+                } catch (UndefinedResourceException | InternalStorageException e) {
+                    log.debug("Skip asset in inventory scan; {}/{}", bucketId, assetId);
+                }
+            }
+            bucketCounters.complete = true;
+            log.info("Inventory scan was completed; {}", bucketCounters.toInventory(bucketId));
+        } catch (UndefinedResourceException e) {
+            counters.remove(bucketId, bucketCounters);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return buckets which statistics were loaded
+     */
+    private List<String> load() {
+        var path = Path.of(exportFile);
+        if (!Files.isRegularFile(path)) {
+            return List.of();
+        }
+        try {
+            var export = objectMapper.readValue(path.toFile(), InventoryExport.class);
+            if (!export.clean()) {
+                log.warn("Inventory export is not clean, buckets are rescanned; {}", path);
+                return List.of();
+            }
+            for (var inventory : export.buckets()) {
+                counters.put(inventory.bucketId(), Counters.of(inventory));
+            }
+            log.info("Inventory was loaded; buckets={}; exported={}", export.buckets().size(), export.time());
+            return export.buckets().stream().map(BucketInventory::bucketId).toList();
+        } catch (IOException e) {
+            log.warn("Can't load inventory export, buckets are rescanned; {}", path, e);
+            return List.of();
+        }
+    }
+
+    private void export(boolean clean) {
+        var path = Path.of(exportFile);
+        try {
+            Files.createDirectories(path.getParent());
+            var tmpPath = Files.createTempFile(path.getParent(), ".", ".tmp");
+            var buckets = counters.entrySet().stream()
+                    .map(entry -> entry.getValue().toInventory(entry.getKey()))
+                    .filter(BucketInventory::complete)
+                    .toList();
+            objectMapper.writeValue(tmpPath.toFile(), new InventoryExport(Instant.now(), clean, buckets));
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.error("Can't export inventory; {}", path, e);
+        }
+    }
+
+    private static int sizeClass(long size) {
+        for (var i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size < SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return SIZE_CLASSES.length;
+    }
+
+    /**
+     * @param clean - statistics were exported on shutdown, so there were no writes after export
+     */
+    record InventoryExport(Instant time, boolean clean, List<BucketInventory> buckets) {
+    }
+
+    private static class Counters {
+        private final LongAdder objects = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder[] histogram = new LongAdder[SIZE_CLASS_NAMES.length];
+        private volatile boolean complete;
+
+        private Counters(boolean complete) {
+            this.complete = complete;
+            for (var i = 0; i < histogram.length; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        private static Counters of(BucketInventory inventory) {
+            var counters = new Counters(true);
+            counters.objects.add(inventory.objects());
+            counters.bytes.add(inventory.bytes());
+            for (var i = 0; i < SIZE_CLASS_NAMES.length; i++) {
+                counters.histogram[i].add(inventory.sizeHistogram().getOrDefault(SIZE_CLASS_NAMES[i], 0L));
+            }
+            return counters;
+        }
+
+        /**
+         * @param sign - 1 to add asset, -1 to remove asset
+         */
+        private void add(long size, int sign) {
+            objects.add(sign);
+            bytes.add(sign * size);
+            histogram[sizeClass(size)].add(sign);
+        }
+
+        private BucketInventory toInventory(String bucketId) {
+            var sizeHistogram = new LinkedHashMap<String, Long>();
+            for (var i = 0; i < histogram.length; i++) {
+                sizeHistogram.put(SIZE_CLASS_NAMES[i], histogram[i].sum());
+            }
+            return new BucketInventory(bucketId, objects.sum(), bytes.sum(), sizeHistogram, complete);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.config.LifecycleProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository;
+import pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository.Entry;
+import pro.ganyushkin.binary_storage_service.util.RateLimiter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository.STAGE_COLD;
+import static pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository.STAGE_EXPIRE;
+
+/**
+ * Background sweeper which executes bucket lifecycle rules.
+ * It follows time ordered write index of bucket, so every sweep processes only assets which became old
+ * since the previous sweep. Actions are throttled to keep foreground I/O unaffected.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class LifecycleService {
+    private final StorageService storageService;
+    private final BinaryStorageRepository storageRepository;
+    private final LifecycleIndexRepository indexRepository;
+    private final LifecycleProperties properties;
+
+    private RateLimiter throttle;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    private void init() {
+        throttle = new RateLimiter(properties.getMaxActionsPerSecond(), 1);
+        if (!properties.isEnabled()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "lifecycle-sweeper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        var interval = properties.getSweepInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Lifecycle sweeper was started; rules={}", properties.getRules().keySet());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Execute lifecycle rules of all buckets
+     */
+    public void sweep() {
+        var now = Instant.now();
+        properties.getRules().forEach((bucketId, rule) -> {
+            try {
+                sweepBucket(bucketId, rule, now);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Lifecycle sweep failed; bucketId={}", bucketId, e);
+            }
+        });
+    }
+
+    private void sweepBucket(String bucketId, LifecycleProperties.Rule rule, Instant now)
+            throws InternalStorageException, IOException, InterruptedException {
+        if (!storageRepository.exists(bucketId)) {
+            return;
+        }
+        if (!indexRepository.isBackfilled(bucketId)) {
+            indexRepository.backfill(bucketId, storageRepository);
+        }
+        if (rule.getColdAfter() != null) {
+            sweepStage(bucketId, STAGE_COLD, rule.getColdAfter(), now);
+        }
+        if (rule.getExpireAfter() != null) {
+            sweepStage(bucketId, STAGE_EXPIRE, rule.getExpireAfter(), now);
+        }
+        // segments before the slowest stage cursor are not required anymore
+        indexRepository.removeProcessedSegments(bucketId);
+    }
+
+    private void sweepStage(String bucketId, String stage, Duration age, Instant now)
+            throws InternalStorageException, IOException, InterruptedException {
+        var cutoff = now.minus(age).toEpochMilli();
+        var processed = indexRepository.follow(bucketId, stage, cutoff, properties.getBatchSize(),
+                entry -> apply(bucketId, stage, entry));
+        if (processed > 0) {
+            log.info("Lifecycle stage was executed; bucketId={}; stage={}; processed={}",
+                    bucketId, stage, processed);
+        }
+    }
+
+    private void apply(String bucketId, String stage, Entry entry)
+            throws InternalStorageException, InterruptedException {
+        try {
+            var stat = storageRepository.stat(bucketId, entry.assetId());
+            if (stat.getLastModified().toEpochMilli() > entry.time()) {
+                return; // asset was overwritten, it is indexed again with new time
+            }
+            long wait;
+            while ((wait = throttle.tryAcquire(1, System.nanoTime())) > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            if (STAGE_EXPIRE.equals(stage)) {
+                storageService.deleteAsset(bucketId, entry.assetId());
+            } else {
+                storageService.demoteAsset(bucketId, entry.assetId());
+            }
+        } catch (UndefinedResourceException e) {
+            log.debug("Skip removed asset; {}/{}", bucketId, entry.assetId());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Multipart uploads: parts are uploaded independently (in parallel) and joined into asset on completion.
+ * Every upload has its own hidden bucket {@code .multipart-<uploadId>} with {@code <bucketId>\n<assetId>}
+ * in the {@code upload} asset and parts named by their numbers, so abort doesn't touch other uploads.
+ * Parts are internal data, they are written to the repository directly and are not accounted by quotas,
+ * inventory or change feed; the joined asset is stored by {@link StorageService}.
+ * Entity tag of the joined asset is S3 multipart one: MD5 of part MD5s and part count, part MD5s are
+ * computed while parts are joined.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class MultipartUploadService {
+    public static final String MULTIPART_BUCKET_PREFIX = ".multipart-";
+    public static final int MAX_PART_NUMBER = 10000;
+    private static final String UPLOAD_ASSET = "upload";
+
+    private final StorageService storageService;
+    private final BinaryStorageRepository storageRepository;
+
+    /**
+     * count of parts which are opened ahead of the joined stream on completion
+     */
+    @Value("${storage.multipart.read-ahead:4}")
+    private int readAhead;
+
+    private ExecutorService openPool;
+
+    @PostConstruct
+    private void init() {
+        openPool = Executors.newFixedThreadPool(Math.max(1, readAhead), runnable -> {
+            var thread = new Thread(runnable, "multipart-open");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    private void destroy() {
+        openPool.shutdownNow();
+    }
+
+    /**
+     * @return upload identificator
+     */
+    public String createUpload(String bucketId, String assetId)
+            throws UndefinedResourceException, InternalStorageException {
+        if (!storageService.isBucketExists(bucketId)) {
+            throw new UndefinedResourceException(bucketId);
+        }
+        var uploadId = UUID.randomUUID().toString();
+        var uploadBucketId = buildUploadBucketId(uploadId);
+        var target = (bucketId + "\n" + assetId).getBytes(StandardCharsets.UTF_8);
+        try {
+            storageRepository.createBucket(uploadBucketId);
+            storageRepository.store(uploadBucketId, UPLOAD_ASSET, new ByteArrayInputStream(target));
+        } catch (ResourceAlreadyExists e) {
+            throw new InternalStorageException("Can't create multipart upload " + uploadId, e);
+        }
+        log.info("Multipart upload was created; {}/{}; uploadId={}", bucketId, assetId, uploadId);
+        return uploadId;
+    }
+
+    /**
+     * Store part, part with the same number is overwritten
+     * @throws UndefinedResourceException - if upload is not exists
+     */
+    public void uploadPart(String uploadId, int partNumber, InputStream data)
+            throws UndefinedResourceException, InternalStorageException {
+        getUpload(uploadId);
+        storageRepository.overwrite(buildUploadBucketId(uploadId), buildPartId(partNumber), data);
+    }
+
+    /**
+     * Join parts into the target asset and remove upload
+     * @param partNumbers - ordered part numbers of asset
+     * @return metadata of stored asset
+     * @throws UndefinedResourceException - if upload or one of parts is not exists
+     */
+    public AssetMetadata complete(String uploadId, List<Integer> partNumbers)
+            throws UndefinedResourceException, InternalStorageException, QuotaExceededException {
+        var upload = getUpload(uploadId);
+        var uploadBucketId = buildUploadBucketId(uploadId);
+        long length = 0;
+        for (var partNumber : partNumbers) {
+            length += storageRepository.stat(uploadBucketId, buildPartId(partNumber)).getSize();
+        }
+        var partDigests = new ArrayList<MessageDigest>();
+        AssetMetadata metadata;
+        try (var data = new SequenceInputStream(openParts(uploadBucketId, partNumbers, partDigests))) {
+            metadata = storageService.storeAsset(upload.bucketId(), upload.assetId(), data, length, false, true,
+                    Map.of(), () -> buildETag(partDigests));
+        } catch (IOException | UncheckedIOException e) {
+            throw new InternalStorageException("Can't join multipart upload " + uploadId, e);
+        } catch (ResourceAlreadyExists e) {
+            throw new InternalStorageException("Can't overwrite asset of multipart upload " + uploadId, e);
+        }
+        abort(uploadId);
+        log.info("Multipart upload was completed; {}/{}; uploadId={}; parts={}",
+                upload.bucketId(), upload.assetId(), uploadId, partNumbers.size());
+        return metadata;
+    }
+
+    /**
+     * Remove upload and all its parts
+     */
+    public void abort(String uploadId) throws UndefinedResourceException, InternalStorageException {
+        var uploadBucketId = buildUploadBucketId(uploadId);
+        for (var assetId : storageRepository.listAssets(uploadBucketId)) {
+            if (!assetId.equals(UPLOAD_ASSET)) {
+                storageRepository.delete(uploadBucketId, assetId);
+            }
+        }
+        // upload is removed the last, so failed abort can be repeated
+        storageRepository.delete(uploadBucketId, UPLOAD_ASSET);
+        storageRepository.deleteBucket(uploadBucketId);
+    }
+
+    public Upload getUpload(String uploadId) throws UndefinedResourceException, InternalStorageException {
+        try (var data = storageRepository.read(buildUploadBucketId(uploadId), UPLOAD_ASSET)) {
+            var target = new String(data.readAllBytes(), StandardCharsets.UTF_8);
+            var separator = target.indexOf('\n');
+            return new Upload(target.substring(0, separator), target.substring(separator + 1));
+        } catch (IOException e) {
+            throw new InternalStorageException("Can't read multipart upload " + uploadId, e);
+        }
+    }
+
+    /**
+     * Parts are joined in order, up to {@code readAhead} next parts are opened in background
+     * while the current one is read, so latency of opening remote parts is not paid one by one
+     */
+    private Enumeration<InputStream> openParts(String uploadBucketId, List<Integer> partNumbers,
+                                               List<MessageDigest> partDigests) {
+        var iterator = partNumbers.iterator();
+        var opened = new ArrayDeque<CompletableFuture<InputStream>>();
+        return new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return !opened.isEmpty() || iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                fill(opened);
+                try {
+                    var digest = createMd5();
+                    partDigests.add(digest);
+                    return new DigestInputStream(opened.poll().get(), digest);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Part opening was interrupted"));
+                } catch (ExecutionException e) {
+                    throw new UncheckedIOException(new IOException(e.getCause()));
+                }
+            }
+
+            private void fill(Deque<CompletableFuture<InputStream>> queue) {
+                while (queue.size() < Math.max(1, readAhead) && iterator.hasNext()) {
+                    var partId = buildPartId(iterator.next());
+                    queue.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return storageRepository.read(uploadBucketId, partId);
+                        } catch (UndefinedResourceException | InternalStorageException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, openPool));
+                }
+            }
+        };
+    }
+
+    private static String buildETag(List<MessageDigest> partDigests) {
+        var digest = createMd5();
+        partDigests.forEach(partDigest -> digest.update(partDigest.digest()));
+        return HexFormat.of().formatHex(digest.digest()) + "-" + partDigests.size();
+    }
+
+    private static MessageDigest createMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is required to be supported by every Java platform
+            throw new IllegalStateException("Can't create MD5", e);
+        }
+    }
+
+    /**
+     * @throws UndefinedResourceException - if upload id is not generated by the service
+     */
+    private static String buildUploadBucketId(String uploadId) throws UndefinedResourceException {
+        try {
+            return MULTIPART_BUCKET_PREFIX + UUID.fromString(uploadId);
+        } catch (IllegalArgumentException e) {
+            throw new UndefinedResourceException(MULTIPART_BUCKET_PREFIX + "*", uploadId);
+        }
+    }
+
+    private static String buildPartId(int partNumber) {
+        return String.valueOf(partNumber);
+    }
+
+    /**
+     * @param bucketId - target virtual bucket name
+     * @param assetId - target asset identificator
+     */
+    public record Upload(String bucketId, String assetId) {
+    }
+}
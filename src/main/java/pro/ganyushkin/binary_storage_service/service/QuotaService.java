@@ -0,0 +1,56 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.config.QuotaProperties;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+
+/**
+ * Per bucket byte and object quotas.
+ * Usage is taken from counters of {@link InventoryService}, which are maintained by the write path,
+ * limits of bucket are not checked until the initial scan of bucket is completed.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class QuotaService {
+    private final InventoryService inventoryService;
+    private final QuotaProperties properties;
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Check that bucket has free space for incoming asset
+     * @param bucketId - virtual bucket name
+     * @param incomingBytes - size of incoming asset or -1 if it is unknown
+     * @param previousSize - size of overwritten asset or -1 for new asset
+     * @throws QuotaExceededException if incoming asset exceeds bucket limits
+     */
+    public void checkQuota(String bucketId, long incomingBytes, long previousSize) throws QuotaExceededException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        var limits = properties.getLimits(bucketId);
+        if (limits.getMaxBytes() == null && limits.getMaxObjects() == null) {
+            return;
+        }
+        var usage = inventoryService.getUsage(bucketId).orElse(null);
+        if (usage == null) {
+            log.debug("Quota is not checked, bucket is scanning; bucketId={}", bucketId);
+            return;
+        }
+        if (limits.getMaxBytes() != null) {
+            // asset of unknown size needs at least one free byte
+            var required = incomingBytes < 0 ? 1 : incomingBytes - Math.max(0, previousSize);
+            if (usage.bytes() + required > limits.getMaxBytes().toBytes()) {
+                throw new QuotaExceededException(bucketId, "bytes=" + usage.bytes() + "; incoming=" + incomingBytes);
+            }
+        }
+        if (limits.getMaxObjects() != null && previousSize < 0 && usage.objects() >= limits.getMaxObjects()) {
+            throw new QuotaExceededException(bucketId, "objects=" + usage.objects());
+        }
+    }
+}
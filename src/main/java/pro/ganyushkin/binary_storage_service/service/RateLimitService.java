@@ -0,0 +1,125 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.RateLimitExceededException;
+import pro.ganyushkin.binary_storage_service.util.RateLimiter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiting of requests and transferred bytes per client and bucket.
+ * Client id of request is chosen by the client itself, so limits are kept per remote address
+ * unless client ids are trusted, ex. they are set by authenticating proxy in front of the service.
+ * Limits of clients are removed by periodic sweep only when they are refilled completely,
+ * so switching between client ids doesn't reset their budgets.
+ */
+@Service
+public class RateLimitService {
+
+    @Value("${storage.rate-limit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.rate-limit.requests-per-second:100}")
+    private double requestsPerSecond;
+
+    @Value("${storage.rate-limit.bytes-per-second:100MB}")
+    private DataSize bytesPerSecond;
+
+    @Value("${storage.rate-limit.burst-seconds:1}")
+    private double burstSeconds;
+
+    @Value("${storage.rate-limit.sweep-interval:10s}")
+    private Duration sweepInterval;
+
+    @Value("${storage.rate-limit.trust-client-id:false}")
+    private boolean trustClientId;
+
+    private final ConcurrentMap<String, Limiters> limiters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep,
+                sweepInterval.toMillis(), sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Take one request and specified count of bytes from client limits
+     * @param remoteAddress - address of client connection
+     * @param clientId - client identificator declared by request
+     * @param bucketId - virtual bucket name
+     * @param bytes - count of transferred bytes
+     * @throws RateLimitExceededException if client exceeds limits
+     */
+    public void acquire(String remoteAddress, String clientId, String bucketId, long bytes)
+            throws RateLimitExceededException {
+        if (!enabled) {
+            return;
+        }
+        var now = System.nanoTime();
+        var client = trustClientId ? clientId : remoteAddress;
+        var limiter = limiters.computeIfAbsent(client + "/" + bucketId, key -> new Limiters(
+                new RateLimiter(requestsPerSecond, burstSeconds),
+                new RateLimiter(bytesPerSecond.toBytes(), burstSeconds)));
+        var wait = limiter.requests().tryAcquire(1, now);
+        if (wait == 0 && bytes > 0) {
+            wait = limiter.bytes().tryAcquire(bytes, now);
+            if (wait > 0) {
+                // rejected request doesn't spend request rate
+                limiter.requests().refund(1);
+            }
+        }
+        if (wait > 0) {
+            throw new RateLimitExceededException(client, bucketId,
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait)));
+        }
+    }
+
+    /**
+     * @return count of clients and buckets which limits are tracked now
+     */
+    public int trackedCount() {
+        return limiters.size();
+    }
+
+    /**
+     * Limiters of idle clients are full buckets, removing them doesn't change limits
+     */
+    void sweep() {
+        var now = System.nanoTime();
+        for (var key : limiters.keySet()) {
+            limiters.computeIfPresent(key, (k, limiter) -> limiter.isIdle(now) ? null : limiter);
+        }
+    }
+
+    private record Limiters(RateLimiter requests, RateLimiter bytes) {
+        boolean isIdle(long nowNanos) {
+            return requests.isIdle(nowNanos) && bytes.isIdle(nowNanos);
+        }
+    }
+}
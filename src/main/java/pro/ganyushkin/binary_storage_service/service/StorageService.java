@@ -1,45 +1,342 @@
 package pro.ganyushkin.binary_storage_service.service;
 
+import io.opentelemetry.api.trace.Tracer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.stereotype.Service;
 import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
 import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
 import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetContent;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.model.ChangeEvent;
+import pro.ganyushkin.binary_storage_service.repository.AssetMetadataRepository;
 import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.FilesystemStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
+/**
+ * Client facing storage operations. Hidden buckets ({@link FilesystemStorageRepository#HIDDEN_PREFIX}) keep
+ * internal data of services (derivatives, multipart parts, export snapshots), they don't exist for clients,
+ * services access them through repositories.
+ */
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class StorageService {
+    static final String CHECKSUM_ALGORITHM = "SHA-256";
+    private static final String ETAG_ALGORITHM = "MD5";
+    private static final int OPEN_ATTEMPTS = 3;
+
     private final BinaryStorageRepository storageRepository;
+    private final AssetMetadataRepository metadataRepository;
+    private final ContentTypeService contentTypeService;
+    private final QuotaService quotaService;
+    private final InventoryService inventoryService;
+    private final ChangeFeedService changeFeedService;
+    private final LifecycleIndexRepository lifecycleIndexRepository;
+    private final TieringService tieringService;
+    private final WarmupService warmupService;
+    private final Tracer tracer;
 
     public InputStreamResource getAsset(String bucket, String assetId)
         throws UndefinedResourceException, InternalStorageException {
-        return new InputStreamResource(
-                storageRepository.read(bucket, assetId)
-        );
+        checkBucket(bucket);
+        var span = tracer.spanBuilder("storage.getAsset").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var data = storageRepository.read(bucket, assetId);
+            tieringService.recordAccess(bucket, assetId);
+            warmupService.recordAccess(bucket);
+            return new InputStreamResource(data);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Open asset data for response which headers are built from metadata: data is compared with storage
+     * attributes after opening, asset overwritten since metadata was read is reopened with its new metadata.
+     * Asset which doesn't match its metadata after all attempts is served with storage attributes only.
+     * @param metadata - metadata which was read before, ex. for rate limit
+     */
+    public AssetContent openAsset(String bucket, String assetId, AssetMetadata metadata)
+            throws UndefinedResourceException, InternalStorageException {
+        checkBucket(bucket);
+        var span = tracer.spanBuilder("storage.openAsset").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var current = metadata;
+            var attempt = 1;
+            var data = storageRepository.read(bucket, assetId);
+            // data opened before stat isn't newer than stat, equal attributes mean data of the metadata
+            var stat = statOpened(bucket, assetId, data);
+            while (!isSameContent(current, stat)) {
+                if (attempt++ == OPEN_ATTEMPTS) {
+                    log.warn("Asset doesn't match its metadata; {}/{}", bucket, assetId);
+                    current = current.toBuilder()
+                            .size(stat.getSize())
+                            .lastModified(stat.getLastModified())
+                            .checksum(null)
+                            .etag(null)
+                            .build();
+                    break;
+                }
+                closeQuietly(data);
+                current = findAssetMetadata(bucket, assetId);
+                data = storageRepository.read(bucket, assetId);
+                stat = statOpened(bucket, assetId, data);
+            }
+            tieringService.recordAccess(bucket, assetId);
+            warmupService.recordAccess(bucket);
+            return new AssetContent(current, data);
+        } finally {
+            span.end();
+        }
+    }
+
+    public AssetMetadata getAssetMetadata(String bucketId, String assetId)
+            throws UndefinedResourceException, InternalStorageException {
+        checkBucket(bucketId);
+        var span = tracer.spanBuilder("storage.getAssetMetadata").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            warmupService.recordAccess(bucketId);
+            return findAssetMetadata(bucketId, assetId);
+        } finally {
+            span.end();
+        }
+    }
+
+    private AssetMetadata findAssetMetadata(String bucketId, String assetId)
+            throws UndefinedResourceException, InternalStorageException {
+        var metadata = metadataRepository.find(bucketId, assetId);
+        if (metadata.isPresent()) {
+            return metadata.get();
+        }
+        // asset was stored without metadata, only attributes from storage are available
+        return storageRepository.stat(bucketId, assetId).toBuilder()
+                .contentType(contentTypeService.findType(assetId))
+                .build();
+    }
+
+    /**
+     * Write-back journal keeps modification time in millis, so times are compared with the same precision
+     */
+    private static boolean isSameContent(AssetMetadata metadata, AssetMetadata stat) {
+        return metadata.getSize() == stat.getSize() &&
+                metadata.getLastModified() != null && stat.getLastModified() != null &&
+                metadata.getLastModified().toEpochMilli() == stat.getLastModified().toEpochMilli();
+    }
+
+    private AssetMetadata statOpened(String bucketId, String assetId, InputStream data)
+            throws UndefinedResourceException, InternalStorageException {
+        try {
+            return storageRepository.stat(bucketId, assetId);
+        } catch (UndefinedResourceException | InternalStorageException e) {
+            closeQuietly(data);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(InputStream data) {
+        try {
+            data.close();
+        } catch (IOException e) {
+            log.warn("Can't close asset data", e);
+        }
+    }
+
+    public Map<String, AssetMetadata> getAssetsMetadata(String bucketId, List<String> assetIds)
+            throws UndefinedResourceException, InternalStorageException {
+        if (!isBucketExists(bucketId)) {
+            throw new UndefinedResourceException(bucketId);
+        }
+        var result = new LinkedHashMap<String, AssetMetadata>();
+        for (var assetId : assetIds) {
+            try {
+                result.put(assetId, getAssetMetadata(bucketId, assetId));
+            } catch (UndefinedResourceException e) {
+                log.debug("Skip undefined asset in bulk stat; {}/{}", bucketId, assetId);
+            }
+        }
+        return result;
     }
 
     public void storeAsset(String bucketId, String assetId, InputStream data,
                            boolean createBucketIfNotExists, boolean override)
-            throws UndefinedResourceException, InternalStorageException, ResourceAlreadyExists {
-        if (createBucketIfNotExists && !storageRepository.exists(bucketId)) {
-            createBucket(bucketId, true /* double check */);
+            throws UndefinedResourceException, InternalStorageException, ResourceAlreadyExists,
+            QuotaExceededException {
+        storeAsset(bucketId, assetId, data, -1, createBucketIfNotExists, override, Map.of());
+    }
+
+    /**
+     * @param contentLength - size of data for quota check or -1 if it is unknown
+     * @return metadata of stored asset
+     */
+    public AssetMetadata storeAsset(String bucketId, String assetId, InputStream data, long contentLength,
+                                    boolean createBucketIfNotExists, boolean override,
+                                    Map<String, String> userMetadata)
+            throws UndefinedResourceException, InternalStorageException, ResourceAlreadyExists,
+            QuotaExceededException {
+        return storeAsset(bucketId, assetId, data, contentLength, createBucketIfNotExists, override, userMetadata,
+                null);
+    }
+
+    /**
+     * @param etag - entity tag which is known when data is read (ex. of joined multipart upload),
+     *             null - MD5 of data
+     */
+    public AssetMetadata storeAsset(String bucketId, String assetId, InputStream data, long contentLength,
+                                    boolean createBucketIfNotExists, boolean override,
+                                    Map<String, String> userMetadata, Supplier<String> etag)
+            throws UndefinedResourceException, InternalStorageException, ResourceAlreadyExists,
+            QuotaExceededException {
+        checkBucket(bucketId);
+        var span = tracer.spanBuilder("storage.storeAsset").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            if (createBucketIfNotExists && !storageRepository.exists(bucketId)) {
+                createBucket(bucketId, true /* double check */);
+            }
+            var previousSize = override && isSizeTracked() && storageRepository.exists(bucketId, assetId)
+                    ? storageRepository.stat(bucketId, assetId).getSize()
+                    : -1;
+            quotaService.checkQuota(bucketId, contentLength, previousSize);
+            var head = new byte[ContentTypeService.SNIFF_LENGTH];
+            var headLength = 0;
+            if (contentTypeService.isSniffingEnabled()) {
+                var pushbackData = new PushbackInputStream(data, head.length);
+                try {
+                    headLength = pushbackData.readNBytes(head, 0, head.length);
+                    pushbackData.unread(head, 0, headLength);
+                } catch (IOException e) {
+                    throw new InternalStorageException("Can't read asset data", e);
+                }
+                data = pushbackData;
+            }
+            var digest = createDigest(CHECKSUM_ALGORITHM);
+            var etagDigest = etag == null ? createDigest(ETAG_ALGORITHM) : null;
+            var digestData = new DigestInputStream(etagDigest != null ? new DigestInputStream(data, etagDigest) : data,
+                    digest);
+            if (override) {
+                storageRepository.overwrite(bucketId, assetId, digestData);
+            } else {
+                storageRepository.store(bucketId, assetId, digestData);
+            }
+            var stat = storageRepository.stat(bucketId, assetId);
+            inventoryService.recordWrite(bucketId, stat.getSize(), previousSize);
+            var metadata = stat.toBuilder()
+                    .contentType(contentTypeService.findType(assetId, head, headLength))
+                    .checksum(HexFormat.of().formatHex(digest.digest()))
+                    .etag(etagDigest != null ? HexFormat.of().formatHex(etagDigest.digest()) : etag.get())
+                    .userMetadata(Map.copyOf(userMetadata))
+                    .build();
+            metadataRepository.save(bucketId, metadata);
+            lifecycleIndexRepository.append(bucketId, assetId, stat.getLastModified());
+            changeFeedService.record(previousSize < 0 ? ChangeEvent.Type.CREATE : ChangeEvent.Type.OVERWRITE,
+                    bucketId, assetId, stat.getSize());
+            return metadata;
+        } finally {
+            span.end();
         }
-        if (override) {
-            storageRepository.overwrite(bucketId, assetId, data);
-        } else {
-            storageRepository.store(bucketId, assetId, data);
+    }
+
+    public void deleteAsset(String bucketId, String assetId)
+            throws UndefinedResourceException, InternalStorageException {
+        checkBucket(bucketId);
+        var span = tracer.spanBuilder("storage.deleteAsset").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var size = isSizeTracked() ? storageRepository.stat(bucketId, assetId).getSize() : 0;
+            storageRepository.delete(bucketId, assetId);
+            metadataRepository.remove(bucketId, assetId);
+            inventoryService.recordDelete(bucketId, size);
+            changeFeedService.record(ChangeEvent.Type.DELETE, bucketId, assetId, size);
+        } finally {
+            span.end();
         }
     }
 
+    /**
+     * Copy or move asset inside storage, content is not passed through the service, metadata of source is kept
+     * @param move - source asset is removed
+     * @param overwrite - existing target asset is replaced, otherwise ResourceAlreadyExists is thrown
+     * @return metadata of target asset
+     */
+    public AssetMetadata copyAsset(String sourceBucketId, String sourceAssetId,
+                                   String targetBucketId, String targetAssetId, boolean move, boolean overwrite)
+            throws UndefinedResourceException, InternalStorageException, ResourceAlreadyExists,
+            QuotaExceededException {
+        checkBucket(sourceBucketId);
+        checkBucket(targetBucketId);
+        var span = tracer.spanBuilder(move ? "storage.moveAsset" : "storage.copyAsset").startSpan();
+        try (var ignored = span.makeCurrent()) {
+            var metadata = getAssetMetadata(sourceBucketId, sourceAssetId);
+            if (sourceBucketId.equals(targetBucketId) && sourceAssetId.equals(targetAssetId)) {
+                return metadata;
+            }
+            var exists = storageRepository.exists(targetBucketId, targetAssetId);
+            if (exists && !overwrite) {
+                throw new ResourceAlreadyExists(targetBucketId, targetAssetId);
+            }
+            var previousSize = !exists ? -1
+                    : isSizeTracked() ? storageRepository.stat(targetBucketId, targetAssetId).getSize() : 0;
+            quotaService.checkQuota(targetBucketId, metadata.getSize(), previousSize);
+            if (move) {
+                storageRepository.move(sourceBucketId, sourceAssetId, targetBucketId, targetAssetId);
+            } else {
+                storageRepository.copy(sourceBucketId, sourceAssetId, targetBucketId, targetAssetId);
+            }
+            var stat = storageRepository.stat(targetBucketId, targetAssetId);
+            var targetMetadata = metadata.toBuilder()
+                    .assetId(targetAssetId)
+                    .size(stat.getSize())
+                    .lastModified(stat.getLastModified())
+                    .build();
+            inventoryService.recordWrite(targetBucketId, stat.getSize(), previousSize);
+            metadataRepository.save(targetBucketId, targetMetadata);
+            lifecycleIndexRepository.append(targetBucketId, targetAssetId, stat.getLastModified());
+            changeFeedService.record(previousSize < 0 ? ChangeEvent.Type.CREATE : ChangeEvent.Type.OVERWRITE,
+                    targetBucketId, targetAssetId, stat.getSize());
+            if (move) {
+                metadataRepository.remove(sourceBucketId, sourceAssetId);
+                inventoryService.recordDelete(sourceBucketId, stat.getSize());
+                changeFeedService.record(ChangeEvent.Type.DELETE, sourceBucketId, sourceAssetId, stat.getSize());
+            }
+            return targetMetadata;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Move asset to the cold tier, it stays available for reading
+     */
+    public void demoteAsset(String bucketId, String assetId)
+            throws UndefinedResourceException, InternalStorageException {
+        checkBucket(bucketId);
+        storageRepository.demote(bucketId, assetId);
+    }
+
+    /**
+     * @throws IllegalArgumentException - if bucket id is reserved for hidden buckets
+     */
     public void createBucket(String bucketId, boolean force)
             throws InternalStorageException, ResourceAlreadyExists {
+        if (isHiddenBucket(bucketId)) {
+            throw new IllegalArgumentException("Bucket id can't start with '"
+                    + FilesystemStorageRepository.HIDDEN_PREFIX + "'; bucketId=" + bucketId);
+        }
         try {
             storageRepository.createBucket(bucketId);
         } catch (ResourceAlreadyExists e) {
@@ -50,11 +347,51 @@ public class StorageService {
         }
     }
 
+    public boolean isBucketExists(String bucketId) {
+        return !isHiddenBucket(bucketId) && storageRepository.exists(bucketId);
+    }
+
     public List<String> getBuckets() {
         return storageRepository.listBuckets();
     }
 
     public List<String> getBucketList(String bucketId) throws UndefinedResourceException {
+        checkBucket(bucketId);
         return storageRepository.listAssets(bucketId);
     }
+
+    /**
+     * @param after - exclusive lower bound of asset ids, null for the first page
+     * @return up to limit asset ids with prefix in id order
+     */
+    public List<String> getBucketPage(String bucketId, String prefix, String after, int limit)
+            throws UndefinedResourceException {
+        checkBucket(bucketId);
+        return storageRepository.listAssets(bucketId, prefix, after, limit);
+    }
+
+    public static boolean isHiddenBucket(String bucketId) {
+        return bucketId.startsWith(FilesystemStorageRepository.HIDDEN_PREFIX);
+    }
+
+    private static void checkBucket(String bucketId) throws UndefinedResourceException {
+        if (isHiddenBucket(bucketId)) {
+            throw new UndefinedResourceException(bucketId);
+        }
+    }
+
+    /**
+     * Sizes of overwritten and removed assets are needed only for quotas, inventory and change feed
+     */
+    private boolean isSizeTracked() {
+        return inventoryService.isTracking() || changeFeedService.isEnabled();
+    }
+
+    static MessageDigest createDigest(String algorithm) throws InternalStorageException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new InternalStorageException(algorithm + " is not available", e);
+        }
+    }
 }
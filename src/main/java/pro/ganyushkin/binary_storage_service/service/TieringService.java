@@ -0,0 +1,253 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository;
+import pro.ganyushkin.binary_storage_service.util.RateLimiter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository.STAGE_TIERING;
+
+/**
+ * Hot/cold tiering by access frequency.
+ * Reads are counted per asset, counters are halved every sweep, so they reflect recent reads only.
+ * Cold asset is promoted in background when its counter reaches the threshold,
+ * hot asset is demoted by sweeper when it was neither read nor modified for configured time.
+ * Sweeper doesn't scan buckets: assets which were not read are found in the time ordered write index
+ * ({@link LifecycleIndexRepository}), assets which were read are demoted when they leave the access map idle.
+ * Assets which were evicted from the full access map stay hot until they are written again.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class TieringService {
+    private final BinaryStorageRepository storageRepository;
+    private final LifecycleIndexRepository indexRepository;
+
+    @Value("${storage.tiering.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.tiering.promote-after-reads:3}")
+    private int promoteAfterReads;
+
+    @Value("${storage.tiering.demote-after:7d}")
+    private Duration demoteAfter;
+
+    @Value("${storage.tiering.sweep-interval:10m}")
+    private Duration sweepInterval;
+
+    @Value("${storage.tiering.max-actions-per-second:50}")
+    private double maxActionsPerSecond;
+
+    @Value("${storage.tiering.max-tracked-assets:100000}")
+    private int maxTrackedAssets;
+
+    @Value("${storage.tiering.promotion-queue-size:1000}")
+    private int promotionQueueSize;
+
+    @Value("${storage.tiering.batch-size:10000}")
+    private int batchSize;
+
+    private Map<String, AccessStats> accesses;
+
+    private final Set<String> promotions = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor promotionExecutor;
+
+    private ScheduledExecutorService scheduler;
+
+    private RateLimiter throttle;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        accesses = Collections.synchronizedMap(new LRUMap<>(maxTrackedAssets));
+        throttle = new RateLimiter(maxActionsPerSecond, 1);
+        promotionExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(promotionQueueSize), runnable -> {
+                    var thread = new Thread(runnable, "tiering-promotion");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "tiering-sweeper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        var interval = sweepInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Tiering was started; promoteAfterReads={}; demoteAfter={}", promoteAfterReads, demoteAfter);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (promotionExecutor != null) {
+            promotionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Count asset read, cold asset is promoted if it is read frequently
+     * @param bucketId - virtual bucket name
+     * @param assetId - uniq (in bucket) asset identificator
+     */
+    public void recordAccess(String bucketId, String assetId) {
+        if (!enabled) {
+            return;
+        }
+        var key = bucketId + "/" + assetId;
+        var stats = accesses.computeIfAbsent(key, k -> new AccessStats());
+        stats.lastAccess = System.currentTimeMillis();
+        // threshold is crossed once per decay period, so tier is checked rarely
+        if (stats.count.incrementAndGet() == promoteAfterReads) {
+            schedulePromotion(key, bucketId, assetId);
+        }
+    }
+
+    /**
+     * Demote assets which were not used for configured time and decay read counters
+     */
+    public void sweep() {
+        var now = System.currentTimeMillis();
+        var idle = new ArrayList<String>();
+        synchronized (accesses) {
+            accesses.entrySet().removeIf(entry -> {
+                var stats = entry.getValue();
+                if (stats.count.updateAndGet(count -> count / 2) == 0 &&
+                        now - stats.lastAccess > demoteAfter.toMillis()) {
+                    idle.add(entry.getKey());
+                    return true;
+                }
+                return false;
+            });
+        }
+        var demoted = 0;
+        try {
+            for (var bucketId : storageRepository.listBuckets()) {
+                try {
+                    demoted += sweepBucket(bucketId, now);
+                } catch (InternalStorageException | IOException | RuntimeException e) {
+                    log.error("Tiering sweep failed; bucketId={}", bucketId, e);
+                }
+            }
+            for (var key : idle) {
+                var separator = key.indexOf('/');
+                var bucketId = key.substring(0, separator);
+                var assetId = key.substring(separator + 1);
+                try {
+                    if (demoteIfUnused(bucketId, assetId, Long.MAX_VALUE, now)) {
+                        demoted++;
+                    }
+                } catch (InternalStorageException | RuntimeException e) {
+                    log.warn("Can't demote asset; {}/{}", bucketId, assetId, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (demoted > 0) {
+            log.info("Tiering sweep was finished; demoted={}", demoted);
+        }
+    }
+
+    private int sweepBucket(String bucketId, long now)
+            throws InternalStorageException, IOException, InterruptedException {
+        if (!indexRepository.isIndexed(bucketId)) {
+            return 0;
+        }
+        if (!indexRepository.isBackfilled(bucketId)) {
+            indexRepository.backfill(bucketId, storageRepository);
+        }
+        var demoted = new AtomicInteger();
+        indexRepository.follow(bucketId, STAGE_TIERING, now - demoteAfter.toMillis(), batchSize, entry -> {
+            if (demoteIfUnused(bucketId, entry.assetId(), entry.time(), now)) {
+                demoted.incrementAndGet();
+            }
+        });
+        indexRepository.removeProcessedSegments(bucketId);
+        return demoted.get();
+    }
+
+    /**
+     * @param writeTime - time of indexed write, asset which was overwritten later is indexed again
+     * @return true if asset was demoted
+     */
+    private boolean demoteIfUnused(String bucketId, String assetId, long writeTime, long now)
+            throws InternalStorageException, InterruptedException {
+        try {
+            // read asset is demoted by access map when it becomes idle
+            if (accesses.containsKey(bucketId + "/" + assetId) || storageRepository.isCold(bucketId, assetId)) {
+                return false;
+            }
+            var lastModified = storageRepository.stat(bucketId, assetId).getLastModified().toEpochMilli();
+            if (lastModified > writeTime || now - lastModified < demoteAfter.toMillis()) {
+                return false;
+            }
+            long wait;
+            while ((wait = throttle.tryAcquire(1, System.nanoTime())) > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            storageRepository.demote(bucketId, assetId);
+            return true;
+        } catch (UndefinedResourceException e) {
+            log.debug("Skip removed asset; {}/{}", bucketId, assetId);
+            return false;
+        }
+    }
+
+    private void schedulePromotion(String key, String bucketId, String assetId) {
+        if (!promotions.add(key)) {
+            return;
+        }
+        try {
+            promotionExecutor.execute(() -> {
+                try {
+                    if (storageRepository.isCold(bucketId, assetId)) {
+                        storageRepository.promote(bucketId, assetId);
+                    }
+                } catch (InternalStorageException | UndefinedResourceException e) {
+                    log.warn("Can't promote asset; {}/{}", bucketId, assetId, e);
+                } finally {
+                    promotions.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            promotions.remove(key);
+            log.debug("Promotion queue is full; {}/{}", bucketId, assetId);
+        }
+    }
+
+    private static class AccessStats {
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile long lastAccess;
+    }
+}
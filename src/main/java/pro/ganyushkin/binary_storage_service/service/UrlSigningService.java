@@ -0,0 +1,123 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriUtils;
+import pro.ganyushkin.binary_storage_service.config.SigningProperties;
+import pro.ganyushkin.binary_storage_service.model.SignedUrl;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HMAC-SHA256 signed download URLs. Signature covers bucket, asset, expiration time and content version,
+ * so URL is verified by the request itself, without any lookup.
+ * URL of asset with checksum is bound to the content version, it is never changed and can be cached as immutable.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class UrlSigningService {
+    public static final String PUBLIC_PATH = "/api/v1/public/bucket/";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SigningProperties properties;
+
+    private final Map<String, SecretKeySpec> keys = new HashMap<>();
+
+    /**
+     * Mac is not thread safe and its creation is not cheap, every thread keeps initialized instance per key
+     */
+    private final ThreadLocal<Map<String, Mac>> macs = ThreadLocal.withInitial(HashMap::new);
+
+    @PostConstruct
+    private void init() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        properties.getKeys().forEach((keyId, secret) ->
+                keys.put(keyId, new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM)));
+        if (!keys.containsKey(properties.getActiveKey())) {
+            throw new IllegalStateException("Active signing key is not defined; " + properties.getActiveKey());
+        }
+        log.info("URL signing is enabled; activeKey={}; keys={}", properties.getActiveKey(), keys.size());
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * @param version - checksum of asset content or null
+     * @param expiresIn - URL lifetime, null - default
+     * @throws IllegalArgumentException - if lifetime is not positive or longer than allowed
+     */
+    public SignedUrl sign(String bucketId, String assetId, String version, Duration expiresIn) {
+        var lifetime = expiresIn != null ? expiresIn : properties.getDefaultExpiry();
+        if (lifetime.isNegative() || lifetime.isZero() || lifetime.compareTo(properties.getMaxExpiry()) > 0) {
+            throw new IllegalArgumentException("URL lifetime should be in (0, " + properties.getMaxExpiry() + "]");
+        }
+        var expires = Instant.now().plus(lifetime).getEpochSecond();
+        var keyId = properties.getActiveKey();
+        var signature = signature(keyId, bucketId, assetId, version, expires);
+        var url = new StringBuilder(properties.getBaseUrl())
+                .append(PUBLIC_PATH)
+                .append(UriUtils.encodePathSegment(bucketId, StandardCharsets.UTF_8))
+                .append("/asset/")
+                .append(UriUtils.encodePathSegment(assetId, StandardCharsets.UTF_8))
+                .append("?expires=").append(expires)
+                .append("&keyId=").append(UriUtils.encodeQueryParam(keyId, StandardCharsets.UTF_8));
+        if (version != null) {
+            url.append("&version=").append(version);
+        }
+        url.append("&signature=").append(signature);
+        return new SignedUrl(url.toString(), Instant.ofEpochSecond(expires), version);
+    }
+
+    /**
+     * @param expires - epoch seconds
+     * @return true if URL is signed by known key and is not expired yet
+     */
+    public boolean verify(String bucketId, String assetId, String version, long expires,
+                          String keyId, String signature) {
+        if (!properties.isEnabled() || expires < Instant.now().getEpochSecond() || !keys.containsKey(keyId)) {
+            return false;
+        }
+        var expected = signature(keyId, bucketId, assetId, version, expires);
+        return MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String signature(String keyId, String bucketId, String assetId, String version, long expires) {
+        var mac = macs.get().computeIfAbsent(keyId, this::createMac);
+        // fields are prefixed by length, so different fields never give the same signed string
+        var signed = new StringBuilder();
+        for (var field : new String[] { bucketId, assetId, version != null ? version : "" }) {
+            signed.append(field.length()).append(':').append(field).append('\n');
+        }
+        signed.append(expires);
+        var digest = mac.doFinal(signed.toString().getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private Mac createMac(String keyId) {
+        try {
+            var mac = Mac.getInstance(ALGORITHM);
+            mac.init(keys.get(keyId));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can't create " + ALGORITHM + " for key " + keyId, e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.repository.AssetMetadataRepository;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warms file system caches after restart: metadata of assets of recently read buckets is loaded
+ * by parallel workers before instance reports readiness. Recently read buckets are tracked in memory
+ * and persisted to access list periodically and on shutdown, the list is loaded on start.
+ * Warm-up is limited by timeout, instance becomes ready after it anyway.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class WarmupService {
+    private final BinaryStorageRepository storageRepository;
+    private final AssetMetadataRepository metadataRepository;
+
+    @Value("${storage.warmup.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * bucket names, the most recently read first
+     */
+    @Value("${storage.warmup.access-file:${storage.fs.root-directory}/.warmup/hot-buckets.txt}")
+    private String accessFile;
+
+    @Value("${storage.warmup.max-buckets:100}")
+    private int maxBuckets;
+
+    @Value("${storage.warmup.max-assets-per-bucket:100000}")
+    private int maxAssetsPerBucket;
+
+    @Value("${storage.warmup.workers:8}")
+    private int workers;
+
+    @Value("${storage.warmup.timeout:5m}")
+    private Duration timeout;
+
+    @Value("${storage.warmup.persist-interval:5m}")
+    private Duration persistInterval;
+
+    /**
+     * bucket - time of the last read in millis
+     */
+    private final ConcurrentMap<String, Long> lastAccess = new ConcurrentHashMap<>();
+
+    private final AtomicInteger bucketsWarmed = new AtomicInteger();
+
+    private final AtomicLong assetsWarmed = new AtomicLong();
+
+    private volatile int bucketsTotal;
+
+    private volatile boolean completed;
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService workerPool;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            completed = true;
+            return;
+        }
+        var buckets = load();
+        bucketsTotal = buckets.size();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var workerCounter = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            var thread = new Thread(runnable, "warmup-" + workerCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> warmup(buckets));
+        var interval = persistInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::persist, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        workerPool.shutdownNow();
+        scheduler.shutdownNow();
+        if (scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+            persist();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true when warm-up is finished or timed out, or it is disabled
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return warm-up progress for readiness probe details
+     */
+    public Map<String, Object> getProgress() {
+        return Map.of(
+                "buckets", bucketsTotal,
+                "bucketsWarmed", bucketsWarmed.get(),
+                "assetsWarmed", assetsWarmed.get());
+    }
+
+    /**
+     * Remember bucket read, it is called on every asset read and stat
+     */
+    public void recordAccess(String bucketId) {
+        if (!enabled) {
+            return;
+        }
+        var now = System.currentTimeMillis();
+        var previous = lastAccess.get(bucketId);
+        // one update per second of the hot bucket is enough for ordering
+        if (previous == null || now - previous >= 1000) {
+            lastAccess.put(bucketId, now);
+        }
+    }
+
+    private void warmup(List<String> buckets) {
+        var start = System.nanoTime();
+        log.info("Warm-up was started; buckets={}", buckets.size());
+        for (var bucketId : buckets) {
+            workerPool.execute(() -> warmupBucket(bucketId));
+        }
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                workerPool.shutdownNow();
+                log.warn("Warm-up was timed out, instance becomes ready; {}", getProgress());
+            } else {
+                log.info("Warm-up was completed; {}; duration={}ms", getProgress(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            completed = true;
+        }
+    }
+
+    private void warmupBucket(String bucketId) {
+        try {
+            var assets = storageRepository.listAssets(bucketId);
+            for (var i = 0; i < assets.size() && i < maxAssetsPerBucket; i++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                var assetId = assets.get(i);
+                try {
+                    metadataRepository.find(bucketId, assetId);
+                    storageRepository.stat(bucketId, assetId);
+                    assetsWarmed.incrementAndGet();
+                } catch (UndefinedResourceException | InternalStorageException e) {
+                    log.debug("Skip asset in warm-up; {}/{}", bucketId, assetId);
+                }
+            }
+        } catch (UndefinedResourceException e) {
+            log.debug("Skip removed bucket in warm-up; {}", bucketId);
+        } catch (RuntimeException e) {
+            log.warn("Bucket warm-up failed; {}", bucketId, e);
+        } finally {
+            bucketsWarmed.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return buckets of the access list, they are also tracked as accessed in the order of the list
+     */
+    private List<String> load() {
+        var path = Path.of(accessFile);
+        if (!Files.isRegularFile(path)) {
+            return List.of();
+        }
+        try {
+            var buckets = Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+                    .filter(bucketId -> !bucketId.isBlank())
+                    .distinct()
+                    .limit(maxBuckets)
+                    .toList();
+            // the list keeps its order on the next persist, buckets read after start go before it
+            var now = System.currentTimeMillis();
+            for (var i = 0; i < buckets.size(); i++) {
+                lastAccess.put(buckets.get(i), now - 1 - i);
+            }
+            return buckets;
+        } catch (IOException e) {
+            log.warn("Can't load warm-up access list; {}", path, e);
+            return List.of();
+        }
+    }
+
+    private void persist() {
+        var path = Path.of(accessFile);
+        try {
+            Files.createDirectories(path.getParent());
+            var tmpPath = Files.createTempFile(path.getParent(), ".", ".tmp");
+            var buckets = lastAccess.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(maxBuckets)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            Files.write(tmpPath, buckets, StandardCharsets.UTF_8);
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.error("Can't persist warm-up access list; {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+/**
+ * Asset id is a single flat name which can contain '/', ex. "subpath/myself.jpg" or S3 key "dir/file1.txt".
+ * File of asset is a direct child of its bucket directory, so separators, the escape character itself
+ * and dot names are percent-encoded in file names.
+ */
+public final class AssetNames {
+    private static final char ESCAPE = '%';
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private AssetNames() {
+    }
+
+    public static String toFileName(String assetId) {
+        if (assetId.equals(".") || assetId.equals("..")) {
+            return assetId.replace(".", "%2E");
+        }
+        if (assetId.indexOf(ESCAPE) < 0 && assetId.indexOf('/') < 0 && assetId.indexOf('\\') < 0) {
+            return assetId;
+        }
+        var name = new StringBuilder(assetId.length() + 8);
+        for (var i = 0; i < assetId.length(); i++) {
+            var c = assetId.charAt(i);
+            if (c == ESCAPE || c == '/' || c == '\\') {
+                name.append(ESCAPE).append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            } else {
+                name.append(c);
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * @param fileName - name created by {@link #toFileName(String)}, invalid escapes are kept as is
+     */
+    public static String toAssetId(String fileName) {
+        if (fileName.indexOf(ESCAPE) < 0) {
+            return fileName;
+        }
+        var assetId = new StringBuilder(fileName.length());
+        for (var i = 0; i < fileName.length(); i++) {
+            var c = fileName.charAt(i);
+            if (c == ESCAPE && i + 2 < fileName.length()) {
+                var high = Character.digit(fileName.charAt(i + 1), 16);
+                var low = Character.digit(fileName.charAt(i + 2), 16);
+                if (high >= 0 && low >= 0) {
+                    assetId.append((char) (high << 4 | low));
+                    i += 2;
+                    continue;
+                }
+            }
+            assetId.append(c);
+        }
+        return assetId.toString();
+    }
+}
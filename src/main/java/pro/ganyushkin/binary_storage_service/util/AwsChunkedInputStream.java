@@ -0,0 +1,104 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes {@code aws-chunked} content encoding of S3 streaming uploads:
+ * {@code <hex-size>;chunk-signature=<signature>\r\n<data>\r\n ... 0;chunk-signature=<signature>\r\n\r\n}.
+ * Chunk signatures are not verified.
+ */
+public class AwsChunkedInputStream extends FilterInputStream {
+    private long chunkRemaining;
+    private boolean eof;
+
+    public AwsChunkedInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        var b = in.read();
+        if (b == -1) {
+            throw new IOException("Unexpected end of aws-chunked stream");
+        }
+        chunkRemaining--;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        var count = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+        if (count == -1) {
+            throw new IOException("Unexpected end of aws-chunked stream");
+        }
+        chunkRemaining -= count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = 0L;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : (int) Math.min(in.available(), chunkRemaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private boolean ensureChunk() throws IOException {
+        while (!eof && chunkRemaining == 0) {
+            var header = readLine();
+            if (header.isEmpty()) {
+                continue; // CRLF after chunk data
+            }
+            var separator = header.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong(separator < 0 ? header : header.substring(0, separator), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid aws-chunked header " + header, e);
+            }
+            if (size == 0) {
+                eof = true;
+            }
+            chunkRemaining = size;
+        }
+        return !eof;
+    }
+
+    private String readLine() throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Unexpected end of aws-chunked stream");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+}
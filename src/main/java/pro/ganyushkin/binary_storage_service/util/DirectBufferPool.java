@@ -0,0 +1,78 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of direct buffers of one size. When pool is exhausted heap buffer is given out,
+ * so direct memory usage never exceeds {@code bufferSize * maxBuffers}.
+ * Arrays of the same size are pooled for copies between buffers and streams, which take arrays only.
+ */
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<byte[]> freeArrays = new ConcurrentLinkedQueue<>();
+    /**
+     * count of direct buffers which were allocated by pool, both free and in use
+     */
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public DirectBufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * @return cleared buffer, it should be returned by {@link #release}
+     */
+    public ByteBuffer acquire() {
+        var buffer = free.poll();
+        if (buffer != null) {
+            return buffer.clear();
+        }
+        while (true) {
+            var count = allocated.get();
+            if (count >= maxBuffers) {
+                return ByteBuffer.allocate(bufferSize);
+            }
+            if (allocated.compareAndSet(count, count + 1)) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+    }
+
+    public void release(ByteBuffer buffer) {
+        // heap buffers of exhausted pool are left to GC
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+
+    /**
+     * @return array of buffer size, it should be returned by {@link #releaseArray}
+     */
+    public byte[] acquireArray() {
+        var array = freeArrays.poll();
+        return array != null ? array : new byte[bufferSize];
+    }
+
+    public void releaseArray(byte[] array) {
+        // arrays over the limit are left to GC
+        if (array != null && array.length == bufferSize && freeArrays.size() < maxBuffers) {
+            freeArrays.offer(array);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return count of allocated direct buffers which are not in use now
+     */
+    public int freeCount() {
+        return free.size();
+    }
+}
@@ -0,0 +1,107 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Span exporter for local runs without collector: one JSON line per span
+ * {@code {"traceId":..,"spanId":..,"parentSpanId":..,"name":..,"start":<epoch micros>,"durationMicros":..,
+ * "status":..,"attributes":{..}}}
+ */
+@Slf4j
+public class FileSpanExporter implements SpanExporter {
+    private final Writer writer;
+
+    public FileSpanExporter(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            var batch = new StringBuilder();
+            for (var span : spans) {
+                format(batch, span);
+            }
+            writer.append(batch);
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("Can't export spans", e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    private static void format(StringBuilder line, SpanData span) {
+        line.append("{\"traceId\":\"").append(span.getTraceId()).append('"');
+        line.append(",\"spanId\":\"").append(span.getSpanId()).append('"');
+        if (span.getParentSpanContext().isValid()) {
+            line.append(",\"parentSpanId\":\"").append(span.getParentSpanId()).append('"');
+        }
+        line.append(",\"name\":");
+        string(line, span.getName());
+        line.append(",\"start\":").append(span.getStartEpochNanos() / 1000);
+        line.append(",\"durationMicros\":").append((span.getEndEpochNanos() - span.getStartEpochNanos()) / 1000);
+        line.append(",\"status\":\"").append(span.getStatus().getStatusCode()).append('"');
+        line.append(",\"attributes\":{");
+        var first = new boolean[] {true};
+        span.getAttributes().forEach((key, value) -> {
+            if (!first[0]) {
+                line.append(',');
+            }
+            first[0] = false;
+            string(line, key.getKey());
+            line.append(':');
+            string(line, String.valueOf(value));
+        });
+        line.append("}}\n");
+    }
+
+    private static void string(StringBuilder line, String value) {
+        line.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,72 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket implemented as generic cell rate algorithm:
+ * only theoretical arrival time of the next permit is stored.
+ * Request larger than bucket capacity is taken when bucket is full, its cost goes into debt,
+ * so the next requests wait until the whole cost is refilled.
+ */
+public class RateLimiter {
+    /**
+     * limit of debt, it keeps arrival time far from overflow
+     */
+    private static final double MAX_COST_NANOS = 1e18;
+
+    private final double nanosPerPermit;
+    private final long toleranceNanos;
+    private final long capacity;
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param permitsPerSecond - refill rate
+     * @param burstSeconds - bucket capacity in seconds of refill
+     */
+    public RateLimiter(double permitsPerSecond, double burstSeconds) {
+        this.nanosPerPermit = 1_000_000_000d / permitsPerSecond;
+        this.toleranceNanos = (long) (burstSeconds * 1_000_000_000d);
+        this.capacity = Math.max(1, (long) (permitsPerSecond * burstSeconds));
+    }
+
+    /**
+     * Try to take permits
+     * @param permits - count of permits, permits over bucket capacity are charged as debt
+     * @param nowNanos - current {@link System#nanoTime()}
+     * @return 0 if permits were taken or nanos to wait before the next attempt
+     */
+    public long tryAcquire(long permits, long nowNanos) {
+        var checkCost = (long) (Math.min(permits, capacity) * nanosPerPermit);
+        var cost = cost(permits);
+        while (true) {
+            var current = theoreticalArrival.get();
+            var start = current == Long.MIN_VALUE ? nowNanos : Math.max(current, nowNanos);
+            var wait = start + checkCost - nowNanos - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (theoreticalArrival.compareAndSet(current, start + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Return permits which were taken by {@link #tryAcquire}, ex. when request is rejected by another limit
+     */
+    public void refund(long permits) {
+        theoreticalArrival.addAndGet(-cost(permits));
+    }
+
+    /**
+     * @return true if bucket is full, limiter state can be dropped
+     */
+    public boolean isIdle(long nowNanos) {
+        var current = theoreticalArrival.get();
+        return current == Long.MIN_VALUE || current - nowNanos <= 0;
+    }
+
+    private long cost(long permits) {
+        return (long) Math.min(permits * nanosPerPermit, MAX_COST_NANOS);
+    }
+}
@@ -0,0 +1,236 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+/**
+ * Systematic Reed-Solomon code over GF(2^8): data shards are stored as is, parity shards are linear
+ * combinations of data shards, any {@code dataShards} of all shards restore the others.
+ * Encoding matrix is Vandermonde matrix multiplied by inverse of its top square, so the top of it is identity
+ * and every square of its rows is invertible. Multiplication uses full 256x256 table, so inner loops are
+ * one lookup and one xor per byte. Instances are immutable and thread safe.
+ */
+public class ReedSolomon {
+    private static final int FIELD_SIZE = 256;
+    /**
+     * x^8 + x^4 + x^3 + x^2 + 1, 2 is its generator
+     */
+    private static final int POLYNOMIAL = 0x11D;
+    private static final int[] EXP = new int[FIELD_SIZE * 2];
+    private static final int[] LOG = new int[FIELD_SIZE];
+    private static final byte[][] MUL = new byte[FIELD_SIZE][FIELD_SIZE];
+
+    static {
+        var x = 1;
+        for (var i = 0; i < FIELD_SIZE - 1; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= FIELD_SIZE) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        for (var i = FIELD_SIZE - 1; i < EXP.length; i++) {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+        for (var a = 1; a < FIELD_SIZE; a++) {
+            for (var b = 1; b < FIELD_SIZE; b++) {
+                MUL[a][b] = (byte) EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    /**
+     * (data + parity) x data, the top square is identity
+     */
+    private final int[][] matrix;
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards <= 0 || parityShards <= 0 || dataShards + parityShards > FIELD_SIZE) {
+            throw new IllegalArgumentException("Unsupported shard counts; data=" + dataShards +
+                    "; parity=" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        var total = dataShards + parityShards;
+        var vandermonde = new int[total][dataShards];
+        for (var row = 0; row < total; row++) {
+            for (var column = 0; column < dataShards; column++) {
+                vandermonde[row][column] = power(row, column);
+            }
+        }
+        var top = new int[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = multiply(vandermonde, invert(top));
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    /**
+     * Compute parity shards from data shards
+     * @param shards - data shards followed by parity shards, all of them have at least offset + length bytes
+     * @param offset - first byte of shards to encode
+     * @param length - count of bytes to encode
+     */
+    public void encodeParity(byte[][] shards, int offset, int length) {
+        var data = new byte[dataShards][];
+        System.arraycopy(shards, 0, data, 0, dataShards);
+        for (var parity = 0; parity < parityShards; parity++) {
+            combine(matrix[dataShards + parity], data, shards[dataShards + parity], offset, length);
+        }
+    }
+
+    /**
+     * Restore missing shards from present ones. Missing data shards are always restored, they are allocated
+     * if they are null; missing parity shards are restored only if their arrays are given.
+     * @param shards - data shards followed by parity shards
+     * @param present - flags of shards which content is valid
+     * @param offset - first byte of shards to restore
+     * @param length - count of bytes to restore
+     * @throws IllegalArgumentException - if less than data shards count of shards are present
+     */
+    public void reconstruct(byte[][] shards, boolean[] present, int offset, int length) {
+        var rows = new int[dataShards];
+        var count = 0;
+        var dataMissing = false;
+        for (var i = 0; i < present.length; i++) {
+            if (present[i]) {
+                if (count < dataShards) {
+                    rows[count] = i;
+                }
+                count++;
+            } else if (i < dataShards) {
+                dataMissing = true;
+            }
+        }
+        if (count < dataShards) {
+            throw new IllegalArgumentException("Not enough shards to reconstruct; present=" + count +
+                    "; required=" + dataShards);
+        }
+        if (dataMissing) {
+            var subMatrix = new int[dataShards][];
+            var inputs = new byte[dataShards][];
+            for (var i = 0; i < dataShards; i++) {
+                subMatrix[i] = matrix[rows[i]];
+                inputs[i] = shards[rows[i]];
+            }
+            var decodeMatrix = invert(subMatrix);
+            for (var i = 0; i < dataShards; i++) {
+                if (!present[i]) {
+                    if (shards[i] == null) {
+                        shards[i] = new byte[offset + length];
+                    }
+                    combine(decodeMatrix[i], inputs, shards[i], offset, length);
+                }
+            }
+        }
+        var data = new byte[dataShards][];
+        System.arraycopy(shards, 0, data, 0, dataShards);
+        for (var parity = 0; parity < parityShards; parity++) {
+            var index = dataShards + parity;
+            if (!present[index] && shards[index] != null) {
+                combine(matrix[index], data, shards[index], offset, length);
+            }
+        }
+    }
+
+    /**
+     * output = sum of coefficients[i] * inputs[i]
+     */
+    private static void combine(int[] coefficients, byte[][] inputs, byte[] output, int offset, int length) {
+        var end = offset + length;
+        var first = true;
+        for (var i = 0; i < inputs.length; i++) {
+            var row = MUL[coefficients[i]];
+            var input = inputs[i];
+            if (first) {
+                for (var j = offset; j < end; j++) {
+                    output[j] = row[input[j] & 0xFF];
+                }
+                first = false;
+            } else if (coefficients[i] != 0) {
+                for (var j = offset; j < end; j++) {
+                    output[j] ^= row[input[j] & 0xFF];
+                }
+            }
+        }
+    }
+
+    private static int multiply(int a, int b) {
+        return MUL[a][b] & 0xFF;
+    }
+
+    private static int power(int base, int exponent) {
+        if (exponent == 0) {
+            return 1;
+        }
+        if (base == 0) {
+            return 0;
+        }
+        return EXP[(LOG[base] * exponent) % (FIELD_SIZE - 1)];
+    }
+
+    private static int inverse(int a) {
+        return EXP[FIELD_SIZE - 1 - LOG[a]];
+    }
+
+    private static int[][] multiply(int[][] left, int[][] right) {
+        var result = new int[left.length][right[0].length];
+        for (var row = 0; row < left.length; row++) {
+            for (var column = 0; column < right[0].length; column++) {
+                var value = 0;
+                for (var i = 0; i < right.length; i++) {
+                    value ^= multiply(left[row][i], right[i][column]);
+                }
+                result[row][column] = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gauss-Jordan elimination, source matrix is not changed
+     */
+    private static int[][] invert(int[][] source) {
+        var size = source.length;
+        var work = new int[size][size * 2];
+        for (var row = 0; row < size; row++) {
+            System.arraycopy(source[row], 0, work[row], 0, size);
+            work[row][size + row] = 1;
+        }
+        for (var column = 0; column < size; column++) {
+            var pivot = column;
+            while (pivot < size && work[pivot][column] == 0) {
+                pivot++;
+            }
+            if (pivot == size) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+            var swap = work[pivot];
+            work[pivot] = work[column];
+            work[column] = swap;
+            var scale = inverse(work[column][column]);
+            for (var i = 0; i < size * 2; i++) {
+                work[column][i] = multiply(work[column][i], scale);
+            }
+            for (var row = 0; row < size; row++) {
+                var factor = work[row][column];
+                if (row != column && factor != 0) {
+                    for (var i = 0; i < size * 2; i++) {
+                        work[row][i] ^= multiply(factor, work[column][i]);
+                    }
+                }
+            }
+        }
+        var result = new int[size][size];
+        for (var row = 0; row < size; row++) {
+            System.arraycopy(work[row], size, result[row], 0, size);
+        }
+        return result;
+    }
+}
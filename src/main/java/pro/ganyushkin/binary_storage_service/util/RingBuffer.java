@@ -0,0 +1,91 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock free ring buffer for many producers and one consumer.
+ * Every slot has a sequence number: producer claims slot by CAS on the tail and publishes item by
+ * the slot sequence, consumer frees slot by moving its sequence one lap ahead. Full buffer rejects items.
+ */
+public class RingBuffer<T> {
+    private final Object[] items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * is changed by consumer thread only
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity - it is rounded up to the power of two
+     */
+    public RingBuffer(int capacity) {
+        var size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.items = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (var i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false if buffer is full
+     */
+    public boolean offer(T item) {
+        while (true) {
+            var position = tail.get();
+            var index = (int) (position & mask);
+            var delta = sequences.get(index) - position;
+            if (delta == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[index] = item;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (delta < 0) {
+                return false;
+            }
+            // slot was claimed by another producer, retry with fresh tail
+        }
+    }
+
+    /**
+     * Pass published items to consumer, it should be called by one thread at a time
+     * @param maxItems - max count of items to drain
+     * @return count of drained items
+     */
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<T> consumer, int maxItems) {
+        var count = 0;
+        var position = head;
+        while (count < maxItems) {
+            var index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break; // slot is empty or is not published yet
+            }
+            var item = (T) items[index];
+            items[index] = null;
+            sequences.set(index, position + items.length);
+            position++;
+            count++;
+            consumer.accept(item);
+        }
+        head = position;
+        return count;
+    }
+
+    /**
+     * @return approximate count of items in buffer
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+}
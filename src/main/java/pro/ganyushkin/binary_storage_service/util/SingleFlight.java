@@ -0,0 +1,52 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key: only the first caller starts a computation,
+ * other callers which come before it is finished receive the same future.
+ * @param <K> - computation key
+ * @param <V> - computation result
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Get in flight computation for the key or start a new one
+     * @param key - computation key
+     * @param computation - starts computation, should not block
+     * @return future with computation result
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> computation) {
+        var created = new CompletableFuture<V>();
+        var existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            computation.get().whenComplete((value, error) -> {
+                inFlight.remove(key, created);
+                if (error != null) {
+                    created.completeExceptionally(error);
+                } else {
+                    created.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        return created;
+    }
+
+    /**
+     * @return count of computations which are in progress now
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,93 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.map.LRUMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Logs phase breakdown of slow requests.
+ * Ended spans are collected by trace until the root span of request is ended,
+ * then phases are logged if request took more than threshold.
+ */
+@Slf4j
+public class SlowRequestSpanProcessor implements SpanProcessor {
+    private final long thresholdNanos;
+    /**
+     * phases of requests in flight, least recent traces are dropped if root span is lost
+     */
+    private final Map<String, List<Phase>> phases;
+
+    public SlowRequestSpanProcessor(Duration threshold, int maxTraces) {
+        this.thresholdNanos = threshold.toNanos();
+        this.phases = Collections.synchronizedMap(new LRUMap<>(maxTraces));
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        var traceId = span.getSpanContext().getTraceId();
+        if (span.getParentSpanContext().isValid()) {
+            var phase = new Phase(span.getName(), span.getLatencyNanos());
+            synchronized (phases) {
+                phases.computeIfAbsent(traceId, id -> new ArrayList<>()).add(phase);
+            }
+            return;
+        }
+        var requestPhases = phases.remove(traceId);
+        if (span.getLatencyNanos() < thresholdNanos) {
+            return;
+        }
+        var breakdown = new StringBuilder();
+        if (requestPhases != null) {
+            for (var phase : requestPhases) {
+                breakdown.append(breakdown.length() == 0 ? "" : ", ")
+                        .append(phase.name()).append('=').append(toMillis(phase.latencyNanos())).append("ms");
+            }
+        }
+        log.warn("Slow request {} took {}ms; traceId={}; phases: {}",
+                span.getName(), toMillis(span.getLatencyNanos()), traceId, breakdown);
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    /**
+     * @return count of traces which phases are collected now
+     */
+    public int inFlightCount() {
+        return phases.size();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        phases.clear();
+        return CompletableResultCode.ofSuccess();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000d);
+    }
+
+    private record Phase(String name, long latencyNanos) {
+    }
+}
@@ -0,0 +1,93 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Measures consumption of stream as span: span is started on the first read and ended on close,
+ * ex. it is time of writing asset to client socket when stream is response body
+ */
+public class TracedInputStream extends FilterInputStream {
+    private static final AttributeKey<Long> BYTES = AttributeKey.longKey("bytes");
+
+    private final Tracer tracer;
+    private final String name;
+    /**
+     * stream is read after controller returns, so parent is captured on creation
+     */
+    private final Context parent;
+    private Span span;
+    private long bytes;
+
+    public TracedInputStream(InputStream in, Tracer tracer, String name) {
+        super(in);
+        this.tracer = tracer;
+        this.name = name;
+        this.parent = Context.current();
+    }
+
+    /**
+     * @return stream traced as child of current span or the same stream, if current span is not recorded
+     * (tracing is disabled or request is not sampled), so its own {@code transferTo} is called directly
+     */
+    public static InputStream wrap(InputStream in, Tracer tracer, String name) {
+        return Span.current().isRecording() ? new TracedInputStream(in, tracer, name) : in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        start();
+        var b = in.read();
+        if (b != -1) {
+            bytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        start();
+        var count = in.read(buffer, offset, length);
+        if (count > 0) {
+            bytes += count;
+        }
+        return count;
+    }
+
+    /**
+     * Delegated, so pooled and mapped streams keep their copy to the output
+     */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        start();
+        var count = in.transferTo(out);
+        bytes += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            if (span != null) {
+                span.setAttribute(BYTES, bytes);
+                span.end();
+                span = null;
+            }
+        }
+    }
+
+    private void start() {
+        if (span == null) {
+            span = tracer.spanBuilder(name).setParent(parent).startSpan();
+        }
+    }
+}
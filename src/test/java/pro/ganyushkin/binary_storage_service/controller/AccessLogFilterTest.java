@@ -0,0 +1,77 @@
+package pro.ganyushkin.binary_storage_service.controller;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import pro.ganyushkin.binary_storage_service.model.AccessLogEntry;
+import pro.ganyushkin.binary_storage_service.model.AssetContent;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.service.AccessLogService;
+import pro.ganyushkin.binary_storage_service.service.RateLimitService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(webEnvironment= SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+class AccessLogFilterTest {
+    final String DATA = "result data";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private StorageService storageService;
+
+    @MockBean
+    private RateLimitService rateLimitService;
+
+    @MockBean
+    private AccessLogService accessLogService;
+
+    @Test
+    public void shouldRecordStreamedDownloadOnCompletion() throws Exception {
+        when(accessLogService.isEnabled()).thenReturn(true);
+        when(storageService.getAssetMetadata("bucket-1", "file1.txt")).thenReturn(AssetMetadata.builder()
+                .assetId("file1.txt")
+                .size(DATA.length())
+                .lastModified(Instant.parse("2022-08-11T19:11:50Z"))
+                .contentType(MediaType.TEXT_PLAIN_VALUE)
+                .checksum("abcdef")
+                .build());
+        when(storageService.openAsset(eq("bucket-1"), eq("file1.txt"), any()))
+                .thenAnswer(invocation -> new AssetContent(invocation.getArgument(2),
+                        new ByteArrayInputStream(DATA.getBytes())));
+
+        var result = mockMvc.perform(get("/api/v1/storage/bucket/bucket-1/asset/file1.txt"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // body is not written yet, entry is not recorded by the handler dispatch
+        verify(accessLogService, never()).record(any());
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        var captor = ArgumentCaptor.forClass(AccessLogEntry.class);
+        verify(accessLogService).record(captor.capture());
+        var entry = captor.getValue();
+        assertEquals("GET", entry.method());
+        assertEquals(200, entry.status());
+        assertEquals(DATA.length(), entry.bytesOut());
+    }
+}
@@ -0,0 +1,242 @@
+package pro.ganyushkin.binary_storage_service.controller.s3;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetContent;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.service.MultipartUploadService;
+import pro.ganyushkin.binary_storage_service.service.RateLimitService;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(webEnvironment= SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+class S3APITest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private StorageService storageService;
+
+    @MockBean
+    private MultipartUploadService multipartUploadService;
+
+    @MockBean
+    private RateLimitService rateLimitService;
+
+    @Test
+    public void shouldGetObject() throws Exception {
+        when(storageService.getAssetMetadata("bucket-1", "dir/file1.txt"))
+                .thenReturn(buildMetadata("dir/file1.txt", 11));
+        when(storageService.openAsset(eq("bucket-1"), eq("dir/file1.txt"), any()))
+                .thenAnswer(invocation -> new AssetContent(invocation.getArgument(2),
+                        new ByteArrayInputStream("result data".getBytes())));
+
+        var result = mockMvc.perform(get("/s3/bucket-1/dir/file1.txt"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0123abcd\""))
+                .andExpect(header().string("x-amz-meta-owner", "user-1"))
+                .andExpect(content().string(equalTo("result data")));
+    }
+
+    @Test
+    public void shouldGetObjectRange() throws Exception {
+        when(storageService.getAssetMetadata("bucket-1", "file1.txt")).thenReturn(buildMetadata("file1.txt", 11));
+        when(storageService.openAsset(eq("bucket-1"), eq("file1.txt"), any()))
+                .thenAnswer(invocation -> new AssetContent(invocation.getArgument(2),
+                        new ByteArrayInputStream("result data".getBytes())));
+
+        var result = mockMvc.perform(get("/s3/bucket-1/file1.txt").header("Range", "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 2-5/11"))
+                .andExpect(content().string(equalTo("sult")));
+    }
+
+    @Test
+    public void shouldReturnNoSuchKey() throws Exception {
+        when(storageService.getAssetMetadata("bucket-1", "file1.txt"))
+                .thenThrow(new UndefinedResourceException("bucket-1", "file1.txt"));
+
+        var result = mockMvc.perform(get("/s3/bucket-1/file1.txt"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(containsString("<Code>NoSuchKey</Code>")));
+    }
+
+    @Test
+    public void shouldHeadObject() throws Exception {
+        when(storageService.getAssetMetadata("bucket-1", "file1.txt")).thenReturn(buildMetadata("file1.txt", 11));
+
+        mockMvc.perform(head("/s3/bucket-1/file1.txt"))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue("Content-Length", 11))
+                .andExpect(header().string("ETag", "\"0123abcd\""));
+    }
+
+    @Test
+    public void shouldHeadObjectStoredWithoutETag() throws Exception {
+        when(storageService.getAssetMetadata("bucket-1", "file1.txt"))
+                .thenReturn(buildMetadata("file1.txt", 11).toBuilder().etag(null).build());
+
+        mockMvc.perform(head("/s3/bucket-1/file1.txt"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abcdef\""));
+    }
+
+    @Test
+    public void shouldPutObjectWithMd5ETag() throws Exception {
+        mockStore();
+        mockMvc.perform(put("/s3/bucket-1/file1.txt")
+                        .header("x-amz-meta-owner", "user-1")
+                        .content("hello"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5d41402abc4b2a76b9719d911017c592\""));
+
+        verify(storageService).storeAsset(eq("bucket-1"), eq("file1.txt"), any(InputStream.class), anyLong(),
+                eq(false), eq(true), eq(Map.of("owner", "user-1")));
+    }
+
+    @Test
+    public void shouldDecodeAwsChunkedPut() throws Exception {
+        mockStore();
+        var body = "5;chunk-signature=abc\r\nhello\r\n0;chunk-signature=def\r\n\r\n";
+        mockMvc.perform(put("/s3/bucket-1/file1.txt")
+                        .header("x-amz-content-sha256", "STREAMING-AWS4-HMAC-SHA256-PAYLOAD")
+                        .header("x-amz-decoded-content-length", "5")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5d41402abc4b2a76b9719d911017c592\""));
+    }
+
+    @Test
+    public void shouldListObjectsWithPagination() throws Exception {
+        var keys = List.of("c.txt", "a.txt", "b.txt", "dir/d.txt");
+        when(storageService.getBucketPage(eq("bucket-1"), anyString(), any(), anyInt())).thenAnswer(invocation -> {
+            String prefix = invocation.getArgument(1);
+            String after = invocation.getArgument(2);
+            int limit = invocation.getArgument(3);
+            return keys.stream()
+                    .filter(key -> key.startsWith(prefix) && (after == null || key.compareTo(after) > 0))
+                    .sorted()
+                    .limit(limit)
+                    .toList();
+        });
+        when(storageService.getAssetsMetadata(eq("bucket-1"), anyList())).thenAnswer(invocation -> {
+            List<String> assetIds = invocation.getArgument(1);
+            return assetIds.stream().collect(Collectors.toMap(id -> id, id -> buildMetadata(id, 1)));
+        });
+
+        mockMvc.perform(get("/s3/bucket-1").param("list-type", "2").param("max-keys", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("<Key>a.txt</Key>")))
+                .andExpect(content().string(containsString("<ETag>&quot;0123abcd&quot;</ETag>")))
+                .andExpect(content().string(containsString("<Key>b.txt</Key>")))
+                .andExpect(content().string(not(containsString("<Key>c.txt</Key>"))))
+                .andExpect(content().string(containsString("<IsTruncated>true</IsTruncated>")))
+                .andExpect(content().string(containsString("<NextContinuationToken>Yi50eHQ=</NextContinuationToken>")));
+
+        mockMvc.perform(get("/s3/bucket-1")
+                        .param("list-type", "2")
+                        .param("delimiter", "/")
+                        .param("continuation-token", "Yi50eHQ="))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("<Key>c.txt</Key>")))
+                .andExpect(content().string(containsString("<Prefix>dir/</Prefix>")))
+                .andExpect(content().string(containsString("<IsTruncated>false</IsTruncated>")));
+    }
+
+    @Test
+    public void shouldHandleMultipartUpload() throws Exception {
+        when(multipartUploadService.createUpload("bucket-1", "big.bin")).thenReturn("upload-1");
+        when(multipartUploadService.getUpload("upload-1"))
+                .thenReturn(new MultipartUploadService.Upload("bucket-1", "big.bin"));
+        when(multipartUploadService.complete("upload-1", List.of(1, 2)))
+                .thenReturn(buildMetadata("big.bin", 10).toBuilder().etag("abcdef-2").build());
+
+        mockMvc.perform(post("/s3/bucket-1/big.bin").param("uploads", ""))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("<UploadId>upload-1</UploadId>")));
+
+        mockMvc.perform(put("/s3/bucket-1/big.bin")
+                        .param("uploadId", "upload-1")
+                        .param("partNumber", "1")
+                        .content("hello"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"5d41402abc4b2a76b9719d911017c592\""));
+        verify(multipartUploadService).uploadPart(eq("upload-1"), eq(1), any(InputStream.class));
+
+        mockMvc.perform(post("/s3/bucket-1/big.bin")
+                        .param("uploadId", "upload-1")
+                        .content("<CompleteMultipartUpload>" +
+                                "<Part><PartNumber>1</PartNumber><ETag>a</ETag></Part>" +
+                                "<Part><PartNumber>2</PartNumber><ETag>b</ETag></Part>" +
+                                "</CompleteMultipartUpload>"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("<ETag>&quot;abcdef-2&quot;</ETag>")));
+    }
+
+    /**
+     * Stored asset is tagged by MD5 of content, as storage service does
+     */
+    private void mockStore() throws Exception {
+        when(storageService.storeAsset(anyString(), anyString(), any(InputStream.class), anyLong(),
+                anyBoolean(), anyBoolean(), any())).thenAnswer(invocation -> {
+            var data = invocation.getArgument(2, InputStream.class).readAllBytes();
+            var md5 = HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+            return buildMetadata(invocation.getArgument(1), data.length).toBuilder().etag(md5).build();
+        });
+    }
+
+    private static AssetMetadata buildMetadata(String assetId, long size) {
+        return AssetMetadata.builder()
+                .assetId(assetId)
+                .size(size)
+                .lastModified(Instant.parse("2022-08-11T10:00:00Z"))
+                .contentType("text/plain")
+                .checksum("abcdef")
+                .etag("0123abcd")
+                .userMetadata(Map.of("owner", "user-1"))
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package pro.ganyushkin.binary_storage_service.controller.v1;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import pro.ganyushkin.binary_storage_service.model.AssetContent;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.service.StorageService;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "storage.signing.enabled=true",
+        "storage.signing.active-key=k1",
+        "storage.signing.keys.k1=secret-1"
+})
+@AutoConfigureMockMvc
+class PublicAPITest {
+    final String bucketId = "bucket-1";
+    final String assetId = "file1.txt";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private StorageService storageService;
+
+    @Test
+    public void shouldDownloadBySignedUrl() throws Exception {
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata("abcdef"));
+        when(storageService.openAsset(eq(bucketId), eq(assetId), any()))
+                .thenAnswer(invocation -> new AssetContent(invocation.getArgument(2),
+                        new ByteArrayInputStream("result data".getBytes())));
+
+        var url = signUrl("30m");
+        var result = mockMvc.perform(get(url))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abcdef\""))
+                .andExpect(header().string("Cache-Control",
+                        matchesPattern("public, max-age=(17|18)\\d\\d, immutable")))
+                .andExpect(content().string(equalTo("result data")));
+    }
+
+    @Test
+    public void shouldRejectWrongSignatureWithoutStorageAccess() throws Exception {
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata("abcdef"));
+        var url = signUrl("PT30M");
+
+        mockMvc.perform(get(url.replace("asset/" + assetId, "asset/file2.txt")))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get(url.replaceAll("signature=.*", "signature=AAAA")))
+                .andExpect(status().isForbidden());
+
+        verify(storageService, never()).getAssetMetadata(bucketId, "file2.txt");
+        verify(storageService, never()).openAsset(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void shouldNotServeReplacedVersion() throws Exception {
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata("abcdef"));
+        var url = signUrl("30m");
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata("123456"));
+
+        mockMvc.perform(get(url))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldNotServeVersionReplacedWhileOpening() throws Exception {
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata("abcdef"));
+        var data = new ByteArrayInputStream("other data!".getBytes());
+        when(storageService.openAsset(eq(bucketId), eq(assetId), any()))
+                .thenReturn(new AssetContent(buildMetadata("123456"), data));
+        var url = signUrl("30m");
+
+        mockMvc.perform(get(url))
+                .andExpect(status().isNotFound());
+    }
+
+    private String signUrl(String expiresIn) throws Exception {
+        var response = mockMvc.perform(post("/api/v1/storage/bucket/" + bucketId + "/asset/" + assetId + "/sign")
+                        .param("expiresIn", expiresIn))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.url", startsWith("/api/v1/public/bucket/bucket-1/asset/file1.txt?")))
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.url");
+    }
+
+    private AssetMetadata buildMetadata(String checksum) {
+        return AssetMetadata.builder()
+                .assetId(assetId)
+                .size(11)
+                .lastModified(Instant.parse("2022-08-11T19:11:50Z"))
+                .contentType(MediaType.TEXT_PLAIN_VALUE)
+                .checksum(checksum)
+                .build();
+    }
+}
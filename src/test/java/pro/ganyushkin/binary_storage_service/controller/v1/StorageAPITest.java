@@ -5,30 +5,43 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.RateLimitExceededException;
 import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
 import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetContent;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
 import pro.ganyushkin.binary_storage_service.service.ContentTypeService;
+import pro.ganyushkin.binary_storage_service.service.RateLimitService;
 import pro.ganyushkin.binary_storage_service.service.StorageService;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 
 
@@ -48,25 +61,32 @@ class StorageAPITest {
     @MockBean
     private ContentTypeService contentTypeService;
 
+    @MockBean
+    private RateLimitService rateLimitService;
+
     @Test
     public void shouldHandleGetAsset() throws Exception {
         final var bucketId = "bucket-1";
         final var assetId = "file1.txt";
         final var DATA = "result data";
 
-        when(storageService.getAsset(bucketId, assetId)).thenReturn(
-                new InputStreamResource(
-                        new ByteArrayInputStream(DATA.getBytes())
-                )
-        );
-        when(contentTypeService.findType(assetId)).thenReturn(MediaType.TEXT_PLAIN_VALUE);
+        when(storageService.openAsset(eq(bucketId), eq(assetId), any()))
+                .thenAnswer(invocation -> new AssetContent(invocation.getArgument(2),
+                        new ByteArrayInputStream(DATA.getBytes())));
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata(assetId));
 
-        mockMvc.perform(get(buildAssetUrl(bucketId, assetId) + "?setContentDisposition=true"))
+        var result = mockMvc.perform(get(buildAssetUrl(bucketId, assetId) + "?setContentDisposition=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(header().stringValues(
                         "Content-Disposition", "attachment; filename=\"file1.txt\""))
+                .andExpect(header().string("ETag", "\"abcdef\""))
                 .andExpect(content().string(equalTo(DATA)))
                 .andExpect(content().contentType(MediaType.TEXT_PLAIN_VALUE));
+
+        verify(contentTypeService, times(0)).findType(assetId);
     }
 
     @Test
@@ -74,11 +94,13 @@ class StorageAPITest {
         final var bucketId = "bucket-1";
         final var assetId = "file1.txt";
 
-        when(storageService.getAsset(bucketId, assetId))
+        when(storageService.getAssetMetadata(bucketId, assetId))
                 .thenThrow(new UndefinedResourceException(bucketId, assetId));
 
         mockMvc.perform(get(buildAssetUrl(bucketId, assetId)))
                 .andExpect(status().isNotFound());
+
+        verify(storageService, times(0)).openAsset(eq(bucketId), eq(assetId), any());
     }
 
     @Test
@@ -86,13 +108,119 @@ class StorageAPITest {
         final var bucketId = "bucket-1";
         final var assetId = "file1.txt";
 
-        when(storageService.getAsset(bucketId, assetId))
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata(assetId));
+        when(storageService.openAsset(eq(bucketId), eq(assetId), any()))
                 .thenThrow(new InternalStorageException("come text"));
 
         mockMvc.perform(get(buildAssetUrl(bucketId, assetId)))
                 .andExpect(status().isInternalServerError());
     }
 
+    @Test
+    public void shouldHandleHeadAsset() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata(assetId));
+
+        mockMvc.perform(head(buildAssetUrl(bucketId, assetId)))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue("Content-Length", 11))
+                .andExpect(header().string("ETag", "\"abcdef\""))
+                .andExpect(header().string("X-Asset-Meta-owner", "tester"))
+                .andExpect(content().contentType(MediaType.TEXT_PLAIN_VALUE));
+
+        verify(storageService, times(0)).openAsset(eq(bucketId), eq(assetId), any());
+    }
+
+    @Test
+    public void shouldThrowNotFoundThenHeadAsset() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        when(storageService.getAssetMetadata(bucketId, assetId))
+                .thenThrow(new UndefinedResourceException(bucketId, assetId));
+
+        mockMvc.perform(head(buildAssetUrl(bucketId, assetId)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldDeleteAsset() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        mockMvc.perform(delete(buildAssetUrl(bucketId, assetId)))
+                .andExpect(status().isAccepted());
+
+        verify(storageService, times(1)).deleteAsset(bucketId, assetId);
+    }
+
+    @Test
+    public void shouldThrowNotFoundThenDeleteAsset() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        doThrow(new UndefinedResourceException(bucketId, assetId))
+                .when(storageService).deleteAsset(bucketId, assetId);
+
+        mockMvc.perform(delete(buildAssetUrl(bucketId, assetId)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldGetAssetMetadata() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata(assetId));
+
+        mockMvc.perform(get(buildAssetUrl(bucketId, assetId) + "/stat"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(jsonPath("$.size").value(11))
+                .andExpect(jsonPath("$.checksum").value("abcdef"))
+                .andExpect(jsonPath("$.userMetadata.owner").value("tester"));
+    }
+
+    @Test
+    public void shouldGetAssetsMetadata() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetIds = List.of("file1.txt", "file2.txt");
+
+        when(storageService.getAssetsMetadata(bucketId, assetIds)).thenReturn(Map.of(
+                "file1.txt", buildMetadata("file1.txt")));
+
+        mockMvc.perform(post(buildBucketUrl(bucketId) + "/stat")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"file1.txt\",\"file2.txt\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['file1.txt'].size").value(11))
+                .andExpect(jsonPath("$['file2.txt']").doesNotExist());
+    }
+
+    @Test
+    public void shouldPassUserMetadataThenAssetStore() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+        MockMultipartFile content = new MockMultipartFile("content", null,
+                "text/plain", "bla bla bla".getBytes());
+
+        mockMvc.perform(multipart(HttpMethod.PUT, buildAssetUrl(bucketId, assetId))
+                        .file(content)
+                        .header("X-Asset-Meta-Owner", "tester"))
+                .andExpect(status().isAccepted());
+
+        verify(storageService, times(1)).storeAsset(
+                eq(bucketId),
+                eq(assetId),
+                any(InputStream.class),
+                anyLong(),
+                eq(false),
+                eq(false),
+                eq(Map.of("owner", "tester")));
+    }
+
     @Test
     public void shouldHandleAssetStore() throws Exception {
         final var bucketId = "bucket-1";
@@ -110,8 +238,10 @@ class StorageAPITest {
                 eq(bucketId),
                 eq(assetId),
                 any(InputStream.class),
+                anyLong(),
                 eq(Boolean.parseBoolean(createBucketIfNotExists)),
-                eq(true));
+                eq(true),
+                eq(Map.of()));
     }
 
     @Test
@@ -131,8 +261,10 @@ class StorageAPITest {
                 eq(bucketId),
                 eq(assetId),
                 any(InputStream.class),
+                anyLong(),
                 eq(Boolean.parseBoolean(createBucketIfNotExists)),
-                eq(false));
+                eq(false),
+                eq(Map.of()));
     }
 
     @Test
@@ -145,8 +277,10 @@ class StorageAPITest {
                 eq(bucketId),
                 eq(assetId),
                 any(InputStream.class),
+                anyLong(),
                 eq(Boolean.parseBoolean(createBucketIfNotExists)),
-                eq(true));
+                eq(true),
+                eq(Map.of()));
 
         MockMultipartFile content = new MockMultipartFile("content", null,
                 "text/plain", "bla bla bla".getBytes());
@@ -167,8 +301,10 @@ class StorageAPITest {
                 eq(bucketId),
                 eq(assetId),
                 any(InputStream.class),
+                anyLong(),
                 eq(Boolean.parseBoolean(createBucketIfNotExists)),
-                eq(false));
+                eq(false),
+                eq(Map.of()));
 
         MockMultipartFile content = new MockMultipartFile("content", null,
                 "text/plain", "bla bla bla".getBytes());
@@ -179,6 +315,64 @@ class StorageAPITest {
                 .andExpect(status().isConflict());
     }
 
+    @Test
+    public void shouldThrowInsufficientStorageThenAssetStore() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        doThrow(new QuotaExceededException(bucketId, "bytes=100")).when(storageService).storeAsset(
+                eq(bucketId),
+                eq(assetId),
+                any(InputStream.class),
+                anyLong(),
+                eq(false),
+                eq(false),
+                eq(Map.of()));
+
+        MockMultipartFile content = new MockMultipartFile("content", null,
+                "text/plain", "bla bla bla".getBytes());
+
+        mockMvc.perform(multipart(HttpMethod.PUT, buildAssetUrl(bucketId, assetId))
+                        .file(content))
+                .andExpect(status().isInsufficientStorage());
+    }
+
+    @Test
+    public void shouldThrowTooManyRequestsThenAssetStore() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        doThrow(new RateLimitExceededException("client-1", bucketId, 3))
+                .when(rateLimitService).acquire(anyString(), eq("client-1"), eq(bucketId), anyLong());
+
+        MockMultipartFile content = new MockMultipartFile("content", null,
+                "text/plain", "bla bla bla".getBytes());
+
+        mockMvc.perform(multipart(HttpMethod.PUT, buildAssetUrl(bucketId, assetId))
+                        .file(content)
+                        .header(StorageAPI.CLIENT_ID_HEADER, "client-1"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"));
+
+        verify(storageService, times(0)).storeAsset(anyString(), anyString(), any(InputStream.class),
+                anyLong(), anyBoolean(), anyBoolean(), any());
+    }
+
+    @Test
+    public void shouldThrowTooManyRequestsThenGetAsset() throws Exception {
+        final var bucketId = "bucket-1";
+        final var assetId = "file1.txt";
+
+        when(storageService.getAssetMetadata(bucketId, assetId)).thenReturn(buildMetadata(assetId));
+        doThrow(new RateLimitExceededException("127.0.0.1", bucketId, 1))
+                .when(rateLimitService).acquire(eq("127.0.0.1"), anyString(), eq(bucketId), eq(11L));
+
+        mockMvc.perform(get(buildAssetUrl(bucketId, assetId)))
+                .andExpect(status().isTooManyRequests());
+
+        verify(storageService, times(0)).openAsset(eq(bucketId), eq(assetId), any());
+    }
+
     @Test
     public void shouldCreateBucket() throws Exception {
         final var bucketId = "bucket-1";
@@ -263,6 +457,17 @@ class StorageAPITest {
                 .andExpect(status().isNotFound());
     }
 
+    private AssetMetadata buildMetadata(String assetId) {
+        return AssetMetadata.builder()
+                .assetId(assetId)
+                .size(11)
+                .lastModified(Instant.parse("2022-08-11T19:11:50Z"))
+                .contentType(MediaType.TEXT_PLAIN_VALUE)
+                .checksum("abcdef")
+                .userMetadata(Map.of("owner", "tester"))
+                .build();
+    }
+
     private String buildBucketUrl(String bucketId) {
         return "/api/v1/storage/bucket/" + bucketId;
     }
@@ -0,0 +1,47 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketListingCacheTest {
+    private static final String[] ASSET_IDS = {"a/1", "a/2", "a/3", "b/1", "c"};
+
+    @Test
+    public void shouldTakePageAfterCursor() {
+        assertEquals(List.of("a/1", "a/2"), BucketListingCache.page(ASSET_IDS, "a/", null, 2));
+        assertEquals(List.of("a/3"), BucketListingCache.page(ASSET_IDS, "a/", "a/2", 2));
+        assertEquals(List.of("a/3"), BucketListingCache.page(ASSET_IDS, "a/", "a/20", 2));
+        assertEquals(List.of(), BucketListingCache.page(ASSET_IDS, "a/", "a/3", 2));
+        assertEquals(List.of("b/1"), BucketListingCache.page(ASSET_IDS, "b", "a/1", 2));
+        assertEquals(List.of("b/1", "c"), BucketListingCache.page(ASSET_IDS, "", "a/3", 5));
+    }
+
+    @Test
+    public void shouldKeepListingWhileDirectoryIsNotChanged() {
+        var cache = new BucketListingCache(4, Duration.ofSeconds(2));
+        var stamps = new FileTime[] {FileTime.fromMillis(System.currentTimeMillis() - 60_000), null};
+
+        cache.put("bucket-1", stamps, ASSET_IDS);
+
+        assertArrayEquals(ASSET_IDS, cache.find("bucket-1", stamps.clone()));
+        assertNull(cache.find("bucket-1", new FileTime[] {FileTime.fromMillis(System.currentTimeMillis()), null}));
+        cache.invalidate("bucket-1");
+        assertNull(cache.find("bucket-1", stamps));
+    }
+
+    @Test
+    public void shouldNotKeepListingOfRecentlyChangedDirectory() {
+        var cache = new BucketListingCache(4, Duration.ofSeconds(2));
+        var stamps = new FileTime[] {FileTime.fromMillis(System.currentTimeMillis()), null};
+
+        cache.put("bucket-1", stamps, ASSET_IDS);
+
+        // another change within the same directory time wouldn't be noticed
+        assertNull(cache.find("bucket-1", stamps));
+    }
+}
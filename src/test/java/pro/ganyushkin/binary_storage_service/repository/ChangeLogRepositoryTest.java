@@ -0,0 +1,101 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.OffsetOutOfRangeException;
+import pro.ganyushkin.binary_storage_service.model.ChangeEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogRepositoryTest {
+
+    @TempDir
+    Path logDir;
+
+    private ChangeLogRepository repository;
+
+    @BeforeEach
+    public void setup() {
+        repository = createRepository(Duration.ofDays(1));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(repository, "destroy");
+    }
+
+    @Test
+    public void shouldReadEventsAcrossSegments() throws Exception {
+        var offsets = new ArrayList<Long>();
+        for (var i = 0; i < 10; i++) {
+            offsets.add(repository.append(ChangeEvent.Type.CREATE, "bucket-1", "asset-" + i, i, Instant.now()));
+        }
+        try (var files = Files.list(logDir)) {
+            assertTrue(files.count() > 1);
+        }
+
+        var batch = repository.read(0, 100);
+        assertEquals(10, batch.events().size());
+        assertEquals(repository.getEndOffset(), batch.nextOffset());
+        for (var i = 0; i < 10; i++) {
+            var event = batch.events().get(i);
+            assertEquals(offsets.get(i), event.offset());
+            assertEquals("asset-" + i, event.assetId());
+            assertEquals(i, event.size());
+        }
+
+        var page = repository.read(offsets.get(3), 4);
+        assertEquals(4, page.events().size());
+        assertEquals("asset-3", page.events().get(0).assetId());
+        assertEquals(offsets.get(7), page.nextOffset());
+
+        assertTrue(repository.read(repository.getEndOffset(), 10).events().isEmpty());
+        assertThrows(OffsetOutOfRangeException.class, () -> repository.read(offsets.get(1) + 1, 10));
+        assertThrows(OffsetOutOfRangeException.class, () -> repository.read(repository.getEndOffset() + 1, 10));
+    }
+
+    @Test
+    public void shouldTruncateIncompleteEntryAndRemoveExpiredSegments() throws Exception {
+        repository.append(ChangeEvent.Type.CREATE, "bucket-1", "a", 1, Instant.now());
+        repository.append(ChangeEvent.Type.OVERWRITE, "bucket-1", "a", 2, Instant.now());
+        var end = repository.getEndOffset();
+        ReflectionTestUtils.invokeMethod(repository, "destroy");
+        try (var files = Files.list(logDir)) {
+            var lastSegment = files.sorted().reduce((first, second) -> second).orElseThrow();
+            Files.write(lastSegment, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        repository = createRepository(Duration.ZERO);
+        assertEquals(end, repository.getEndOffset());
+        for (var i = 0; i < 5; i++) {
+            repository.append(ChangeEvent.Type.DELETE, "bucket-1", "asset-" + i, 1, Instant.now());
+        }
+
+        assertTrue(repository.getStartOffset() > 0);
+        assertThrows(OffsetOutOfRangeException.class, () -> repository.read(0, 10));
+        var batch = repository.read(repository.getStartOffset(), 10);
+        assertFalse(batch.events().isEmpty());
+        assertEquals(ChangeEvent.Type.DELETE, batch.events().get(0).type());
+    }
+
+    private ChangeLogRepository createRepository(Duration retention) {
+        var changeLogRepository = new ChangeLogRepository();
+        ReflectionTestUtils.setField(changeLogRepository, "enabled", true);
+        ReflectionTestUtils.setField(changeLogRepository, "directory", logDir.toString());
+        ReflectionTestUtils.setField(changeLogRepository, "segmentSize", DataSize.ofBytes(100));
+        ReflectionTestUtils.setField(changeLogRepository, "retention", retention);
+        ReflectionTestUtils.invokeMethod(changeLogRepository, "init");
+        return changeLogRepository;
+    }
+}
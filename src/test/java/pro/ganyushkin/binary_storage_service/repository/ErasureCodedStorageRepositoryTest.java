@@ -0,0 +1,243 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import io.opentelemetry.api.OpenTelemetry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Directories of the temporary directory stand in for disks
+ */
+class ErasureCodedStorageRepositoryTest {
+    final String bucketId = "bucket-1";
+    final int disks = 7;
+
+    @TempDir
+    Path rootDir;
+
+    private ErasureCodedStorageRepository repository;
+
+    @BeforeEach
+    public void setup() throws ResourceAlreadyExists, InternalStorageException {
+        repository = new ErasureCodedStorageRepository(OpenTelemetry.noop().getTracer("test"));
+        var roots = IntStream.range(0, disks).mapToObj(i -> rootDir.resolve("disk" + i).toString());
+        ReflectionTestUtils.setField(repository, "roots", roots.toArray(String[]::new));
+        ReflectionTestUtils.setField(repository, "dataChunks", 4);
+        ReflectionTestUtils.setField(repository, "parityChunks", 2);
+        ReflectionTestUtils.setField(repository, "stripeUnit", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(repository, "replicationThreshold", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(repository, "readThreads", 4);
+        ReflectionTestUtils.setField(repository, "readAhead", 2);
+        ReflectionTestUtils.setField(repository, "repairEnabled", false);
+        ReflectionTestUtils.invokeMethod(repository, "init");
+        repository.createBucket(bucketId);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(repository, "destroy");
+    }
+
+    @Test
+    public void shouldStoreAndReadStripedAsset() throws Exception {
+        for (var size : new int[] { 1025, 4095, 4096, 4097, 100_000 }) {
+            var data = randomBytes(size);
+            var assetId = "asset-" + size;
+
+            repository.store(bucketId, assetId, new ByteArrayInputStream(data));
+
+            assertArrayEquals(data, readAll(assetId));
+            assertEquals(size, repository.stat(bucketId, assetId).getSize());
+            assertEquals(6, findChunks(assetId).size());
+        }
+        assertEquals(5, repository.listAssets(bucketId).size());
+        assertEquals(List.of(bucketId), repository.listBuckets());
+    }
+
+    @Test
+    public void shouldReplicateSmallAsset() throws Exception {
+        for (var size : new int[] { 0, 1, 1024 }) {
+            var data = randomBytes(size);
+            var assetId = "asset-" + size;
+
+            repository.store(bucketId, assetId, new ByteArrayInputStream(data));
+
+            assertArrayEquals(data, readAll(assetId));
+            assertEquals(size, repository.stat(bucketId, assetId).getSize());
+            assertEquals(3, findChunks(assetId).size());
+        }
+
+        var data = randomBytes(1000);
+        repository.overwrite(bucketId, "asset", new ByteArrayInputStream(randomBytes(5000)));
+        repository.overwrite(bucketId, "asset", new ByteArrayInputStream(data));
+        // chunks of the striped content are removed
+        var chunks = findChunks("asset");
+        assertEquals(3, chunks.size());
+        var lost = Files.readAllBytes(chunks.get(0));
+        var corrupted = Files.readAllBytes(chunks.get(1));
+
+        Files.delete(chunks.get(0));
+        corrupt(chunks.get(1));
+        assertTrue(repository.exists(bucketId, "asset"));
+        assertArrayEquals(data, readAll("asset"));
+
+        assertTrue(repository.repair(bucketId, "asset", true));
+        assertArrayEquals(lost, Files.readAllBytes(chunks.get(0)));
+        assertArrayEquals(corrupted, Files.readAllBytes(chunks.get(1)));
+        assertFalse(repository.repair(bucketId, "asset", true));
+    }
+
+    @Test
+    public void shouldReadWithLostAndCorruptedChunks() throws Exception {
+        var data = randomBytes(10_000);
+        repository.store(bucketId, "asset", new ByteArrayInputStream(data));
+        var chunks = findChunks("asset");
+
+        Files.delete(chunks.get(0));
+        corrupt(chunks.get(1));
+        assertArrayEquals(data, readAll("asset"));
+
+        Files.delete(chunks.get(2));
+        assertThrows(IOException.class, () -> readAll("asset"));
+    }
+
+    @Test
+    public void shouldRepairLostAndCorruptedChunks() throws Exception {
+        var data = randomBytes(10_000);
+        repository.store(bucketId, "asset", new ByteArrayInputStream(data));
+        var chunks = findChunks("asset");
+        var lost = Files.readAllBytes(chunks.get(0));
+        var corrupted = Files.readAllBytes(chunks.get(4));
+
+        Files.delete(chunks.get(0));
+        corrupt(chunks.get(4));
+        // only headers are checked without data verification
+        assertTrue(repository.repair(bucketId, "asset", false));
+        assertArrayEquals(lost, Files.readAllBytes(chunks.get(0)));
+        assertFalse(Arrays.equals(corrupted, Files.readAllBytes(chunks.get(4))));
+
+        assertTrue(repository.repair(bucketId, "asset", true));
+        assertArrayEquals(corrupted, Files.readAllBytes(chunks.get(4)));
+        assertFalse(repository.repair(bucketId, "asset", true));
+        assertArrayEquals(data, readAll("asset"));
+    }
+
+    @Test
+    public void shouldRepairBlocksCorruptedInLaterStripes() throws Exception {
+        var data = randomBytes(10_000);
+        repository.store(bucketId, "asset", new ByteArrayInputStream(data));
+        var chunks = findChunks("asset");
+        var last = Files.readAllBytes(chunks.get(1));
+        var middle = Files.readAllBytes(chunks.get(5));
+
+        var content = last.clone();
+        content[content.length - 10] ^= 1;
+        Files.write(chunks.get(1), content);
+        content = middle.clone();
+        content[content.length / 2] ^= 1;
+        Files.write(chunks.get(5), content);
+
+        assertTrue(repository.repair(bucketId, "asset", true));
+        assertArrayEquals(last, Files.readAllBytes(chunks.get(1)));
+        assertArrayEquals(middle, Files.readAllBytes(chunks.get(5)));
+        assertFalse(repository.repair(bucketId, "asset", true));
+        assertArrayEquals(data, readAll("asset"));
+    }
+
+    @Test
+    public void shouldOverwriteCopyAndDelete() throws Exception {
+        repository.store(bucketId, "asset", new ByteArrayInputStream(randomBytes(5000)));
+        assertThrows(ResourceAlreadyExists.class,
+                () -> repository.store(bucketId, "asset", new ByteArrayInputStream(new byte[1])));
+
+        var data = randomBytes(3000);
+        repository.overwrite(bucketId, "asset", new ByteArrayInputStream(data));
+        assertArrayEquals(data, readAll("asset"));
+
+        repository.copy(bucketId, "asset", bucketId, "copy");
+        repository.move(bucketId, "copy", bucketId, "moved");
+        assertFalse(repository.exists(bucketId, "copy"));
+        assertArrayEquals(data, readAll("moved"));
+
+        repository.delete(bucketId, "asset");
+        assertFalse(repository.exists(bucketId, "asset"));
+        assertTrue(findChunks("asset").isEmpty());
+        assertThrows(UndefinedResourceException.class, () -> repository.read(bucketId, "asset"));
+    }
+
+    @Test
+    public void shouldReplicateMetadataAndRemoveItWithBucket() throws Exception {
+        repository.saveMetadata(bucketId, "asset", "first".getBytes());
+        var replicas = findMetadata("asset");
+        assertEquals(3, replicas.size());
+
+        // replica of the failed root is stale, the newest one is read
+        var stale = replicas.get(0);
+        Files.delete(stale);
+        repository.saveMetadata(bucketId, "asset", "second".getBytes());
+        Files.write(stale, "first".getBytes());
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(0));
+        assertArrayEquals("second".getBytes(), repository.readMetadata(bucketId, "asset").orElseThrow());
+
+        Files.delete(replicas.get(1));
+        Files.delete(replicas.get(2));
+        assertArrayEquals("first".getBytes(), repository.readMetadata(bucketId, "asset").orElseThrow());
+        repository.removeMetadata(bucketId, "asset");
+        assertTrue(repository.readMetadata(bucketId, "asset").isEmpty());
+
+        repository.saveMetadata(bucketId, "orphan", "orphan".getBytes());
+        repository.deleteBucket(bucketId);
+        assertFalse(repository.exists(bucketId));
+    }
+
+    private byte[] readAll(String assetId) throws Exception {
+        try (var in = repository.read(bucketId, assetId)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private List<Path> findChunks(String assetId) {
+        return IntStream.range(0, disks)
+                .mapToObj(i -> rootDir.resolve("disk" + i).resolve(bucketId).resolve(assetId))
+                .filter(Files::isRegularFile)
+                .toList();
+    }
+
+    private List<Path> findMetadata(String assetId) {
+        return IntStream.range(0, disks)
+                .mapToObj(i -> rootDir.resolve("disk" + i).resolve(bucketId)
+                        .resolve(FilesystemAssetMetadataRepository.METADATA_DIRECTORY).resolve(assetId + ".json"))
+                .filter(Files::isRegularFile)
+                .toList();
+    }
+
+    private static void corrupt(Path chunk) throws IOException {
+        var content = Files.readAllBytes(chunk);
+        content[50] ^= 1;
+        Files.write(chunk, content);
+    }
+
+    private static byte[] randomBytes(int size) {
+        var data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,79 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("FS-STORAGE")
+@SpringBootTest
+class FilesystemAssetMetadataRepositoryTest {
+    @Autowired
+    private FilesystemAssetMetadataRepository repository;
+
+    @Value("${storage.fs.root-directory}")
+    private String rootDir;
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        final var rootStorage = new File(rootDir);
+        FileUtils.deleteDirectory(rootStorage);
+        rootStorage.mkdir();
+    }
+
+    @Test
+    public void shouldReturnEmptyForUnknownAsset() throws InternalStorageException {
+        assertEquals(Optional.empty(), repository.find("bucket-1", "unknown-asset.txt"));
+    }
+
+    @Test
+    public void shouldSaveAndFindMetadata() throws InternalStorageException {
+        final var bucketId = "bucket-1";
+        final var metadata = AssetMetadata.builder()
+                .assetId("metadata-file.txt")
+                .size(42)
+                .lastModified(Instant.parse("2022-08-11T19:11:50Z"))
+                .contentType("text/plain")
+                .checksum("abcdef")
+                .userMetadata(Map.of("owner", "tester"))
+                .build();
+
+        repository.save(bucketId, metadata);
+
+        assertTrue(Paths.get(rootDir).resolve(bucketId)
+                .resolve(FilesystemAssetMetadataRepository.METADATA_DIRECTORY)
+                .resolve("metadata-file.txt.json").toFile().isFile());
+        assertEquals(Optional.of(metadata), repository.find(bucketId, "metadata-file.txt"));
+    }
+
+    @Test
+    public void shouldOverwriteMetadata() throws InternalStorageException {
+        final var bucketId = "bucket-1";
+        final var metadata = AssetMetadata.builder()
+                .assetId("overwritten-file.txt")
+                .size(42)
+                .checksum("abcdef")
+                .build();
+
+        repository.save(bucketId, metadata);
+        repository.save(bucketId, metadata.toBuilder().size(7).checksum("012345").build());
+
+        var stored = repository.find(bucketId, "overwritten-file.txt").orElseThrow();
+        assertEquals(7, stored.getSize());
+        assertEquals("012345", stored.getChecksum());
+    }
+}
@@ -19,6 +19,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -125,6 +126,27 @@ class FilesystemStorageRepositoryTest {
                 repository.listAssets(bucketId).stream().sorted().toList());
     }
 
+    @Test
+    public void shouldListPagesOfAssets() throws IOException, UndefinedResourceException {
+        final var bucketId = "bucket-1";
+        final var bucketP = Paths.get(rootDir).resolve(bucketId);
+        FileUtils.forceMkdir(bucketP.toFile());
+        for (var i = 0; i < 10; i++) {
+            bucketP.resolve("file" + i + ".ext").toFile().createNewFile();
+        }
+        bucketP.resolve("other.ext").toFile().createNewFile();
+        // directory changed long ago, its listing is kept between pages
+        Files.setLastModifiedTime(bucketP, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        assertEquals(List.of("file0.ext", "file1.ext", "file2.ext"), repository.listAssets(bucketId, "file", null, 3));
+        assertEquals(List.of("file3.ext", "file4.ext", "file5.ext"),
+                repository.listAssets(bucketId, "file", "file2.ext", 3));
+        assertEquals(List.of("file9.ext"), repository.listAssets(bucketId, "file", "file8.ext", 3));
+
+        bucketP.resolve("file85.ext").toFile().createNewFile();
+        assertEquals(List.of("file85.ext", "file9.ext"), repository.listAssets(bucketId, "file", "file8.ext", 3));
+    }
+
     @Test
     public void shouldThrowNoBucketForListAssets() {
         final var bucketId = "bucket-1";
@@ -170,6 +192,34 @@ class FilesystemStorageRepositoryTest {
                 repository.read(bucketId, assetId));
     }
 
+    @Test
+    public void shouldStatAsset() throws IOException, InternalStorageException, UndefinedResourceException {
+        final var bucketId = "bucket-1";
+        final var assetId = "file.txt";
+        final var bucketP = Paths.get(rootDir).resolve(bucketId);
+        final var assetP = bucketP.resolve(assetId);
+        final var TEST_CONTENT = "example text\n in file\n";
+        FileUtils.forceMkdir(bucketP.toFile());
+        try(var file = new FileWriter(assetP.toFile())) {
+            file.write(TEST_CONTENT);
+        }
+
+        var metadata = repository.stat(bucketId, assetId);
+        assertEquals(assetId, metadata.getAssetId());
+        assertEquals(TEST_CONTENT.length(), metadata.getSize());
+        assertEquals(Files.getLastModifiedTime(assetP).toInstant(), metadata.getLastModified());
+    }
+
+    @Test
+    public void shouldThrowNoAssetForStat() throws IOException {
+        final var bucketId = "bucket-1";
+        final var assetId = "file.txt";
+        FileUtils.forceMkdir(Paths.get(rootDir).resolve(bucketId).toFile());
+
+        assertThrows(UndefinedResourceException.class, () ->
+                repository.stat(bucketId, assetId));
+    }
+
     @Test
     public void shouldStoreAsset() throws IOException, InternalStorageException, UndefinedResourceException,
             ResourceAlreadyExists {
@@ -201,6 +251,30 @@ class FilesystemStorageRepositoryTest {
                 repository.store(bucketId, assetId, new ByteArrayInputStream(TEST_CONTENT.getBytes())));
     }
 
+    @Test
+    public void shouldKeepAssetWithSeparatorsInBucket() throws Exception {
+        final var TEST_CONTENT = "example text\n in file\n";
+        FileUtils.forceMkdir(Paths.get(rootDir).resolve("bucket-1").toFile());
+        FileUtils.forceMkdir(Paths.get(rootDir).resolve("bucket-2").toFile());
+        final var assetIds = List.of("../bucket-2/file.txt", "dir/file1.txt", "..", "100%.txt");
+
+        for (var assetId : assetIds) {
+            repository.store("bucket-1", assetId, new ByteArrayInputStream(TEST_CONTENT.getBytes()));
+        }
+
+        assertEquals(assetIds.stream().sorted().toList(),
+                repository.listAssets("bucket-1").stream().sorted().toList());
+        for (var assetId : assetIds) {
+            assertTrue(repository.exists("bucket-1", assetId));
+            try (var stream = repository.read("bucket-1", assetId)) {
+                assertEquals(TEST_CONTENT, new String(stream.readAllBytes()));
+            }
+        }
+        assertFalse(Files.exists(Paths.get(rootDir).resolve("bucket-2").resolve("file.txt")));
+        assertFalse(Files.exists(Paths.get(rootDir).resolve("bucket-1").resolve("dir")));
+        assertThrows(IllegalArgumentException.class, () -> repository.exists("..", "file.txt"));
+    }
+
     @Test
     public void shouldThrowNoBucketForStore() {
         final var bucketId = "bucket-1";
@@ -227,4 +301,109 @@ class FilesystemStorageRepositoryTest {
 
         assertEquals(TEST_CONTENT, Files.readString(assetP));
     }
+
+    @Test
+    public void shouldDeleteAsset() throws IOException, InternalStorageException, UndefinedResourceException {
+        final var bucketId = "bucket-1";
+        final var assetId = "file.txt";
+        final var bucketP = Paths.get(rootDir).resolve(bucketId);
+        FileUtils.forceMkdir(bucketP.toFile());
+        Files.writeString(bucketP.resolve(assetId), "example text\n in file\n");
+
+        repository.delete(bucketId, assetId);
+
+        assertFalse(repository.exists(bucketId, assetId));
+        assertThrows(UndefinedResourceException.class, () -> repository.delete(bucketId, assetId));
+    }
+
+    @Test
+    public void shouldDemoteAsset() throws IOException, InternalStorageException, UndefinedResourceException {
+        final var bucketId = "bucket-1";
+        final var assetId = "file.txt";
+        final var bucketP = Paths.get(rootDir).resolve(bucketId);
+        final var assetP = bucketP.resolve(assetId);
+        final var TEST_CONTENT = "example text\n in file\n".repeat(100);
+        FileUtils.forceMkdir(bucketP.toFile());
+        Files.writeString(assetP, TEST_CONTENT);
+        final var before = repository.stat(bucketId, assetId);
+
+        repository.demote(bucketId, assetId);
+
+        assertFalse(Files.exists(assetP));
+        assertTrue(repository.exists(bucketId, assetId));
+        assertEquals(List.of(assetId), repository.listAssets(bucketId));
+        assertEquals(before, repository.stat(bucketId, assetId));
+        try (var is = repository.read(bucketId, assetId)) {
+            assertEquals(TEST_CONTENT, new String(is.readAllBytes()));
+        }
+        assertFalse(repository.listBuckets().stream().anyMatch(name -> name.startsWith(".")));
+
+        repository.overwrite(bucketId, assetId, new ByteArrayInputStream("new".getBytes()));
+        assertEquals("new", Files.readString(assetP));
+        assertEquals(3, repository.stat(bucketId, assetId).getSize());
+    }
+
+    @Test
+    public void shouldPromoteAsset() throws IOException, InternalStorageException, UndefinedResourceException {
+        final var bucketId = "bucket-1";
+        final var assetId = "file.txt";
+        final var bucketP = Paths.get(rootDir).resolve(bucketId);
+        final var assetP = bucketP.resolve(assetId);
+        final var TEST_CONTENT = "example text\n in file\n".repeat(100);
+        FileUtils.forceMkdir(bucketP.toFile());
+        Files.writeString(assetP, TEST_CONTENT);
+        final var before = repository.stat(bucketId, assetId);
+        repository.demote(bucketId, assetId);
+        assertTrue(repository.isCold(bucketId, assetId));
+
+        repository.promote(bucketId, assetId);
+
+        assertFalse(repository.isCold(bucketId, assetId));
+        assertEquals(TEST_CONTENT, Files.readString(assetP));
+        assertEquals(before, repository.stat(bucketId, assetId));
+        assertEquals(List.of(assetId), repository.listAssets(bucketId));
+    }
+
+    @Test
+    public void shouldCopyAsset() throws IOException, InternalStorageException, UndefinedResourceException {
+        final var bucketP = Paths.get(rootDir).resolve("bucket-1");
+        final var targetP = Paths.get(rootDir).resolve("bucket-2");
+        final var TEST_CONTENT = "example text\n in file\n";
+        FileUtils.forceMkdir(bucketP.toFile());
+        FileUtils.forceMkdir(targetP.toFile());
+        Files.writeString(bucketP.resolve("file.txt"), TEST_CONTENT);
+        Files.writeString(targetP.resolve("copy.txt"), "old content");
+
+        repository.copy("bucket-1", "file.txt", "bucket-2", "copy.txt");
+
+        assertEquals(TEST_CONTENT, Files.readString(bucketP.resolve("file.txt")));
+        assertEquals(TEST_CONTENT, Files.readString(targetP.resolve("copy.txt")));
+        assertEquals(List.of("copy.txt"), repository.listAssets("bucket-2"));
+
+        // copy is not changed by overwrite of source
+        repository.overwrite("bucket-1", "file.txt", new ByteArrayInputStream("new".getBytes()));
+        assertEquals(TEST_CONTENT, Files.readString(targetP.resolve("copy.txt")));
+        assertThrows(UndefinedResourceException.class,
+                () -> repository.copy("bucket-1", "missing.txt", "bucket-2", "copy.txt"));
+        assertThrows(UndefinedResourceException.class,
+                () -> repository.copy("bucket-1", "file.txt", "bucket-3", "copy.txt"));
+    }
+
+    @Test
+    public void shouldMoveColdAsset() throws IOException, InternalStorageException, UndefinedResourceException {
+        final var bucketP = Paths.get(rootDir).resolve("bucket-1");
+        final var TEST_CONTENT = "example text\n in file\n".repeat(100);
+        FileUtils.forceMkdir(bucketP.toFile());
+        FileUtils.forceMkdir(Paths.get(rootDir).resolve("bucket-2").toFile());
+        Files.writeString(bucketP.resolve("file.txt"), TEST_CONTENT);
+        repository.demote("bucket-1", "file.txt");
+
+        repository.move("bucket-1", "file.txt", "bucket-2", "moved.txt");
+
+        assertFalse(repository.exists("bucket-1", "file.txt"));
+        assertTrue(repository.isCold("bucket-2", "moved.txt"));
+        try (var is = repository.read("bucket-2", "moved.txt")) {
+            assertEquals(TEST_CONTENT, new String(is.readAllBytes()));
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalDiskCacheTest {
+    final String bucketId = "bucket-1";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldCacheCommittedFile() throws IOException {
+        var cache = new LocalDiskCache(directory, 100);
+        assertNull(cache.get(bucketId, "asset"));
+
+        var path = put(cache, "asset", 10);
+
+        assertEquals(path, cache.get(bucketId, "asset"));
+        assertEquals(10, Files.size(path));
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws IOException {
+        var cache = new LocalDiskCache(directory, 100);
+        put(cache, "asset1", 40);
+        put(cache, "asset2", 40);
+        cache.get(bucketId, "asset1");
+
+        put(cache, "asset3", 40);
+
+        assertNotNull(cache.get(bucketId, "asset1"));
+        assertNull(cache.get(bucketId, "asset2"));
+        assertNotNull(cache.get(bucketId, "asset3"));
+        assertEquals(80, cache.size());
+    }
+
+    @Test
+    public void shouldNotCommitInvalidatedDownload() throws IOException {
+        var cache = new LocalDiskCache(directory, 100);
+        var generation = cache.generation(bucketId, "asset");
+        var tmpPath = cache.createTempFile();
+        Files.write(tmpPath, new byte[10]);
+
+        cache.invalidate(bucketId, "asset");
+
+        assertNull(cache.commit(bucketId, "asset", tmpPath, generation));
+        assertNull(cache.get(bucketId, "asset"));
+        assertFalse(Files.exists(tmpPath));
+    }
+
+    @Test
+    public void shouldLoadExistingFiles() throws IOException {
+        var cache = new LocalDiskCache(directory, 100);
+        put(cache, "asset", 10);
+
+        var reloaded = new LocalDiskCache(directory, 100);
+
+        assertNotNull(reloaded.get(bucketId, "asset"));
+        assertEquals(10, reloaded.size());
+    }
+
+    private Path put(LocalDiskCache cache, String assetId, int size) throws IOException {
+        var generation = cache.generation(bucketId, assetId);
+        var tmpPath = cache.createTempFile();
+        Files.write(tmpPath, new byte[size]);
+        return cache.commit(bucketId, assetId, tmpPath, generation);
+    }
+}
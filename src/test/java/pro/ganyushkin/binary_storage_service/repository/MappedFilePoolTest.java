@@ -0,0 +1,79 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFilePoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldShareMappingBetweenReaders() throws IOException {
+        final var data = randomData(10_000);
+        final var file = Files.write(tempDir.resolve("asset.bin"), data);
+        final var pool = new MappedFilePool(16, 1_000_000);
+        final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+        try (var first = pool.open(file, attributes);
+             var second = pool.open(file, attributes)) {
+            assertEquals(1, pool.size());
+            assertEquals(data.length, pool.mappedSize());
+            assertArrayEquals(data, first.readAllBytes());
+            assertEquals(100, second.skip(100));
+            var out = new ByteArrayOutputStream();
+            second.transferTo(out);
+            assertArrayEquals(Arrays.copyOfRange(data, 100, data.length), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws IOException {
+        final var pool = new MappedFilePool(2, 1_000_000);
+
+        for (var i = 0; i < 3; i++) {
+            var file = Files.write(tempDir.resolve("asset-" + i), randomData(100));
+            try (var is = pool.open(file, Files.readAttributes(file, BasicFileAttributes.class))) {
+                assertEquals(100, is.readAllBytes().length);
+            }
+        }
+
+        assertEquals(2, pool.size());
+        assertEquals(200, pool.mappedSize());
+    }
+
+    @Test
+    public void shouldKeepOpenReaderAfterInvalidate() throws IOException {
+        final var data = randomData(1000);
+        final var file = Files.write(tempDir.resolve("asset.bin"), data);
+        final var pool = new MappedFilePool(16, 1_000_000);
+
+        try (var is = pool.open(file, Files.readAttributes(file, BasicFileAttributes.class))) {
+            pool.invalidate(file);
+            assertEquals(0, pool.size());
+            assertArrayEquals(data, is.readAllBytes());
+        }
+
+        final var newData = randomData(500);
+        Files.write(file, newData);
+        try (var is = pool.open(file, Files.readAttributes(file, BasicFileAttributes.class))) {
+            assertArrayEquals(newData, is.readAllBytes());
+        }
+    }
+
+    private static byte[] randomData(int size) {
+        var data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
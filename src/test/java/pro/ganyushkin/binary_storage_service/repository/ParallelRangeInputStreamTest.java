@@ -0,0 +1,79 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelRangeInputStreamTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldReadAllRangesInOrder() throws IOException {
+        var data = new byte[1000];
+        new Random(42).nextBytes(data);
+
+        try (var is = new ParallelRangeInputStream(
+                (offset, length) -> Arrays.copyOfRange(data, (int) offset, (int) offset + length),
+                data.length, 64, 3, executor)) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+    }
+
+    @Test
+    public void shouldFetchAheadOnlyParallelismRanges() throws IOException {
+        var data = new byte[1000];
+        var fetched = new AtomicInteger();
+
+        try (var is = new ParallelRangeInputStream((offset, length) -> {
+            fetched.incrementAndGet();
+            return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+        }, data.length, 100, 2, executor)) {
+            is.read();
+            assertTrue(fetched.get() <= 3);
+        }
+    }
+
+    @Test
+    public void shouldSkipWithoutFetchingSkippedRanges() throws IOException {
+        var data = new byte[1000];
+        new Random(42).nextBytes(data);
+        var fetched = new AtomicInteger();
+
+        try (var is = new ParallelRangeInputStream((offset, length) -> {
+            fetched.incrementAndGet();
+            assertEquals(0, offset % 100);
+            return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+        }, data.length, 100, 2, executor)) {
+            assertEquals(750, is.skip(750));
+            assertEquals(data[750], (byte) is.read());
+            assertEquals(100, is.skip(100));
+            assertArrayEquals(Arrays.copyOfRange(data, 851, 1000), is.readAllBytes());
+            assertEquals(0, is.skip(10));
+        }
+        // two ranges fetched ahead on open, skipped ones are not fetched
+        assertTrue(fetched.get() <= 6);
+    }
+
+    @Test
+    public void shouldPropagateFetchError() {
+        var is = new ParallelRangeInputStream((offset, length) -> {
+            throw new IOException("fail");
+        }, 1000, 100, 2, executor);
+
+        var e = assertThrows(IOException.class, is::read);
+        assertEquals("fail", e.getMessage());
+    }
+}
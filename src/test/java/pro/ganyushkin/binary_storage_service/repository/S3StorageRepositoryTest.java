@@ -0,0 +1,149 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against MinIO container, it is skipped if docker is not available
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@ActiveProfiles("S3-STORAGE")
+@SpringBootTest
+class S3StorageRepositoryTest {
+    private static final String ACCESS_KEY = "minioadmin";
+    private static final String SECRET_KEY = "minioadmin";
+    private static final String BUCKET = "binary-storage-test";
+
+    @Container
+    private static final GenericContainer<?> minio = new GenericContainer<>("minio/minio:RELEASE.2022-08-11T04-37-28Z")
+            .withCommand("server", "/data")
+            .withEnv("MINIO_ROOT_USER", ACCESS_KEY)
+            .withEnv("MINIO_ROOT_PASSWORD", SECRET_KEY)
+            .withExposedPorts(9000)
+            .waitingFor(Wait.forHttp("/minio/health/live").forPort(9000));
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("storage.s3.endpoint", S3StorageRepositoryTest::endpoint);
+        registry.add("storage.s3.bucket", () -> BUCKET);
+        registry.add("storage.s3.access-key", () -> ACCESS_KEY);
+        registry.add("storage.s3.secret-key", () -> SECRET_KEY);
+        registry.add("storage.s3.part-size", () -> "5MB");
+        registry.add("storage.s3.cache.directory", () -> "./build/test/s3-cache");
+    }
+
+    @BeforeAll
+    static void createBucket() {
+        try (var client = S3Client.builder()
+                .endpointOverride(URI.create(endpoint()))
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(ACCESS_KEY, SECRET_KEY)))
+                .serviceConfiguration(configuration -> configuration.pathStyleAccessEnabled(true))
+                .build()) {
+            client.createBucket(request -> request.bucket(BUCKET));
+        }
+    }
+
+    @Autowired
+    private S3StorageRepository repository;
+
+    @Test
+    public void shouldCreateAndListBuckets() throws InternalStorageException, ResourceAlreadyExists {
+        assertFalse(repository.exists("bucket-1"));
+        repository.createBucket("bucket-1");
+
+        assertTrue(repository.exists("bucket-1"));
+        assertTrue(repository.listBuckets().contains("bucket-1"));
+        assertThrows(ResourceAlreadyExists.class, () -> repository.createBucket("bucket-1"));
+    }
+
+    @Test
+    public void shouldStoreAndReadSmallAsset() throws Exception {
+        final var bucketId = "bucket-2";
+        final var content = "example text\n in file\n".getBytes();
+        repository.createBucket(bucketId);
+
+        repository.store(bucketId, "file.txt", new ByteArrayInputStream(content));
+
+        assertEquals(List.of("file.txt"), repository.listAssets(bucketId));
+        assertEquals(content.length, repository.stat(bucketId, "file.txt").getSize());
+        assertArrayEquals(content, read(bucketId, "file.txt"));
+        // second read is served by local cache
+        assertArrayEquals(content, read(bucketId, "file.txt"));
+        assertThrows(ResourceAlreadyExists.class,
+                () -> repository.store(bucketId, "file.txt", new ByteArrayInputStream(content)));
+    }
+
+    @Test
+    public void shouldStoreAndReadMultipartAsset() throws Exception {
+        final var bucketId = "bucket-3";
+        final var content = new byte[12 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        repository.createBucket(bucketId);
+
+        repository.store(bucketId, "big.bin", new ByteArrayInputStream(content));
+
+        assertEquals(content.length, repository.stat(bucketId, "big.bin").getSize());
+        assertArrayEquals(content, read(bucketId, "big.bin"));
+    }
+
+    @Test
+    public void shouldOverwriteCachedAsset() throws Exception {
+        final var bucketId = "bucket-4";
+        repository.createBucket(bucketId);
+        repository.store(bucketId, "file.txt", new ByteArrayInputStream("first".getBytes()));
+        assertArrayEquals("first".getBytes(), read(bucketId, "file.txt"));
+
+        repository.overwrite(bucketId, "file.txt", new ByteArrayInputStream("second".getBytes()));
+
+        assertArrayEquals("second".getBytes(), read(bucketId, "file.txt"));
+    }
+
+    @Test
+    public void shouldDeleteAsset() throws Exception {
+        final var bucketId = "bucket-5";
+        repository.createBucket(bucketId);
+        repository.store(bucketId, "file.txt", new ByteArrayInputStream("data".getBytes()));
+
+        repository.delete(bucketId, "file.txt");
+
+        assertFalse(repository.exists(bucketId, "file.txt"));
+        assertThrows(UndefinedResourceException.class, () -> repository.read(bucketId, "file.txt"));
+    }
+
+    private byte[] read(String bucketId, String assetId)
+            throws IOException, InternalStorageException, UndefinedResourceException {
+        try (var is = repository.read(bucketId, assetId)) {
+            return is.readAllBytes();
+        }
+    }
+
+    private static String endpoint() {
+        return "http://" + minio.getHost() + ":" + minio.getMappedPort(9000);
+    }
+}
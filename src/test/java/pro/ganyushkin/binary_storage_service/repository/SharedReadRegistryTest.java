@@ -0,0 +1,119 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pro.ganyushkin.binary_storage_service.util.DirectBufferPool;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedReadRegistryTest {
+    private static final int CHUNK_SIZE = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldShareReadBetweenConcurrentReaders() throws IOException {
+        final var data = randomData(10 * CHUNK_SIZE + 7);
+        final var file = Files.write(tempDir.resolve("asset.bin"), data);
+        final var registry = createRegistry(1 << 20);
+        final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+        var first = registry.open(file, attributes);
+        var second = registry.open(file, attributes);
+        assertEquals(1, registry.inFlightCount());
+
+        assertArrayEquals(data, first.readAllBytes());
+        // file is removed, second reader gets data from shared chunks
+        Files.delete(file);
+        assertArrayEquals(data, second.readAllBytes());
+
+        first.close();
+        assertEquals(1, registry.inFlightCount());
+        second.close();
+        assertEquals(0, registry.inFlightCount());
+    }
+
+    @Test
+    public void shouldReadNewVersionSeparately() throws IOException {
+        final var file = Files.write(tempDir.resolve("asset.bin"), randomData(CHUNK_SIZE));
+        final var registry = createRegistry(1 << 20);
+
+        var first = registry.open(file, Files.readAttributes(file, BasicFileAttributes.class));
+        final var updated = randomData(2 * CHUNK_SIZE);
+        Files.write(file, updated);
+        var second = registry.open(file, Files.readAttributes(file, BasicFileAttributes.class));
+
+        assertEquals(2, registry.inFlightCount());
+        assertArrayEquals(updated, second.readAllBytes());
+        first.close();
+        second.close();
+        assertEquals(0, registry.inFlightCount());
+    }
+
+    @Test
+    public void shouldServeManyConcurrentReaders() throws Exception {
+        final var data = randomData(64 * CHUNK_SIZE);
+        final var file = Files.write(tempDir.resolve("asset.bin"), data);
+        final var registry = createRegistry(1 << 20);
+        final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final var executor = Executors.newFixedThreadPool(8);
+        try {
+            var tasks = new ArrayList<Callable<byte[]>>();
+            for (int i = 0; i < 32; i++) {
+                tasks.add(() -> {
+                    try (var stream = registry.open(file, attributes)) {
+                        return stream.readAllBytes();
+                    }
+                });
+            }
+            for (var result : executor.invokeAll(tasks)) {
+                assertArrayEquals(data, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, registry.inFlightCount());
+    }
+
+    @Test
+    public void shouldReadPrivatelyWhenMemoryBudgetIsExhausted() throws IOException {
+        final var data = randomData(3 * CHUNK_SIZE);
+        final var first = Files.write(tempDir.resolve("first.bin"), data);
+        final var second = Files.write(tempDir.resolve("second.bin"), data);
+        final var registry = createRegistry(4 * CHUNK_SIZE);
+
+        var shared = registry.open(first, Files.readAttributes(first, BasicFileAttributes.class));
+        var joined = registry.open(first, Files.readAttributes(first, BasicFileAttributes.class));
+        var fallback = registry.open(second, Files.readAttributes(second, BasicFileAttributes.class));
+
+        assertInstanceOf(PooledFileInputStream.class, fallback);
+        assertEquals(1, registry.inFlightCount());
+        assertEquals(3 * CHUNK_SIZE, registry.reservedSize());
+        assertArrayEquals(data, fallback.readAllBytes());
+        assertArrayEquals(data, joined.readAllBytes());
+        fallback.close();
+        joined.close();
+        shared.close();
+        assertEquals(0, registry.reservedSize());
+    }
+
+    private static SharedReadRegistry createRegistry(long maxMemory) {
+        return new SharedReadRegistry(CHUNK_SIZE, maxMemory, new DirectBufferPool(CHUNK_SIZE, 4));
+    }
+
+    private static byte[] randomData(int size) {
+        var data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,165 @@
+package pro.ganyushkin.binary_storage_service.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBackBufferTest {
+    final String bucketId = "bucket-1";
+
+    @TempDir
+    Path rootDir;
+
+    @Test
+    public void shouldServeBufferedAssetsAndFlushThemInBatch() throws IOException {
+        var flushedPaths = new ArrayList<Path>();
+        var buffer = open(flushedPaths);
+        var first = randomData(100);
+        var second = randomData(0);
+
+        assertTrue(buffer.add(bucketId, "asset-1", first));
+        assertTrue(buffer.add(bucketId, "asset-2", second));
+        assertThrows(FileAlreadyExistsException.class, () -> buffer.add(bucketId, "asset-1", first));
+
+        assertArrayEquals(first, buffer.find(assetPath("asset-1")).getData());
+        assertEquals(List.of("asset-1", "asset-2"), buffer.list(bucketId).stream().sorted().toList());
+        assertFalse(Files.exists(assetPath("asset-1")));
+        assertEquals(100, buffer.bufferedSize());
+
+        buffer.flush();
+
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.bufferedSize());
+        assertArrayEquals(first, Files.readAllBytes(assetPath("asset-1")));
+        assertArrayEquals(second, Files.readAllBytes(assetPath("asset-2")));
+        assertEquals(2, flushedPaths.size());
+        buffer.close();
+    }
+
+    @Test
+    public void shouldReplayJournalAfterCrash() throws IOException {
+        var buffer = open(new ArrayList<>());
+        var data = randomData(200);
+        buffer.add(bucketId, "asset-1", data);
+        buffer.add(bucketId, "asset-2", randomData(10));
+        buffer.add(bucketId, "asset-3", randomData(10));
+        buffer.discard(assetPath("asset-2"));
+        buffer.flush(assetPath("asset-3"));
+        var lastModified = buffer.find(assetPath("asset-1")).getLastModified();
+        // torn record of unacknowledged write
+        try (var segments = Files.list(rootDir.resolve(".journal"))) {
+            var segment = segments.toList().get(0);
+            Files.write(segment, new byte[] { 0, 0, 1, 0, 1, 2, 3 }, StandardOpenOption.APPEND);
+        }
+
+        var recovered = open(new ArrayList<>());
+
+        assertEquals(1, recovered.size());
+        assertArrayEquals(data, recovered.find(assetPath("asset-1")).getData());
+        assertEquals(lastModified, recovered.find(assetPath("asset-1")).getLastModified());
+        assertNull(recovered.find(assetPath("asset-2")));
+        assertNull(recovered.find(assetPath("asset-3")));
+        assertTrue(Files.exists(assetPath("asset-3")));
+
+        recovered.close();
+        assertArrayEquals(data, Files.readAllBytes(assetPath("asset-1")));
+        assertEquals(lastModified, Files.getLastModifiedTime(assetPath("asset-1")).toInstant());
+        try (var segments = Files.list(rootDir.resolve(".journal"))) {
+            assertEquals(1, segments.count());
+        }
+    }
+
+    @Test
+    public void shouldNotReplayDiscardedAssets() throws IOException {
+        var buffer = open(new ArrayList<>());
+        buffer.add(bucketId, "asset-1", randomData(10));
+        buffer.discard(assetPath("asset-1"));
+        buffer.add(bucketId, "asset-1", randomData(20));
+        buffer.add(bucketId, "asset-2", randomData(10));
+        buffer.flush();
+        // removed after flush, segments of flushed assets are not replayed
+        Files.delete(assetPath("asset-2"));
+
+        var recovered = open(new ArrayList<>());
+
+        assertEquals(0, recovered.size());
+        assertEquals(20, Files.size(assetPath("asset-1")));
+        assertFalse(Files.exists(assetPath("asset-2")));
+        recovered.close();
+    }
+
+    @Test
+    public void shouldRejectAssetsOverMemoryLimit() throws IOException {
+        var buffer = open(new ArrayList<>());
+
+        assertTrue(buffer.add(bucketId, "asset-1", randomData(400)));
+        assertFalse(buffer.add(bucketId, "asset-2", randomData(700)));
+        assertNull(buffer.find(assetPath("asset-2")));
+        buffer.close();
+    }
+
+    @Test
+    public void shouldNotReplaceFileOfDirectUpload() throws IOException {
+        var flushedPaths = new ArrayList<Path>();
+        var buffer = open(flushedPaths);
+        buffer.add(bucketId, "asset-1", randomData(10));
+        var direct = randomData(20);
+        Files.write(assetPath("asset-1"), direct);
+
+        buffer.flush();
+
+        assertArrayEquals(direct, Files.readAllBytes(assetPath("asset-1")));
+        assertNull(buffer.find(assetPath("asset-1")));
+        assertEquals(0, buffer.bufferedSize());
+        assertEquals(List.of(), flushedPaths);
+        assertThrows(FileAlreadyExistsException.class, () -> buffer.add(bucketId, "asset-1", randomData(10)));
+        buffer.close();
+    }
+
+    @Test
+    public void shouldKeepMetadataInJournal() throws IOException {
+        var buffer = open(new ArrayList<>());
+        var metadata = "{\"assetId\":\"asset-1\"}".getBytes();
+        var metadataPath = FilesystemAssetMetadataRepository.buildMetadataPath(rootDir, bucketId, "asset-1");
+        buffer.add(bucketId, "asset-1", randomData(10));
+        assertTrue(buffer.setMetadata(assetPath("asset-1"), metadata));
+        assertFalse(buffer.setMetadata(assetPath("asset-2"), metadata));
+
+        var recovered = open(new ArrayList<>());
+
+        assertArrayEquals(metadata, recovered.find(assetPath("asset-1")).getMetadata());
+        assertFalse(Files.exists(metadataPath));
+        recovered.flush();
+        assertArrayEquals(metadata, Files.readAllBytes(metadataPath));
+        recovered.close();
+    }
+
+    private WriteBackBuffer open(List<Path> flushedPaths) throws IOException {
+        Files.createDirectories(rootDir.resolve(bucketId));
+        var buffer = new WriteBackBuffer(rootDir, rootDir.resolve(".journal"), rootDir.resolve(".tmp"),
+                1000, true, flushedPaths::add);
+        buffer.open(Duration.ofHours(1));
+        return buffer;
+    }
+
+    private Path assetPath(String assetId) {
+        return rootDir.resolve(bucketId).resolve(assetId);
+    }
+
+    private static byte[] randomData(int size) {
+        var data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,80 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.model.AccessLogEntry;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldWriteEntriesAsJsonLines() throws Exception {
+        final var file = tempDir.resolve("access.log");
+        final var accessLogService = buildService(file, 1.0, 16);
+
+        accessLogService.record(new AccessLogEntry(0, "GET", "/api/v1/storage/bucket/b/asset/\"a\"", 200,
+                0, 11, 1500, "client-1"));
+        accessLogService.record(new AccessLogEntry(0, "PUT", "/s3/b/a", 500, 5, 0, 700, null));
+        ReflectionTestUtils.invokeMethod(accessLogService, "destroy");
+
+        var lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertEquals("{\"time\":\"1970-01-01T00:00:00Z\",\"method\":\"GET\"," +
+                "\"path\":\"/api/v1/storage/bucket/b/asset/\\\"a\\\"\",\"status\":200,\"bytesIn\":0," +
+                "\"bytesOut\":11,\"durationMicros\":1500,\"clientId\":\"client-1\"}", lines.get(0));
+        assertTrue(lines.get(1).contains("\"status\":500"));
+        assertTrue(lines.get(1).contains("\"clientId\":null"));
+    }
+
+    @Test
+    public void shouldSampleOnlySuccessfulRequests() throws Exception {
+        final var file = tempDir.resolve("access.log");
+        final var accessLogService = buildService(file, 0.0, 16);
+
+        accessLogService.record(new AccessLogEntry(0, "GET", "/ok", 200, 0, 0, 1, "c"));
+        accessLogService.record(new AccessLogEntry(0, "GET", "/missing", 404, 0, 0, 1, "c"));
+        ReflectionTestUtils.invokeMethod(accessLogService, "destroy");
+
+        var lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("/missing"));
+    }
+
+    @Test
+    public void shouldDropEntriesWhenBufferIsFull() throws Exception {
+        final var file = tempDir.resolve("access.log");
+        final var accessLogService = buildService(file, 1.0, 4);
+
+        for (var i = 0; i < 6; i++) {
+            accessLogService.record(new AccessLogEntry(0, "GET", "/" + i, 200, 0, 0, 1, "c"));
+        }
+        assertEquals(2, accessLogService.getDroppedCount());
+        ReflectionTestUtils.invokeMethod(accessLogService, "destroy");
+
+        assertEquals(4, Files.readAllLines(file).size());
+        // count is cumulative, it is not reset by flush
+        assertEquals(2, accessLogService.getDroppedCount());
+    }
+
+    private static AccessLogService buildService(Path file, double sampleRate, int bufferSize) {
+        var accessLogService = new AccessLogService();
+        ReflectionTestUtils.setField(accessLogService, "enabled", true);
+        ReflectionTestUtils.setField(accessLogService, "bufferSize", bufferSize);
+        ReflectionTestUtils.setField(accessLogService, "batchSize", 2);
+        // writer thread doesn't run during test, entries are written on destroy
+        ReflectionTestUtils.setField(accessLogService, "flushInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(accessLogService, "sampleRate", sampleRate);
+        ReflectionTestUtils.setField(accessLogService, "file", file.toString());
+        ReflectionTestUtils.invokeMethod(accessLogService, "init");
+        return accessLogService;
+    }
+}
@@ -0,0 +1,117 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import pro.ganyushkin.binary_storage_service.model.ArchiveFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"storage.archive.max-buffered-asset-size=1KB", "storage.archive.snapshot-window=2"})
+class ArchiveServiceTest {
+    final String SMALL = "small content";
+    final String LARGE = "large content\n".repeat(1000);
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Value("${storage.fs.root-directory}")
+    private String rootDir;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        storageService.createBucket("bucket-1", true);
+        storageService.storeAsset("bucket-1", "img-a.txt", new ByteArrayInputStream(SMALL.getBytes()), false, false);
+        storageService.storeAsset("bucket-1", "img-b.txt", new ByteArrayInputStream(LARGE.getBytes()), false, false);
+        storageService.storeAsset("bucket-1", "doc-c.txt", new ByteArrayInputStream(SMALL.getBytes()), false, false);
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        final var rootStorage = new File(rootDir);
+        FileUtils.deleteDirectory(rootStorage);
+        rootStorage.mkdir();
+    }
+
+    @Test
+    public void shouldExportAndImportTar() throws Exception {
+        var archive = new ByteArrayOutputStream();
+        archiveService.exportBucket("bucket-1", "", ArchiveFormat.TAR, archive);
+
+        var result = archiveService.importBucket("bucket-2", "", ArchiveFormat.TAR,
+                new ByteArrayInputStream(archive.toByteArray()), false);
+
+        assertEquals(3, result.imported());
+        assertEquals(SMALL.length() * 2L + LARGE.length(), result.bytes());
+        assertEquals(List.of("doc-c.txt", "img-a.txt", "img-b.txt"),
+                storageService.getBucketList("bucket-2").stream().sorted().toList());
+        assertContent("bucket-2", "img-b.txt", LARGE);
+        assertEquals(List.of(), storageService.getBucketList(ArchiveService.SNAPSHOT_BUCKET));
+
+        var again = archiveService.importBucket("bucket-2", "", ArchiveFormat.TAR,
+                new ByteArrayInputStream(archive.toByteArray()), false);
+        assertEquals(0, again.imported());
+        assertEquals(3, again.skipped());
+    }
+
+    @Test
+    public void shouldExportAndImportZipPrefix() throws Exception {
+        var archive = new ByteArrayOutputStream();
+        archiveService.exportBucket("bucket-1", "img-", ArchiveFormat.ZIP, archive);
+
+        var result = archiveService.importBucket("bucket-2", "copy-", ArchiveFormat.ZIP,
+                new ByteArrayInputStream(archive.toByteArray()), false);
+
+        assertEquals(2, result.imported());
+        assertEquals(List.of("copy-img-a.txt", "copy-img-b.txt"),
+                storageService.getBucketList("bucket-2").stream().sorted().toList());
+        assertContent("bucket-2", "copy-img-a.txt", SMALL);
+        assertContent("bucket-2", "copy-img-b.txt", LARGE);
+    }
+
+    @Test
+    public void shouldSkipEntriesOutOfBucket() throws Exception {
+        var archive = new ByteArrayOutputStream();
+        try (var tar = new TarArchiveOutputStream(archive)) {
+            for (var name : List.of("../bucket-1/evil.txt", "/abs.txt", "dir/file.txt", "ok.txt")) {
+                var entry = new TarArchiveEntry(name, true);
+                entry.setSize(SMALL.length());
+                tar.putArchiveEntry(entry);
+                tar.write(SMALL.getBytes());
+                tar.closeArchiveEntry();
+            }
+        }
+
+        var result = archiveService.importBucket("bucket-2", "", ArchiveFormat.TAR,
+                new ByteArrayInputStream(archive.toByteArray()), false);
+
+        assertEquals(2, result.imported());
+        assertEquals(2, result.skipped());
+        assertEquals(List.of("dir/file.txt", "ok.txt"),
+                storageService.getBucketList("bucket-2").stream().sorted().toList());
+        assertContent("bucket-2", "dir/file.txt", SMALL);
+        assertEquals(List.of("doc-c.txt", "img-a.txt", "img-b.txt"),
+                storageService.getBucketList("bucket-1").stream().sorted().toList());
+    }
+
+    private void assertContent(String bucketId, String assetId, String expected) throws Exception {
+        try (var in = storageService.getAsset(bucketId, assetId).getInputStream()) {
+            assertEquals(expected, new String(in.readAllBytes()));
+        }
+    }
+}
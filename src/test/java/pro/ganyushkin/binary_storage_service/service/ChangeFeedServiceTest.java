@@ -0,0 +1,116 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.model.ChangeEvent;
+import pro.ganyushkin.binary_storage_service.repository.ChangeLogRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedServiceTest {
+
+    @TempDir
+    Path logDir;
+
+    private ChangeLogRepository changeLogRepository;
+    private ChangeFeedService changeFeedService;
+
+    @BeforeEach
+    public void setup() {
+        changeLogRepository = new ChangeLogRepository();
+        ReflectionTestUtils.setField(changeLogRepository, "enabled", true);
+        ReflectionTestUtils.setField(changeLogRepository, "directory", logDir.toString());
+        ReflectionTestUtils.setField(changeLogRepository, "segmentSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(changeLogRepository, "retention", Duration.ofDays(1));
+        ReflectionTestUtils.invokeMethod(changeLogRepository, "init");
+        changeFeedService = new ChangeFeedService(changeLogRepository);
+        ReflectionTestUtils.setField(changeFeedService, "maxEvents", 100);
+        ReflectionTestUtils.setField(changeFeedService, "maxScanBytes", DataSize.ofMegabytes(4));
+        ReflectionTestUtils.invokeMethod(changeFeedService, "init");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(changeFeedService, "destroy");
+        ReflectionTestUtils.invokeMethod(changeLogRepository, "destroy");
+    }
+
+    @Test
+    public void shouldFilterEventsByBucket() throws Exception {
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-1", "a", 1);
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-2", "b", 2);
+        changeFeedService.record(ChangeEvent.Type.DELETE, "bucket-1", "a", 1);
+
+        var filtered = changeFeedService.read(null, 10, "bucket-2");
+        assertEquals(1, filtered.events().size());
+        assertEquals("b", filtered.events().get(0).assetId());
+        assertEquals(changeFeedService.getEndOffset(), filtered.nextOffset());
+
+        var first = changeFeedService.read(null, 1, null);
+        assertEquals(1, first.events().size());
+        assertEquals(ChangeEvent.Type.CREATE, first.events().get(0).type());
+        var next = changeFeedService.read(first.nextOffset(), 10, null);
+        assertEquals(2, next.events().size());
+        assertEquals(ChangeEvent.Type.DELETE, next.events().get(1).type());
+        assertEquals(changeFeedService.getEndOffset(), next.nextOffset());
+    }
+
+    @Test
+    public void shouldCompletePollOnAppend() throws Exception {
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-1", "a", 1);
+        var offset = changeFeedService.getEndOffset();
+
+        var future = changeFeedService.poll(offset, 10, "bucket-1", Duration.ofSeconds(30));
+        assertFalse(future.isDone());
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-2", "b", 1);
+        changeFeedService.record(ChangeEvent.Type.OVERWRITE, "bucket-1", "a", 2);
+
+        var batch = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, batch.events().size());
+        assertEquals(ChangeEvent.Type.OVERWRITE, batch.events().get(0).type());
+        assertEquals(changeFeedService.getEndOffset(), batch.nextOffset());
+    }
+
+    @Test
+    public void shouldLimitScanOfFilteredRead() throws Exception {
+        ReflectionTestUtils.setField(changeFeedService, "maxScanBytes", DataSize.ofBytes(1));
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-2", "a", 1);
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-2", "b", 1);
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-1", "c", 1);
+
+        var first = changeFeedService.read(null, 1, "bucket-1");
+        assertTrue(first.events().isEmpty());
+        assertTrue(first.nextOffset() > changeFeedService.getStartOffset());
+        var second = changeFeedService.read(first.nextOffset(), 1, "bucket-1");
+        assertTrue(second.events().isEmpty());
+        var third = changeFeedService.read(second.nextOffset(), 1, "bucket-1");
+        assertEquals("c", third.events().get(0).assetId());
+    }
+
+    @Test
+    public void shouldCompletePollWithScannedOffsetOnTimeout() throws Exception {
+        var offset = changeFeedService.getEndOffset();
+
+        var future = changeFeedService.poll(offset, 10, "bucket-1", Duration.ofMillis(500));
+        changeFeedService.record(ChangeEvent.Type.CREATE, "bucket-2", "b", 1);
+
+        var batch = future.get(5, TimeUnit.SECONDS);
+        assertTrue(batch.events().isEmpty());
+        assertEquals(changeFeedService.getEndOffset(), batch.nextOffset());
+    }
+
+    @Test
+    public void shouldSkipHiddenBuckets() throws Exception {
+        changeFeedService.record(ChangeEvent.Type.CREATE, ".multipart-1", "1", 1);
+
+        assertEquals(changeFeedService.getStartOffset(), changeFeedService.getEndOffset());
+    }
+}
@@ -21,4 +21,32 @@ class ContentTypeServiceTest {
         assertEquals("application/octet-stream", typeService.findType("file.dmg"));
         assertEquals("application/octet-stream", typeService.findType("file-1"));
     }
+
+    @Test
+    public void shouldFindTypeIgnoringCase() {
+        assertEquals("image/png", typeService.findType("IMAGE.PNG"));
+        assertEquals("application/pdf", typeService.findType("subpath/Document.Pdf"));
+        assertEquals("application/octet-stream", typeService.findType("subpath.png/file"));
+        assertEquals("application/octet-stream", typeService.findType("file."));
+    }
+
+    @Test
+    public void shouldSniffTypeForUnknownExtension() {
+        final var png = new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0};
+        final var pdf = "%PDF-1.7".getBytes();
+        final var text = "bla bla bla".getBytes();
+
+        assertEquals("image/png", typeService.findType("file-1", png, png.length));
+        assertEquals("application/pdf", typeService.findType("file-1", pdf, pdf.length));
+        assertEquals("application/octet-stream", typeService.findType("file-1", text, text.length));
+        assertEquals("application/octet-stream", typeService.findType("file-1", png, 3));
+    }
+
+    @Test
+    public void shouldPreferExtensionOverSniffedType() {
+        final var zip = new byte[] {'P', 'K', 0x03, 0x04, 0, 0};
+
+        assertEquals("application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+                typeService.findType("file.docx", zip, zip.length));
+    }
 }
@@ -0,0 +1,112 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.model.CopyJob;
+import pro.ganyushkin.binary_storage_service.model.CopyRequest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CopyJobServiceTest {
+    private StorageService storageService;
+    private CopyJobService copyJobService;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        storageService = mock(StorageService.class);
+        when(storageService.isBucketExists("bucket-1")).thenReturn(true);
+        when(storageService.getBucketList("bucket-1")).thenReturn(List.of("img/a.png", "img/b.png", "doc/c.txt"));
+        when(storageService.copyAsset(eq("bucket-1"), anyString(), eq("bucket-2"), anyString(),
+                anyBoolean(), anyBoolean()))
+                .thenReturn(AssetMetadata.builder().size(10).build());
+
+        copyJobService = new CopyJobService(storageService);
+        ReflectionTestUtils.setField(copyJobService, "workers", 2);
+        ReflectionTestUtils.setField(copyJobService, "jobRetention", Duration.ofHours(1));
+        ReflectionTestUtils.invokeMethod(copyJobService, "init");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(copyJobService, "destroy");
+    }
+
+    @Test
+    public void shouldCopyPrefixIntoNewBucket() throws Exception {
+        when(storageService.copyAsset("bucket-1", "img/b.png", "bucket-2", "images/b.png", true, false))
+                .thenThrow(new ResourceAlreadyExists("bucket-2", "images/b.png"));
+
+        var job = copyJobService.start(new CopyRequest("bucket-1", "img/", "bucket-2", "images/", true, false));
+        var result = waitForJob(job.jobId());
+
+        assertEquals(CopyJob.State.COMPLETED, result.state());
+        assertEquals(2, result.total());
+        assertEquals(1, result.copied());
+        assertEquals(1, result.skipped());
+        assertEquals(10, result.bytes());
+        verify(storageService).createBucket("bucket-2", true);
+        verify(storageService).copyAsset("bucket-1", "img/a.png", "bucket-2", "images/a.png", true, false);
+        verify(storageService, never()).copyAsset(eq("bucket-1"), eq("doc/c.txt"), any(), any(),
+                anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void shouldCancelJob() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(storageService.copyAsset(eq("bucket-1"), anyString(), eq("bucket-2"), anyString(),
+                anyBoolean(), anyBoolean()))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    release.await();
+                    return AssetMetadata.builder().size(10).build();
+                });
+
+        var job = copyJobService.start(new CopyRequest("bucket-1", null, "bucket-2", null, false, true));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(CopyJob.State.RUNNING, copyJobService.cancel(job.jobId()).orElseThrow().state());
+        release.countDown();
+        var result = waitForJob(job.jobId());
+
+        assertEquals(CopyJob.State.CANCELLED, result.state());
+        assertEquals(3, result.total());
+        assertTrue(result.copied() < 3);
+        assertTrue(copyJobService.cancel("unknown").isEmpty());
+    }
+
+    @Test
+    public void shouldRejectUndefinedSourceBucket() {
+        assertThrows(UndefinedResourceException.class,
+                () -> copyJobService.start(new CopyRequest("bucket-3", null, "bucket-2", null, false, false)));
+    }
+
+    private CopyJob waitForJob(String jobId) throws InterruptedException {
+        for (var i = 0; i < 100; i++) {
+            var job = copyJobService.getJob(jobId).orElseThrow();
+            if (job.finishedAt() != null) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        fail("Copy job wasn't finished");
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.apache.tomcat.util.http.fileupload.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.exception.UnsupportedTransformException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ActiveProfiles("FS-STORAGE")
+@SpringBootTest
+class DerivativeServiceTest {
+    final String bucketId = "photos";
+
+    @Autowired
+    private DerivativeService derivativeService;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${storage.fs.root-directory}")
+    private String rootDir;
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        final var rootStorage = new File(rootDir);
+        FileUtils.deleteDirectory(rootStorage);
+        rootStorage.mkdir();
+    }
+
+    @Test
+    public void shouldResizeImage() throws Exception {
+        final var assetId = "resize-source.png";
+        storeImage(assetId, 40, 20);
+        var source = storageService.getAssetMetadata(bucketId, assetId);
+
+        var transform = derivativeService.buildTransform(10, 0, false, null, source);
+        var derivative = derivativeService.getDerivativeMetadata(bucketId, assetId, source, transform);
+
+        assertEquals("image/png", derivative.getContentType());
+        var image = readDerivative(derivative);
+        assertEquals(10, image.getWidth());
+        assertEquals(5, image.getHeight());
+        assertFalse(storageService.getBuckets().contains(DerivativeService.DERIVATIVES_BUCKET));
+        try (var data = derivativeService.getDerivative(derivative).getInputStream()) {
+            var checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data.readAllBytes()));
+            assertEquals(checksum, derivative.getChecksum());
+        }
+    }
+
+    @Test
+    public void shouldNotCacheOverwrittenSourceUnderOldChecksum() throws Exception {
+        final var assetId = "overwritten-source.png";
+        storeImage(assetId, 40, 20);
+        var source = storageService.getAssetMetadata(bucketId, assetId);
+        var staleSource = source.toBuilder().checksum("0123abcd").build();
+        var transform = derivativeService.buildTransform(10, 0, false, null, staleSource);
+
+        var derivative = derivativeService.getDerivativeMetadata(bucketId, assetId, staleSource, transform);
+
+        assertTrue(derivative.getAssetId().startsWith(source.getChecksum() + "-"));
+    }
+
+    @Test
+    public void shouldCropAndConvertImage() throws Exception {
+        final var assetId = "crop-source.png";
+        storeImage(assetId, 40, 20);
+        var source = storageService.getAssetMetadata(bucketId, assetId);
+
+        var transform = derivativeService.buildTransform(8, 8, true, "jpg", source);
+        var derivative = derivativeService.getDerivativeMetadata(bucketId, assetId, source, transform);
+
+        assertEquals("image/jpeg", derivative.getContentType());
+        var image = readDerivative(derivative);
+        assertEquals(8, image.getWidth());
+        assertEquals(8, image.getHeight());
+    }
+
+    @Test
+    public void shouldReuseStoredDerivative() throws Exception {
+        final var assetId = "cached-source.png";
+        storeImage(assetId, 40, 20);
+        var source = storageService.getAssetMetadata(bucketId, assetId);
+        var transform = derivativeService.buildTransform(20, 20, false, "png", source);
+
+        var first = derivativeService.getDerivativeMetadata(bucketId, assetId, source, transform);
+        var second = derivativeService.getDerivativeMetadata(bucketId, assetId, source, transform);
+
+        assertEquals(first.getAssetId(), second.getAssetId());
+        assertEquals(first.getLastModified(), second.getLastModified());
+    }
+
+    @Test
+    public void shouldRejectInvalidTransform() {
+        final var source = AssetMetadata.builder().contentType("image/png").build();
+
+        assertThrows(UnsupportedTransformException.class, () ->
+                derivativeService.buildTransform(0, 0, false, null, source));
+        assertThrows(UnsupportedTransformException.class, () ->
+                derivativeService.buildTransform(10, 0, true, null, source));
+        assertThrows(UnsupportedTransformException.class, () ->
+                derivativeService.buildTransform(10, 10, false, "svg", source));
+        assertThrows(UnsupportedTransformException.class, () ->
+                derivativeService.buildTransform(100000, 10, false, null, source));
+    }
+
+    @Test
+    public void shouldRejectNotImageAsset() throws Exception {
+        final var assetId = "not-image.png";
+        storageService.storeAsset(bucketId, assetId, new ByteArrayInputStream("bla bla bla".getBytes()),
+                true, false);
+        var source = storageService.getAssetMetadata(bucketId, assetId);
+        var transform = derivativeService.buildTransform(10, 10, false, null, source);
+
+        assertThrows(UnsupportedTransformException.class, () ->
+                derivativeService.getDerivativeMetadata(bucketId, assetId, source, transform));
+    }
+
+    @Test
+    public void shouldRejectTooLargeSourceBeforeDecoding() throws Exception {
+        final var assetId = "large-source.png";
+        storeImage(assetId, 40, 20);
+        var source = storageService.getAssetMetadata(bucketId, assetId);
+        var transform = derivativeService.buildTransform(10, 10, false, null, source);
+        var maxSourcePixels = ReflectionTestUtils.getField(derivativeService, "maxSourcePixels");
+        ReflectionTestUtils.setField(derivativeService, "maxSourcePixels", 799L);
+        try {
+            assertThrows(UnsupportedTransformException.class, () ->
+                    derivativeService.getDerivativeMetadata(bucketId, assetId, source, transform));
+        } finally {
+            ReflectionTestUtils.setField(derivativeService, "maxSourcePixels", maxSourcePixels);
+        }
+    }
+
+    private void storeImage(String assetId, int width, int height) throws Exception {
+        var output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", output);
+        storageService.storeAsset(bucketId, assetId, new ByteArrayInputStream(output.toByteArray()), true, false);
+    }
+
+    private BufferedImage readDerivative(AssetMetadata derivative) throws Exception {
+        try (var data = derivativeService.getDerivative(derivative).getInputStream()) {
+            return ImageIO.read(data);
+        }
+    }
+}
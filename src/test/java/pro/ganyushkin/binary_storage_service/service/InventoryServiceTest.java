@@ -0,0 +1,107 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.config.QuotaProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InventoryServiceTest {
+    final String bucketId = "bucket-1";
+
+    @TempDir
+    Path exportDir;
+
+    private BinaryStorageRepository repository;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setup() throws InternalStorageException, UndefinedResourceException {
+        repository = mock(BinaryStorageRepository.class);
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        when(repository.listBuckets()).thenReturn(List.of(bucketId));
+        when(repository.listAssets(bucketId)).thenReturn(List.of("a", "b"));
+        when(repository.stat(bucketId, "a")).thenReturn(AssetMetadata.builder().assetId("a").size(100).build());
+        when(repository.stat(bucketId, "b")).thenReturn(AssetMetadata.builder().assetId("b").size(2 << 20).build());
+    }
+
+    @Test
+    public void shouldMaintainStatisticsByWritePath() {
+        var inventoryService = createService();
+
+        inventoryService.recordWrite("bucket-2", 100, -1);
+        inventoryService.recordWrite("bucket-2", 2000, -1);
+        inventoryService.recordWrite("bucket-2", 70_000, 2000);
+        inventoryService.recordDelete("bucket-2", 100);
+
+        var inventory = inventoryService.getInventory("bucket-2").orElseThrow();
+        assertEquals(1, inventory.objects());
+        assertEquals(70_000, inventory.bytes());
+        assertEquals(0, inventory.sizeHistogram().get("<1KB"));
+        assertEquals(0, inventory.sizeHistogram().get("<64KB"));
+        assertEquals(1, inventory.sizeHistogram().get("<1MB"));
+        assertTrue(inventory.complete());
+        destroy(inventoryService);
+    }
+
+    @Test
+    public void shouldScanBucketsAndLoadCleanExport() throws Exception {
+        var inventoryService = createService();
+        waitForScan(inventoryService);
+
+        var inventory = inventoryService.getInventory(bucketId).orElseThrow();
+        assertEquals(2, inventory.objects());
+        assertEquals(100 + (2 << 20), inventory.bytes());
+        assertEquals(1, inventory.sizeHistogram().get("<1KB"));
+        assertEquals(1, inventory.sizeHistogram().get("<16MB"));
+        destroy(inventoryService);
+
+        repository = mock(BinaryStorageRepository.class);
+        when(repository.listBuckets()).thenReturn(List.of(bucketId));
+        var reloaded = createService();
+
+        assertEquals(inventory, reloaded.getInventory(bucketId).orElseThrow());
+        verify(repository, never()).listAssets(bucketId);
+        destroy(reloaded);
+    }
+
+    private InventoryService createService() {
+        var inventoryService = new InventoryService(repository, objectMapper, new QuotaProperties());
+        ReflectionTestUtils.setField(inventoryService, "enabled", true);
+        ReflectionTestUtils.setField(inventoryService, "exportFile", exportDir.resolve("inventory.json").toString());
+        ReflectionTestUtils.setField(inventoryService, "exportInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(inventoryService, "scanRate", 1000.0);
+        ReflectionTestUtils.invokeMethod(inventoryService, "init");
+        return inventoryService;
+    }
+
+    private static void destroy(InventoryService inventoryService) {
+        ReflectionTestUtils.invokeMethod(inventoryService, "destroy");
+    }
+
+    private void waitForScan(InventoryService inventoryService) throws InterruptedException {
+        for (var i = 0; i < 100; i++) {
+            var inventory = inventoryService.getInventory(bucketId);
+            if (inventory.isPresent() && inventory.get().complete()) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Inventory scan wasn't completed");
+    }
+}
@@ -0,0 +1,131 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.config.LifecycleProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LifecycleServiceTest {
+    final String bucketId = "bucket-1";
+    final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @TempDir
+    Path indexDir;
+
+    private BinaryStorageRepository repository;
+    private StorageService storageService;
+    private LifecycleIndexRepository indexRepository;
+    private LifecycleService lifecycleService;
+
+    @BeforeEach
+    public void setup() throws UndefinedResourceException {
+        repository = mock(BinaryStorageRepository.class);
+        storageService = mock(StorageService.class);
+        when(repository.exists(bucketId)).thenReturn(true);
+        when(repository.listAssets(bucketId)).thenReturn(List.of());
+
+        var rule = new LifecycleProperties.Rule();
+        rule.setExpireAfter(Duration.ofDays(1));
+        var properties = new LifecycleProperties();
+        properties.setEnabled(true);
+        properties.setSweepInterval(Duration.ofHours(1));
+        properties.setRules(Map.of(bucketId, rule));
+
+        indexRepository = new LifecycleIndexRepository(properties);
+        ReflectionTestUtils.setField(indexRepository, "indexDir", indexDir.toString());
+        ReflectionTestUtils.invokeMethod(indexRepository, "init");
+        lifecycleService = new LifecycleService(storageService, repository, indexRepository, properties);
+        ReflectionTestUtils.invokeMethod(lifecycleService, "init");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(lifecycleService, "destroy");
+    }
+
+    @Test
+    public void shouldExpireOnlyOldAssets() throws Exception {
+        index("old", now.minus(3, ChronoUnit.DAYS));
+        index("new", now.minus(1, ChronoUnit.HOURS));
+
+        lifecycleService.sweep();
+        lifecycleService.sweep();
+
+        verify(storageService, times(1)).deleteAsset(bucketId, "old");
+        verify(storageService, never()).deleteAsset(bucketId, "new");
+        // segment of expired asset is not required anymore
+        assertEquals(1, indexRepository.listSegments(bucketId).size());
+    }
+
+    @Test
+    public void shouldExpireOldAssetCopiedAfterSweep() throws Exception {
+        index("old", now.minus(3, ChronoUnit.DAYS));
+        lifecycleService.sweep();
+
+        // copy keeps modification time of source
+        index("copy", now.minus(5, ChronoUnit.DAYS));
+        lifecycleService.sweep();
+
+        verify(storageService, times(1)).deleteAsset(bucketId, "old");
+        verify(storageService, times(1)).deleteAsset(bucketId, "copy");
+    }
+
+    @Test
+    public void shouldSkipOverwrittenAsset() throws Exception {
+        indexRepository.append(bucketId, "asset", now.minus(3, ChronoUnit.DAYS));
+        when(repository.stat(bucketId, "asset")).thenReturn(AssetMetadata.builder()
+                .assetId("asset")
+                .lastModified(now.minus(1, ChronoUnit.HOURS))
+                .build());
+
+        lifecycleService.sweep();
+
+        verify(storageService, never()).deleteAsset(any(), any());
+    }
+
+    @Test
+    public void shouldBackfillExistingAssets() throws Exception {
+        when(repository.listAssets(bucketId)).thenReturn(List.of("existing"));
+        when(repository.stat(bucketId, "existing")).thenReturn(AssetMetadata.builder()
+                .assetId("existing")
+                .lastModified(now.minus(10, ChronoUnit.DAYS))
+                .build());
+
+        lifecycleService.sweep();
+        lifecycleService.sweep();
+
+        assertTrue(indexRepository.isBackfilled(bucketId));
+        verify(repository, times(1)).listAssets(bucketId);
+        verify(storageService, times(1)).deleteAsset(bucketId, "existing");
+    }
+
+    private void index(String assetId, Instant time) throws InternalStorageException, UndefinedResourceException {
+        indexRepository.append(bucketId, assetId, time);
+        when(repository.stat(bucketId, assetId)).thenReturn(AssetMetadata.builder()
+                .assetId(assetId)
+                .lastModified(time)
+                .build());
+    }
+}
@@ -0,0 +1,124 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.config.QuotaProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QuotaServiceTest {
+    final String bucketId = "bucket-1";
+
+    @TempDir
+    Path exportDir;
+
+    private BinaryStorageRepository repository;
+    private QuotaProperties properties;
+    private InventoryService inventoryService;
+    private QuotaService quotaService;
+
+    @BeforeEach
+    public void setup() throws UndefinedResourceException, InternalStorageException {
+        repository = mock(BinaryStorageRepository.class);
+        when(repository.listBuckets()).thenReturn(List.of(bucketId));
+        when(repository.listAssets(bucketId)).thenReturn(List.of("asset1", "asset2"));
+        when(repository.stat(bucketId, "asset1")).thenReturn(AssetMetadata.builder().size(10).build());
+        when(repository.stat(bucketId, "asset2")).thenReturn(AssetMetadata.builder().size(20).build());
+
+        properties = new QuotaProperties();
+        properties.setEnabled(true);
+        inventoryService = new InventoryService(repository, new ObjectMapper().findAndRegisterModules(), properties);
+        ReflectionTestUtils.setField(inventoryService, "exportFile", exportDir.resolve("inventory.json").toString());
+        ReflectionTestUtils.setField(inventoryService, "exportInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(inventoryService, "scanRate", 1000.0);
+        quotaService = new QuotaService(inventoryService, properties);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(inventoryService, "destroy");
+    }
+
+    @Test
+    public void shouldTrackUsageByInventoryWithOneScan() throws UndefinedResourceException, InterruptedException {
+        ReflectionTestUtils.invokeMethod(inventoryService, "init");
+        awaitUsage();
+        inventoryService.recordWrite(bucketId, 5, -1);
+        inventoryService.recordWrite(bucketId, 15, 10);
+        inventoryService.recordDelete(bucketId, 20);
+
+        var usage = inventoryService.getUsage(bucketId).orElseThrow();
+        assertEquals(20, usage.bytes());
+        assertEquals(2, usage.objects());
+        assertFalse(inventoryService.isEnabled());
+        assertTrue(inventoryService.isTracking());
+        verify(repository, times(1)).listAssets(bucketId);
+    }
+
+    @Test
+    public void shouldThrowQuotaExceededForBytes() throws QuotaExceededException, InterruptedException {
+        properties.getDefaults().setMaxBytes(DataSize.ofBytes(40));
+        ReflectionTestUtils.invokeMethod(inventoryService, "init");
+        awaitUsage();
+
+        quotaService.checkQuota(bucketId, 10, -1);
+        quotaService.checkQuota(bucketId, 20, 10);
+        assertThrows(QuotaExceededException.class, () -> quotaService.checkQuota(bucketId, 11, -1));
+        assertThrows(QuotaExceededException.class, () -> quotaService.checkQuota(bucketId, 25, 10));
+        inventoryService.recordWrite(bucketId, 10, -1);
+        assertThrows(QuotaExceededException.class, () -> quotaService.checkQuota(bucketId, -1, -1));
+    }
+
+    @Test
+    public void shouldThrowQuotaExceededForObjects() throws QuotaExceededException, InterruptedException {
+        var limits = new QuotaProperties.Limits();
+        limits.setMaxObjects(3L);
+        properties.getBuckets().put(bucketId, limits);
+        ReflectionTestUtils.invokeMethod(inventoryService, "init");
+        awaitUsage();
+
+        quotaService.checkQuota(bucketId, 1, -1);
+        inventoryService.recordWrite(bucketId, 1, -1);
+        assertThrows(QuotaExceededException.class, () -> quotaService.checkQuota(bucketId, 1, -1));
+        quotaService.checkQuota(bucketId, 1, 10);
+    }
+
+    @Test
+    public void shouldSkipChecksIfDisabled() throws QuotaExceededException, UndefinedResourceException {
+        properties.setEnabled(false);
+        properties.getDefaults().setMaxBytes(DataSize.ofBytes(1));
+        ReflectionTestUtils.invokeMethod(inventoryService, "init");
+
+        quotaService.checkQuota(bucketId, 10, -1);
+        inventoryService.recordWrite(bucketId, 1, -1);
+
+        assertFalse(inventoryService.isTracking());
+        verify(repository, never()).listAssets(bucketId);
+    }
+
+    private void awaitUsage() throws InterruptedException {
+        for (var i = 0; i < 100 && inventoryService.getUsage(bucketId).isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(inventoryService.getUsage(bucketId).isPresent());
+    }
+}
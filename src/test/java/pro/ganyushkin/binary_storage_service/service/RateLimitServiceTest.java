@@ -0,0 +1,59 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import pro.ganyushkin.binary_storage_service.exception.RateLimitExceededException;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitServiceTest {
+    private final RateLimitService rateLimitService = buildService();
+
+    @AfterEach
+    public void destroy() {
+        ReflectionTestUtils.invokeMethod(rateLimitService, "destroy");
+    }
+
+    @Test
+    public void shouldNotSpendRequestRejectedByBytes() throws RateLimitExceededException {
+        rateLimitService.acquire("127.0.0.1", null, "bucket-1", 1000);
+
+        for (var i = 0; i < 10; i++) {
+            assertThrows(RateLimitExceededException.class,
+                    () -> rateLimitService.acquire("127.0.0.1", null, "bucket-1", 1000));
+        }
+        // the second request of burst is still available for request without body
+        rateLimitService.acquire("127.0.0.1", null, "bucket-1", 0);
+    }
+
+    @Test
+    public void shouldKeepBusyLimitsOnSweep() throws RateLimitExceededException {
+        rateLimitService.acquire("127.0.0.1", null, "bucket-1", 1000);
+        rateLimitService.acquire("127.0.0.2", null, "bucket-1", 0);
+        assertEquals(2, rateLimitService.trackedCount());
+
+        // bytes of the first client are spent, requests of the second one are refilled in a second
+        rateLimitService.sweep();
+
+        assertEquals(2, rateLimitService.trackedCount());
+        assertThrows(RateLimitExceededException.class,
+                () -> rateLimitService.acquire("127.0.0.1", null, "bucket-1", 1000));
+    }
+
+    private static RateLimitService buildService() {
+        var rateLimitService = new RateLimitService();
+        ReflectionTestUtils.setField(rateLimitService, "enabled", true);
+        ReflectionTestUtils.setField(rateLimitService, "requestsPerSecond", 2.0);
+        ReflectionTestUtils.setField(rateLimitService, "bytesPerSecond", DataSize.ofBytes(1000));
+        ReflectionTestUtils.setField(rateLimitService, "burstSeconds", 1.0);
+        // sweep is called by test
+        ReflectionTestUtils.setField(rateLimitService, "sweepInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(rateLimitService, "trustClientId", false);
+        ReflectionTestUtils.invokeMethod(rateLimitService, "init");
+        return rateLimitService;
+    }
+}
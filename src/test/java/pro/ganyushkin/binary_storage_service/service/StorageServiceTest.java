@@ -1,20 +1,33 @@
 package pro.ganyushkin.binary_storage_service.service;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.QuotaExceededException;
 import pro.ganyushkin.binary_storage_service.exception.ResourceAlreadyExists;
 import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.AssetMetadataRepository;
 import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -29,9 +42,21 @@ class StorageServiceTest {
     @MockBean
     private BinaryStorageRepository repository;
 
+    @MockBean
+    private AssetMetadataRepository metadataRepository;
+
     @Autowired
     private StorageService storageService;
 
+    @BeforeEach
+    public void setup() throws InternalStorageException, UndefinedResourceException {
+        when(repository.stat(bucketId, assetId)).thenReturn(AssetMetadata.builder()
+                .assetId(assetId)
+                .size(DATA.length())
+                .lastModified(Instant.parse("2022-08-11T19:11:50Z"))
+                .build());
+    }
+
     @Test
     public void getAssetTest() throws InternalStorageException, UndefinedResourceException, IOException {
         when(repository.read(bucketId, assetId)).thenReturn(new ByteArrayInputStream(DATA.getBytes()));
@@ -40,7 +65,47 @@ class StorageServiceTest {
     }
 
     @Test
-    public void storeAssetTest() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists {
+    public void shouldReopenAssetOverwrittenAfterMetadataWasRead() throws InternalStorageException,
+            UndefinedResourceException, IOException {
+        var oldMetadata = AssetMetadata.builder()
+                .assetId(assetId)
+                .size(3)
+                .lastModified(Instant.parse("2022-08-11T19:11:00Z"))
+                .checksum("old")
+                .build();
+        var newMetadata = repository.stat(bucketId, assetId).toBuilder().checksum("new").build();
+        when(metadataRepository.find(bucketId, assetId)).thenReturn(Optional.of(newMetadata));
+        when(repository.read(bucketId, assetId)).thenAnswer(invocation -> new ByteArrayInputStream(DATA.getBytes()));
+
+        var content = storageService.openAsset(bucketId, assetId, oldMetadata);
+
+        assertEquals(newMetadata, content.metadata());
+        assertEquals(DATA, new String(content.data().readAllBytes()));
+        verify(repository, times(2)).read(bucketId, assetId);
+    }
+
+    @Test
+    public void shouldServeAssetMismatchingMetadataWithStorageAttributes() throws InternalStorageException,
+            UndefinedResourceException, IOException {
+        var staleMetadata = AssetMetadata.builder()
+                .assetId(assetId)
+                .size(3)
+                .lastModified(Instant.parse("2022-08-11T19:11:00Z"))
+                .checksum("old")
+                .build();
+        when(metadataRepository.find(bucketId, assetId)).thenReturn(Optional.of(staleMetadata));
+        when(repository.read(bucketId, assetId)).thenAnswer(invocation -> new ByteArrayInputStream(DATA.getBytes()));
+
+        var content = storageService.openAsset(bucketId, assetId, staleMetadata);
+
+        assertEquals(DATA.length(), content.metadata().getSize());
+        assertNull(content.metadata().getChecksum());
+        assertEquals(DATA, new String(content.data().readAllBytes()));
+    }
+
+    @Test
+    public void storeAssetTest() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists,
+            QuotaExceededException {
         final var is = new ByteArrayInputStream(DATA.getBytes());
         when(repository.exists(bucketId)).thenReturn(true);
         storageService.storeAsset(bucketId, assetId, is, false, false);
@@ -48,12 +113,13 @@ class StorageServiceTest {
         verify(repository, times(0)).exists(bucketId);
 
         verify(repository, times(0)).createBucket(bucketId);
-        verify(repository, times(1)).store(bucketId, assetId, is);
-        verify(repository, times(0)).overwrite(bucketId, assetId, is);
+        verify(repository, times(1)).store(eq(bucketId), eq(assetId), any(InputStream.class));
+        verify(repository, times(0)).overwrite(eq(bucketId), eq(assetId), any(InputStream.class));
     }
 
     @Test
-    public void storeAssetTestCreateBucket() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists {
+    public void storeAssetTestCreateBucket() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists,
+            QuotaExceededException {
         final var is = new ByteArrayInputStream(DATA.getBytes());
         when(repository.exists(bucketId)).thenReturn(false);
         storageService.storeAsset(bucketId, assetId, is, true, false);
@@ -61,13 +127,14 @@ class StorageServiceTest {
         verify(repository, times(1)).exists(bucketId);
 
         verify(repository, times(1)).createBucket(bucketId);
-        verify(repository, times(1)).store(bucketId, assetId, is);
-        verify(repository, times(0)).overwrite(bucketId, assetId, is);
+        verify(repository, times(1)).store(eq(bucketId), eq(assetId), any(InputStream.class));
+        verify(repository, times(0)).overwrite(eq(bucketId), eq(assetId), any(InputStream.class));
     }
 
     @Test
     public void storeAssetTestCheckForcedBucketCreation() throws InternalStorageException,
-            UndefinedResourceException, ResourceAlreadyExists {
+            UndefinedResourceException, ResourceAlreadyExists,
+            QuotaExceededException {
         final var is = new ByteArrayInputStream(DATA.getBytes());
 
         when(repository.exists(bucketId)).thenReturn(false);
@@ -78,28 +145,114 @@ class StorageServiceTest {
         verify(repository, times(1)).exists(bucketId);
 
         verify(repository, times(1)).createBucket(bucketId);
-        verify(repository, times(1)).store(bucketId, assetId, is);
-        verify(repository, times(0)).overwrite(bucketId, assetId, is);
+        verify(repository, times(1)).store(eq(bucketId), eq(assetId), any(InputStream.class));
+        verify(repository, times(0)).overwrite(eq(bucketId), eq(assetId), any(InputStream.class));
     }
 
     @Test
-    public void storeAssetTestWithoutBucket() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists {
+    public void storeAssetTestWithoutBucket() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists,
+            QuotaExceededException {
         final var is = new ByteArrayInputStream(DATA.getBytes());
         when(repository.exists(bucketId)).thenReturn(false);
         storageService.storeAsset(bucketId, assetId, is, false, false);
         verify(repository, times(0)).createBucket(bucketId);
-        verify(repository, times(1)).store(bucketId, assetId, is);
-        verify(repository, times(0)).overwrite(bucketId, assetId, is);
+        verify(repository, times(1)).store(eq(bucketId), eq(assetId), any(InputStream.class));
+        verify(repository, times(0)).overwrite(eq(bucketId), eq(assetId), any(InputStream.class));
     }
 
     @Test
-    public void storeAssetTestOverride() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists {
+    public void storeAssetTestOverride() throws InternalStorageException, UndefinedResourceException, ResourceAlreadyExists,
+            QuotaExceededException {
         final var is = new ByteArrayInputStream(DATA.getBytes());
         when(repository.exists(bucketId)).thenReturn(true);
         storageService.storeAsset(bucketId, assetId, is, false, true);
         verify(repository, times(0)).createBucket(bucketId);
-        verify(repository, times(0)).store(bucketId, assetId, is);
-        verify(repository, times(1)).overwrite(bucketId, assetId, is);
+        verify(repository, times(0)).store(eq(bucketId), eq(assetId), any(InputStream.class));
+        verify(repository, times(1)).overwrite(eq(bucketId), eq(assetId), any(InputStream.class));
+    }
+
+    @Test
+    public void storeAssetTestSaveMetadata() throws InternalStorageException, UndefinedResourceException,
+            ResourceAlreadyExists,
+            QuotaExceededException {
+        doAnswer(invocation -> {
+            invocation.getArgument(2, InputStream.class).readAllBytes();
+            return null;
+        })
+                .when(repository).store(eq(bucketId), eq(assetId), any(InputStream.class));
+
+        storageService.storeAsset(bucketId, assetId, new ByteArrayInputStream(DATA.getBytes()), DATA.length(),
+                false, false, Map.of("owner", "tester"));
+
+        var captor = ArgumentCaptor.forClass(AssetMetadata.class);
+        verify(metadataRepository, times(1)).save(eq(bucketId), captor.capture());
+        var metadata = captor.getValue();
+        assertEquals(assetId, metadata.getAssetId());
+        assertEquals(DATA.length(), metadata.getSize());
+        assertEquals("application/octet-stream", metadata.getContentType());
+        assertEquals("fcb83e9d34c87810b6e7586b6be1eee05ec8d0b012f94244420fd1a2687f0408",
+                metadata.getChecksum());
+        assertEquals("af1ad8c76fda2e48ea9aed2937e972ea", metadata.getEtag());
+        assertEquals(Map.of("owner", "tester"), metadata.getUserMetadata());
+    }
+
+    @Test
+    public void shouldHideInternalBuckets() throws InternalStorageException, UndefinedResourceException,
+            ResourceAlreadyExists {
+        final var hiddenBucketId = ".derivatives";
+        when(repository.exists(hiddenBucketId)).thenReturn(true);
+
+        assertFalse(storageService.isBucketExists(hiddenBucketId));
+        assertThrows(UndefinedResourceException.class, () -> storageService.getAsset(hiddenBucketId, assetId));
+        assertThrows(UndefinedResourceException.class, () -> storageService.getBucketList(hiddenBucketId));
+        assertThrows(UndefinedResourceException.class, () -> storageService.deleteAsset(hiddenBucketId, assetId));
+        assertThrows(UndefinedResourceException.class, () -> storageService.storeAsset(hiddenBucketId, assetId,
+                new ByteArrayInputStream(DATA.getBytes()), true, true));
+        assertThrows(UndefinedResourceException.class, () -> storageService.copyAsset(bucketId, assetId,
+                hiddenBucketId, assetId, false, true));
+        assertThrows(IllegalArgumentException.class, () -> storageService.createBucket(".multipart-1", true));
+
+        verify(repository, times(0)).read(hiddenBucketId, assetId);
+        verify(repository, times(0)).delete(hiddenBucketId, assetId);
+        verify(repository, times(0)).createBucket(anyString());
+    }
+
+    @Test
+    public void getAssetMetadataTest() throws InternalStorageException, UndefinedResourceException {
+        final var metadata = AssetMetadata.builder().assetId(assetId).checksum("abcdef").build();
+        when(metadataRepository.find(bucketId, assetId)).thenReturn(Optional.of(metadata));
+        assertEquals(metadata, storageService.getAssetMetadata(bucketId, assetId));
+        verify(repository, times(0)).stat(bucketId, assetId);
+    }
+
+    @Test
+    public void getAssetMetadataTestWithoutStoredMetadata() throws InternalStorageException,
+            UndefinedResourceException {
+        when(metadataRepository.find(bucketId, assetId)).thenReturn(Optional.empty());
+        var metadata = storageService.getAssetMetadata(bucketId, assetId);
+        assertEquals(DATA.length(), metadata.getSize());
+        assertEquals("application/octet-stream", metadata.getContentType());
+        assertNull(metadata.getChecksum());
+    }
+
+    @Test
+    public void getAssetsMetadataTest() throws InternalStorageException, UndefinedResourceException {
+        final var missingAssetId = "missing.ext";
+        when(repository.exists(bucketId)).thenReturn(true);
+        when(metadataRepository.find(eq(bucketId), any())).thenReturn(Optional.empty());
+        when(repository.stat(bucketId, missingAssetId))
+                .thenThrow(new UndefinedResourceException(bucketId, missingAssetId));
+
+        var result = storageService.getAssetsMetadata(bucketId, List.of(assetId, missingAssetId));
+
+        assertEquals(List.of(assetId), List.copyOf(result.keySet()));
+    }
+
+    @Test
+    public void getAssetsMetadataTestWithoutBucket() {
+        when(repository.exists(bucketId)).thenReturn(false);
+        assertThrows(UndefinedResourceException.class, () ->
+                storageService.getAssetsMetadata(bucketId, List.of(assetId)));
     }
 
     @Test
@@ -133,4 +286,18 @@ class StorageServiceTest {
         when(repository.listAssets(bucketId)).thenReturn(assets);
         assertEquals(assets, storageService.getBucketList(bucketId));
     }
+
+    @Test
+    public void deleteAssetTest() throws InternalStorageException, UndefinedResourceException {
+        storageService.deleteAsset(bucketId, assetId);
+        verify(repository, times(1)).delete(bucketId, assetId);
+        verify(metadataRepository, times(1)).remove(bucketId, assetId);
+    }
+
+    @Test
+    public void deleteAssetTestThrow() throws InternalStorageException, UndefinedResourceException {
+        doThrow(new UndefinedResourceException(bucketId, assetId)).when(repository).delete(bucketId, assetId);
+        assertThrows(UndefinedResourceException.class, () -> storageService.deleteAsset(bucketId, assetId));
+        verify(metadataRepository, times(0)).remove(bucketId, assetId);
+    }
 }
@@ -0,0 +1,106 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.config.LifecycleProperties;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+import pro.ganyushkin.binary_storage_service.repository.LifecycleIndexRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TieringServiceTest {
+    final String bucketId = "bucket-1";
+    final Instant monthAgo = Instant.now().minus(30, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MILLIS);
+    final Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+    @TempDir
+    Path indexDir;
+
+    private BinaryStorageRepository repository;
+    private TieringService tieringService;
+
+    @BeforeEach
+    public void setup() throws UndefinedResourceException {
+        repository = mock(BinaryStorageRepository.class);
+        when(repository.listBuckets()).thenReturn(List.of(bucketId));
+        when(repository.listAssets(bucketId)).thenReturn(List.of("old", "new"));
+
+        var indexRepository = new LifecycleIndexRepository(new LifecycleProperties());
+        ReflectionTestUtils.setField(indexRepository, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(indexRepository, "tieringEnabled", true);
+        ReflectionTestUtils.invokeMethod(indexRepository, "init");
+
+        tieringService = new TieringService(repository, indexRepository);
+        ReflectionTestUtils.setField(tieringService, "enabled", true);
+        ReflectionTestUtils.setField(tieringService, "promoteAfterReads", 3);
+        ReflectionTestUtils.setField(tieringService, "demoteAfter", Duration.ofDays(7));
+        ReflectionTestUtils.setField(tieringService, "sweepInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(tieringService, "maxActionsPerSecond", 1000.0);
+        ReflectionTestUtils.setField(tieringService, "maxTrackedAssets", 100);
+        ReflectionTestUtils.setField(tieringService, "promotionQueueSize", 10);
+        ReflectionTestUtils.setField(tieringService, "batchSize", 100);
+        ReflectionTestUtils.invokeMethod(tieringService, "init");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        ReflectionTestUtils.invokeMethod(tieringService, "destroy");
+    }
+
+    @Test
+    public void shouldPromoteFrequentlyReadColdAsset() throws InternalStorageException, UndefinedResourceException {
+        when(repository.isCold(bucketId, "asset")).thenReturn(true);
+
+        tieringService.recordAccess(bucketId, "asset");
+        tieringService.recordAccess(bucketId, "asset");
+        verify(repository, never()).promote(any(), any());
+
+        tieringService.recordAccess(bucketId, "asset");
+        tieringService.recordAccess(bucketId, "asset");
+        verify(repository, timeout(1000).times(1)).promote(bucketId, "asset");
+    }
+
+    @Test
+    public void shouldDemoteUnusedAssets() throws InternalStorageException, UndefinedResourceException {
+        when(repository.stat(bucketId, "old")).thenReturn(AssetMetadata.builder().lastModified(monthAgo).build());
+        when(repository.stat(bucketId, "new")).thenReturn(AssetMetadata.builder().lastModified(now).build());
+
+        tieringService.sweep();
+        tieringService.sweep();
+
+        verify(repository, times(1)).demote(bucketId, "old");
+        verify(repository, never()).demote(bucketId, "new");
+        // buckets are scanned once, following sweeps read the write index
+        verify(repository, times(1)).listAssets(bucketId);
+    }
+
+    @Test
+    public void shouldNotDemoteRecentlyReadAsset() throws InternalStorageException, UndefinedResourceException {
+        when(repository.stat(bucketId, "old")).thenReturn(AssetMetadata.builder().lastModified(monthAgo).build());
+        when(repository.stat(bucketId, "new")).thenReturn(AssetMetadata.builder().lastModified(monthAgo).build());
+
+        tieringService.recordAccess(bucketId, "new");
+        tieringService.sweep();
+
+        verify(repository, times(1)).demote(bucketId, "old");
+        verify(repository, never()).demote(bucketId, "new");
+    }
+}
@@ -0,0 +1,93 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import pro.ganyushkin.binary_storage_service.config.SigningProperties;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlSigningServiceTest {
+    final String bucketId = "bucket-1";
+    final String assetId = "file 1.txt";
+
+    private SigningProperties properties;
+
+    @BeforeEach
+    public void setup() {
+        properties = new SigningProperties();
+        properties.setEnabled(true);
+        properties.setActiveKey("k1");
+        properties.setKeys(Map.of("k1", "secret-1", "k2", "secret-2"));
+        properties.setBaseUrl("https://cdn.example.com");
+    }
+
+    @Test
+    public void shouldVerifySignedUrl() {
+        var service = createService();
+
+        var signedUrl = service.sign(bucketId, assetId, "abcdef", Duration.ofMinutes(5));
+        var params = UriComponentsBuilder.fromUriString(signedUrl.url()).build().getQueryParams();
+
+        assertTrue(signedUrl.url().startsWith(
+                "https://cdn.example.com/api/v1/public/bucket/bucket-1/asset/file%201.txt?"));
+        assertEquals("abcdef", params.getFirst("version"));
+        var expires = Long.parseLong(params.getFirst("expires"));
+        assertEquals(signedUrl.expiresAt().getEpochSecond(), expires);
+        var signature = params.getFirst("signature");
+        assertTrue(service.verify(bucketId, assetId, "abcdef", expires, "k1", signature));
+
+        assertFalse(service.verify(bucketId, "file 2.txt", "abcdef", expires, "k1", signature));
+        assertFalse(service.verify(bucketId, assetId, "fedcba", expires, "k1", signature));
+        assertFalse(service.verify(bucketId, assetId, null, expires, "k1", signature));
+        assertFalse(service.verify(bucketId, assetId, "abcdef", expires + 1, "k1", signature));
+        assertFalse(service.verify(bucketId, assetId, "abcdef", expires, "k2", signature));
+        assertFalse(service.verify(bucketId, assetId, "abcdef", expires, "k3", signature));
+    }
+
+    @Test
+    public void shouldRejectExpiredUrl() {
+        var service = createService();
+        var expires = Instant.now().minusSeconds(1).getEpochSecond();
+
+        String signature = ReflectionTestUtils.invokeMethod(service, "signature",
+                "k1", bucketId, assetId, "v", expires);
+
+        assertFalse(service.verify(bucketId, assetId, "v", expires, "k1", signature));
+    }
+
+    @Test
+    public void shouldAcceptUrlOfRotatedKey() {
+        var service = createService();
+        var signedUrl = service.sign(bucketId, assetId, null, null);
+        var params = UriComponentsBuilder.fromUriString(signedUrl.url()).build().getQueryParams();
+
+        properties.setActiveKey("k2");
+        var rotated = createService();
+
+        assertTrue(rotated.verify(bucketId, assetId, null, Long.parseLong(params.getFirst("expires")),
+                "k1", params.getFirst("signature")));
+        assertTrue(rotated.sign(bucketId, assetId, null, null).url().contains("keyId=k2"));
+    }
+
+    @Test
+    public void shouldRejectTooLongLifetime() {
+        var service = createService();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.sign(bucketId, assetId, null, Duration.ofDays(8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.sign(bucketId, assetId, null, Duration.ZERO));
+    }
+
+    private UrlSigningService createService() {
+        var service = new UrlSigningService(properties);
+        ReflectionTestUtils.invokeMethod(service, "init");
+        return service;
+    }
+}
@@ -0,0 +1,108 @@
+package pro.ganyushkin.binary_storage_service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.ganyushkin.binary_storage_service.exception.InternalStorageException;
+import pro.ganyushkin.binary_storage_service.exception.UndefinedResourceException;
+import pro.ganyushkin.binary_storage_service.model.AssetMetadata;
+import pro.ganyushkin.binary_storage_service.repository.AssetMetadataRepository;
+import pro.ganyushkin.binary_storage_service.repository.BinaryStorageRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WarmupServiceTest {
+
+    @TempDir
+    Path warmupDir;
+
+    private BinaryStorageRepository storageRepository;
+    private AssetMetadataRepository metadataRepository;
+    private Path accessFile;
+
+    @BeforeEach
+    public void setup() throws InternalStorageException, UndefinedResourceException {
+        storageRepository = mock(BinaryStorageRepository.class);
+        metadataRepository = mock(AssetMetadataRepository.class);
+        accessFile = warmupDir.resolve("hot-buckets.txt");
+        when(storageRepository.listAssets("bucket-1")).thenReturn(List.of("a", "b"));
+        when(storageRepository.listAssets("bucket-2")).thenThrow(new UndefinedResourceException("bucket-2"));
+        when(storageRepository.stat("bucket-1", "a")).thenReturn(AssetMetadata.builder().assetId("a").build());
+        when(storageRepository.stat("bucket-1", "b")).thenReturn(AssetMetadata.builder().assetId("b").build());
+    }
+
+    @Test
+    public void shouldWarmupBucketsOfAccessListBeforeReady() throws Exception {
+        Files.write(accessFile, List.of("bucket-1", "bucket-2"));
+        var service = createService(true);
+
+        ReflectionTestUtils.invokeMethod(service, "init");
+        try {
+            waitCompleted(service);
+            verify(metadataRepository).find("bucket-1", "a");
+            verify(storageRepository).stat("bucket-1", "b");
+            var progress = service.getProgress();
+            assertEquals(2, progress.get("buckets"));
+            assertEquals(2, progress.get("bucketsWarmed"));
+            assertEquals(2L, progress.get("assetsWarmed"));
+        } finally {
+            ReflectionTestUtils.invokeMethod(service, "destroy");
+        }
+    }
+
+    @Test
+    public void shouldPersistRecentlyReadBucketsFirst() throws Exception {
+        Files.write(accessFile, List.of("bucket-1", "bucket-2"));
+        var service = createService(true);
+        ReflectionTestUtils.invokeMethod(service, "init");
+        waitCompleted(service);
+
+        service.recordAccess("bucket-3");
+        ReflectionTestUtils.invokeMethod(service, "destroy");
+
+        assertEquals(List.of("bucket-3", "bucket-1", "bucket-2"), Files.readAllLines(accessFile));
+    }
+
+    @Test
+    public void shouldBeReadyWhenDisabled() throws Exception {
+        var service = createService(false);
+
+        ReflectionTestUtils.invokeMethod(service, "init");
+        service.recordAccess("bucket-1");
+        ReflectionTestUtils.invokeMethod(service, "destroy");
+
+        assertTrue(service.isCompleted());
+        verify(storageRepository, never()).listAssets("bucket-1");
+        assertFalse(Files.exists(accessFile));
+    }
+
+    private WarmupService createService(boolean enabled) {
+        var service = new WarmupService(storageRepository, metadataRepository);
+        ReflectionTestUtils.setField(service, "enabled", enabled);
+        ReflectionTestUtils.setField(service, "accessFile", accessFile.toString());
+        ReflectionTestUtils.setField(service, "maxBuckets", 10);
+        ReflectionTestUtils.setField(service, "maxAssetsPerBucket", 100);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "timeout", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(service, "persistInterval", Duration.ofHours(1));
+        return service;
+    }
+
+    private static void waitCompleted(WarmupService service) throws InterruptedException {
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!service.isCompleted() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(service.isCompleted());
+    }
+}
@@ -0,0 +1,39 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AwsChunkedInputStreamTest {
+
+    @Test
+    public void shouldDecodeChunks() throws IOException {
+        var encoded = "5;chunk-signature=abc\r\nhello\r\n6;chunk-signature=def\r\n world\r\n" +
+                "0;chunk-signature=ghi\r\n\r\n";
+
+        try (var is = new AwsChunkedInputStream(
+                new ByteArrayInputStream(encoded.getBytes(StandardCharsets.US_ASCII)))) {
+            assertEquals("hello world", new String(is.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void shouldFailOnTruncatedStream() {
+        var is = new AwsChunkedInputStream(
+                new ByteArrayInputStream("a;chunk-signature=abc\r\nhello".getBytes(StandardCharsets.US_ASCII)));
+
+        assertThrows(IOException.class, is::readAllBytes);
+    }
+
+    @Test
+    public void shouldFailOnInvalidHeader() {
+        var is = new AwsChunkedInputStream(
+                new ByteArrayInputStream("zz;chunk-signature=abc\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+        assertThrows(IOException.class, is::read);
+    }
+}
@@ -0,0 +1,54 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectBufferPoolTest {
+
+    @Test
+    public void shouldReuseReleasedBuffer() {
+        final var pool = new DirectBufferPool(1024, 2);
+
+        var buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(1, pool.freeCount());
+
+        var reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.remaining());
+    }
+
+    @Test
+    public void shouldGiveHeapBufferWhenExhausted() {
+        final var pool = new DirectBufferPool(1024, 1);
+
+        var first = pool.acquire();
+        var second = pool.acquire();
+        assertTrue(first.isDirect());
+        assertFalse(second.isDirect());
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.freeCount());
+    }
+
+    @Test
+    public void shouldReuseReleasedArraysUpToLimit() {
+        final var pool = new DirectBufferPool(1024, 1);
+
+        var first = pool.acquireArray();
+        var second = pool.acquireArray();
+        assertEquals(1024, first.length);
+        assertNotSame(first, second);
+
+        pool.releaseArray(first);
+        pool.releaseArray(second);
+        assertSame(first, pool.acquireArray());
+        assertNotSame(second, pool.acquireArray());
+    }
+}
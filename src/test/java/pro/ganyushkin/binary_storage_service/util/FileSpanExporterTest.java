@@ -0,0 +1,47 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSpanExporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldExportSpansWithPhaseBreakdown() throws IOException {
+        final var file = tempDir.resolve("traces.jsonl");
+        final var slowRequests = new SlowRequestSpanProcessor(Duration.ZERO, 100);
+        final var provider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(new FileSpanExporter(file)))
+                .addSpanProcessor(slowRequests)
+                .build();
+        final var tracer = provider.get("test");
+
+        var root = tracer.spanBuilder("GET /asset").startSpan();
+        try (var ignored = root.makeCurrent()) {
+            tracer.spanBuilder("fs.open").startSpan().end();
+            assertEquals(1, slowRequests.inFlightCount());
+        } finally {
+            root.end();
+        }
+        assertEquals(0, slowRequests.inFlightCount());
+        provider.close();
+
+        var lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"name\":\"fs.open\""));
+        assertTrue(lines.get(0).contains("\"parentSpanId\":\"" + root.getSpanContext().getSpanId() + "\""));
+        assertTrue(lines.get(1).contains("\"name\":\"GET /asset\""));
+        assertFalse(lines.get(1).contains("parentSpanId"));
+    }
+}
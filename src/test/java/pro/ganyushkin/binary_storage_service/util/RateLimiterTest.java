@@ -0,0 +1,58 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void shouldAllowBurstAndThenLimit() {
+        final var limiter = new RateLimiter(10, 1);
+        final var now = 1_000 * SECOND;
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.tryAcquire(1, now));
+        }
+        var wait = limiter.tryAcquire(1, now);
+        assertTrue(wait > 0);
+        assertEquals(0, limiter.tryAcquire(1, now + wait));
+    }
+
+    @Test
+    public void shouldRefillOverTime() {
+        final var limiter = new RateLimiter(100, 1);
+        final var now = 1_000 * SECOND;
+
+        assertEquals(0, limiter.tryAcquire(100, now));
+        assertTrue(limiter.tryAcquire(50, now) > 0);
+        assertEquals(0, limiter.tryAcquire(50, now + SECOND / 2));
+        assertFalse(limiter.isIdle(now + SECOND / 2));
+        assertTrue(limiter.isIdle(now + 2 * SECOND));
+    }
+
+    @Test
+    public void shouldChargeLargeRequestAsDebt() {
+        final var limiter = new RateLimiter(1024, 1);
+        final var now = 1_000 * SECOND;
+
+        assertEquals(0, limiter.tryAcquire(1024 * 1024, now));
+        var wait = limiter.tryAcquire(1, now);
+        // 1024 seconds of refill are charged, one second of them is covered by burst
+        assertTrue(wait > 1000 * SECOND);
+        assertTrue(limiter.tryAcquire(1, now + 1000 * SECOND) > 0);
+        assertEquals(0, limiter.tryAcquire(1, now + 1024 * SECOND));
+    }
+
+    @Test
+    public void shouldReturnRefundedPermits() {
+        final var limiter = new RateLimiter(10, 1);
+        final var now = 1_000 * SECOND;
+
+        assertEquals(0, limiter.tryAcquire(10, now));
+        assertTrue(limiter.tryAcquire(1, now) > 0);
+        limiter.refund(1);
+        assertEquals(0, limiter.tryAcquire(1, now));
+    }
+}
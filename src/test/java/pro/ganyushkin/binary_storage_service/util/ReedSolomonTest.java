@@ -0,0 +1,65 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReedSolomonTest {
+
+    @Test
+    public void shouldReconstructAnyMissingShards() {
+        final var codec = new ReedSolomon(4, 2);
+        final var random = new Random(1);
+        var shards = new byte[6][100];
+        for (var i = 0; i < 4; i++) {
+            random.nextBytes(shards[i]);
+        }
+        codec.encodeParity(shards, 0, 100);
+
+        for (var first = 0; first < 6; first++) {
+            for (var second = first + 1; second < 6; second++) {
+                var damaged = new byte[6][];
+                var present = new boolean[6];
+                for (var i = 0; i < 6; i++) {
+                    damaged[i] = shards[i].clone();
+                    present[i] = true;
+                }
+                present[first] = false;
+                present[second] = false;
+                damaged[first] = new byte[100];
+                damaged[second] = first < 4 ? null : new byte[100];
+
+                codec.reconstruct(damaged, present, 0, 100);
+
+                for (var i = 0; i < 6; i++) {
+                    assertArrayEquals(shards[i], damaged[i], "shard " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldEncodeRange() {
+        final var codec = new ReedSolomon(3, 1);
+        var shards = new byte[][] { { 9, 1, 2 }, { 9, 3, 4 }, { 9, 5, 6 }, { 7, 0, 0 } };
+
+        codec.encodeParity(shards, 1, 2);
+
+        assertEquals(7, shards[3][0]);
+        shards[1] = null;
+        codec.reconstruct(shards, new boolean[] { true, false, true, true }, 1, 2);
+        assertEquals(3, shards[1][1]);
+        assertEquals(4, shards[1][2]);
+    }
+
+    @Test
+    public void shouldRejectNotEnoughShards() {
+        final var codec = new ReedSolomon(2, 1);
+        var shards = new byte[3][10];
+
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.reconstruct(shards, new boolean[] { true, false, false }, 0, 10));
+    }
+}
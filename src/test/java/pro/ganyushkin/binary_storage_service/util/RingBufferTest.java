@@ -0,0 +1,59 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    @Test
+    public void shouldRejectWhenFull() {
+        final var buffer = new RingBuffer<Integer>(4);
+
+        for (var i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+
+        var drained = new ArrayList<Integer>();
+        assertEquals(2, buffer.drain(drained::add, 2));
+        assertTrue(buffer.offer(5));
+        assertEquals(3, buffer.drain(drained::add, 10));
+        assertEquals(List.of(0, 1, 2, 3, 5), drained);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void shouldDeliverAllItemsOfConcurrentProducers() throws InterruptedException {
+        final var buffer = new RingBuffer<Long>(64);
+        final var producers = 4;
+        final var itemsPerProducer = 10_000;
+        final var executor = Executors.newFixedThreadPool(producers);
+        for (var p = 0; p < producers; p++) {
+            executor.submit(() -> {
+                for (long i = 1; i <= itemsPerProducer; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+
+        final var sum = new AtomicLong();
+        var count = 0;
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count < producers * itemsPerProducer && System.nanoTime() < deadline) {
+            count += buffer.drain(sum::addAndGet, 16);
+        }
+        executor.shutdownNow();
+
+        assertEquals(producers * itemsPerProducer, count);
+        assertEquals(producers * (long) itemsPerProducer * (itemsPerProducer + 1) / 2, sum.get());
+    }
+}
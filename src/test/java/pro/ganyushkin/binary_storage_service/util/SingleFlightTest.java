@@ -0,0 +1,61 @@
+package pro.ganyushkin.binary_storage_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    public void shouldCoalesceConcurrentCalls() throws Exception {
+        final var singleFlight = new SingleFlight<String, String>();
+        final var calls = new AtomicInteger();
+        final var computation = new CompletableFuture<String>();
+
+        var first = singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return computation;
+        });
+        var second = singleFlight.execute("key", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+
+        assertSame(first, second);
+        assertEquals(1, singleFlight.inFlightCount());
+
+        computation.complete("value");
+
+        assertEquals("value", first.get());
+        assertEquals("value", second.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    public void shouldStartNewComputationAfterCompletion() throws Exception {
+        final var singleFlight = new SingleFlight<String, String>();
+
+        var first = singleFlight.execute("key", () -> CompletableFuture.completedFuture("first"));
+        var second = singleFlight.execute("key", () -> CompletableFuture.completedFuture("second"));
+
+        assertEquals("first", first.get());
+        assertEquals("second", second.get());
+    }
+
+    @Test
+    public void shouldForgetFailedComputation() {
+        final var singleFlight = new SingleFlight<String, String>();
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("rejected");
+        }));
+        var future = singleFlight.execute("key", () -> CompletableFuture.failedFuture(new RuntimeException()));
+
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+}